@@ -32,6 +32,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import proguard.analysis.Metrics;
 import proguard.analysis.Metrics.MetricType;
+import proguard.analysis.MetricsRegistry;
 import proguard.classfile.AccessConstants;
 import proguard.classfile.Clazz;
 import proguard.classfile.LibraryClass;
@@ -136,6 +137,7 @@ public class Dex2Pro {
       Integer.parseInt(System.getProperty("proguard.dexconversion.maxstatements", "0"));
 
   private boolean usePrimitiveArrayConstants = false;
+  private MetricsRegistry metrics = Metrics.getDefaultRegistry();
 
   // Used when multithreaded mode is enabled
   private final ExecutorService executor;
@@ -585,6 +587,15 @@ public class Dex2Pro {
     return this;
   }
 
+  /**
+   * Sets the registry that collects the metrics of the conversion. By default, the conversion uses
+   * the {@link Metrics#getDefaultRegistry() default registry}.
+   */
+  public Dex2Pro useMetrics(MetricsRegistry metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
   /** Converts the given Dex to classes and applies the given class visitor to them. */
   public void convertDex(DexFileNode fileNode, ClassVisitor classVisitor) {
     if (fileNode.clzs == null) {
@@ -747,7 +758,7 @@ public class Dex2Pro {
         Collections.sort(innerClassNodes, INNER_CLASS_NODE_COMPARATOR);
         for (InnerClassNode icn : innerClassNodes) {
           if (icn.innerName != null && !isJavaIdentifier(icn.innerName)) {
-            Metrics.increaseCount(MetricType.DEX2PRO_INVALID_INNER_CLASS);
+            metrics.increaseCount(MetricType.DEX2PRO_INVALID_INNER_CLASS);
             icn.innerName = null;
             icn.outerName = null;
           }
@@ -1050,7 +1061,7 @@ public class Dex2Pro {
         // Create an empty method to continue.
         programMethod = classBuilder.addAndReturnMethod(flags, name, desc);
 
-        Metrics.increaseCount(MetricType.DEX2PRO_UNPARSEABLE_METHOD_SKIPPED);
+        metrics.increaseCount(MetricType.DEX2PRO_UNPARSEABLE_METHOD_SKIPPED);
       } else {
         throw e;
       }
@@ -139,6 +139,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
   private final boolean selectiveParameterReconstruction;
   private final Set<MethodSignature> interestingMethods;
   private final Set<Predicate<Call>> interestingCallPredicates;
+  private final MetricsRegistry metrics;
 
   private CurrentClazzMethodAttribute currentClazzMethodAttribute;
 
@@ -248,6 +249,54 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
       Set<MethodSignature> interestingMethods,
       Set<Predicate<Call>> interestingCallPredicates,
       CallHandler... callHandlers) {
+    this(
+        programClassPool,
+        libraryClassPool,
+        callGraph,
+        clearCallValuesAfterVisit,
+        useDominatorAnalysis,
+        evaluateAllCode,
+        includeSubClasses,
+        maxPartialEvaluations,
+        shouldAnalyzeNextCodeAttribute,
+        skipIncompleteCalls,
+        arrayValueFactory,
+        ignoreExceptions,
+        executingInvocationUnitBuilder,
+        selectiveParameterReconstruction,
+        interestingMethods,
+        interestingCallPredicates,
+        Metrics.getDefaultRegistry(),
+        callHandlers);
+  }
+
+  /**
+   * Create a new call resolver that collects its metrics in the given registry. See {@link
+   * #CallResolver(ClassPool, ClassPool, CallGraph, boolean, boolean, boolean, boolean, int,
+   * Supplier, boolean, ValueFactory, boolean, ExecutingInvocationUnit.Builder, boolean, Set, Set,
+   * CallHandler...)} for the other parameters.
+   *
+   * @param metrics The {@link MetricsRegistry} that collects the metrics of this analysis.
+   */
+  public CallResolver(
+      ClassPool programClassPool,
+      ClassPool libraryClassPool,
+      CallGraph callGraph,
+      boolean clearCallValuesAfterVisit,
+      boolean useDominatorAnalysis,
+      boolean evaluateAllCode,
+      boolean includeSubClasses,
+      int maxPartialEvaluations,
+      Supplier<Boolean> shouldAnalyzeNextCodeAttribute,
+      boolean skipIncompleteCalls,
+      ValueFactory arrayValueFactory,
+      boolean ignoreExceptions,
+      ExecutingInvocationUnit.Builder executingInvocationUnitBuilder,
+      boolean selectiveParameterReconstruction,
+      Set<MethodSignature> interestingMethods,
+      Set<Predicate<Call>> interestingCallPredicates,
+      MetricsRegistry metrics,
+      CallHandler... callHandlers) {
     this.programClassPool = programClassPool;
     this.libraryClassPool = libraryClassPool;
     this.callGraph = callGraph;
@@ -265,6 +314,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
     }
     this.interestingMethods = interestingMethods;
     this.interestingCallPredicates = interestingCallPredicates;
+    this.metrics = metrics;
     this.callHandlers = Arrays.asList(callHandlers);
     dominatorCalculator = new DominatorCalculator(ignoreExceptions);
 
@@ -330,7 +380,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
       multiTypeValueEvaluator.visitCodeAttribute0(clazz, method, codeAttribute);
       multiTypeEvaluationSuccessful = true;
     } catch (ExcessiveComplexityException e) {
-      Metrics.increaseCount(MetricType.PARTIAL_EVALUATOR_EXCESSIVE_COMPLEXITY);
+      metrics.increaseCount(MetricType.PARTIAL_EVALUATOR_EXCESSIVE_COMPLEXITY);
     } catch (EmptyCodeAttributeException e) {
       log.info(e);
     } catch (Exception e) {
@@ -350,7 +400,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
       particularValueEvaluator.visitCodeAttribute0(clazz, method, codeAttribute);
       particularValueEvaluationSuccessful = true;
     } catch (ExcessiveComplexityException e) {
-      Metrics.increaseCount(MetricType.PARTIAL_EVALUATOR_EXCESSIVE_COMPLEXITY);
+      metrics.increaseCount(MetricType.PARTIAL_EVALUATOR_EXCESSIVE_COMPLEXITY);
     } catch (EmptyCodeAttributeException e) {
       log.info(e);
     } catch (Exception e) {
@@ -399,7 +449,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
           handleInvokeSpecial(location, constantInstruction, ref);
           break;
         default:
-          Metrics.increaseCount(MetricType.UNSUPPORTED_OPCODE);
+          metrics.increaseCount(MetricType.UNSUPPORTED_OPCODE);
           log.warn("Unsupported invocation opcode {} at {}", constantInstruction.opcode, location);
       }
     }
@@ -415,7 +465,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
       boolean runtimeTypeDependent) {
     if (skipIncompleteCalls
         && (targetClass == null || targetMethod == null || targetDescriptor == null)) {
-      Metrics.increaseCount(MetricType.INCOMPLETE_CALL_SKIPPED);
+      metrics.increaseCount(MetricType.INCOMPLETE_CALL_SKIPPED);
       return;
     }
 
@@ -488,14 +538,14 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
       if (containingClass != null) {
         Method method = containingClass.findMethod(targetMethod, targetDescriptor);
         if (method != null) {
-          Metrics.increaseCount(MetricType.CONCRETE_CALL);
+          metrics.increaseCount(MetricType.CONCRETE_CALL);
           if ((method.getAccessFlags() & AccessConstants.ABSTRACT) != 0) {
-            Metrics.increaseCount(MetricType.CALL_TO_ABSTRACT_METHOD);
+            metrics.increaseCount(MetricType.CALL_TO_ABSTRACT_METHOD);
           }
           if (method instanceof ProgramMethod
               && Arrays.stream(((ProgramMethod) method).attributes)
                   .noneMatch(a -> a instanceof CodeAttribute)) {
-            Metrics.increaseCount(MetricType.CONCRETE_CALL_NO_CODE_ATTRIBUTE);
+            metrics.increaseCount(MetricType.CONCRETE_CALL_NO_CODE_ATTRIBUTE);
           }
 
           return new ConcreteCall(
@@ -510,7 +560,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
       }
     }
 
-    Metrics.increaseCount(MetricType.SYMBOLIC_CALL);
+    metrics.increaseCount(MetricType.SYMBOLIC_CALL);
     return new SymbolicCall(
         location,
         new MethodSignature(targetClass, targetMethod, targetDescriptor),
@@ -649,7 +699,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
       CodeLocation location, Instruction instruction, AnyMethodrefConstant ref) {
     Set<String> targets = resolveInvokeSpecial(location.clazz, ref);
     if (targets.isEmpty()) {
-      Metrics.increaseCount(MetricType.MISSING_METHODS);
+      metrics.increaseCount(MetricType.MISSING_METHODS);
     } else {
       String name = ref.getName(location.clazz);
       String descriptor = ref.getType(location.clazz);
@@ -699,7 +749,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
       // In this case, we don't have the referenced class in our class pool, so we can't be more
       // specific here.
       String className = ref.getClassName(callingClass);
-      Metrics.increaseCount(MetricType.MISSING_CLASS);
+      metrics.increaseCount(MetricType.MISSING_CLASS);
       return Collections.singleton(className);
     }
 
@@ -764,7 +814,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
       // If the partial evaluation has not finished, this is to be expected and does not warrant an
       // error message.
       if (multiTypeEvaluationSuccessful) {
-        Metrics.increaseCount(MetricType.PARTIAL_EVALUATOR_VALUE_IMPRECISE);
+        metrics.increaseCount(MetricType.PARTIAL_EVALUATOR_VALUE_IMPRECISE);
       }
     } else {
       MultiTypedReferenceValue multiTypeThisPtr = (MultiTypedReferenceValue) thisPtr;
@@ -806,13 +856,13 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
 
         if (referencedClass == null) {
           // Class still wasn't found, add it to the missing classes.
-          Metrics.increaseCount(MetricType.MISSING_CLASS);
+          metrics.increaseCount(MetricType.MISSING_CLASS);
         }
 
         Set<String> targetClasses = CallUtil.resolveVirtual(location.clazz, referencedClass, ref);
         if (targetClasses.isEmpty()) {
           if (referencedClass != null) {
-            Metrics.increaseCount(MetricType.MISSING_METHODS);
+            metrics.increaseCount(MetricType.MISSING_METHODS);
           }
           targetClasses =
               Collections.singleton(
@@ -864,6 +914,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
     private boolean selectiveParameterReconstruction = false;
     private Set<MethodSignature> interestingMethods;
     private Set<Predicate<Call>> interestingCallPredicates;
+    private MetricsRegistry metrics = Metrics.getDefaultRegistry();
 
     private ExecutingInvocationUnit.Builder executingInvocationUnitBuilder;
 
@@ -990,6 +1041,15 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
       return this;
     }
 
+    /**
+     * Sets the registry that collects the metrics of the analysis. By default, the call resolver
+     * uses the {@link Metrics#getDefaultRegistry() default registry}.
+     */
+    public Builder setMetrics(MetricsRegistry metrics) {
+      this.metrics = Objects.requireNonNull(metrics);
+      return this;
+    }
+
     public CallResolver build() {
       return new CallResolver(
           programClassPool,
@@ -1008,6 +1068,7 @@ public class CallResolver implements AttributeVisitor, ClassVisitor, Instruction
           selectiveParameterReconstruction,
           interestingMethods,
           interestingCallPredicates,
+          metrics,
           callHandlers);
     }
   }
@@ -21,22 +21,17 @@ package proguard.analysis;
 import static proguard.exception.ErrorId.ANALYSIS_DOMINATOR_CALCULATOR_NO_DOMINATOR_AT_OFFSET;
 
 import java.util.Arrays;
-import java.util.BitSet;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import proguard.classfile.Clazz;
 import proguard.classfile.Method;
 import proguard.classfile.attribute.*;
 import proguard.classfile.attribute.visitor.AttributeVisitor;
+import proguard.classfile.editor.ClassEstimates;
 import proguard.classfile.instruction.BranchInstruction;
 import proguard.classfile.instruction.Instruction;
 import proguard.classfile.instruction.InstructionFactory;
 import proguard.classfile.instruction.SwitchInstruction;
 import proguard.exception.ProguardCoreException;
+import proguard.util.ArrayUtil;
 
 /**
  * Calculate the dominator tree of any method, making it possible to determine which instructions
@@ -55,12 +50,15 @@ import proguard.exception.ProguardCoreException;
  *       dominator set.
  * </ol>
  *
- * Like this, the dominator information is propagated through the control flow graph one by one,
- * potentially requiring several iterations until the solution is stable, as the dominator sets of
- * some predecessors might still be uninitialized when used.
+ * <p>Rather than solving this equation iteratively, the implementation here computes the immediate
+ * dominator of each instruction with the algorithm of Lengauer and Tarjan, in near-linear time. The
+ * control flow graph and the resulting dominator tree are stored in primitive arrays that are
+ * indexed by instruction offset. Dominance queries then take constant time, based on the intervals
+ * of the nodes in a preorder traversal of the dominator tree.
  *
- * <p>The implementation here is based on an algorithm that solves the underlying dataflow equation
- * using optimized {@link BitSet} objects instead of normal sets.
+ * <p>The calculator also provides the dominance frontiers of the instructions, and, computed on
+ * demand, their post-dominators and post-dominance frontiers, with the virtual {@link
+ * #EXIT_NODE_OFFSET} as the root.
  *
  * @author Samuel Hopstock
  */
@@ -75,28 +73,22 @@ public class DominatorCalculator implements AttributeVisitor {
    */
   public static final int ENTRY_NODE_OFFSET = -2;
 
-  private static final List<Byte> UNCONDITIONAL_BRANCHES =
-      Arrays.asList(
-          Instruction.OP_GOTO, Instruction.OP_GOTO_W, Instruction.OP_JSR, Instruction.OP_JSR_W);
-  private static final List<Byte> RETURN_INSTRUCTIONS =
-      Arrays.asList(
-          Instruction.OP_RETURN,
-          Instruction.OP_IRETURN,
-          Instruction.OP_LRETURN,
-          Instruction.OP_FRETURN,
-          Instruction.OP_DRETURN,
-          Instruction.OP_ARETURN);
+  private final boolean ignoreExceptions;
 
   /**
-   * Maps an offset to its dominator set, represented by a {@link BitSet}: This data structure
-   * contains at most one bit per offset in the method, which is set to 1 if the offset dominates
-   * the current instruction or 0 otherwise.
+   * The control flow graph, with the nodes indexed by {@link #offsetToIndex(int)} and the edges of
+   * each node stored consecutively, starting at the node's index in the start arrays.
    */
-  private final Map<Integer, BitSet> dominatorMap = new HashMap<>();
+  private int nodeCount;
 
-  private int bitSetSize = 0;
+  private int[] successorStarts = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[] successors = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[] predecessorStarts = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[] predecessors = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
 
-  private final boolean ignoreExceptions;
+  private final DominatorTree dominatorTree = new DominatorTree();
+  private final DominatorTree postDominatorTree = new DominatorTree();
+  private boolean postDominatorsCalculated;
 
   /** Creates a new DominatorCalculator. The default behavior is to ignore exceptions. */
   public DominatorCalculator() {
@@ -123,15 +115,100 @@ public class DominatorCalculator implements AttributeVisitor {
    * @return true if the potential dominator is indeed guaranteed to be executed before the inferior
    */
   public boolean dominates(int dominator, int inferior) {
-    BitSet dominators = dominatorMap.get(inferior);
-    if (dominators == null) {
-      throw new ProguardCoreException.Builder(
-              "No dominator information known for offset %d",
-              ANALYSIS_DOMINATOR_CALCULATOR_NO_DOMINATOR_AT_OFFSET)
-          .errorParameters(inferior)
-          .build();
+    int inferiorIndex = offsetToIndex(inferior);
+    int dominatorIndex = offsetToIndex(dominator);
+
+    if (!isReachable(inferiorIndex)) {
+      // If the method never returns, all instructions trivially
+      // dominate the exit.
+      if (inferior == EXIT_NODE_OFFSET) {
+        return isNode(dominatorIndex);
+      }
+
+      throw noDominatorException("dominator", inferior);
     }
-    return dominators.get(offsetToIndex(dominator));
+
+    return isReachable(dominatorIndex) && dominatorTree.dominates(dominatorIndex, inferiorIndex);
+  }
+
+  /**
+   * Returns the offset of the immediate dominator of the given instruction, i.e. its closest strict
+   * dominator. This is {@link #ENTRY_NODE_OFFSET} for instructions that are only dominated by the
+   * method entry, and for the method entry itself.
+   */
+  public int getImmediateDominator(int offset) {
+    int index = offsetToIndex(offset);
+    if (!isReachable(index)) {
+      throw noDominatorException("dominator", offset);
+    }
+
+    return indexToOffset(dominatorTree.immediateDominators[index]);
+  }
+
+  /**
+   * Returns the sorted offsets of the dominance frontier of the given instruction, i.e. the
+   * instructions that it doesn't strictly dominate, but of which it dominates a control flow
+   * predecessor.
+   */
+  public int[] getDominanceFrontier(int offset) {
+    int index = offsetToIndex(offset);
+    if (!isReachable(index)) {
+      throw noDominatorException("dominator", offset);
+    }
+
+    return dominatorTree.frontier(index, predecessorStarts, predecessors, dominatorTree);
+  }
+
+  /**
+   * Check if one instruction post-dominates another one. If this is the case, the post-dominating
+   * instruction is guaranteed to be executed after the inferior instruction, whenever the method
+   * returns. The virtual {@link #EXIT_NODE_OFFSET} post-dominates all instructions from which the
+   * method can return.
+   *
+   * @param postDominator The potentially post-dominating instruction's offset
+   * @param inferior The potentially post-dominated instruction's offset
+   * @return true if the potential post-dominator is indeed guaranteed to be executed after the
+   *     inferior
+   */
+  public boolean postDominates(int postDominator, int inferior) {
+    int inferiorIndex = offsetToIndex(inferior);
+    int postDominatorIndex = offsetToIndex(postDominator);
+
+    if (!canReturn(inferiorIndex)) {
+      throw noDominatorException("post-dominator", inferior);
+    }
+
+    return canReturn(postDominatorIndex)
+        && postDominatorTree.dominates(postDominatorIndex, inferiorIndex);
+  }
+
+  /**
+   * Returns the offset of the immediate post-dominator of the given instruction, i.e. its closest
+   * strict post-dominator. This is {@link #EXIT_NODE_OFFSET} for instructions that are only
+   * post-dominated by the method exit, and for the method exit itself.
+   */
+  public int getImmediatePostDominator(int offset) {
+    int index = offsetToIndex(offset);
+    if (!canReturn(index)) {
+      throw noDominatorException("post-dominator", offset);
+    }
+
+    return indexToOffset(postDominatorTree.immediateDominators[index]);
+  }
+
+  /**
+   * Returns the sorted offsets of the post-dominance frontier of the given instruction, i.e. the
+   * instructions that it doesn't strictly post-dominate, but of which it post-dominates a control
+   * flow successor. These are the branching instructions that control whether the given
+   * instruction is executed.
+   */
+  public int[] getPostDominanceFrontier(int offset) {
+    int index = offsetToIndex(offset);
+    if (!canReturn(index)) {
+      throw noDominatorException("post-dominator", offset);
+    }
+
+    return postDominatorTree.frontier(index, successorStarts, successors, dominatorTree);
   }
 
   /**
@@ -144,6 +221,11 @@ public class DominatorCalculator implements AttributeVisitor {
     return offset + 2;
   }
 
+  /** Converts an internal index back to its instruction offset. */
+  private static int indexToOffset(int index) {
+    return index - 2;
+  }
+
   // Implementations for AttributeVisitor
 
   @Override
@@ -153,127 +235,505 @@ public class DominatorCalculator implements AttributeVisitor {
 
   @Override
   public void visitCodeAttribute(Clazz clazz, Method method, CodeAttribute codeAttribute) {
-    dominatorMap.clear();
-    bitSetSize = offsetToIndex(codeAttribute.u4codeLength);
-
-    // Entry node only dominates itself,
-    // all other nodes are initialized to have all nodes dominate them
-    // (this is necessary due to the fact that the propagation uses
-    // intersection, requiring the full universe for uninitialized nodes)
-    BitSet entryDominators = new BitSet(bitSetSize);
-    entryDominators.set(offsetToIndex(ENTRY_NODE_OFFSET));
-    dominatorMap.put(ENTRY_NODE_OFFSET, entryDominators);
-    dominatorMap.put(EXIT_NODE_OFFSET, initBitSet());
-
-    propagateToSuccessor(ENTRY_NODE_OFFSET, 0);
-    for (int handler : findExceptionHandlers(codeAttribute, 0)) {
-      propagateToSuccessor(ENTRY_NODE_OFFSET, handler);
-    }
-    run(codeAttribute);
+    // Even empty code has a node for its first offset.
+    nodeCount = offsetToIndex(Math.max(codeAttribute.u4codeLength, 1));
+
+    createControlFlowGraph(codeAttribute);
+
+    dominatorTree.calculate(
+        nodeCount,
+        offsetToIndex(ENTRY_NODE_OFFSET),
+        successorStarts,
+        successors,
+        predecessorStarts,
+        predecessors);
+
+    postDominatorsCalculated = false;
   }
 
+  // Small utility methods.
+
   /**
-   * Iterate through the whole method code one time, in the order of a breadth-first search
-   * algorithm over the control flow graph. I.e. handle direct child nodes before grand children.
+   * Creates the control flow graph of the given code attribute, with edges from the entry node to
+   * the first instruction, from the return instructions to the exit node, and from instructions to
+   * their successors and to the exception handlers of these successors.
    */
-  private void run(CodeAttribute codeAttribute) {
-    if (codeAttribute.u4codeLength == 0) {
-      // Skip the method if it doesn't contain any code (e.g. if it was skipped during Dex2Pro
-      // conversion).
-      return;
-    }
-    LinkedHashSet<Integer> workList = new LinkedHashSet<>();
-    workList.add(0);
-    workList.addAll(findExceptionHandlers(codeAttribute, 0));
-
-    while (!workList.isEmpty()) {
-      int offset =
-          workList.stream()
-              .skip(workList.size() - 1)
-              .findFirst()
-              .orElseThrow(
-                  () -> new IllegalStateException("Can't get last element in non-empty work list"));
-      workList.remove(offset);
+  private void createControlFlowGraph(CodeAttribute codeAttribute) {
+    successorStarts = ArrayUtil.ensureArraySize(successorStarts, nodeCount + 1, 0);
 
+    int edgeCount = 0;
+
+    // The entry node leads to the first instruction.
+    successorStarts[offsetToIndex(ENTRY_NODE_OFFSET)] = edgeCount;
+    edgeCount = addEdge(edgeCount, 0);
+    edgeCount = addExceptionHandlerEdges(codeAttribute, edgeCount, 0);
+
+    // The exit node doesn't lead anywhere.
+    successorStarts[offsetToIndex(EXIT_NODE_OFFSET)] = edgeCount;
+
+    int codeLength = codeAttribute.u4codeLength;
+    int offset = 0;
+    while (offset < codeLength) {
       Instruction instruction = InstructionFactory.create(codeAttribute.code, offset);
-      int instructionLength = instruction.length(offset);
-      int nextOffset = offset + instructionLength;
-      boolean nextOffsetExists = nextOffset < codeAttribute.u4codeLength;
+      int nextOffset = offset + instruction.length(offset);
+      boolean nextOffsetExists = nextOffset < codeLength;
+
+      successorStarts[offsetToIndex(offset)] = edgeCount;
+
+      int normalEdgeStart = edgeCount;
 
-      Set<Integer> successors = new HashSet<>();
       if (instruction instanceof BranchInstruction) {
         BranchInstruction branch = (BranchInstruction) instruction;
-        successors.add(offset + branch.branchOffset);
-        if (nextOffsetExists && !UNCONDITIONAL_BRANCHES.contains(branch.opcode)) {
-          successors.add(nextOffset);
+        edgeCount = addEdge(edgeCount, offset + branch.branchOffset);
+        if (nextOffsetExists && !isUnconditionalBranch(branch.opcode)) {
+          edgeCount = addEdge(edgeCount, nextOffset);
         }
       } else if (instruction instanceof SwitchInstruction) {
         SwitchInstruction switchInstruction = (SwitchInstruction) instruction;
-        successors.add(offset + switchInstruction.defaultOffset);
+        edgeCount = addEdge(edgeCount, offset + switchInstruction.defaultOffset);
         for (int jumpOffset : switchInstruction.jumpOffsets) {
-          successors.add(offset + jumpOffset);
+          edgeCount = addEdge(edgeCount, offset + jumpOffset);
         }
-      } else if (RETURN_INSTRUCTIONS.contains(instruction.opcode)) {
-        propagateToSuccessor(offset, EXIT_NODE_OFFSET);
+      } else if (isReturn(instruction.opcode)) {
+        edgeCount = addEdge(edgeCount, EXIT_NODE_OFFSET);
       } else if (nextOffsetExists) {
-        successors.add(nextOffset);
+        edgeCount = addEdge(edgeCount, nextOffset);
       }
 
-      Set<Integer> exceptionSuccessors = new HashSet<>();
-      for (int successor : successors) {
-        exceptionSuccessors.addAll(findExceptionHandlers(codeAttribute, successor));
+      // Add the exception handlers of the successors.
+      if (!ignoreExceptions) {
+        int normalEdgeEnd = edgeCount;
+        for (int index = normalEdgeStart; index < normalEdgeEnd; index++) {
+          int successor = indexToOffset(successors[index]);
+          if (successor >= 0) {
+            edgeCount = addExceptionHandlerEdges(codeAttribute, edgeCount, successor);
+          }
+        }
+      }
+
+      // Offsets within the instruction don't have any edges.
+      for (int index = offset + 1; index < nextOffset && index < codeLength; index++) {
+        successorStarts[offsetToIndex(index)] = edgeCount;
+      }
+
+      offset = nextOffset;
+    }
+
+    for (int index = offsetToIndex(Math.min(offset, codeLength)); index <= nodeCount; index++) {
+      successorStarts[index] = edgeCount;
+    }
+
+    // Collect the predecessors of all nodes.
+    predecessorStarts = ArrayUtil.ensureArraySize(predecessorStarts, nodeCount + 1, 0);
+    predecessors = ArrayUtil.ensureArraySize(predecessors, edgeCount, 0);
+
+    for (int index = 0; index < edgeCount; index++) {
+      predecessorStarts[successors[index] + 1]++;
+    }
+    for (int index = 0; index < nodeCount; index++) {
+      predecessorStarts[index + 1] += predecessorStarts[index];
+    }
+    for (int index = 0; index < nodeCount; index++) {
+      for (int edge = successorStarts[index]; edge < successorStarts[index + 1]; edge++) {
+        predecessors[predecessorStarts[successors[edge]]++] = index;
       }
-      successors.addAll(exceptionSuccessors);
+    }
+
+    // Shift the starts back after having used them as insertion points.
+    System.arraycopy(predecessorStarts, 0, predecessorStarts, 1, nodeCount);
+    predecessorStarts[0] = 0;
+  }
+
+  /**
+   * Adds an edge to the given instruction offset, if it lies within the code, and returns the new
+   * edge count.
+   */
+  private int addEdge(int edgeCount, int offset) {
+    int index = offsetToIndex(offset);
+    if (index < 0 || index >= nodeCount) {
+      return edgeCount;
+    }
+
+    successors = ArrayUtil.add(successors, edgeCount, index);
 
-      for (int successor : successors) {
-        if (propagateToSuccessor(offset, successor)) {
-          workList.add(successor);
+    return edgeCount + 1;
+  }
+
+  /**
+   * Adds edges to the start of all exception handlers in a code attribute that are associated with
+   * a try block covering the given offset, and returns the new edge count.
+   */
+  private int addExceptionHandlerEdges(CodeAttribute codeAttribute, int edgeCount, int offset) {
+    if (!ignoreExceptions) {
+      for (int index = 0; index < codeAttribute.u2exceptionTableLength; index++) {
+        ExceptionInfo exceptionInfo = codeAttribute.exceptionTable[index];
+        if (exceptionInfo.isApplicable(offset)) {
+          edgeCount = addEdge(edgeCount, exceptionInfo.u2handlerPC);
         }
       }
     }
+
+    return edgeCount;
+  }
+
+  /** Returns whether the given opcode always branches away. */
+  private static boolean isUnconditionalBranch(byte opcode) {
+    return opcode == Instruction.OP_GOTO
+        || opcode == Instruction.OP_GOTO_W
+        || opcode == Instruction.OP_JSR
+        || opcode == Instruction.OP_JSR_W;
+  }
+
+  /** Returns whether the given opcode returns from the method. */
+  private static boolean isReturn(byte opcode) {
+    return opcode == Instruction.OP_RETURN
+        || opcode == Instruction.OP_IRETURN
+        || opcode == Instruction.OP_LRETURN
+        || opcode == Instruction.OP_FRETURN
+        || opcode == Instruction.OP_DRETURN
+        || opcode == Instruction.OP_ARETURN;
+  }
+
+  /** Returns whether the given index corresponds to a node in the control flow graph. */
+  private boolean isNode(int index) {
+    return index >= 0 && index < nodeCount;
   }
 
-  /** Create a {@link BitSet} where all bits representing offsets in the method are set to true. */
-  private BitSet initBitSet() {
-    BitSet result = new BitSet(bitSetSize);
-    result.set(0, bitSetSize);
-    return result;
+  /** Returns whether the given node can be reached from the method entry. */
+  private boolean isReachable(int index) {
+    return isNode(index) && dominatorTree.contains(index);
   }
 
   /**
-   * Propagate dominator information to a successor of the current instruction.
-   *
-   * @return true if this propagation step changed the successor's dominator information
+   * Returns whether the given node can be reached from the method entry and can reach the method
+   * exit, calculating the post-dominators if necessary.
    */
-  private boolean propagateToSuccessor(int curr, int successor) {
-    BitSet currDominators = dominatorMap.computeIfAbsent(curr, o -> initBitSet());
-    BitSet successorDominators = dominatorMap.computeIfAbsent(successor, o -> initBitSet());
-    BitSet beforePropagation = (BitSet) successorDominators.clone();
+  private boolean canReturn(int index) {
+    if (!isReachable(index)) {
+      return false;
+    }
 
-    successorDominators.and(currDominators);
-    successorDominators.set(offsetToIndex(successor));
+    if (!postDominatorsCalculated) {
+      postDominatorTree.calculate(
+          nodeCount,
+          offsetToIndex(EXIT_NODE_OFFSET),
+          predecessorStarts,
+          predecessors,
+          successorStarts,
+          successors);
 
-    return !beforePropagation.equals(successorDominators);
+      postDominatorsCalculated = true;
+    }
+
+    return postDominatorTree.contains(index);
+  }
+
+  private static ProguardCoreException noDominatorException(String type, int offset) {
+    return new ProguardCoreException.Builder(
+            "No " + type + " information known for offset %d",
+            ANALYSIS_DOMINATOR_CALCULATOR_NO_DOMINATOR_AT_OFFSET)
+        .errorParameters(offset)
+        .build();
   }
 
   /**
-   * Find the start of all exception handlers in a code attribute that are associated with a try
-   * block covering the given offset.
-   *
-   * @param codeAttribute
-   * @param offset
-   * @return
+   * The dominator tree of a control flow graph, computed with the simple version of the algorithm
+   * of Lengauer and Tarjan, with path compression. The nodes are indexed like in the graph.
    */
-  private Set<Integer> findExceptionHandlers(CodeAttribute codeAttribute, int offset) {
-    Set<Integer> handlers = new HashSet<>();
-    if (ignoreExceptions) {
-      return handlers;
+  private static class DominatorTree {
+    private static final int NONE = -1;
+
+    private int[] immediateDominators = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+
+    // The intervals of the nodes in a preorder traversal of the tree.
+    private int[] preorderNumbers = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+    private int[] subtreeSizes = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+
+    // The dominance frontiers, computed on demand.
+    private int[] frontierStarts;
+    private int[] frontiers;
+
+    // Fields acting as global temporary variables of the algorithm.
+    private int[] vertices = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+    private int[] parents = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+    private int[] semidominators = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+    private int[] ancestors = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+    private int[] labels = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+    private int[] bucketHeads = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+    private int[] bucketNexts = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+    private int[] stack = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+    private int[] edgeIndices = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+    private int nodeCount;
+    private int vertexCount;
+
+    /**
+     * Calculates the immediate dominators of all nodes of the given graph that can be reached from
+     * the given root, following the given edges.
+     */
+    void calculate(
+        int nodeCount,
+        int root,
+        int[] successorStarts,
+        int[] successors,
+        int[] predecessorStarts,
+        int[] predecessors) {
+      this.nodeCount = nodeCount;
+
+      // Make sure there are sufficiently large arrays.
+      if (immediateDominators.length < nodeCount) {
+        immediateDominators = new int[nodeCount];
+        preorderNumbers = new int[nodeCount];
+        subtreeSizes = new int[nodeCount];
+        vertices = new int[nodeCount];
+        parents = new int[nodeCount];
+        semidominators = new int[nodeCount];
+        ancestors = new int[nodeCount];
+        labels = new int[nodeCount];
+        bucketHeads = new int[nodeCount];
+        bucketNexts = new int[nodeCount];
+        stack = new int[nodeCount];
+        edgeIndices = new int[nodeCount];
+      }
+
+      Arrays.fill(immediateDominators, 0, nodeCount, NONE);
+      Arrays.fill(semidominators, 0, nodeCount, NONE);
+      frontierStarts = null;
+
+      numberVertices(root, successorStarts, successors);
+
+      // Compute the semidominators, from the last vertex to the
+      // first one, and implicitly define the immediate dominators.
+      for (int vertex = vertexCount - 1; vertex > 0; vertex--) {
+        int node = vertices[vertex];
+
+        for (int edge = predecessorStarts[node]; edge < predecessorStarts[node + 1]; edge++) {
+          int predecessor = predecessors[edge];
+          if (semidominators[predecessor] != NONE) {
+            int semidominator = semidominators[evaluate(predecessor)];
+            if (semidominator < semidominators[node]) {
+              semidominators[node] = semidominator;
+            }
+          }
+        }
+
+        int semidominatorNode = vertices[semidominators[node]];
+        bucketNexts[node] = bucketHeads[semidominatorNode];
+        bucketHeads[semidominatorNode] = node;
+
+        int parent = parents[node];
+        ancestors[node] = parent;
+
+        for (int bucketNode = bucketHeads[parent];
+            bucketNode != NONE;
+            bucketNode = bucketNexts[bucketNode]) {
+          int evaluatedNode = evaluate(bucketNode);
+          immediateDominators[bucketNode] =
+              semidominators[evaluatedNode] < semidominators[bucketNode] ? evaluatedNode : parent;
+        }
+
+        bucketHeads[parent] = NONE;
+      }
+
+      // Explicitly define the immediate dominators, from the first
+      // vertex to the last one.
+      for (int vertex = 1; vertex < vertexCount; vertex++) {
+        int node = vertices[vertex];
+        if (immediateDominators[node] != vertices[semidominators[node]]) {
+          immediateDominators[node] = immediateDominators[immediateDominators[node]];
+        }
+      }
+
+      immediateDominators[root] = root;
+
+      numberTree();
     }
-    for (ExceptionInfo exceptionInfo : codeAttribute.exceptionTable) {
-      if (exceptionInfo.isApplicable(offset)) {
-        handlers.add(exceptionInfo.u2handlerPC);
+
+    /** Returns whether the given node has a dominator, i.e. whether it can be reached. */
+    boolean contains(int node) {
+      return immediateDominators[node] != NONE;
+    }
+
+    /** Returns whether the first given node dominates the second given node. */
+    boolean dominates(int dominator, int node) {
+      int preorderNumber = preorderNumbers[node];
+      int dominatorPreorderNumber = preorderNumbers[dominator];
+
+      return dominatorPreorderNumber <= preorderNumber
+          && preorderNumber < dominatorPreorderNumber + subtreeSizes[dominator];
+    }
+
+    /**
+     * Returns the sorted offsets of the dominance frontier of the given node, given the incoming
+     * edges of the graph, and only containing nodes that are contained in the given tree.
+     */
+    int[] frontier(int node, int[] predecessorStarts, int[] predecessors, DominatorTree tree) {
+      if (frontierStarts == null) {
+        calculateFrontiers(predecessorStarts, predecessors, tree);
+      }
+
+      int start = frontierStarts[node];
+      int end = frontierStarts[node + 1];
+
+      int[] frontier = new int[end - start];
+      for (int index = start; index < end; index++) {
+        frontier[index - start] = indexToOffset(frontiers[index]);
+      }
+
+      Arrays.sort(frontier);
+
+      return frontier;
+    }
+
+    /**
+     * Assigns vertex numbers to the nodes that can be reached from the given root, in a depth-first
+     * preorder, and fills out their parents in the depth-first spanning tree.
+     */
+    private void numberVertices(int root, int[] successorStarts, int[] successors) {
+      vertexCount = 0;
+
+      int depth = 0;
+      stack[0] = root;
+      edgeIndices[0] = successorStarts[root];
+      addVertex(root, NONE);
+
+      while (depth >= 0) {
+        int node = stack[depth];
+        int edge = edgeIndices[depth];
+
+        if (edge < successorStarts[node + 1]) {
+          edgeIndices[depth]++;
+
+          int successor = successors[edge];
+          if (semidominators[successor] == NONE) {
+            // Number the successor and descend.
+            addVertex(successor, node);
+            depth++;
+            stack[depth] = successor;
+            edgeIndices[depth] = successorStarts[successor];
+          }
+        } else {
+          depth--;
+        }
+      }
+    }
+
+    /** Numbers the given node as the next vertex, with the given parent. */
+    private void addVertex(int node, int parent) {
+      semidominators[node] = vertexCount;
+      vertices[vertexCount++] = node;
+      parents[node] = parent;
+      ancestors[node] = NONE;
+      labels[node] = node;
+      bucketHeads[node] = NONE;
+    }
+
+    /**
+     * Returns the node with the minimum semidominator on the path from the given node to the root
+     * of its tree in the forest that is being linked, compressing the path.
+     */
+    private int evaluate(int node) {
+      if (ancestors[node] == NONE) {
+        return node;
+      }
+
+      // Collect the path, up to the node just below the root.
+      int depth = 0;
+      for (int pathNode = node;
+          ancestors[ancestors[pathNode]] != NONE;
+          pathNode = ancestors[pathNode]) {
+        stack[depth++] = pathNode;
+      }
+
+      // Compress the path, starting from the top.
+      while (--depth >= 0) {
+        int pathNode = stack[depth];
+        int ancestor = ancestors[pathNode];
+
+        if (semidominators[labels[ancestor]] < semidominators[labels[pathNode]]) {
+          labels[pathNode] = labels[ancestor];
+        }
+
+        ancestors[pathNode] = ancestors[ancestor];
+      }
+
+      return labels[node];
+    }
+
+    /**
+     * Assigns preorder numbers and subtree sizes to the nodes of the tree, so each node's subtree
+     * corresponds to an interval of preorder numbers.
+     */
+    private void numberTree() {
+      // Accumulate the subtree sizes, from the last vertex to the
+      // first one, since the dominators of vertices come before them.
+      for (int vertex = 0; vertex < vertexCount; vertex++) {
+        subtreeSizes[vertices[vertex]] = 1;
+      }
+      for (int vertex = vertexCount - 1; vertex > 0; vertex--) {
+        int node = vertices[vertex];
+        subtreeSizes[immediateDominators[node]] += subtreeSizes[node];
+      }
+
+      // Allocate the intervals of the children within the intervals
+      // of their dominators, using the labels as the next free numbers.
+      preorderNumbers[vertices[0]] = 0;
+      labels[vertices[0]] = 1;
+      for (int vertex = 1; vertex < vertexCount; vertex++) {
+        int node = vertices[vertex];
+        int dominator = immediateDominators[node];
+
+        preorderNumbers[node] = labels[dominator];
+        labels[dominator] += subtreeSizes[node];
+        labels[node] = preorderNumbers[node] + 1;
+      }
+    }
+
+    /**
+     * Calculates the dominance frontiers of all nodes, given the incoming edges of the graph, and
+     * only containing nodes that are contained in the given tree.
+     */
+    private void calculateFrontiers(
+        int[] predecessorStarts, int[] predecessors, DominatorTree tree) {
+      frontierStarts = new int[nodeCount + 1];
+
+      // Count the frontier nodes and then fill them out, using the
+      // labels to avoid duplicates.
+      for (int pass = 0; pass < 2; pass++) {
+        Arrays.fill(labels, 0, nodeCount, NONE);
+
+        for (int node = 0; node < nodeCount; node++) {
+          if (contains(node) && tree.contains(node)) {
+            int dominator = immediateDominators[node];
+
+            for (int edge = predecessorStarts[node]; edge < predecessorStarts[node + 1]; edge++) {
+              for (int runner = predecessors[edge];
+                  contains(runner) && runner != dominator && labels[runner] != node;
+                  runner = immediateDominators[runner]) {
+                labels[runner] = node;
+
+                if (pass == 0) {
+                  frontierStarts[runner + 1]++;
+                } else {
+                  frontiers[frontierStarts[runner]++] = node;
+                }
+              }
+            }
+          }
+        }
+
+        if (pass == 0) {
+          for (int node = 0; node < nodeCount; node++) {
+            frontierStarts[node + 1] += frontierStarts[node];
+          }
+
+          frontiers = new int[frontierStarts[nodeCount]];
+        } else {
+          // Shift the starts back after having used them as insertion
+          // points.
+          System.arraycopy(frontierStarts, 0, frontierStarts, 1, nodeCount);
+          frontierStarts[0] = 0;
+        }
       }
     }
-    return handlers;
   }
 }
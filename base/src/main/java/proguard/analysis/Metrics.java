@@ -1,10 +1,16 @@
 package proguard.analysis;
 
-import java.util.Collections;
-import java.util.EnumMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
-/** Utility to collect statistical information. */
+/**
+ * Utility to collect statistical information. Its static methods apply to a default {@link
+ * MetricsRegistry}, which is shared by all analyses that aren't given their own registry.
+ */
 public class Metrics {
 
   /** Constants which are used as metric types. */
@@ -25,20 +31,121 @@ public class Metrics {
     DEX2PRO_UNPARSEABLE_METHOD_SKIPPED
   }
 
-  public static final Map<MetricType, Integer> counts =
-      Collections.synchronizedMap(new EnumMap<>(MetricType.class));
+  private static final MetricsRegistry defaultRegistry = new MetricsRegistry();
+
+  /**
+   * A live view on the non-zero counters of the default registry. Putting, merging, or removing
+   * counts updates the counters of the registry.
+   */
+  public static final Map<MetricType, Integer> counts = new CountMap();
+
+  /** Returns the default registry that backs the static methods of this class. */
+  public static MetricsRegistry getDefaultRegistry() {
+    return defaultRegistry;
+  }
 
   public static void increaseCount(MetricType type) {
-    counts.merge(type, 1, Integer::sum);
+    defaultRegistry.increaseCount(type);
   }
 
   /** Get all collected data as a string and clear it afterwards. */
   public static String flush() {
-    StringBuilder result = new StringBuilder("Metrics:\n");
+    return defaultRegistry.flush();
+  }
+
+  /** Map view on the non-zero counters of the default registry. */
+  private static class CountMap extends AbstractMap<MetricType, Integer> {
+    private final Set<Entry<MetricType, Integer>> entrySet =
+        new AbstractSet<Entry<MetricType, Integer>>() {
+          @Override
+          public Iterator<Entry<MetricType, Integer>> iterator() {
+            return new CountIterator();
+          }
+
+          @Override
+          public int size() {
+            int size = 0;
+            for (MetricType type : MetricType.values()) {
+              if (defaultRegistry.getCount(type) != 0L) {
+                size++;
+              }
+            }
+            return size;
+          }
+        };
+
+    @Override
+    public Integer get(Object key) {
+      if (!(key instanceof MetricType)) {
+        return null;
+      }
+
+      long count = defaultRegistry.getCount((MetricType) key);
+      return count == 0L ? null : (int) count;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public Integer put(MetricType key, Integer value) {
+      long count = defaultRegistry.getCount(key);
+      defaultRegistry.increaseCount(key, value - count);
+      return count == 0L ? null : (int) count;
+    }
+
+    @Override
+    public Integer remove(Object key) {
+      if (!(key instanceof MetricType)) {
+        return null;
+      }
+
+      long count = defaultRegistry.getCount((MetricType) key);
+      defaultRegistry.increaseCount((MetricType) key, -count);
+      return count == 0L ? null : (int) count;
+    }
+
+    @Override
+    public void clear() {
+      defaultRegistry.clear();
+    }
+
+    @Override
+    public Set<Entry<MetricType, Integer>> entrySet() {
+      return entrySet;
+    }
+  }
+
+  /** Iterator over the non-zero counters of the default registry, in the order of their types. */
+  private static class CountIterator implements Iterator<Map.Entry<MetricType, Integer>> {
+    private final MetricType[] types = MetricType.values();
+    private int index = advance(0);
+
+    @Override
+    public boolean hasNext() {
+      return index < types.length;
+    }
+
+    @Override
+    public Map.Entry<MetricType, Integer> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      MetricType type = types[index];
+      index = advance(index + 1);
+
+      return new AbstractMap.SimpleImmutableEntry<>(type, (int) defaultRegistry.getCount(type));
+    }
 
-    counts.forEach(
-        (type, count) -> result.append(type.name()).append(": ").append(count).append("\n"));
-    counts.clear();
-    return result.toString();
+    /** Returns the index of the first type with a non-zero counter, starting at the given index. */
+    private int advance(int index) {
+      while (index < types.length && defaultRegistry.getCount(types[index]) == 0L) {
+        index++;
+      }
+      return index;
+    }
   }
 }
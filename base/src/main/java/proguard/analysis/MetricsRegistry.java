@@ -0,0 +1,308 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import proguard.analysis.Metrics.MetricType;
+
+/**
+ * Registry to collect statistical information of an analysis: counters for the {@link MetricType}
+ * constants, and named counters, {@link Timer}s, and {@link Histogram}s.
+ *
+ * <p>The registry is thread-safe. Its metrics are based on {@link LongAdder} and {@link
+ * LongAccumulator} instances, so threads that update the same metric don't contend on a lock.
+ * Unlike the static {@link Metrics}, each analysis can collect its own metrics by getting its own
+ * registry.
+ */
+public class MetricsRegistry {
+  private final Map<MetricType, LongAdder> counts = new EnumMap<>(MetricType.class);
+  private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+  /** Creates a new, empty MetricsRegistry. */
+  public MetricsRegistry() {
+    // Create all counters up front, so the map itself never changes.
+    for (MetricType type : MetricType.values()) {
+      counts.put(type, new LongAdder());
+    }
+  }
+
+  /** Increments the counter of the given type. */
+  public void increaseCount(MetricType type) {
+    counts.get(type).increment();
+  }
+
+  /** Adds the given amount to the counter of the given type. */
+  public void increaseCount(MetricType type, long amount) {
+    counts.get(type).add(amount);
+  }
+
+  /** Returns the current value of the counter of the given type. */
+  public long getCount(MetricType type) {
+    return counts.get(type).sum();
+  }
+
+  /**
+   * Returns the counter with the given name, creating it if necessary. Callers can keep the counter
+   * to avoid looking it up repeatedly.
+   */
+  public LongAdder counter(String name) {
+    return counters.computeIfAbsent(name, key -> new LongAdder());
+  }
+
+  /**
+   * Returns the timer with the given name, creating it if necessary. Callers can keep the timer to
+   * avoid looking it up repeatedly.
+   */
+  public Timer timer(String name) {
+    return timers.computeIfAbsent(name, key -> new Timer());
+  }
+
+  /**
+   * Returns the histogram with the given name, creating it if necessary. Callers can keep the
+   * histogram to avoid looking it up repeatedly.
+   */
+  public Histogram histogram(String name) {
+    return histograms.computeIfAbsent(name, key -> new Histogram());
+  }
+
+  /** Resets all metrics to zero. */
+  public void clear() {
+    counts.values().forEach(LongAdder::reset);
+    counters.values().forEach(LongAdder::reset);
+    timers.values().forEach(Timer::reset);
+    histograms.values().forEach(Histogram::reset);
+  }
+
+  /**
+   * Returns all collected data as a string, with the counters that are non-zero and the timers and
+   * histograms that have recorded values, and resets the metrics afterwards.
+   */
+  public String flush() {
+    StringBuilder result = new StringBuilder("Metrics:\n");
+
+    counts.forEach(
+        (type, count) -> {
+          long sum = count.sumThenReset();
+          if (sum != 0L) {
+            result.append(type.name()).append(": ").append(sum).append('\n');
+          }
+        });
+
+    new TreeMap<>(counters)
+        .forEach(
+            (name, counter) -> {
+              long sum = counter.sumThenReset();
+              if (sum != 0L) {
+                result.append(name).append(": ").append(sum).append('\n');
+              }
+            });
+
+    new TreeMap<>(timers)
+        .forEach(
+            (name, timer) -> {
+              if (timer.getCount() != 0L) {
+                result.append(name).append(": ").append(timer).append('\n');
+                timer.reset();
+              }
+            });
+
+    new TreeMap<>(histograms)
+        .forEach(
+            (name, histogram) -> {
+              if (histogram.getCount() != 0L) {
+                result.append(name).append(": ").append(histogram).append('\n');
+                histogram.reset();
+              }
+            });
+
+    return result.toString();
+  }
+
+  /** A thread-safe timer that accumulates the durations of a recurring operation. */
+  public static class Timer {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+    /**
+     * Records an operation that started at the given time, as returned by {@link
+     * System#nanoTime()}, and ends now.
+     */
+    public void recordSince(long startNanos) {
+      record(System.nanoTime() - startNanos);
+    }
+
+    /** Records an operation with the given duration. */
+    public void record(long nanos) {
+      count.increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+    }
+
+    /** Returns the number of recorded operations. */
+    public long getCount() {
+      return count.sum();
+    }
+
+    /** Returns the total duration of the recorded operations, in nanoseconds. */
+    public long getTotalNanos() {
+      return totalNanos.sum();
+    }
+
+    /** Returns the longest duration of the recorded operations, in nanoseconds. */
+    public long getMaxNanos() {
+      return maxNanos.get();
+    }
+
+    /** Resets the timer. */
+    public void reset() {
+      count.reset();
+      totalNanos.reset();
+      maxNanos.reset();
+    }
+
+    // Implementations for Object.
+
+    @Override
+    public String toString() {
+      long count = getCount();
+      return String.format(
+          "count=%d total=%.3fms mean=%.3fms max=%.3fms",
+          count,
+          getTotalNanos() / 1e6,
+          count == 0L ? 0.0 : getTotalNanos() / 1e6 / count,
+          getMaxNanos() / 1e6);
+    }
+  }
+
+  /**
+   * A thread-safe histogram of non-negative values. It counts the values in buckets with
+   * power-of-two bounds, so its percentiles are accurate up to a factor of two.
+   */
+  public static class Histogram {
+    private static final int BUCKET_COUNT = 64;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+    public Histogram() {
+      for (int index = 0; index < BUCKET_COUNT; index++) {
+        buckets[index] = new LongAdder();
+      }
+    }
+
+    /** Records the given value. Negative values are recorded as 0. */
+    public void record(long value) {
+      if (value < 0L) {
+        value = 0L;
+      }
+
+      count.increment();
+      sum.add(value);
+      max.accumulate(value);
+      buckets[bucketIndex(value)].increment();
+    }
+
+    /** Returns the number of recorded values. */
+    public long getCount() {
+      return count.sum();
+    }
+
+    /** Returns the sum of the recorded values. */
+    public long getSum() {
+      return sum.sum();
+    }
+
+    /** Returns the largest recorded value, or 0 if no values have been recorded. */
+    public long getMax() {
+      return max.get();
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the recorded values, which is at most twice
+     * the exact percentile.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     */
+    public long getPercentile(double percentile) {
+      if (percentile < 0.0 || percentile > 100.0) {
+        throw new IllegalArgumentException("The percentile must be between 0 and 100.");
+      }
+
+      long count = getCount();
+      long rank = (long) Math.ceil(count * percentile / 100.0);
+      long seen = 0L;
+      for (int index = 0; index < BUCKET_COUNT; index++) {
+        seen += buckets[index].sum();
+        if (seen >= rank && seen > 0L) {
+          return Math.min(bucketUpperBound(index), getMax());
+        }
+      }
+
+      return getMax();
+    }
+
+    /** Resets the histogram. */
+    public void reset() {
+      count.reset();
+      sum.reset();
+      max.reset();
+      for (LongAdder bucket : buckets) {
+        bucket.reset();
+      }
+    }
+
+    // Implementations for Object.
+
+    @Override
+    public String toString() {
+      long count = getCount();
+      return String.format(
+          "count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d",
+          count,
+          count == 0L ? 0.0 : (double) getSum() / count,
+          getPercentile(50.0),
+          getPercentile(90.0),
+          getPercentile(99.0),
+          getMax());
+    }
+
+    // Small utility methods.
+
+    /** Returns the index of the bucket for the given non-negative value: its bit length. */
+    private static int bucketIndex(long value) {
+      return Math.min(64 - Long.numberOfLeadingZeros(value), BUCKET_COUNT - 1);
+    }
+
+    /** Returns the largest value in the bucket with the given index. */
+    private static long bucketUpperBound(int index) {
+      return index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << index) - 1L;
+    }
+  }
+}
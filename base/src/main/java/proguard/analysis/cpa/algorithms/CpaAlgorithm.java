@@ -18,10 +18,13 @@
 
 package proguard.analysis.cpa.algorithms;
 
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import proguard.analysis.MetricsRegistry;
 import proguard.analysis.cpa.defaults.PrecisionAdjustmentResult;
 import proguard.analysis.cpa.interfaces.AbortOperator;
 import proguard.analysis.cpa.interfaces.AbstractState;
@@ -45,11 +48,23 @@ import proguard.analysis.cpa.interfaces.Waitlist;
  */
 public class CpaAlgorithm implements Algorithm {
 
+  /** The name of the timer that measures the runs of the algorithm. */
+  public static final String RUN_TIMER = "CpaAlgorithm.run";
+
+  /** The name of the counter of abstract states that the algorithm has taken from the waitlist. */
+  public static final String PROCESSED_STATES_COUNTER = "CpaAlgorithm.processedStates";
+
+  /** The name of the counter of successor states that the transfer relation has generated. */
+  public static final String SUCCESSOR_STATES_COUNTER = "CpaAlgorithm.successorStates";
+
   private static final Logger log = LogManager.getLogger(CpaAlgorithm.class);
   private final TransferRelation transferRelation;
   private final MergeOperator mergeOperator;
   private final StopOperator stopOperator;
   private final PrecisionAdjustment precisionAdjustment;
+  private final MetricsRegistry.Timer runTimer;
+  private final LongAdder processedStates;
+  private final LongAdder successorStates;
 
   /**
    * Create an algorithm to run the specified CPA.
@@ -58,11 +73,24 @@ public class CpaAlgorithm implements Algorithm {
    *     the precision adjustment
    */
   public CpaAlgorithm(ConfigurableProgramAnalysis cpa) {
+    this(cpa, null);
+  }
+
+  /**
+   * Create an algorithm to run the specified CPA, recording its metrics in the given registry.
+   *
+   * @param cpa a CPA instance wrapping the transfer relation, the merge, and the stop operator, and
+   *     the precision adjustment
+   * @param metrics the registry in which the algorithm records the duration of its runs and the
+   *     numbers of processed and generated states, or null to not record any metrics
+   */
+  public CpaAlgorithm(ConfigurableProgramAnalysis cpa, MetricsRegistry metrics) {
     this(
         cpa.getTransferRelation(),
         cpa.getMergeOperator(),
         cpa.getStopOperator(),
-        cpa.getPrecisionAdjustment());
+        cpa.getPrecisionAdjustment(),
+        metrics);
   }
 
   /**
@@ -81,10 +109,35 @@ public class CpaAlgorithm implements Algorithm {
       MergeOperator mergeOperator,
       StopOperator stopOperator,
       PrecisionAdjustment precisionAdjustment) {
+    this(transferRelation, mergeOperator, stopOperator, precisionAdjustment, null);
+  }
+
+  /**
+   * Create a CPA algorithm from CPA components, recording its metrics in the given registry.
+   *
+   * @param transferRelation a transfer relation specifying how successor states are computed
+   * @param mergeOperator a merge operator defining how (and whether) the older {@link
+   *     AbstractState} should be updated with the newly discovered {@link AbstractState}
+   * @param stopOperator a stop operator deciding whether the successor state should be added to the
+   *     {@link ReachedSet} based on the content of the latter
+   * @param precisionAdjustment a precision adjustment selecting the {@link Precision} for the
+   *     currently processed {@link AbstractState} considering the {@link ReachedSet} content
+   * @param metrics the registry in which the algorithm records the duration of its runs and the
+   *     numbers of processed and generated states, or null to not record any metrics
+   */
+  public CpaAlgorithm(
+      TransferRelation transferRelation,
+      MergeOperator mergeOperator,
+      StopOperator stopOperator,
+      PrecisionAdjustment precisionAdjustment,
+      MetricsRegistry metrics) {
     this.transferRelation = transferRelation;
     this.mergeOperator = mergeOperator;
     this.stopOperator = stopOperator;
     this.precisionAdjustment = precisionAdjustment;
+    this.runTimer = metrics == null ? null : metrics.timer(RUN_TIMER);
+    this.processedStates = metrics == null ? null : metrics.counter(PROCESSED_STATES_COUNTER);
+    this.successorStates = metrics == null ? null : metrics.counter(SUCCESSOR_STATES_COUNTER);
   }
 
   /**
@@ -94,8 +147,30 @@ public class CpaAlgorithm implements Algorithm {
    */
   @Override
   public void run(ReachedSet reachedSet, Waitlist waitlist, AbortOperator abortOperator) {
+    if (runTimer == null) {
+      run0(reachedSet, waitlist, abortOperator);
+    } else {
+      long startNanos = System.nanoTime();
+      try {
+        run0(reachedSet, waitlist, abortOperator);
+      } finally {
+        runTimer.recordSince(startNanos);
+      }
+    }
+  }
+
+  /** Runs the algorithm, without measuring the duration of the run. */
+  private void run0(ReachedSet reachedSet, Waitlist waitlist, AbortOperator abortOperator) {
+    // Abstract states to be added to and removed from the waitlist and the reached set after
+    // merging a successor state, reused for all successor states of the run.
+    Set<AbstractState> gen = new LinkedHashSet<>();
+    Set<AbstractState> kill = new LinkedHashSet<>();
+
     while (!waitlist.isEmpty()) {
       AbstractState currentState = waitlist.pop();
+      if (processedStates != null) {
+        processedStates.increment();
+      }
       try {
         if (abortOperator.abort(currentState)) {
           return;
@@ -109,31 +184,33 @@ public class CpaAlgorithm implements Algorithm {
 
         for (AbstractState successorState :
             transferRelation.generateAbstractSuccessors(currentState, currentPrecision)) {
-          Set<AbstractState> gen =
-              new LinkedHashSet<>(); // abstract states to be added to the waitlist and reached set
-          Set<AbstractState> kill =
-              new LinkedHashSet<>(); // abstract states to be removed from the waitlist and reached
-          // set
-          for (AbstractState reachedState :
-              reachedSet.getReached(
-                  successorState)) // iterate only over the reached sets which may be merged with
-          // the successor state
-          {
+          if (successorStates != null) {
+            successorStates.increment();
+          }
+          Precision successorPrecision = successorState.getPrecision();
+          // iterate only over the reached states which may be merged with the successor state
+          Collection<? extends AbstractState> reachedStates =
+              reachedSet.getReached(successorState);
+          for (AbstractState reachedState : reachedStates) {
             AbstractState mergedState =
-                mergeOperator.merge(successorState, reachedState, successorState.getPrecision());
+                mergeOperator.merge(successorState, reachedState, successorPrecision);
             if (!mergedState.equals(reachedState)) {
               gen.add(mergedState);
               kill.add(reachedState);
             }
           }
-          reachedSet.addAll(gen);
-          reachedSet.removeAll(kill);
-          waitlist.addAll(gen);
-          waitlist.removeAll(kill);
-          if (!stopOperator.stop(
-              successorState,
-              reachedSet.getReached(successorState),
-              successorState.getPrecision())) {
+          // the reached states only need to be updated and retrieved again if some of them were
+          // merged
+          if (!kill.isEmpty()) {
+            reachedSet.addAll(gen);
+            reachedSet.removeAll(kill);
+            waitlist.addAll(gen);
+            waitlist.removeAll(kill);
+            gen.clear();
+            kill.clear();
+            reachedStates = reachedSet.getReached(successorState);
+          }
+          if (!stopOperator.stop(successorState, reachedStates, successorPrecision)) {
             waitlist.add(successorState);
             reachedSet.add(successorState);
           }
@@ -0,0 +1,48 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import proguard.analysis.cpa.interfaces.AbstractState;
+
+/**
+ * Encodes and decodes {@link AbstractState}s, so a {@link PersistentBamCache} can store block
+ * abstractions on disk.
+ */
+public interface AbstractStateCodec {
+
+  /**
+   * Writes the given abstract state to the given output.
+   *
+   * @throws java.io.NotSerializableException if the state or one of its components can't be
+   *     encoded.
+   */
+  void write(AbstractState state, DataOutput output) throws IOException;
+
+  /**
+   * Reads an abstract state, as written by {@link #write(AbstractState, DataOutput)}, from the
+   * given input.
+   *
+   * @throws java.io.InvalidObjectException if the state refers to program elements or other
+   *     objects that don't exist anymore.
+   */
+  AbstractState read(DataInput input) throws IOException;
+}
@@ -0,0 +1,62 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.util.Objects;
+
+/**
+ * The key of a block abstraction across all blocks of a {@link BamCache}, created from the block
+ * and the {@link BamCacheKey} of the block abstraction within the block. The equals and hashCode
+ * methods are overridden to guarantee the correct behavior of hash maps.
+ */
+class BamCacheEntryKey<SignatureT> {
+
+  final SignatureT blockKey;
+  final BamCacheKey cacheKey;
+
+  /**
+   * Create an entry key from its components.
+   *
+   * @param blockKey the signature of a block
+   * @param cacheKey the key of the block abstraction within the block
+   */
+  BamCacheEntryKey(SignatureT blockKey, BamCacheKey cacheKey) {
+    this.blockKey = blockKey;
+    this.cacheKey = cacheKey;
+  }
+
+  // Implementations for Object
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof BamCacheEntryKey)) {
+      return false;
+    }
+    BamCacheEntryKey<?> other = (BamCacheEntryKey<?>) o;
+    return blockKey.equals(other.blockKey) && cacheKey.equals(other.cacheKey);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(blockKey, cacheKey);
+  }
+}
@@ -23,7 +23,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 import org.apache.logging.log4j.LogManager;
@@ -41,7 +40,7 @@ public class BamCacheImpl<SignatureT extends Signature> implements BamCache<Sign
 
   private static final Logger log = LogManager.getLogger(BamCacheImpl.class);
 
-  private final Map<SignatureT, Map<HashKey, BlockAbstraction>> cache = new HashMap<>();
+  private final Map<SignatureT, Map<BamCacheKey, BlockAbstraction>> cache = new HashMap<>();
   private int size = 0;
 
   // Implementations for BamCache
@@ -99,58 +98,12 @@ public class BamCacheImpl<SignatureT extends Signature> implements BamCache<Sign
     return Collections.unmodifiableSet(cache.keySet());
   }
 
-  private HashKey getHashKey(AbstractState stateKey, Precision precisionKey) {
-    return new HashKey(stateKey, precisionKey);
+  /** Returns the entries of the given block, by entry state and precision. */
+  Map<BamCacheKey, BlockAbstraction> getEntries(SignatureT blockKey) {
+    return cache.getOrDefault(blockKey, Collections.emptyMap());
   }
 
-  /**
-   * The key of the cache is created from the three parameters that define a block abstraction. The
-   * equals and hashCode methods are overridden to guarantee the correct behavior of the hash map.
-   */
-  private static class HashKey {
-
-    private final AbstractState stateKey;
-    private final Precision precisionKey;
-
-    /**
-     * Create a cache key from its components.
-     *
-     * @param stateKey the entry abstract state of a method
-     * @param precisionKey a precision
-     */
-    public HashKey(AbstractState stateKey, Precision precisionKey) {
-      this.stateKey = stateKey;
-      this.precisionKey = precisionKey;
-    }
-
-    /** Returns the entry state of the block that composes the key. */
-    public AbstractState getStateKey() {
-      return stateKey;
-    }
-
-    /** Returns the precision that composes the key. */
-    public Precision getPrecisionKey() {
-      return precisionKey;
-    }
-
-    // Implementations for Object
-
-    @Override
-    public boolean equals(Object o) {
-      if (o == this) {
-        return true;
-      }
-      if (!(o instanceof HashKey)) {
-        return false;
-      }
-      HashKey other = (HashKey) o;
-      return Objects.equals(stateKey, other.stateKey)
-          && Objects.equals(precisionKey, other.precisionKey);
-    }
-
-    @Override
-    public int hashCode() {
-      return Objects.hash(stateKey, precisionKey);
-    }
+  private BamCacheKey getHashKey(AbstractState stateKey, Precision precisionKey) {
+    return new BamCacheKey(stateKey, precisionKey);
   }
 }
@@ -0,0 +1,65 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.util.Objects;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+
+/**
+ * The key of a {@link BamCache} within the entries of a single block, created from the entry
+ * abstract state and the precision of a block abstraction. The equals and hashCode methods are
+ * overridden to guarantee the correct behavior of hash maps.
+ */
+class BamCacheKey {
+
+  final AbstractState stateKey;
+  final Precision precisionKey;
+
+  /**
+   * Create a cache key from its components.
+   *
+   * @param stateKey the entry abstract state of a method
+   * @param precisionKey a precision
+   */
+  BamCacheKey(AbstractState stateKey, Precision precisionKey) {
+    this.stateKey = stateKey;
+    this.precisionKey = precisionKey;
+  }
+
+  // Implementations for Object
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof BamCacheKey)) {
+      return false;
+    }
+    BamCacheKey other = (BamCacheKey) o;
+    return Objects.equals(stateKey, other.stateKey)
+        && Objects.equals(precisionKey, other.precisionKey);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(stateKey, precisionKey);
+  }
+}
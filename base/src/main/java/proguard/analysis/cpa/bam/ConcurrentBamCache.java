@@ -0,0 +1,345 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.classfile.Signature;
+
+/**
+ * A {@link BamCache} that can be accessed concurrently by several analyses, implemented as nested
+ * {@link ConcurrentHashMap}s indexed by block, precision, and entry state.
+ *
+ * <p>The cache can be bounded by a maximum number of block abstractions and by a maximum total
+ * number of reached states in these block abstractions, which approximates their memory usage.
+ * When a bound is exceeded, the least recently used block abstractions are evicted, down to three
+ * quarters of the bounds, so the cost of the eviction is spread over many additions. Evicted
+ * blocks are recomputed when they are needed again, trading time for memory. Block abstractions
+ * that still have states in their waitlist are never evicted, since the analysis resumes them.
+ *
+ * <p>The cache counts the hits and misses of each block, see {@link #getStatistics(Signature)}.
+ *
+ * <p>The cache only guarantees the consistency of its own maps. The {@link BlockAbstraction}s that
+ * it stores should not be modified once they have been put in the cache, since other analyses may
+ * be reading them at the same time. An {@link OverlayBamCache} provides this guarantee for a single
+ * analysis.
+ */
+public class ConcurrentBamCache<SignatureT extends Signature> implements BamCache<SignatureT> {
+
+  // The key for entries without precision, since concurrent maps don't support null keys.
+  private static final Precision NO_PRECISION = new Precision() {};
+
+  private final int maximumEntryCount;
+  private final long maximumStateCount;
+
+  private final Map<SignatureT, Map<Precision, Map<AbstractState, CacheEntry>>> cache =
+      new ConcurrentHashMap<>();
+  private final Map<SignatureT, Statistics> blockStatistics = new ConcurrentHashMap<>();
+  private final Statistics statistics = new Statistics();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong stateCount = new AtomicLong();
+  private final AtomicLong accessClock = new AtomicLong();
+  private final LongAdder evictionCount = new LongAdder();
+  private final Lock evictionLock = new ReentrantLock();
+
+  /** Creates a new unbounded cache. */
+  public ConcurrentBamCache() {
+    this(Integer.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Creates a new bounded cache.
+   *
+   * @param maximumEntryCount the maximum number of block abstractions in the cache.
+   * @param maximumStateCount the maximum total number of reached states in the block abstractions
+   *     of the cache.
+   */
+  public ConcurrentBamCache(int maximumEntryCount, long maximumStateCount) {
+    if (maximumEntryCount < 0) {
+      throw new IllegalArgumentException("maximumEntryCount can't be negative.");
+    }
+    if (maximumStateCount < 0) {
+      throw new IllegalArgumentException("maximumStateCount can't be negative.");
+    }
+
+    this.maximumEntryCount = maximumEntryCount;
+    this.maximumStateCount = maximumStateCount;
+  }
+
+  /** Returns the total number of reached states in the block abstractions of the cache. */
+  public long getStateCount() {
+    return stateCount.get();
+  }
+
+  /** Returns the number of block abstractions that have been evicted from the cache. */
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  /** Returns the hit and miss counts of all blocks. */
+  public Statistics getStatistics() {
+    return statistics;
+  }
+
+  /** Returns the hit and miss counts of the given block. */
+  public Statistics getStatistics(SignatureT blockKey) {
+    return blockStatistics.getOrDefault(blockKey, new Statistics());
+  }
+
+  // Implementations for BamCache
+
+  @Override
+  public void put(
+      AbstractState stateKey,
+      Precision precisionKey,
+      SignatureT blockKey,
+      BlockAbstraction blockAbstraction) {
+    CacheEntry entry =
+        new CacheEntry(blockKey, precisionKey(precisionKey), stateKey, blockAbstraction);
+    entry.lastAccess = accessClock.incrementAndGet();
+
+    cache.compute(
+        blockKey,
+        (k, blockEntries) -> {
+          if (blockEntries == null) {
+            blockEntries = new ConcurrentHashMap<>();
+          }
+          CacheEntry previousEntry =
+              blockEntries
+                  .computeIfAbsent(entry.precisionKey, p -> new ConcurrentHashMap<>())
+                  .put(stateKey, entry);
+          if (previousEntry == null) {
+            size.incrementAndGet();
+            stateCount.addAndGet(entry.stateCount);
+          } else {
+            stateCount.addAndGet(entry.stateCount - previousEntry.stateCount);
+          }
+          return blockEntries;
+        });
+
+    if (size.get() > maximumEntryCount || stateCount.get() > maximumStateCount) {
+      evict();
+    }
+  }
+
+  @Override
+  public BlockAbstraction get(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    CacheEntry entry =
+        cache
+            .getOrDefault(blockKey, Collections.emptyMap())
+            .getOrDefault(precisionKey(precisionKey), Collections.emptyMap())
+            .get(stateKey);
+
+    Statistics methodStatistics = blockStatistics.computeIfAbsent(blockKey, k -> new Statistics());
+    if (entry == null) {
+      methodStatistics.missCount.increment();
+      statistics.missCount.increment();
+      return null;
+    }
+
+    methodStatistics.hitCount.increment();
+    statistics.hitCount.increment();
+    entry.lastAccess = accessClock.incrementAndGet();
+    return entry.blockAbstraction;
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(SignatureT blockKey) {
+    return cache.getOrDefault(blockKey, Collections.emptyMap()).values().stream()
+        .map(Map::values)
+        .flatMap(Collection::stream)
+        .map(entry -> entry.blockAbstraction)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(Precision precision, SignatureT blockKey) {
+    return cache
+        .getOrDefault(blockKey, Collections.emptyMap())
+        .getOrDefault(precisionKey(precision), Collections.emptyMap())
+        .values()
+        .stream()
+        .map(entry -> entry.blockAbstraction)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public Collection<BlockAbstraction> values() {
+    return cache.keySet().stream()
+        .map(this::get)
+        .flatMap(Collection::stream)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public int size() {
+    return size.get();
+  }
+
+  @Override
+  public Set<SignatureT> getAllMethods() {
+    return Collections.unmodifiableSet(cache.keySet());
+  }
+
+  /** Returns the entries of the given block, by entry state and precision. */
+  Map<BamCacheKey, BlockAbstraction> getEntries(SignatureT blockKey) {
+    Map<BamCacheKey, BlockAbstraction> entries = new HashMap<>();
+    for (Map<AbstractState, CacheEntry> precisionEntries :
+        cache.getOrDefault(blockKey, Collections.emptyMap()).values()) {
+      for (CacheEntry entry : precisionEntries.values()) {
+        entries.put(
+            new BamCacheKey(entry.stateKey, precisionOf(entry.precisionKey)),
+            entry.blockAbstraction);
+      }
+    }
+    return entries;
+  }
+
+  // Small utility methods.
+
+  /**
+   * Evicts the least recently used completed block abstractions, until the cache is below three
+   * quarters of its bounds. Other threads skip the eviction while one thread is evicting.
+   */
+  private void evict() {
+    if (!evictionLock.tryLock()) {
+      return;
+    }
+
+    try {
+      List<CacheEntry> candidates = new ArrayList<>();
+      for (Map<Precision, Map<AbstractState, CacheEntry>> blockEntries : cache.values()) {
+        for (Map<AbstractState, CacheEntry> precisionEntries : blockEntries.values()) {
+          for (CacheEntry entry : precisionEntries.values()) {
+            if (entry.blockAbstraction.getWaitlist().isEmpty()) {
+              candidates.add(entry);
+            }
+          }
+        }
+      }
+      candidates.sort(Comparator.comparingLong(entry -> entry.lastAccess));
+
+      long targetEntryCount = maximumEntryCount / 4L * 3L;
+      long targetStateCount = maximumStateCount / 4L * 3L;
+      for (CacheEntry entry : candidates) {
+        if (size.get() <= targetEntryCount && stateCount.get() <= targetStateCount) {
+          break;
+        }
+        remove(entry);
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /** Removes the given entry from the cache, unless it has been replaced in the meantime. */
+  private void remove(CacheEntry entry) {
+    cache.computeIfPresent(
+        entry.blockKey,
+        (k, blockEntries) -> {
+          Map<AbstractState, CacheEntry> precisionEntries = blockEntries.get(entry.precisionKey);
+          if (precisionEntries != null && precisionEntries.remove(entry.stateKey, entry)) {
+            size.decrementAndGet();
+            stateCount.addAndGet(-entry.stateCount);
+            evictionCount.increment();
+
+            if (precisionEntries.isEmpty()) {
+              blockEntries.remove(entry.precisionKey);
+            }
+          }
+          return blockEntries.isEmpty() ? null : blockEntries;
+        });
+  }
+
+  private static Precision precisionKey(Precision precision) {
+    return precision != null ? precision : NO_PRECISION;
+  }
+
+  private static Precision precisionOf(Precision precisionKey) {
+    return precisionKey != NO_PRECISION ? precisionKey : null;
+  }
+
+  /** A block abstraction in the cache, with its keys and its cost. */
+  private class CacheEntry {
+    private final SignatureT blockKey;
+    private final Precision precisionKey;
+    private final AbstractState stateKey;
+    private final BlockAbstraction blockAbstraction;
+    private final int stateCount;
+    private volatile long lastAccess;
+
+    private CacheEntry(
+        SignatureT blockKey,
+        Precision precisionKey,
+        AbstractState stateKey,
+        BlockAbstraction blockAbstraction) {
+      this.blockKey = blockKey;
+      this.precisionKey = precisionKey;
+      this.stateKey = stateKey;
+      this.blockAbstraction = blockAbstraction;
+      this.stateCount = blockAbstraction.getReachedSet().asCollection().size();
+    }
+  }
+
+  /** The hit and miss counts of the lookups in a cache. */
+  public static class Statistics {
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /** Returns the number of lookups that found a block abstraction. */
+    public long getHitCount() {
+      return hitCount.sum();
+    }
+
+    /** Returns the number of lookups that didn't find a block abstraction. */
+    public long getMissCount() {
+      return missCount.sum();
+    }
+
+    /** Returns the fraction of lookups that found a block abstraction, or 0 without lookups. */
+    public double getHitRate() {
+      long hits = getHitCount();
+      long lookups = hits + getMissCount();
+      return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    // Implementations for Object.
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%d hits, %d misses (%.1f%%)", getHitCount(), getMissCount(), 100.0 * getHitRate());
+    }
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.classfile.Signature;
+
+/**
+ * A {@link BamCache} for a single analysis that reads through to a shared {@link
+ * ConcurrentBamCache}, so that concurrent analyses can reuse each other's block abstractions.
+ *
+ * <p>The BAM transfer relation resumes the analysis of a cached block abstraction that still has
+ * states in its waitlist, modifying its reached set. Block abstractions are therefore only put in
+ * this local cache, and {@link #publish()} copies the completed ones, with empty waitlists, to the
+ * shared cache. Completed block abstractions are only read when they are found again.
+ *
+ * <p>The cache records which block abstractions each block abstraction has looked up while it was
+ * being computed, and at which call stack depth, since a maximum call stack depth makes the results
+ * depend on it. When a block abstraction is read from the shared cache, the block abstractions that
+ * it depends on are read as well, so the local cache ends up with the same blocks as an analysis
+ * without a shared cache. If any of them is missing from the shared cache, or has been computed at
+ * a different depth, the block abstraction is computed again. The methods that return multiple
+ * entries only return the local entries, so they don't depend on the timing of other analyses.
+ */
+public class OverlayBamCache<SignatureT extends Signature> implements BamCache<SignatureT> {
+
+  private final Map<SignatureT, Map<BamCacheKey, BlockAbstraction>> localCache = new HashMap<>();
+  private final Map<BamCacheEntryKey<SignatureT>, Integer> depths = new HashMap<>();
+  private final Map<BamCacheEntryKey<SignatureT>, Map<BamCacheEntryKey<SignatureT>, Integer>>
+      dependencies = new HashMap<>();
+  private final Deque<BamCacheEntryKey<SignatureT>> openEntries = new ArrayDeque<>();
+  private final ConcurrentBamCache<SignatureT> sharedCache;
+
+  /**
+   * Creates a new overlay on the given shared cache.
+   *
+   * @param sharedCache the cache from which block abstractions are read when they are missing from
+   *     the local cache, and to which completed block abstractions are published.
+   */
+  public OverlayBamCache(ConcurrentBamCache<SignatureT> sharedCache) {
+    this.sharedCache = sharedCache;
+  }
+
+  /**
+   * Copies all completed block abstractions of the local cache to the shared cache, making them
+   * available to other analyses.
+   *
+   * @return the number of published block abstractions.
+   */
+  public int publish() {
+    int count = 0;
+    for (Entry<SignatureT, Map<BamCacheKey, BlockAbstraction>> blockEntry : localCache.entrySet()) {
+      for (Entry<BamCacheKey, BlockAbstraction> entry : blockEntry.getValue().entrySet()) {
+        BamCacheKey key = entry.getKey();
+        BlockAbstraction blockAbstraction = entry.getValue();
+        BamCacheEntryKey<SignatureT> entryKey = new BamCacheEntryKey<>(blockEntry.getKey(), key);
+        Integer depth = depths.get(entryKey);
+        if (blockAbstraction.getWaitlist().isEmpty() && depth != null) {
+          sharedCache.put(
+              key.stateKey,
+              key.precisionKey,
+              blockEntry.getKey(),
+              new SharedBlockAbstraction<>(
+                  blockAbstraction,
+                  depth,
+                  new HashMap<>(dependencies.getOrDefault(entryKey, Collections.emptyMap()))));
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  // Implementations for BamCache
+
+  @Override
+  public void put(
+      AbstractState stateKey,
+      Precision precisionKey,
+      SignatureT blockKey,
+      BlockAbstraction blockAbstraction) {
+    localCache
+        .computeIfAbsent(blockKey, k -> new HashMap<>())
+        .put(new BamCacheKey(stateKey, precisionKey), blockAbstraction);
+
+    // The block abstraction is complete for now, so it no longer
+    // collects dependencies.
+    BamCacheEntryKey<SignatureT> key =
+        new BamCacheEntryKey<>(blockKey, new BamCacheKey(stateKey, precisionKey));
+    if (openEntries.contains(key)) {
+      BamCacheEntryKey<SignatureT> openKey;
+      do {
+        openKey = openEntries.pop();
+      } while (!openKey.equals(key));
+    }
+  }
+
+  @Override
+  public BlockAbstraction get(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    BamCacheEntryKey<SignatureT> key =
+        new BamCacheEntryKey<>(blockKey, new BamCacheKey(stateKey, precisionKey));
+
+    BlockAbstraction blockAbstraction = getLocal(key);
+    boolean open = openEntries.contains(key);
+    if (!open && blockAbstraction == null) {
+      blockAbstraction = getShared(key);
+    }
+
+    // The block abstraction that is being computed depends on the
+    // block abstractions that it looks up.
+    int depth = depths.computeIfAbsent(key, k -> openEntries.size());
+    BamCacheEntryKey<SignatureT> openKey = openEntries.peek();
+    if (openKey != null && !openKey.equals(key)) {
+      dependencies.computeIfAbsent(openKey, k -> new HashMap<>()).put(key, depth);
+    }
+
+    if (!open) {
+      openEntries.push(key);
+    }
+
+    return blockAbstraction;
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(SignatureT blockKey) {
+    return new ArrayList<>(localCache.getOrDefault(blockKey, Collections.emptyMap()).values());
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(Precision precision, SignatureT blockKey) {
+    return localCache.getOrDefault(blockKey, Collections.emptyMap()).entrySet().stream()
+        .filter(e -> Objects.equals(e.getKey().precisionKey, precision))
+        .map(Entry::getValue)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public Collection<BlockAbstraction> values() {
+    return localCache.values().stream()
+        .map(Map::values)
+        .flatMap(Collection::stream)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public int size() {
+    return localCache.values().stream().mapToInt(Map::size).sum();
+  }
+
+  @Override
+  public Set<SignatureT> getAllMethods() {
+    return Collections.unmodifiableSet(localCache.keySet());
+  }
+
+  // Small utility methods.
+
+  private BlockAbstraction getLocal(BamCacheEntryKey<SignatureT> key) {
+    return localCache.getOrDefault(key.blockKey, Collections.emptyMap()).get(key.cacheKey);
+  }
+
+  /**
+   * Reads the block abstraction with the given key from the shared cache, together with all block
+   * abstractions that it depends on, and puts them in the local cache. Returns null if any of them
+   * is missing from the shared cache or has been computed at a different call stack depth than in
+   * this analysis.
+   */
+  private BlockAbstraction getShared(BamCacheEntryKey<SignatureT> key) {
+    Map<BamCacheEntryKey<SignatureT>, SharedBlockAbstraction<SignatureT>> sharedEntries =
+        new LinkedHashMap<>();
+    Deque<BamCacheEntryKey<SignatureT>> pendingKeys = new ArrayDeque<>();
+    Deque<Integer> pendingDepths = new ArrayDeque<>();
+    pendingKeys.push(key);
+    pendingDepths.push(openEntries.size());
+    while (!pendingKeys.isEmpty()) {
+      BamCacheEntryKey<SignatureT> pendingKey = pendingKeys.pop();
+      int pendingDepth = pendingDepths.pop();
+      if (sharedEntries.containsKey(pendingKey)) {
+        continue;
+      }
+
+      // Dependencies that this analysis already has must have been
+      // computed at the same depth.
+      Integer localDepth = depths.get(pendingKey);
+      if (localDepth != null) {
+        if (localDepth != pendingDepth) {
+          return null;
+        }
+        continue;
+      }
+
+      BlockAbstraction blockAbstraction =
+          sharedCache.get(
+              pendingKey.cacheKey.stateKey, pendingKey.cacheKey.precisionKey, pendingKey.blockKey);
+      if (!(blockAbstraction instanceof SharedBlockAbstraction)) {
+        return null;
+      }
+
+      SharedBlockAbstraction<SignatureT> sharedBlockAbstraction =
+          (SharedBlockAbstraction<SignatureT>) blockAbstraction;
+      if (sharedBlockAbstraction.depth != pendingDepth) {
+        return null;
+      }
+
+      sharedEntries.put(pendingKey, sharedBlockAbstraction);
+      for (Entry<BamCacheEntryKey<SignatureT>, Integer> dependency :
+          sharedBlockAbstraction.dependencies.entrySet()) {
+        pendingKeys.push(dependency.getKey());
+        pendingDepths.push(dependency.getValue());
+      }
+    }
+
+    for (Entry<BamCacheEntryKey<SignatureT>, SharedBlockAbstraction<SignatureT>> entry :
+        sharedEntries.entrySet()) {
+      BamCacheEntryKey<SignatureT> entryKey = entry.getKey();
+      SharedBlockAbstraction<SignatureT> sharedBlockAbstraction = entry.getValue();
+      localCache
+          .computeIfAbsent(entryKey.blockKey, k -> new HashMap<>())
+          .put(entryKey.cacheKey, sharedBlockAbstraction);
+      depths.put(entryKey, sharedBlockAbstraction.depth);
+      dependencies.put(entryKey, new HashMap<>(sharedBlockAbstraction.dependencies));
+    }
+
+    return sharedEntries.get(key);
+  }
+
+  /**
+   * A published block abstraction, with the call stack depth at which it has been computed and the
+   * keys and depths of the block abstractions that it depends on.
+   */
+  private static class SharedBlockAbstraction<SignatureT> extends BlockAbstraction {
+    private final int depth;
+    private final Map<BamCacheEntryKey<SignatureT>, Integer> dependencies;
+
+    private SharedBlockAbstraction(
+        BlockAbstraction blockAbstraction,
+        int depth,
+        Map<BamCacheEntryKey<SignatureT>, Integer> dependencies) {
+      super(blockAbstraction.getReachedSet(), blockAbstraction.getWaitlist());
+      this.depth = depth;
+      this.dependencies = dependencies;
+    }
+  }
+}
@@ -0,0 +1,463 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.bam;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Function;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.defaults.BreadthFirstWaitlist;
+import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.analysis.cpa.interfaces.ProgramLocationDependent;
+import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.classfile.Signature;
+
+/**
+ * A {@link BamCache} that stores its block abstractions on disk, so later analyses of the same
+ * code, for instance after a small change, only need to recompute the blocks that are affected.
+ *
+ * <p>The block abstractions of a block are stored in a file that is named after a hash of the
+ * block, computed by a given function. The hash should cover everything the block abstractions
+ * depend on, like the code of the method and of all methods that it calls, so that the stored
+ * block abstractions are only found again as long as they are still valid. Blocks without a hash
+ * are not stored. Different analysis configurations should use different directories.
+ *
+ * <p>Like {@link OverlayBamCache}, the cache records which block abstractions each block
+ * abstraction has looked up while it was being computed, and at which call stack depth, since a
+ * maximum call stack depth makes the results depend on it. A stored block abstraction is only
+ * reused together with the stored block abstractions that it depends on, and only if all of them
+ * have been computed at the same depths as in the current analysis. Otherwise, it is computed
+ * again.
+ *
+ * <p>{@link #save()} writes the completed block abstractions, with empty waitlists and without
+ * precision, of the blocks that have changed. The methods that return all entries only return the
+ * entries that have been computed or reused.
+ */
+public class PersistentBamCache<SignatureT extends Signature> implements BamCache<SignatureT> {
+
+  private static final Logger log = LogManager.getLogger(PersistentBamCache.class);
+
+  private static final int MAGIC = 0x42414d32;
+  private static final String FILE_EXTENSION = ".bam";
+
+  private final File directory;
+  private final Function<SignatureT, String> blockHasher;
+  private final AbstractStateCodec codec;
+
+  private final BamCacheImpl<SignatureT> cache = new BamCacheImpl<>();
+  private final Set<SignatureT> loadedBlocks = new HashSet<>();
+  private final Set<SignatureT> modifiedBlocks = new HashSet<>();
+  private final Map<BamCacheEntryKey<SignatureT>, StoredBlockAbstraction<SignatureT>>
+      storedEntries = new HashMap<>();
+  private final Map<BamCacheEntryKey<SignatureT>, Integer> depths = new HashMap<>();
+  private final Map<BamCacheEntryKey<SignatureT>, Map<BamCacheEntryKey<SignatureT>, Integer>>
+      dependencies = new HashMap<>();
+  private final Deque<BamCacheEntryKey<SignatureT>> openEntries = new ArrayDeque<>();
+  private int loadedEntryCount;
+
+  /**
+   * Creates a new persistent cache.
+   *
+   * @param directory the directory in which the block abstractions are stored.
+   * @param blockHasher the function that computes the hash of a block, or null if the block
+   *     shouldn't be stored.
+   * @param codec the codec for the abstract states of the analysis.
+   */
+  public PersistentBamCache(
+      File directory, Function<SignatureT, String> blockHasher, AbstractStateCodec codec) {
+    this.directory = directory;
+    this.blockHasher = blockHasher;
+    this.codec = codec;
+  }
+
+  /** Returns the number of block abstractions that have been read from disk and reused. */
+  public int getLoadedEntryCount() {
+    return loadedEntryCount;
+  }
+
+  /**
+   * Writes the completed block abstractions of all blocks that have changed since they were read
+   * to disk. Blocks that can't be encoded are skipped.
+   *
+   * @return the number of written blocks.
+   * @throws IOException if the directory can't be written.
+   */
+  public int save() throws IOException {
+    Files.createDirectories(directory.toPath());
+
+    int count = 0;
+    for (SignatureT blockKey : modifiedBlocks) {
+      String hash = blockHasher.apply(blockKey);
+      if (hash != null && saveBlock(blockKey, blockFile(hash).toPath())) {
+        count++;
+      }
+    }
+    modifiedBlocks.clear();
+    return count;
+  }
+
+  // Implementations for BamCache
+
+  @Override
+  public void put(
+      AbstractState stateKey,
+      Precision precisionKey,
+      SignatureT blockKey,
+      BlockAbstraction blockAbstraction) {
+    loadBlock(blockKey);
+
+    // Completed cache hits are put back with the same reached set, which
+    // doesn't modify the block.
+    BlockAbstraction previousBlockAbstraction = cache.get(stateKey, precisionKey, blockKey);
+    if (previousBlockAbstraction == null
+        || previousBlockAbstraction.getReachedSet() != blockAbstraction.getReachedSet()
+        || !blockAbstraction.getWaitlist().isEmpty()) {
+      modifiedBlocks.add(blockKey);
+    }
+
+    cache.put(stateKey, precisionKey, blockKey, blockAbstraction);
+
+    // The block abstraction replaces any stored one that couldn't be
+    // reused. It is complete for now, so it no longer collects
+    // dependencies.
+    BamCacheEntryKey<SignatureT> key =
+        new BamCacheEntryKey<>(blockKey, new BamCacheKey(stateKey, precisionKey));
+    storedEntries.remove(key);
+    if (openEntries.contains(key)) {
+      BamCacheEntryKey<SignatureT> openKey;
+      do {
+        openKey = openEntries.pop();
+      } while (!openKey.equals(key));
+    }
+  }
+
+  @Override
+  public BlockAbstraction get(AbstractState stateKey, Precision precisionKey, SignatureT blockKey) {
+    BamCacheEntryKey<SignatureT> key =
+        new BamCacheEntryKey<>(blockKey, new BamCacheKey(stateKey, precisionKey));
+
+    BlockAbstraction blockAbstraction = cache.get(stateKey, precisionKey, blockKey);
+    boolean open = openEntries.contains(key);
+    if (!open && blockAbstraction == null) {
+      blockAbstraction = getStored(key);
+    }
+
+    // The block abstraction that is being computed depends on the
+    // block abstractions that it looks up.
+    int depth = depths.computeIfAbsent(key, k -> openEntries.size());
+    BamCacheEntryKey<SignatureT> openKey = openEntries.peek();
+    if (openKey != null && !openKey.equals(key)) {
+      dependencies.computeIfAbsent(openKey, k -> new HashMap<>()).put(key, depth);
+    }
+
+    if (!open) {
+      openEntries.push(key);
+    }
+
+    return blockAbstraction;
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(SignatureT blockKey) {
+    return cache.get(blockKey);
+  }
+
+  @Override
+  public Collection<BlockAbstraction> get(Precision precision, SignatureT blockKey) {
+    return cache.get(precision, blockKey);
+  }
+
+  @Override
+  public Collection<BlockAbstraction> values() {
+    return cache.values();
+  }
+
+  @Override
+  public int size() {
+    return cache.size();
+  }
+
+  @Override
+  public Set<SignatureT> getAllMethods() {
+    return cache.getAllMethods();
+  }
+
+  // Small utility methods.
+
+  /**
+   * Reads the stored block abstraction with the given key, together with all stored block
+   * abstractions that it depends on, and puts them in the cache. Returns null if any of them is
+   * missing or has been computed at a different call stack depth than in this analysis.
+   */
+  private BlockAbstraction getStored(BamCacheEntryKey<SignatureT> key) {
+    Map<BamCacheEntryKey<SignatureT>, StoredBlockAbstraction<SignatureT>> entries =
+        new LinkedHashMap<>();
+    Deque<BamCacheEntryKey<SignatureT>> pendingKeys = new ArrayDeque<>();
+    Deque<Integer> pendingDepths = new ArrayDeque<>();
+    pendingKeys.push(key);
+    pendingDepths.push(openEntries.size());
+    while (!pendingKeys.isEmpty()) {
+      BamCacheEntryKey<SignatureT> pendingKey = pendingKeys.pop();
+      int pendingDepth = pendingDepths.pop();
+      if (entries.containsKey(pendingKey)) {
+        continue;
+      }
+
+      // Dependencies that this analysis already has must have been
+      // computed at the same depth.
+      Integer localDepth = depths.get(pendingKey);
+      if (localDepth != null) {
+        if (localDepth != pendingDepth) {
+          return null;
+        }
+        continue;
+      }
+
+      loadBlock(pendingKey.blockKey);
+      StoredBlockAbstraction<SignatureT> storedBlockAbstraction = storedEntries.get(pendingKey);
+      if (storedBlockAbstraction == null || storedBlockAbstraction.depth != pendingDepth) {
+        return null;
+      }
+
+      entries.put(pendingKey, storedBlockAbstraction);
+      for (Entry<BamCacheEntryKey<SignatureT>, Integer> dependency :
+          storedBlockAbstraction.dependencies.entrySet()) {
+        pendingKeys.push(dependency.getKey());
+        pendingDepths.push(dependency.getValue());
+      }
+    }
+
+    for (Entry<BamCacheEntryKey<SignatureT>, StoredBlockAbstraction<SignatureT>> entry :
+        entries.entrySet()) {
+      BamCacheEntryKey<SignatureT> entryKey = entry.getKey();
+      StoredBlockAbstraction<SignatureT> storedBlockAbstraction = entry.getValue();
+      cache.put(
+          entryKey.cacheKey.stateKey,
+          entryKey.cacheKey.precisionKey,
+          entryKey.blockKey,
+          storedBlockAbstraction);
+      depths.put(entryKey, storedBlockAbstraction.depth);
+      dependencies.put(entryKey, new HashMap<>(storedBlockAbstraction.dependencies));
+      storedEntries.remove(entryKey);
+    }
+    loadedEntryCount += entries.size();
+
+    return entries.get(key);
+  }
+
+  /**
+   * Reads the stored block abstractions of the given block, if this hasn't been done yet. Files
+   * that can't be read, for instance because they refer to code that has been removed, are
+   * ignored.
+   */
+  private void loadBlock(SignatureT blockKey) {
+    if (!loadedBlocks.add(blockKey)) {
+      return;
+    }
+
+    String hash = blockHasher.apply(blockKey);
+    if (hash == null) {
+      return;
+    }
+
+    File file = blockFile(hash);
+    if (!file.isFile()) {
+      return;
+    }
+
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+      if (input.readInt() != MAGIC) {
+        throw new InvalidObjectException("Unexpected file format");
+      }
+
+      // Read all entries before adding any of them.
+      int entryCount = input.readInt();
+      Map<BamCacheEntryKey<SignatureT>, StoredBlockAbstraction<SignatureT>> entries =
+          new HashMap<>();
+      for (int entryIndex = 0; entryIndex < entryCount; entryIndex++) {
+        BamCacheEntryKey<SignatureT> key = readEntryKey(input);
+        int depth = input.readInt();
+
+        Map<BamCacheEntryKey<SignatureT>, Integer> entryDependencies = new HashMap<>();
+        int dependencyCount = input.readInt();
+        for (int dependencyIndex = 0; dependencyIndex < dependencyCount; dependencyIndex++) {
+          entryDependencies.put(readEntryKey(input), input.readInt());
+        }
+
+        ReachedSet reachedSet = new ProgramLocationDependentReachedSet<>();
+        int stateCount = input.readInt();
+        for (int stateIndex = 0; stateIndex < stateCount; stateIndex++) {
+          reachedSet.add(codec.read(input));
+        }
+
+        if (!key.blockKey.equals(blockKey)) {
+          throw new InvalidObjectException("Unexpected block " + key.blockKey);
+        }
+        entries.put(key, new StoredBlockAbstraction<>(reachedSet, depth, entryDependencies));
+      }
+
+      storedEntries.putAll(entries);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Can't read the block abstractions of {} from {}: {}", blockKey, file, e);
+    }
+  }
+
+  /**
+   * Writes the completed block abstractions of the given block to the given file, replacing it
+   * atomically.
+   *
+   * @return whether the block could be encoded.
+   */
+  private boolean saveBlock(SignatureT blockKey, Path file) throws IOException {
+    List<BamCacheEntryKey<SignatureT>> keys = new ArrayList<>();
+    List<StoredBlockAbstraction<SignatureT>> blockAbstractions = new ArrayList<>();
+    for (Entry<BamCacheKey, BlockAbstraction> entry : cache.getEntries(blockKey).entrySet()) {
+      BamCacheEntryKey<SignatureT> key = new BamCacheEntryKey<>(blockKey, entry.getKey());
+      Integer depth = depths.get(key);
+
+      // Lookups that haven't resulted in a block abstraction, like the
+      // ones of other analyses on the results, don't contribute.
+      Map<BamCacheEntryKey<SignatureT>, Integer> entryDependencies = new HashMap<>();
+      for (Entry<BamCacheEntryKey<SignatureT>, Integer> dependency :
+          dependencies.getOrDefault(key, Collections.emptyMap()).entrySet()) {
+        BamCacheEntryKey<SignatureT> dependencyKey = dependency.getKey();
+        if (cache.getEntries(dependencyKey.blockKey).containsKey(dependencyKey.cacheKey)) {
+          entryDependencies.put(dependencyKey, dependency.getValue());
+        }
+      }
+
+      if (key.cacheKey.precisionKey == null
+          && entry.getValue().getWaitlist().isEmpty()
+          && depth != null
+          && entryDependencies.keySet().stream().allMatch(k -> k.cacheKey.precisionKey == null)) {
+        keys.add(key);
+        blockAbstractions.add(
+            new StoredBlockAbstraction<>(
+                entry.getValue().getReachedSet(), depth, entryDependencies));
+      }
+    }
+
+    // Keep the stored block abstractions that haven't been looked up.
+    for (Entry<BamCacheEntryKey<SignatureT>, StoredBlockAbstraction<SignatureT>> entry :
+        storedEntries.entrySet()) {
+      if (entry.getKey().blockKey.equals(blockKey)) {
+        keys.add(entry.getKey());
+        blockAbstractions.add(entry.getValue());
+      }
+    }
+
+    Path temporaryFile = Files.createTempFile(directory.toPath(), "block", ".tmp");
+    try {
+      try (DataOutputStream output =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+        output.writeInt(MAGIC);
+        output.writeInt(keys.size());
+        for (int index = 0; index < keys.size(); index++) {
+          StoredBlockAbstraction<SignatureT> blockAbstraction = blockAbstractions.get(index);
+          codec.write(keys.get(index).cacheKey.stateKey, output);
+          output.writeInt(blockAbstraction.depth);
+
+          output.writeInt(blockAbstraction.dependencies.size());
+          for (Entry<BamCacheEntryKey<SignatureT>, Integer> dependency :
+              blockAbstraction.dependencies.entrySet()) {
+            codec.write(dependency.getKey().cacheKey.stateKey, output);
+            output.writeInt(dependency.getValue());
+          }
+
+          Collection<? extends AbstractState> reachedStates =
+              blockAbstraction.getReachedSet().asCollection();
+          output.writeInt(reachedStates.size());
+          for (AbstractState reachedState : reachedStates) {
+            codec.write(reachedState, output);
+          }
+        }
+      } catch (IOException e) {
+        log.warn("Can't write the block abstractions of {}: {}", blockKey, e);
+        return false;
+      }
+
+      Files.move(
+          temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+  }
+
+  /**
+   * Reads the entry state of a stored block abstraction, without precision. The block follows from
+   * the location of the entry state.
+   */
+  private BamCacheEntryKey<SignatureT> readEntryKey(DataInputStream input) throws IOException {
+    AbstractState stateKey = codec.read(input);
+    if (!(stateKey instanceof ProgramLocationDependent)) {
+      throw new InvalidObjectException("Entry state without location");
+    }
+
+    SignatureT blockKey =
+        ((ProgramLocationDependent<?, ?, SignatureT>) stateKey).getProgramLocation().getSignature();
+    return new BamCacheEntryKey<>(blockKey, new BamCacheKey(stateKey, null));
+  }
+
+  private File blockFile(String hash) {
+    return new File(directory, hash + FILE_EXTENSION);
+  }
+
+  /**
+   * A stored block abstraction, with the call stack depth at which it has been computed and the
+   * keys and depths of the block abstractions that it depends on.
+   */
+  private static class StoredBlockAbstraction<SignatureT> extends BlockAbstraction {
+    private final int depth;
+    private final Map<BamCacheEntryKey<SignatureT>, Integer> dependencies;
+
+    private StoredBlockAbstraction(
+        ReachedSet reachedSet,
+        int depth,
+        Map<BamCacheEntryKey<SignatureT>, Integer> dependencies) {
+      super(reachedSet, new BreadthFirstWaitlist());
+      this.depth = depth;
+      this.dependencies = dependencies;
+    }
+  }
+}
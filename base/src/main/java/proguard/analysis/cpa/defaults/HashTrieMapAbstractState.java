@@ -0,0 +1,588 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.defaults;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * This {@link MapAbstractState} represents a map to {@link LatticeAbstractState}s with the
+ * semilattice operators lifted to the map, like {@link HashMapAbstractState}. It stores its entries
+ * in an immutable hash array mapped trie, so {@link #copy()} takes constant time and copies share
+ * all their entries. Modifying a map only copies the path to the modified entry, so successor
+ * states only pay for the entries that change.
+ *
+ * <p>Iterators and views iterate over the entries at the time they were created, so they don't
+ * fail if the map is modified in the meantime. The entries themselves are immutable; values are
+ * updated with {@link #put(Object, LatticeAbstractState)}.
+ */
+public class HashTrieMapAbstractState<
+        KeyT, AbstractSpaceT extends LatticeAbstractState<AbstractSpaceT>>
+    extends AbstractMap<KeyT, AbstractSpaceT> implements MapAbstractState<KeyT, AbstractSpaceT> {
+
+  private static final int BITS_PER_LEVEL = 5;
+  private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+
+  // The bitmap nodes that cover a 32-bit hash, plus a collision node.
+  private static final int MAX_DEPTH = (32 + BITS_PER_LEVEL - 1) / BITS_PER_LEVEL + 1;
+
+  private Node root = BitmapNode.EMPTY;
+  private int size;
+
+  /** Create an empty hash trie map abstract state. */
+  public HashTrieMapAbstractState() {}
+
+  /**
+   * Create a hash trie map abstract state from another map.
+   *
+   * @param m map which elements are used for initialization
+   */
+  public HashTrieMapAbstractState(Map<? extends KeyT, ? extends AbstractSpaceT> m) {
+    if (m instanceof HashTrieMapAbstractState) {
+      // Share the immutable trie.
+      root = ((HashTrieMapAbstractState<?, ?>) m).root;
+      size = m.size();
+    } else {
+      putAll(m);
+    }
+  }
+
+  // implementations for Map
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return root.find(key, hash(key), 0) != null;
+  }
+
+  @Override
+  public AbstractSpaceT get(Object key) {
+    return getOrDefault(key, null);
+  }
+
+  @Override
+  public AbstractSpaceT getOrDefault(Object key, AbstractSpaceT defaultValue) {
+    Leaf leaf = root.find(key, hash(key), 0);
+    return leaf == null ? defaultValue : (AbstractSpaceT) leaf.value;
+  }
+
+  @Override
+  public AbstractSpaceT put(KeyT key, AbstractSpaceT value) {
+    Change change = new Change();
+    root = root.put(new Leaf(hash(key), key, value), 0, change);
+    if (change.previous == null) {
+      size++;
+      return null;
+    }
+    return (AbstractSpaceT) change.previous.value;
+  }
+
+  @Override
+  public AbstractSpaceT remove(Object key) {
+    Change change = new Change();
+    Node newRoot = root.remove(key, hash(key), 0, change);
+    if (change.previous == null) {
+      return null;
+    }
+    root = newRoot == null ? BitmapNode.EMPTY : newRoot;
+    size--;
+    return (AbstractSpaceT) change.previous.value;
+  }
+
+  @Override
+  public void clear() {
+    root = BitmapNode.EMPTY;
+    size = 0;
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super KeyT, ? super AbstractSpaceT> action) {
+    for (LeafIterator iterator = new LeafIterator(root); iterator.hasNext(); ) {
+      Leaf leaf = iterator.next();
+      action.accept((KeyT) leaf.key, (AbstractSpaceT) leaf.value);
+    }
+  }
+
+  @Override
+  public void replaceAll(
+      BiFunction<? super KeyT, ? super AbstractSpaceT, ? extends AbstractSpaceT> function) {
+    for (LeafIterator iterator = new LeafIterator(root); iterator.hasNext(); ) {
+      Leaf leaf = iterator.next();
+      put((KeyT) leaf.key, function.apply((KeyT) leaf.key, (AbstractSpaceT) leaf.value));
+    }
+  }
+
+  @Override
+  public Set<Entry<KeyT, AbstractSpaceT>> entrySet() {
+    Node entrySetRoot = root;
+    int entrySetSize = size;
+    return new AbstractSet<Entry<KeyT, AbstractSpaceT>>() {
+      @Override
+      public Iterator<Entry<KeyT, AbstractSpaceT>> iterator() {
+        LeafIterator leafIterator = new LeafIterator(entrySetRoot);
+        return new Iterator<Entry<KeyT, AbstractSpaceT>>() {
+          private Leaf lastLeaf;
+
+          @Override
+          public boolean hasNext() {
+            return leafIterator.hasNext();
+          }
+
+          @Override
+          public Entry<KeyT, AbstractSpaceT> next() {
+            lastLeaf = leafIterator.next();
+            return (Entry<KeyT, AbstractSpaceT>) (Entry<?, ?>) lastLeaf;
+          }
+
+          @Override
+          public void remove() {
+            if (lastLeaf == null) {
+              throw new IllegalStateException();
+            }
+            HashTrieMapAbstractState.this.remove(lastLeaf.key);
+            lastLeaf = null;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return entrySetSize;
+      }
+    };
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return sharesEntriesWith(o) || super.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    return super.hashCode();
+  }
+
+  // implementations for LatticeAbstractState
+
+  @Override
+  public MapAbstractState<KeyT, AbstractSpaceT> join(
+      MapAbstractState<KeyT, AbstractSpaceT> abstractState) {
+    return sharesEntriesWith(abstractState) ? this : MapAbstractState.super.join(abstractState);
+  }
+
+  @Override
+  public boolean isLessOrEqual(MapAbstractState<KeyT, AbstractSpaceT> abstractState) {
+    if (sharesEntriesWith(abstractState)) {
+      return true;
+    }
+    if (size > abstractState.size()) {
+      return false;
+    }
+    for (LeafIterator iterator = new LeafIterator(root); iterator.hasNext(); ) {
+      Leaf leaf = iterator.next();
+      AbstractSpaceT otherValue = abstractState.get(leaf.key);
+      if ((otherValue == null && !abstractState.containsKey(leaf.key))
+          || !((AbstractSpaceT) leaf.value).isLessOrEqual(otherValue)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // implementations for AbstractState
+
+  @Override
+  public HashTrieMapAbstractState<KeyT, AbstractSpaceT> copy() {
+    return new HashTrieMapAbstractState<>(this);
+  }
+
+  // Small utility methods.
+
+  /** Returns whether the given object is a hash trie map with the same trie. */
+  private boolean sharesEntriesWith(Object o) {
+    return o instanceof HashTrieMapAbstractState
+        && ((HashTrieMapAbstractState<?, ?>) o).root == root;
+  }
+
+  private static int hash(Object key) {
+    return key == null ? 0 : key.hashCode();
+  }
+
+  /** Returns the bit of the given hash in the bitmap of a node at the given shift. */
+  private static int bit(int hash, int shift) {
+    return 1 << ((hash >>> shift) & LEVEL_MASK);
+  }
+
+  /** The result of a modification of the trie. */
+  private static class Change {
+    private Leaf previous;
+  }
+
+  /** An immutable entry of the trie. */
+  private static final class Leaf implements Entry<Object, Object> {
+    private final int hash;
+    private final Object key;
+    private final Object value;
+
+    private Leaf(int hash, Object key, Object value) {
+      this.hash = hash;
+      this.key = key;
+      this.value = value;
+    }
+
+    private boolean hasKey(Object key, int hash) {
+      return this.hash == hash && Objects.equals(this.key, key);
+    }
+
+    @Override
+    public Object getKey() {
+      return key;
+    }
+
+    @Override
+    public Object getValue() {
+      return value;
+    }
+
+    @Override
+    public Object setValue(Object value) {
+      throw new UnsupportedOperationException("Hash trie map entries are immutable");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry<?, ?> entry = (Entry<?, ?>) o;
+      return Objects.equals(key, entry.getKey()) && Objects.equals(value, entry.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return hash ^ Objects.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+
+  /**
+   * An immutable node of the trie. Modifications return the modified copy of the node, or the node
+   * itself if it doesn't change.
+   */
+  private abstract static class Node {
+    /** Returns the leaf with the given key, or null. */
+    abstract Leaf find(Object key, int hash, int shift);
+
+    /** Returns the node with the given leaf, replacing any leaf with the same key. */
+    abstract Node put(Leaf leaf, int shift, Change change);
+
+    /** Returns the node without the given key, or null if the node becomes empty. */
+    abstract Node remove(Object key, int hash, int shift, Change change);
+
+    /** Returns the leaves and child nodes of this node. */
+    abstract Object[] slots();
+
+    /** Returns the only leaf of this node, if it doesn't have any other leaves or child nodes. */
+    Leaf singleLeaf() {
+      Object[] slots = slots();
+      return slots.length == 1 && slots[0] instanceof Leaf ? (Leaf) slots[0] : null;
+    }
+  }
+
+  /**
+   * A node with a leaf or child node for each bit that is set in its bitmap, in the order of the
+   * bits.
+   */
+  private static final class BitmapNode extends Node {
+    private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+    private final int bitmap;
+    private final Object[] slots;
+
+    private BitmapNode(int bitmap, Object[] slots) {
+      this.bitmap = bitmap;
+      this.slots = slots;
+    }
+
+    @Override
+    Leaf find(Object key, int hash, int shift) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      Object slot = slots[index(bit)];
+      if (slot instanceof Leaf) {
+        Leaf leaf = (Leaf) slot;
+        return leaf.hasKey(key, hash) ? leaf : null;
+      }
+      return ((Node) slot).find(key, hash, shift + BITS_PER_LEVEL);
+    }
+
+    @Override
+    Node put(Leaf leaf, int shift, Change change) {
+      int bit = bit(leaf.hash, shift);
+      int index = index(bit);
+      if ((bitmap & bit) == 0) {
+        Object[] newSlots = new Object[slots.length + 1];
+        System.arraycopy(slots, 0, newSlots, 0, index);
+        newSlots[index] = leaf;
+        System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+        return new BitmapNode(bitmap | bit, newSlots);
+      }
+
+      Object slot = slots[index];
+      Object newSlot;
+      if (slot instanceof Leaf) {
+        Leaf oldLeaf = (Leaf) slot;
+        if (oldLeaf.hasKey(leaf.key, leaf.hash)) {
+          change.previous = oldLeaf;
+          if (oldLeaf.value == leaf.value) {
+            return this;
+          }
+          newSlot = leaf;
+        } else {
+          newSlot = node(oldLeaf, leaf, shift + BITS_PER_LEVEL);
+        }
+      } else {
+        Node node = (Node) slot;
+        Node newNode = node.put(leaf, shift + BITS_PER_LEVEL, change);
+        if (newNode == node) {
+          return this;
+        }
+        newSlot = newNode;
+      }
+      return withSlot(index, newSlot);
+    }
+
+    @Override
+    Node remove(Object key, int hash, int shift, Change change) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int index = index(bit);
+      Object slot = slots[index];
+      if (slot instanceof Leaf) {
+        Leaf leaf = (Leaf) slot;
+        if (!leaf.hasKey(key, hash)) {
+          return this;
+        }
+        change.previous = leaf;
+        return withoutSlot(bit, index);
+      }
+
+      Node node = (Node) slot;
+      Node newNode = node.remove(key, hash, shift + BITS_PER_LEVEL, change);
+      if (newNode == node) {
+        return this;
+      }
+      if (newNode == null) {
+        return withoutSlot(bit, index);
+      }
+      // Pull up a single remaining leaf, so the trie stays as shallow as possible.
+      Leaf singleLeaf = newNode.singleLeaf();
+      return withSlot(index, singleLeaf != null ? singleLeaf : newNode);
+    }
+
+    @Override
+    Object[] slots() {
+      return slots;
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    private BitmapNode withSlot(int index, Object slot) {
+      Object[] newSlots = slots.clone();
+      newSlots[index] = slot;
+      return new BitmapNode(bitmap, newSlots);
+    }
+
+    private BitmapNode withoutSlot(int bit, int index) {
+      if (slots.length == 1) {
+        return null;
+      }
+      Object[] newSlots = new Object[slots.length - 1];
+      System.arraycopy(slots, 0, newSlots, 0, index);
+      System.arraycopy(slots, index + 1, newSlots, index, newSlots.length - index);
+      return new BitmapNode(bitmap & ~bit, newSlots);
+    }
+
+    /** Returns a node with the given leaves, which have different keys, at the given shift. */
+    private static Node node(Leaf leaf1, Leaf leaf2, int shift) {
+      if (leaf1.hash == leaf2.hash) {
+        return new CollisionNode(leaf1.hash, new Object[] {leaf1, leaf2});
+      }
+
+      // The hashes differ at the latest in the highest level.
+      int bit1 = bit(leaf1.hash, shift);
+      int bit2 = bit(leaf2.hash, shift);
+      if (bit1 == bit2) {
+        return new BitmapNode(bit1, new Object[] {node(leaf1, leaf2, shift + BITS_PER_LEVEL)});
+      }
+      return Integer.compareUnsigned(bit1, bit2) < 0
+          ? new BitmapNode(bit1 | bit2, new Object[] {leaf1, leaf2})
+          : new BitmapNode(bit1 | bit2, new Object[] {leaf2, leaf1});
+    }
+  }
+
+  /** A node with leaves whose keys have the same hash. */
+  private static final class CollisionNode extends Node {
+    private final int hash;
+    private final Object[] leaves;
+
+    private CollisionNode(int hash, Object[] leaves) {
+      this.hash = hash;
+      this.leaves = leaves;
+    }
+
+    @Override
+    Leaf find(Object key, int hash, int shift) {
+      int index = index(key, hash);
+      return index < 0 ? null : (Leaf) leaves[index];
+    }
+
+    @Override
+    Node put(Leaf leaf, int shift, Change change) {
+      if (leaf.hash != hash) {
+        // Nest this node in a bitmap node that can also hold the new leaf.
+        return new BitmapNode(bit(hash, shift), new Object[] {this}).put(leaf, shift, change);
+      }
+
+      int index = index(leaf.key, leaf.hash);
+      if (index < 0) {
+        Object[] newLeaves = new Object[leaves.length + 1];
+        System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+        newLeaves[leaves.length] = leaf;
+        return new CollisionNode(hash, newLeaves);
+      }
+
+      Leaf oldLeaf = (Leaf) leaves[index];
+      change.previous = oldLeaf;
+      if (oldLeaf.value == leaf.value) {
+        return this;
+      }
+      Object[] newLeaves = leaves.clone();
+      newLeaves[index] = leaf;
+      return new CollisionNode(hash, newLeaves);
+    }
+
+    @Override
+    Node remove(Object key, int hash, int shift, Change change) {
+      int index = index(key, hash);
+      if (index < 0) {
+        return this;
+      }
+      change.previous = (Leaf) leaves[index];
+      if (leaves.length == 1) {
+        return null;
+      }
+      Object[] newLeaves = new Object[leaves.length - 1];
+      System.arraycopy(leaves, 0, newLeaves, 0, index);
+      System.arraycopy(leaves, index + 1, newLeaves, index, newLeaves.length - index);
+      return new CollisionNode(hash, newLeaves);
+    }
+
+    @Override
+    Object[] slots() {
+      return leaves;
+    }
+
+    private int index(Object key, int hash) {
+      if (hash == this.hash) {
+        for (int index = 0; index < leaves.length; index++) {
+          if (((Leaf) leaves[index]).hasKey(key, hash)) {
+            return index;
+          }
+        }
+      }
+      return -1;
+    }
+  }
+
+  /** An iterator over the leaves of a trie, in depth-first order. */
+  private static final class LeafIterator implements Iterator<Leaf> {
+    private final Object[][] slotsStack = new Object[MAX_DEPTH][];
+    private final int[] indexStack = new int[MAX_DEPTH];
+    private int depth;
+    private Leaf nextLeaf;
+
+    private LeafIterator(Node root) {
+      slotsStack[0] = root.slots();
+      advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextLeaf != null;
+    }
+
+    @Override
+    public Leaf next() {
+      Leaf leaf = nextLeaf;
+      if (leaf == null) {
+        throw new NoSuchElementException();
+      }
+      advance();
+      return leaf;
+    }
+
+    private void advance() {
+      while (depth >= 0) {
+        Object[] slots = slotsStack[depth];
+        int index = indexStack[depth];
+        if (index == slots.length) {
+          slotsStack[depth--] = null;
+        } else {
+          indexStack[depth] = index + 1;
+          Object slot = slots[index];
+          if (slot instanceof Leaf) {
+            nextLeaf = (Leaf) slot;
+            return;
+          }
+          depth++;
+          slotsStack[depth] = ((Node) slot).slots();
+          indexStack[depth] = 0;
+        }
+      }
+      nextLeaf = null;
+    }
+  }
+}
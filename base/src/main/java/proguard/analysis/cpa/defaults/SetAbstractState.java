@@ -54,11 +54,16 @@ public class SetAbstractState<T> extends HashSet<T>
 
   @Override
   public SetAbstractState<T> join(SetAbstractState<T> abstractState) {
+    // Only copy the elements if neither set contains the other one.
+    if (containsAll(abstractState)) {
+      return this;
+    }
+    if (abstractState.containsAll(this)) {
+      return abstractState;
+    }
     SetAbstractState<T> result = abstractState.copy();
     result.addAll(this);
-    return result.isLessOrEqual(this)
-        ? this
-        : result.isLessOrEqual(abstractState) ? abstractState : result;
+    return result;
   }
 
   @Override
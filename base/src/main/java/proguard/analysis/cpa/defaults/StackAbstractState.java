@@ -20,19 +20,30 @@ package proguard.analysis.cpa.defaults;
 
 import static proguard.exception.ErrorId.ANALYSIS_STACK_STATE_OPERAND_STACK_INDEX_OUT_OF_BOUNDS;
 
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Stack;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import proguard.exception.ProguardCoreException;
 
 /**
  * This {@link StackAbstractState} represents a stack of {@link LatticeAbstractState}s with the
  * semilattice operators lifted to the stack.
  *
+ * <p>Copies share their elements until either of them pushes or otherwise modifies elements, so
+ * {@link #copy()} takes constant time and successor states only pay for stacks that change. Popping
+ * elements from a shared stack doesn't copy it either.
+ *
  * @author Dmitry Ivanov
  */
 public class StackAbstractState<AbstractSpaceT extends LatticeAbstractState<AbstractSpaceT>>
     extends Stack<AbstractSpaceT>
     implements LatticeAbstractState<StackAbstractState<AbstractSpaceT>> {
 
+  // Whether the element array may be shared with copies, so it must be copied before writing to it.
+  private boolean shared;
+
   // implementations for LatticeAbstractState
 
   @Override
@@ -76,12 +87,163 @@ public class StackAbstractState<AbstractSpaceT extends LatticeAbstractState<Abst
   }
 
   @Override
-  public StackAbstractState<AbstractSpaceT> copy() {
+  public synchronized StackAbstractState<AbstractSpaceT> copy() {
     StackAbstractState<AbstractSpaceT> copy = new StackAbstractState<>();
-    copy.addAll(this);
+    copy.elementData = elementData;
+    copy.elementCount = elementCount;
+    copy.shared = true;
+    shared = true;
     return copy;
   }
 
+  // implementations for Stack
+
+  @Override
+  public synchronized AbstractSpaceT pop() {
+    if (!shared) {
+      return super.pop();
+    }
+
+    // Leave the shared element array untouched.
+    AbstractSpaceT element = peek();
+    elementCount--;
+    modCount++;
+    return element;
+  }
+
+  // implementations for Vector, which need their own element array
+
+  @Override
+  public synchronized void setSize(int newSize) {
+    unshare();
+    super.setSize(newSize);
+  }
+
+  @Override
+  public synchronized void setElementAt(AbstractSpaceT obj, int index) {
+    unshare();
+    super.setElementAt(obj, index);
+  }
+
+  @Override
+  public synchronized void removeElementAt(int index) {
+    unshare();
+    super.removeElementAt(index);
+  }
+
+  @Override
+  public synchronized void insertElementAt(AbstractSpaceT obj, int index) {
+    unshare();
+    super.insertElementAt(obj, index);
+  }
+
+  @Override
+  public synchronized void addElement(AbstractSpaceT obj) {
+    unshare();
+    super.addElement(obj);
+  }
+
+  @Override
+  public synchronized boolean removeElement(Object obj) {
+    unshare();
+    return super.removeElement(obj);
+  }
+
+  @Override
+  public synchronized void removeAllElements() {
+    unshare();
+    super.removeAllElements();
+  }
+
+  @Override
+  public synchronized AbstractSpaceT set(int index, AbstractSpaceT element) {
+    unshare();
+    return super.set(index, element);
+  }
+
+  @Override
+  public synchronized boolean add(AbstractSpaceT e) {
+    unshare();
+    return super.add(e);
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    return removeElement(o);
+  }
+
+  @Override
+  public void add(int index, AbstractSpaceT element) {
+    insertElementAt(element, index);
+  }
+
+  @Override
+  public synchronized AbstractSpaceT remove(int index) {
+    unshare();
+    return super.remove(index);
+  }
+
+  @Override
+  public void clear() {
+    removeAllElements();
+  }
+
+  @Override
+  public synchronized boolean addAll(Collection<? extends AbstractSpaceT> c) {
+    unshare();
+    return super.addAll(c);
+  }
+
+  @Override
+  public synchronized boolean removeAll(Collection<?> c) {
+    unshare();
+    return super.removeAll(c);
+  }
+
+  @Override
+  public synchronized boolean retainAll(Collection<?> c) {
+    unshare();
+    return super.retainAll(c);
+  }
+
+  @Override
+  public synchronized boolean removeIf(Predicate<? super AbstractSpaceT> filter) {
+    unshare();
+    return super.removeIf(filter);
+  }
+
+  @Override
+  public synchronized boolean addAll(int index, Collection<? extends AbstractSpaceT> c) {
+    unshare();
+    return super.addAll(index, c);
+  }
+
+  @Override
+  protected synchronized void removeRange(int fromIndex, int toIndex) {
+    unshare();
+    super.removeRange(fromIndex, toIndex);
+  }
+
+  @Override
+  public synchronized void replaceAll(UnaryOperator<AbstractSpaceT> operator) {
+    unshare();
+    super.replaceAll(operator);
+  }
+
+  @Override
+  public synchronized void sort(Comparator<? super AbstractSpaceT> c) {
+    unshare();
+    super.sort(c);
+  }
+
+  @Override
+  public synchronized Object clone() {
+    StackAbstractState<AbstractSpaceT> clone = (StackAbstractState<AbstractSpaceT>) super.clone();
+    // The clone has its own copy of the element array.
+    clone.shared = false;
+    return clone;
+  }
+
   /**
    * Removes the top of the stack and returns it. If the stack is empty, it returns the {@code
    * defaultState}.
@@ -115,4 +277,16 @@ public class StackAbstractState<AbstractSpaceT extends LatticeAbstractState<Abst
     int elementIndex = size() - 1 - index;
     return elementIndex < 0 ? defaultState : get(elementIndex);
   }
+
+  // Small utility methods.
+
+  /** Makes sure the element array isn't shared with any copies, before writing to it. */
+  private void unshare() {
+    if (shared) {
+      Object[] newElementData = new Object[elementData.length];
+      System.arraycopy(elementData, 0, newElementData, 0, elementCount);
+      elementData = newElementData;
+      shared = false;
+    }
+  }
 }
@@ -0,0 +1,223 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.jvm.domain.taint;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import proguard.analysis.cpa.bam.AbstractStateCodec;
+import proguard.analysis.cpa.bam.PersistentBamCache;
+import proguard.analysis.cpa.defaults.HashMapAbstractState;
+import proguard.analysis.cpa.defaults.HashTrieMapAbstractState;
+import proguard.analysis.cpa.defaults.ListAbstractState;
+import proguard.analysis.cpa.defaults.SetAbstractState;
+import proguard.analysis.cpa.defaults.StackAbstractState;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.CfaNode;
+import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
+import proguard.analysis.cpa.jvm.state.JvmAbstractState;
+import proguard.analysis.cpa.jvm.state.JvmFrameAbstractState;
+import proguard.analysis.cpa.jvm.state.heap.JvmForgetfulHeapAbstractState;
+import proguard.classfile.MethodSignature;
+
+/**
+ * This {@link AbstractStateCodec} encodes the {@link JvmAbstractState}s of a taint analysis with a
+ * forgetful heap, like the ones of {@link proguard.analysis.cpa.util.TaintAnalyzer}, for a {@link
+ * PersistentBamCache}.
+ *
+ * <p>Program locations are encoded by their method signatures and offsets, and resolved in the
+ * given {@link JvmCfa} when they are decoded. Taint sources are encoded by their string
+ * representations, and resolved among the given taint sources. Sources with call matchers should
+ * therefore have string representations that are unique and stable across runs.
+ */
+public class JvmTaintAbstractStateCodec implements AbstractStateCodec {
+
+  private static final byte JVM_ABSTRACT_STATE = 0;
+  private static final byte JVM_TAINT_ABSTRACT_STATE = 1;
+
+  private final JvmCfa cfa;
+  private final Map<String, JvmTaintSource> taintSources = new HashMap<>();
+
+  /**
+   * Creates a new codec.
+   *
+   * @param cfa the control flow automaton in which program locations are resolved.
+   * @param taintSources the taint sources of the analysis.
+   */
+  public JvmTaintAbstractStateCodec(JvmCfa cfa, Collection<? extends JvmTaintSource> taintSources) {
+    this.cfa = cfa;
+    for (JvmTaintSource taintSource : taintSources) {
+      this.taintSources.put(taintSource.toString(), taintSource);
+    }
+  }
+
+  // Implementations for AbstractStateCodec.
+
+  @Override
+  public void write(AbstractState state, DataOutput output) throws IOException {
+    if (!(state instanceof JvmAbstractState)) {
+      throw new NotSerializableException(state.getClass().getName());
+    }
+
+    JvmAbstractState<SetAbstractState<JvmTaintSource>> jvmState =
+        (JvmAbstractState<SetAbstractState<JvmTaintSource>>) state;
+    if (!(jvmState.getHeap() instanceof JvmForgetfulHeapAbstractState)) {
+      throw new NotSerializableException(jvmState.getHeap().getClass().getName());
+    }
+    Class<?> staticFieldsClass = jvmState.getStaticFields().getClass();
+    if (staticFieldsClass != HashTrieMapAbstractState.class
+        && staticFieldsClass != HashMapAbstractState.class) {
+      throw new NotSerializableException(jvmState.getStaticFields().getClass().getName());
+    }
+
+    output.writeByte(
+        state instanceof JvmTaintAbstractState ? JVM_TAINT_ABSTRACT_STATE : JVM_ABSTRACT_STATE);
+    writeProgramLocation(jvmState.getProgramLocation(), output);
+
+    ListAbstractState<SetAbstractState<JvmTaintSource>> localVariables =
+        jvmState.getFrame().getLocalVariables();
+    output.writeInt(localVariables.size());
+    for (SetAbstractState<JvmTaintSource> localVariable : localVariables) {
+      writeTaints(localVariable, output);
+    }
+
+    // Write the operand stack from the bottom to the top.
+    StackAbstractState<SetAbstractState<JvmTaintSource>> operandStack =
+        jvmState.getFrame().getOperandStack();
+    output.writeInt(operandStack.size());
+    for (SetAbstractState<JvmTaintSource> stackEntry : operandStack) {
+      writeTaints(stackEntry, output);
+    }
+
+    output.writeInt(jvmState.getStaticFields().size());
+    for (Entry<String, SetAbstractState<JvmTaintSource>> staticField :
+        jvmState.getStaticFields().entrySet()) {
+      output.writeUTF(staticField.getKey());
+      writeTaints(staticField.getValue(), output);
+    }
+  }
+
+  @Override
+  public AbstractState read(DataInput input) throws IOException {
+    byte type = input.readByte();
+    JvmCfaNode programLocation = readProgramLocation(input);
+
+    int localVariableCount = input.readInt();
+    ListAbstractState<SetAbstractState<JvmTaintSource>> localVariables =
+        new ListAbstractState<>(localVariableCount);
+    for (int index = 0; index < localVariableCount; index++) {
+      localVariables.add(readTaints(input));
+    }
+
+    int stackSize = input.readInt();
+    StackAbstractState<SetAbstractState<JvmTaintSource>> operandStack = new StackAbstractState<>();
+    for (int index = 0; index < stackSize; index++) {
+      operandStack.push(readTaints(input));
+    }
+
+    int staticFieldCount = input.readInt();
+    HashTrieMapAbstractState<String, SetAbstractState<JvmTaintSource>> staticFields =
+        new HashTrieMapAbstractState<>();
+    for (int index = 0; index < staticFieldCount; index++) {
+      staticFields.put(input.readUTF(), readTaints(input));
+    }
+
+    JvmFrameAbstractState<SetAbstractState<JvmTaintSource>> frame =
+        new JvmFrameAbstractState<>(localVariables, operandStack);
+    JvmForgetfulHeapAbstractState<SetAbstractState<JvmTaintSource>> heap =
+        new JvmForgetfulHeapAbstractState<>(SetAbstractState.bottom);
+
+    return type == JVM_TAINT_ABSTRACT_STATE
+        ? new JvmTaintAbstractState(programLocation, frame, heap, staticFields)
+        : new JvmAbstractState<>(programLocation, frame, heap, staticFields);
+  }
+
+  // Small utility methods.
+
+  private void writeProgramLocation(JvmCfaNode programLocation, DataOutput output)
+      throws IOException {
+    MethodSignature signature = programLocation.getSignature();
+    if (signature == null) {
+      throw new NotSerializableException("Program location without signature");
+    }
+
+    output.writeUTF(signature.getClassName());
+    output.writeUTF(signature.getMethodName());
+    output.writeUTF(signature.getDescriptor().toString());
+    output.writeInt(programLocation.getOffset());
+  }
+
+  private JvmCfaNode readProgramLocation(DataInput input) throws IOException {
+    MethodSignature signature =
+        new MethodSignature(input.readUTF(), input.readUTF(), input.readUTF());
+    int offset = input.readInt();
+
+    JvmCfaNode programLocation = cfa.getFunctionNode(signature, offset);
+    if (programLocation == null) {
+      // The exit nodes may not have been created yet.
+      JvmCfaNode entryNode = cfa.getFunctionEntryNode(signature);
+      if (entryNode != null && offset == CfaNode.RETURN_EXIT_NODE_OFFSET) {
+        programLocation = cfa.getFunctionReturnExitNode(signature, entryNode.getClazz());
+      } else if (entryNode != null && offset == CfaNode.EXCEPTION_EXIT_NODE_OFFSET) {
+        programLocation = cfa.getFunctionExceptionExitNode(signature, entryNode.getClazz());
+      } else {
+        throw new InvalidObjectException("Unknown program location " + signature + ":" + offset);
+      }
+    }
+
+    return programLocation;
+  }
+
+  private void writeTaints(SetAbstractState<JvmTaintSource> taints, DataOutput output)
+      throws IOException {
+    output.writeInt(taints.size());
+    for (Object taint : taints) {
+      String name = taint.toString();
+      if (!taint.equals(taintSources.get(name))) {
+        throw new NotSerializableException("Unknown taint source " + name);
+      }
+      output.writeUTF(name);
+    }
+  }
+
+  private SetAbstractState<JvmTaintSource> readTaints(DataInput input) throws IOException {
+    int taintCount = input.readInt();
+    if (taintCount == 0) {
+      return SetAbstractState.bottom;
+    }
+
+    SetAbstractState<JvmTaintSource> taints = new SetAbstractState<>();
+    for (int index = 0; index < taintCount; index++) {
+      String name = input.readUTF();
+      JvmTaintSource taintSource = taintSources.get(name);
+      if (taintSource == null) {
+        throw new InvalidObjectException("Unknown taint source " + name);
+      }
+      taints.add(taintSource);
+    }
+    return taints;
+  }
+}
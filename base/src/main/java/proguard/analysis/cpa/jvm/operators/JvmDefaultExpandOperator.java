@@ -176,7 +176,9 @@ public class JvmDefaultExpandOperator<StateT extends LatticeAbstractState<StateT
       CallerExceptionHandlerFinder finder = new CallerExceptionHandlerFinder(call, cfa);
       call.caller.member.accept(call.caller.clazz, new AllAttributeVisitor(finder));
 
-      JvmHeapAbstractState<StateT> heap = ((JvmAbstractState<StateT>) reducedExitState).getHeap();
+      // copy the heap, since the exit state may be shared through the cache
+      JvmHeapAbstractState<StateT> heap =
+          ((JvmAbstractState<StateT>) reducedExitState).getHeap().copy();
       if (expandHeap) {
         expandHeap(heap, ((JvmAbstractState<StateT>) expandedInitialState).getHeap());
       }
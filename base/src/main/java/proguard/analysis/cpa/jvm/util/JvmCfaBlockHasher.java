@@ -0,0 +1,327 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.jvm.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.function.Function;
+import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCallCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+import proguard.classfile.MethodSignature;
+import proguard.classfile.attribute.Attribute;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.attribute.ExceptionInfo;
+import proguard.classfile.attribute.visitor.AllAttributeVisitor;
+import proguard.classfile.attribute.visitor.AttributeVisitor;
+import proguard.classfile.attribute.visitor.ExceptionInfoVisitor;
+import proguard.classfile.constant.ClassConstant;
+import proguard.classfile.constant.Constant;
+import proguard.classfile.constant.DoubleConstant;
+import proguard.classfile.constant.DynamicConstant;
+import proguard.classfile.constant.FloatConstant;
+import proguard.classfile.constant.IntegerConstant;
+import proguard.classfile.constant.InvokeDynamicConstant;
+import proguard.classfile.constant.LongConstant;
+import proguard.classfile.constant.MethodHandleConstant;
+import proguard.classfile.constant.MethodTypeConstant;
+import proguard.classfile.constant.RefConstant;
+import proguard.classfile.constant.StringConstant;
+import proguard.classfile.constant.visitor.ConstantVisitor;
+import proguard.classfile.instruction.ConstantInstruction;
+import proguard.classfile.instruction.Instruction;
+import proguard.classfile.instruction.visitor.InstructionVisitor;
+
+/**
+ * This class computes hashes of the blocks of a {@link JvmCfa}, for instance for a {@link
+ * proguard.analysis.cpa.bam.PersistentBamCache}. The hash of a method covers its code and the code
+ * of all methods that it may call, directly or indirectly, so it changes whenever the result of
+ * analyzing the method may change. Constants are hashed by their values rather than by their
+ * indices, so the hashes don't depend on the layout of the constant pools.
+ *
+ * <p>Methods that aren't in the CFA, like library methods, don't have a hash, but they do
+ * contribute their signatures to the hashes of the methods that call them.
+ *
+ * <p>Instances cache the hashes that they compute and share a single message digest, so they are
+ * not thread-safe. Analyses on different threads should each use their own hasher.
+ */
+public class JvmCfaBlockHasher implements Function<MethodSignature, String> {
+
+  private final JvmCfa cfa;
+  private final MessageDigest messageDigest;
+
+  // The hashes of the code of single methods and of the methods with their callees.
+  private final Map<MethodSignature, String> codeHashes = new HashMap<>();
+  private final Map<MethodSignature, String> blockHashes = new HashMap<>();
+
+  /**
+   * Creates a new hasher for the given CFA.
+   *
+   * @param cfa the control flow automaton that contains the code and the calls of the methods.
+   */
+  public JvmCfaBlockHasher(JvmCfa cfa) {
+    this.cfa = cfa;
+
+    try {
+      this.messageDigest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform has to support SHA-256.
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  // Implementations for Function.
+
+  /** Returns the hash of the given method and all methods that it may call, or null. */
+  @Override
+  public String apply(MethodSignature signature) {
+    if (cfa.getFunctionEntryNode(signature) == null) {
+      return null;
+    }
+
+    return blockHashes.computeIfAbsent(signature, this::computeBlockHash);
+  }
+
+  // Small utility methods.
+
+  /** Computes the hash of the code of the given method and of all methods it may call. */
+  private String computeBlockHash(MethodSignature signature) {
+    // Collect the code hashes of all reachable methods, sorted by signature.
+    Map<String, String> reachableCodeHashes = new TreeMap<>();
+    Deque<MethodSignature> pendingSignatures = new ArrayDeque<>();
+    pendingSignatures.add(signature);
+    while (!pendingSignatures.isEmpty()) {
+      MethodSignature currentSignature = pendingSignatures.poll();
+      if (reachableCodeHashes.containsKey(currentSignature.getFqn())) {
+        continue;
+      }
+
+      reachableCodeHashes.put(
+          currentSignature.getFqn(), codeHashes.computeIfAbsent(currentSignature, this::codeHash));
+
+      for (JvmCfaNode node : cfa.getFunctionNodes(currentSignature)) {
+        for (JvmCfaEdge edge : node.getLeavingEdges()) {
+          if (edge instanceof JvmCallCfaEdge) {
+            pendingSignatures.add(((JvmCallCfaEdge) edge).targetSignature());
+          }
+        }
+      }
+    }
+
+    Hasher hasher = new Hasher(messageDigest);
+    hasher.write(signature.getFqn());
+    for (Entry<String, String> entry : reachableCodeHashes.entrySet()) {
+      hasher.write(entry.getKey());
+      hasher.write(entry.getValue());
+    }
+    return hasher.hash();
+  }
+
+  /** Computes the hash of the code of the given method, which is empty if it's not in the CFA. */
+  private String codeHash(MethodSignature signature) {
+    JvmCfaNode entryNode = cfa.getFunctionEntryNode(signature);
+    if (entryNode == null) {
+      return "";
+    }
+
+    Clazz clazz = entryNode.getClazz();
+    Method method =
+        clazz.findMethod(signature.getMethodName(), signature.getDescriptor().toString());
+    if (method == null) {
+      return "";
+    }
+
+    Hasher hasher = new Hasher(messageDigest);
+    method.accept(clazz, new AllAttributeVisitor(hasher));
+    return hasher.hash();
+  }
+
+  /**
+   * This {@link AttributeVisitor} hashes the instructions and exception handlers of the code
+   * attributes that it visits, replacing constant indices by the constants that they refer to.
+   */
+  private static class Hasher
+      implements AttributeVisitor, InstructionVisitor, ExceptionInfoVisitor, ConstantVisitor {
+    private final MessageDigest messageDigest;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    private Hasher(MessageDigest messageDigest) {
+      this.messageDigest = messageDigest;
+    }
+
+    /** Returns the hexadecimal hash of everything that has been written so far. */
+    public String hash() {
+      byte[] digest = messageDigest.digest(bytes.toByteArray());
+
+      StringBuilder hash = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hash.append(Character.forDigit((b >> 4) & 0xf, 16));
+        hash.append(Character.forDigit(b & 0xf, 16));
+      }
+      return hash.toString();
+    }
+
+    // Implementations for AttributeVisitor.
+
+    @Override
+    public void visitAnyAttribute(Clazz clazz, Attribute attribute) {}
+
+    @Override
+    public void visitCodeAttribute(Clazz clazz, Method method, CodeAttribute codeAttribute) {
+      codeAttribute.instructionsAccept(clazz, method, this);
+      codeAttribute.exceptionsAccept(clazz, method, this);
+    }
+
+    // Implementations for InstructionVisitor.
+
+    @Override
+    public void visitAnyInstruction(
+        Clazz clazz,
+        Method method,
+        CodeAttribute codeAttribute,
+        int offset,
+        Instruction instruction) {
+      bytes.write(codeAttribute.code, offset, instruction.length(offset));
+    }
+
+    @Override
+    public void visitConstantInstruction(
+        Clazz clazz,
+        Method method,
+        CodeAttribute codeAttribute,
+        int offset,
+        ConstantInstruction constantInstruction) {
+      write(constantInstruction.opcode);
+      write(constantInstruction.constant);
+      clazz.constantPoolEntryAccept(constantInstruction.constantIndex, this);
+    }
+
+    // Implementations for ExceptionInfoVisitor.
+
+    @Override
+    public void visitExceptionInfo(
+        Clazz clazz, Method method, CodeAttribute codeAttribute, ExceptionInfo exceptionInfo) {
+      write(exceptionInfo.u2startPC);
+      write(exceptionInfo.u2endPC);
+      write(exceptionInfo.u2handlerPC);
+      write(exceptionInfo.u2catchType == 0 ? "" : clazz.getClassName(exceptionInfo.u2catchType));
+    }
+
+    // Implementations for ConstantVisitor.
+
+    @Override
+    public void visitAnyConstant(Clazz clazz, Constant constant) {
+      write(constant.getTag());
+    }
+
+    @Override
+    public void visitIntegerConstant(Clazz clazz, IntegerConstant integerConstant) {
+      write(integerConstant.getValue());
+    }
+
+    @Override
+    public void visitLongConstant(Clazz clazz, LongConstant longConstant) {
+      write(longConstant.getValue());
+    }
+
+    @Override
+    public void visitFloatConstant(Clazz clazz, FloatConstant floatConstant) {
+      write(Float.floatToRawIntBits(floatConstant.getValue()));
+    }
+
+    @Override
+    public void visitDoubleConstant(Clazz clazz, DoubleConstant doubleConstant) {
+      write(Double.doubleToRawLongBits(doubleConstant.getValue()));
+    }
+
+    @Override
+    public void visitStringConstant(Clazz clazz, StringConstant stringConstant) {
+      write(stringConstant.getString(clazz));
+    }
+
+    @Override
+    public void visitDynamicConstant(Clazz clazz, DynamicConstant dynamicConstant) {
+      write(dynamicConstant.getName(clazz));
+      write(dynamicConstant.getType(clazz));
+    }
+
+    @Override
+    public void visitInvokeDynamicConstant(
+        Clazz clazz, InvokeDynamicConstant invokeDynamicConstant) {
+      write(invokeDynamicConstant.getName(clazz));
+      write(invokeDynamicConstant.getType(clazz));
+    }
+
+    @Override
+    public void visitMethodHandleConstant(Clazz clazz, MethodHandleConstant methodHandleConstant) {
+      write(methodHandleConstant.getReferenceKind());
+      write(methodHandleConstant.getClassName(clazz));
+      write(methodHandleConstant.getName(clazz));
+      write(methodHandleConstant.getType(clazz));
+    }
+
+    @Override
+    public void visitAnyRefConstant(Clazz clazz, RefConstant refConstant) {
+      write(refConstant.getClassName(clazz));
+      write(refConstant.getName(clazz));
+      write(refConstant.getType(clazz));
+    }
+
+    @Override
+    public void visitClassConstant(Clazz clazz, ClassConstant classConstant) {
+      write(classConstant.getName(clazz));
+    }
+
+    @Override
+    public void visitMethodTypeConstant(Clazz clazz, MethodTypeConstant methodTypeConstant) {
+      write(methodTypeConstant.getType(clazz));
+    }
+
+    // Small utility methods.
+
+    private void write(int value) {
+      bytes.write(value >>> 24);
+      bytes.write(value >>> 16);
+      bytes.write(value >>> 8);
+      bytes.write(value);
+    }
+
+    private void write(long value) {
+      write((int) (value >>> 32));
+      write((int) value);
+    }
+
+    private void write(String value) {
+      byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+      write(valueBytes.length);
+      bytes.write(valueBytes, 0, valueBytes.length);
+    }
+  }
+}
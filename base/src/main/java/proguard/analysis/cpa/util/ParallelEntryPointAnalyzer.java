@@ -0,0 +1,166 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import proguard.analysis.cpa.bam.BamCache;
+import proguard.analysis.cpa.bam.ConcurrentBamCache;
+import proguard.analysis.cpa.bam.OverlayBamCache;
+import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
+import proguard.classfile.MethodSignature;
+
+/**
+ * Helper class to run an inter-procedural analysis, like a {@link TaintAnalyzer} or a {@link
+ * ValueAnalyzer}, from several entry points on multiple threads.
+ *
+ * <p>The analyses of the entry points share the {@link JvmCfa}, which they only read, and a {@link
+ * ConcurrentBamCache}. Each analysis gets its own {@link OverlayBamCache} on top of the shared
+ * cache, so it keeps its own reached sets and call stack, and it reuses the block abstractions that
+ * other analyses have completed. After an analysis has finished, its completed block abstractions
+ * are published to the shared cache.
+ *
+ * <p>For example:
+ *
+ * <pre>
+ * TaintAnalyzer.Builder builder = new TaintAnalyzer.Builder(cfa, sources, sinks);
+ * Map&lt;MethodSignature, TaintAnalyzerResult&gt; results =
+ *     new ParallelEntryPointAnalyzer&lt;&gt;(
+ *             cfa,
+ *             (cache, entryPoint) -&gt; builder.build(cache).analyze(entryPoint),
+ *             executorService)
+ *         .analyze(entryPoints);
+ * </pre>
+ */
+public class ParallelEntryPointAnalyzer<ResultT> {
+  /** An analysis of a single entry point. */
+  public interface EntryPointAnalysis<ResultT> {
+    /**
+     * Analyzes the given entry point, storing the block abstractions in the given cache. Analyses
+     * of different entry points run concurrently, so they must not share any state that isn't
+     * thread-safe, like invocation units.
+     */
+    ResultT analyze(BamCache<MethodSignature> cache, MethodSignature entryPoint);
+  }
+
+  private final JvmCfa cfa;
+  private final EntryPointAnalysis<ResultT> analysis;
+  private final ConcurrentBamCache<MethodSignature> sharedCache;
+  private final ExecutorService executorService;
+
+  /**
+   * Creates a new ParallelEntryPointAnalyzer with its own shared cache.
+   *
+   * @param cfa the control flow automaton of the analyzed program.
+   * @param analysis the analysis of a single entry point.
+   * @param executorService the executor service that runs the analyses, for example a shared {@link
+   *     java.util.concurrent.ForkJoinPool}. It is not shut down after the analyses.
+   */
+  public ParallelEntryPointAnalyzer(
+      JvmCfa cfa, EntryPointAnalysis<ResultT> analysis, ExecutorService executorService) {
+    this(cfa, analysis, new ConcurrentBamCache<>(), executorService);
+  }
+
+  /**
+   * Creates a new ParallelEntryPointAnalyzer.
+   *
+   * @param cfa the control flow automaton of the analyzed program.
+   * @param analysis the analysis of a single entry point.
+   * @param sharedCache the cache in which the analyses share their completed block abstractions,
+   *     possibly bounded to limit the memory usage.
+   * @param executorService the executor service that runs the analyses, for example a shared {@link
+   *     java.util.concurrent.ForkJoinPool}. It is not shut down after the analyses.
+   */
+  public ParallelEntryPointAnalyzer(
+      JvmCfa cfa,
+      EntryPointAnalysis<ResultT> analysis,
+      ConcurrentBamCache<MethodSignature> sharedCache,
+      ExecutorService executorService) {
+    this.cfa = cfa;
+    this.analysis = analysis;
+    this.sharedCache = sharedCache;
+    this.executorService = executorService;
+  }
+
+  /** Returns the cache in which the analyses share their completed block abstractions. */
+  public ConcurrentBamCache<MethodSignature> getSharedCache() {
+    return sharedCache;
+  }
+
+  /**
+   * Analyzes the given entry points concurrently and waits for all analyses to finish. Exceptions
+   * thrown by the analyses are rethrown.
+   *
+   * @param entryPoints the signatures of the methods to analyze.
+   * @return the results of the analyses, in the order of the given entry points.
+   */
+  public Map<MethodSignature, ResultT> analyze(Collection<MethodSignature> entryPoints) {
+    createExitNodes();
+
+    List<Future<ResultT>> futures = new ArrayList<>(entryPoints.size());
+    for (MethodSignature entryPoint : entryPoints) {
+      futures.add(executorService.submit(() -> analyze(entryPoint)));
+    }
+
+    Map<MethodSignature, ResultT> results = new LinkedHashMap<>();
+    try {
+      int index = 0;
+      for (MethodSignature entryPoint : entryPoints) {
+        results.put(entryPoint, futures.get(index++).get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Parallel execution is taking too long", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException
+          ? (RuntimeException) e.getCause()
+          : new RuntimeException(e.getCause());
+    }
+
+    return results;
+  }
+
+  // Small utility methods.
+
+  /** Analyzes the given entry point and publishes its completed block abstractions. */
+  private ResultT analyze(MethodSignature entryPoint) {
+    OverlayBamCache<MethodSignature> cache = new OverlayBamCache<>(sharedCache);
+    ResultT result = analysis.analyze(cache, entryPoint);
+    cache.publish();
+    return result;
+  }
+
+  /**
+   * Creates the exit nodes of all functions in the CFA. The analyses otherwise create them lazily,
+   * which would modify the CFA concurrently.
+   */
+  private void createExitNodes() {
+    for (JvmCfaNode entryNode : cfa.getFunctionEntryNodes()) {
+      cfa.getFunctionReturnExitNode(entryNode.getSignature(), entryNode.getClazz());
+      cfa.getFunctionExceptionExitNode(entryNode.getSignature(), entryNode.getClazz());
+    }
+  }
+}
@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
+import proguard.analysis.MetricsRegistry;
 import proguard.analysis.cpa.algorithms.CpaAlgorithm;
 import proguard.analysis.cpa.bam.BamCache;
 import proguard.analysis.cpa.bam.BamCacheImpl;
@@ -12,7 +13,7 @@ import proguard.analysis.cpa.bam.BamCpa;
 import proguard.analysis.cpa.bam.CpaWithBamOperators;
 import proguard.analysis.cpa.bam.NoOpRebuildOperator;
 import proguard.analysis.cpa.defaults.BreadthFirstWaitlist;
-import proguard.analysis.cpa.defaults.HashMapAbstractState;
+import proguard.analysis.cpa.defaults.HashTrieMapAbstractState;
 import proguard.analysis.cpa.defaults.NeverAbortOperator;
 import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
 import proguard.analysis.cpa.defaults.SetAbstractState;
@@ -76,7 +77,9 @@ import proguard.classfile.Signature;
  * TaintAnalyzer#analyze(MethodSignature)} for the analyzer.
  *
  * <p>{@link TaintAnalyzer} is currently not designed to be thread safe. Among the known reasons,
- * the currently available {@link BamCache}s are not designed for concurrent access.
+ * the {@link BamCache} of an analyzer is not designed for concurrent access. {@link
+ * ParallelEntryPointAnalyzer} can analyze several entry points concurrently, with analyzers built
+ * by {@link Builder#build(BamCache)} that share their results.
  */
 public class TaintAnalyzer {
 
@@ -89,6 +92,7 @@ public class TaintAnalyzer {
           JvmMemoryLocationCpa<SetAbstractState<TaintSource>>>
       memoryCpaCreator;
   private final Collection<? extends JvmTaintSink> taintSinks;
+  private final MetricsRegistry metrics;
 
   private TaintAnalyzer(
       Function<MethodSignature, BamCpa<JvmCfaNode, JvmCfaEdge, MethodSignature>> cpaCreator,
@@ -98,11 +102,13 @@ public class TaintAnalyzer {
               BamCpa<JvmCfaNode, JvmCfaEdge, MethodSignature>,
               JvmMemoryLocationCpa<SetAbstractState<TaintSource>>>
           memoryCpaCreator,
-      Collection<? extends JvmTaintSink> taintSinks) {
+      Collection<? extends JvmTaintSink> taintSinks,
+      MetricsRegistry metrics) {
     this.cpaCreator = cpaCreator;
     this.initialStateCreator = initialStateCreator;
     this.memoryCpaCreator = memoryCpaCreator;
     this.taintSinks = taintSinks;
+    this.metrics = metrics;
   }
 
   /**
@@ -120,7 +126,7 @@ public class TaintAnalyzer {
    */
   public TaintAnalyzerResult analyze(MethodSignature mainSignature) {
     BamCpa<JvmCfaNode, JvmCfaEdge, MethodSignature> taintCpa = cpaCreator.apply(mainSignature);
-    CpaAlgorithm cpaAlgorithm = new CpaAlgorithm(taintCpa);
+    CpaAlgorithm cpaAlgorithm = new CpaAlgorithm(taintCpa, metrics);
 
     Waitlist waitList = new BreadthFirstWaitlist();
     ProgramLocationDependentReachedSet<
@@ -156,6 +162,7 @@ public class TaintAnalyzer {
     private final Set<? extends JvmTaintSink> taintSinks;
     private int maxCallStackDepth = 10;
     private AbortOperator abortOperator = NeverAbortOperator.INSTANCE;
+    private MetricsRegistry metrics;
     private AbortOperator memoryLocationAbortOperator = NeverAbortOperator.INSTANCE;
     private Map<MethodSignature, JvmTaintTransformer> taintTransformers = Collections.emptyMap();
     private Map<Call, Set<JvmMemoryLocation>> extraTaintPropagationLocations =
@@ -172,6 +179,15 @@ public class TaintAnalyzer {
 
     /** Build a {@link TaintAnalyzer} */
     public TaintAnalyzer build() {
+      return build(new BamCacheImpl<>());
+    }
+
+    /**
+     * Build a {@link TaintAnalyzer} that stores its results in the given {@link BamCache}, for
+     * instance an {@link proguard.analysis.cpa.bam.OverlayBamCache} to share results with analyses
+     * running concurrently.
+     */
+    public TaintAnalyzer build(BamCache<MethodSignature> cache) {
       Map<Signature, Set<JvmTaintSource>> sourcesMap = JvmTaintCpa.createSourcesMap(taintSources);
 
       ConfigurableProgramAnalysis intraproceduralCpa =
@@ -184,7 +200,6 @@ public class TaintAnalyzer {
               new JvmTaintReduceOperator(reduceHeap, sourcesMap),
               new JvmTaintExpandOperator(cfa, sourcesMap, reduceHeap),
               new NoOpRebuildOperator());
-      BamCache<MethodSignature> cache = new BamCacheImpl<>();
 
       return new TaintAnalyzer(
           mainMethodSignature ->
@@ -201,14 +216,15 @@ public class TaintAnalyzer {
                   new JvmFrameAbstractState<>(),
                   new JvmForgetfulHeapAbstractState<SetAbstractState<TaintSource>>(
                       SetAbstractState.bottom),
-                  new HashMapAbstractState<>()),
+                  new HashTrieMapAbstractState<>()),
           taintBamCpa ->
               new JvmMemoryLocationCpa<SetAbstractState<TaintSource>>(
                   SetAbstractState.bottom,
                   taintBamCpa,
                   extraTaintPropagationLocations,
                   memoryLocationAbortOperator),
-          taintSinks);
+          taintSinks,
+          metrics);
     }
 
     /**
@@ -258,5 +274,14 @@ public class TaintAnalyzer {
       this.extraTaintPropagationLocations = extraTaintPropagationLocations;
       return this;
     }
+
+    /**
+     * Sets a registry in which the CPA algorithm records the duration of each analysis and the
+     * numbers of processed and generated states. By default, no metrics are recorded.
+     */
+    public Builder setMetrics(MetricsRegistry metrics) {
+      this.metrics = metrics;
+      return this;
+    }
   }
 }
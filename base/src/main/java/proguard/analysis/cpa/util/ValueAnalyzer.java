@@ -3,6 +3,7 @@ package proguard.analysis.cpa.util;
 import static proguard.analysis.cpa.jvm.domain.value.ValueAbstractState.UNKNOWN;
 
 import java.util.function.Function;
+import proguard.analysis.MetricsRegistry;
 import proguard.analysis.cpa.algorithms.CpaAlgorithm;
 import proguard.analysis.cpa.bam.BamCache;
 import proguard.analysis.cpa.bam.BamCacheImpl;
@@ -11,7 +12,7 @@ import proguard.analysis.cpa.bam.CpaWithBamOperators;
 import proguard.analysis.cpa.bam.NoOpRebuildOperator;
 import proguard.analysis.cpa.defaults.DelegateAbstractDomain;
 import proguard.analysis.cpa.defaults.DepthFirstWaitlist;
-import proguard.analysis.cpa.defaults.HashMapAbstractState;
+import proguard.analysis.cpa.defaults.HashTrieMapAbstractState;
 import proguard.analysis.cpa.defaults.MergeJoinOperator;
 import proguard.analysis.cpa.defaults.NeverAbortOperator;
 import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
@@ -59,19 +60,23 @@ import proguard.evaluation.value.ValueFactory;
  * <p>{@link ValueAnalyzer} is currently not designed to be thread safe. Among the known reasons,
  * the currently available {@link BamCache}s are not designed for concurrent access and a different
  * {@link ExecutingInvocationUnit} (used by {@link JvmValueTransferRelation}) should be used by each
- * thread.
+ * thread. {@link ParallelEntryPointAnalyzer} can analyze several entry points concurrently, with
+ * analyzers built by {@link Builder#build(BamCache)} that share their results.
  */
 public class ValueAnalyzer {
 
   private final Function<MethodSignature, BamCpa<JvmCfaNode, JvmCfaEdge, MethodSignature>>
       cpaCreator;
   private final Function<MethodSignature, JvmValueAbstractState> initialStateCreator;
+  private final MetricsRegistry metrics;
 
   private ValueAnalyzer(
       Function<MethodSignature, BamCpa<JvmCfaNode, JvmCfaEdge, MethodSignature>> cpaCreator,
-      Function<MethodSignature, JvmValueAbstractState> initialStateCreator) {
+      Function<MethodSignature, JvmValueAbstractState> initialStateCreator,
+      MetricsRegistry metrics) {
     this.cpaCreator = cpaCreator;
     this.initialStateCreator = initialStateCreator;
+    this.metrics = metrics;
   }
 
   /**
@@ -89,7 +94,7 @@ public class ValueAnalyzer {
    */
   public ValueAnalysisResult analyze(MethodSignature mainSignature) {
     BamCpa<JvmCfaNode, JvmCfaEdge, MethodSignature> cpa = cpaCreator.apply(mainSignature);
-    CpaAlgorithm cpaAlgorithm = new CpaAlgorithm(cpa);
+    CpaAlgorithm cpaAlgorithm = new CpaAlgorithm(cpa, metrics);
 
     Waitlist waitList = new DepthFirstWaitlist();
     ReachedSet reachedSet =
@@ -146,8 +151,10 @@ public class ValueAnalyzer {
    */
   public static class Builder {
     private final JvmCfa cfa;
+    private final ValueFactory valueFactory;
     private int maxCallStackDepth = 10;
     private AbortOperator abortOperator = NeverAbortOperator.INSTANCE;
+    private MetricsRegistry metrics;
     private ExecutingInvocationUnit.Builder invocationUnitBuilder;
 
     /**
@@ -162,6 +169,7 @@ public class ValueAnalyzer {
      */
     public Builder(JvmCfa cfa, ClassPool programClassPool, ClassPool libraryClassPool) {
       this.cfa = cfa;
+      this.valueFactory = new ParticularValueFactory(new JvmCfaReferenceValueFactory(cfa));
       this.invocationUnitBuilder =
           new ExecutingInvocationUnit.Builder(programClassPool, libraryClassPool)
               .setEnableSameInstanceIdApproximation(true);
@@ -175,12 +183,24 @@ public class ValueAnalyzer {
      */
     public Builder(JvmCfa cfa, ExecutingInvocationUnit.Builder invocationUnitBuilder) {
       this.cfa = cfa;
+      this.valueFactory = new ParticularValueFactory(new JvmCfaReferenceValueFactory(cfa));
       this.invocationUnitBuilder = invocationUnitBuilder;
     }
 
     /** Build a {@link ValueAnalyzer}. */
     public ValueAnalyzer build() {
-      ValueFactory valueFactory = new ParticularValueFactory(new JvmCfaReferenceValueFactory(cfa));
+      return build(new BamCacheImpl<>());
+    }
+
+    /**
+     * Build a {@link ValueAnalyzer} that stores its results in the given {@link BamCache}, for
+     * instance an {@link proguard.analysis.cpa.bam.OverlayBamCache} to share results with analyses
+     * running concurrently.
+     *
+     * <p>All analyzers built by the same builder use the same {@link ValueFactory}, so that their
+     * abstract states, and thus their cache entries, can be compared.
+     */
+    public ValueAnalyzer build(BamCache<MethodSignature> cache) {
       ExecutingInvocationUnit invocationUnit = invocationUnitBuilder.build(valueFactory);
       TransferRelation valueTransferRelation =
           new JvmValueTransferRelation(valueFactory, invocationUnit);
@@ -201,7 +221,6 @@ public class ValueAnalyzer {
               new JvmValueReduceOperator(valueFactory, invocationUnit, reduceHeap),
               new JvmValueExpandOperator(valueFactory, invocationUnit, cfa, reduceHeap),
               new NoOpRebuildOperator());
-      BamCache<MethodSignature> cache = new BamCacheImpl<>();
 
       return new ValueAnalyzer(
           mainMethodSignature ->
@@ -219,8 +238,9 @@ public class ValueAnalyzer {
                   cfa.getFunctionEntryNode(mainMethodSignature),
                   new JvmFrameAbstractState<>(),
                   new JvmShallowHeapAbstractState<>(
-                      new HashMapAbstractState<>(), JvmCfaNode.class, UNKNOWN),
-                  new HashMapAbstractState<>()));
+                      new HashTrieMapAbstractState<>(), JvmCfaNode.class, UNKNOWN),
+                  new HashTrieMapAbstractState<>()),
+          metrics);
     }
 
     /**
@@ -251,5 +271,14 @@ public class ValueAnalyzer {
       this.abortOperator = abortOperator;
       return this;
     }
+
+    /**
+     * Sets a registry in which the CPA algorithm records the duration of each analysis and the
+     * numbers of processed and generated states. By default, no metrics are recorded.
+     */
+    public Builder setMetrics(MetricsRegistry metrics) {
+      this.metrics = metrics;
+      return this;
+    }
   }
 }
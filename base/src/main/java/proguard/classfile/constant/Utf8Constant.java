@@ -24,37 +24,83 @@ import proguard.util.StringUtil;
 /**
  * This {@link Constant} represents a UTF-8 constant in the constant pool.
  *
+ * <p>The constant can hold its data as a String, or in its compact modified UTF-8 form, which it
+ * then only decodes when the String is first requested. Constants with interned data share their
+ * bytes and their decoded String with all other constants in the same {@link Utf8Interner}.
+ *
  * @author Eric Lafortune
  */
 public class Utf8Constant extends Constant {
 
-  private String string;
+  // The data: a String, a modified UTF-8 byte array that hasn't been
+  // decoded yet, or a shared Utf8Interner.Entry. A single field lets
+  // threads decode the data concurrently without further synchronization.
+  private Object value;
 
   /** Creates an uninitialized Utf8Constant. */
   public Utf8Constant() {}
 
   /** Creates a Utf8Constant containing the given string. */
   public Utf8Constant(String string) {
-    this.string = string;
+    this.value = string;
   }
 
   /** Initializes the UTF-8 data with an array of bytes. */
   public void setBytes(byte[] bytes) {
-    this.string = StringUtil.getString(bytes);
+    this.value = StringUtil.getString(bytes);
+  }
+
+  /**
+   * Initializes the UTF-8 data with an array of modified UTF-8 bytes, which are only decoded when
+   * the String is first requested. The constant keeps the given array, so the caller shouldn't
+   * modify it afterwards.
+   */
+  public void setLazyBytes(byte[] bytes) {
+    this.value = bytes;
+  }
+
+  /**
+   * Initializes the UTF-8 data with an array of modified UTF-8 bytes, sharing them through the
+   * given interner. The bytes are only decoded when the String is first requested by any of the
+   * constants that share them. The interner may keep the given array, so the caller shouldn't
+   * modify it afterwards.
+   */
+  public void setInternedBytes(byte[] bytes, Utf8Interner utf8Interner) {
+    this.value = utf8Interner.intern(bytes);
   }
 
   /** Returns the UTF-8 data as an array of bytes. */
   public byte[] getBytes() {
-    return StringUtil.getModifiedUtf8Bytes(string);
+    Object value = this.value;
+
+    return value instanceof byte[]
+        ? ((byte[]) value).clone()
+        : value instanceof Utf8Interner.Entry
+            ? ((Utf8Interner.Entry) value).getBytes()
+            : StringUtil.getModifiedUtf8Bytes((String) value);
   }
 
   /** Initializes the UTF-8 data with a String. */
   public void setString(String utf8String) {
-    this.string = utf8String;
+    this.value = utf8String;
   }
 
   /** Returns the UTF-8 data as a String. */
   public String getString() {
+    Object value = this.value;
+    if (value instanceof String || value == null) {
+      return (String) value;
+    }
+
+    String string =
+        value instanceof byte[]
+            ? StringUtil.getString((byte[]) value)
+            : ((Utf8Interner.Entry) value).getString();
+
+    // Only keep the decoded String, which is shared as well if the data
+    // was interned.
+    this.value = string;
+
     return string;
   }
 
@@ -89,16 +135,17 @@ public class Utf8Constant extends Constant {
 
     Utf8Constant other = (Utf8Constant) object;
 
-    return this.string.equals(other.string);
+    // Constants that still share an interned entry have the same data.
+    return this.value == other.value || this.getString().equals(other.getString());
   }
 
   @Override
   public int hashCode() {
-    return Constant.UTF8 ^ string.hashCode();
+    return Constant.UTF8 ^ getString().hashCode();
   }
 
   @Override
   public String toString() {
-    return "Utf8(" + string + ")";
+    return "Utf8(" + getString() + ")";
   }
 }
@@ -0,0 +1,100 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.constant;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import proguard.util.StringUtil;
+
+/**
+ * This class deduplicates the modified UTF-8 data of {@link Utf8Constant} instances. Constants
+ * with the same data share a single entry, which holds the compact byte representation and
+ * caches the decoded String once any of the constants needs it.
+ *
+ * <p>A single interner is typically shared by all class readers that fill a class pool, or by all
+ * class pools of an application. It is thread-safe, so it can be shared between worker threads.
+ *
+ * @see Utf8Constant#setInternedBytes(byte[], Utf8Interner)
+ */
+public class Utf8Interner {
+  private final ConcurrentMap<Entry, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the shared entry for the given modified UTF-8 data. The interner may keep the given
+   * array, so the caller shouldn't modify it afterwards.
+   */
+  Entry intern(byte[] bytes) {
+    Entry entry = new Entry(bytes);
+    Entry sharedEntry = entries.putIfAbsent(entry, entry);
+
+    return sharedEntry != null ? sharedEntry : entry;
+  }
+
+  /** Returns the number of distinct entries in this interner. */
+  public int size() {
+    return entries.size();
+  }
+
+  /** Removes all entries. Constants that already share entries keep them. */
+  public void clear() {
+    entries.clear();
+  }
+
+  /** The shared modified UTF-8 data of interned constants, with its lazily decoded String. */
+  static class Entry {
+    private final byte[] bytes;
+    private final int hashCode;
+    private volatile String string;
+
+    private Entry(byte[] bytes) {
+      this.bytes = bytes;
+      this.hashCode = Arrays.hashCode(bytes);
+    }
+
+    /** Returns a copy of the modified UTF-8 data. */
+    byte[] getBytes() {
+      return bytes.clone();
+    }
+
+    /** Returns the decoded String, decoding it once for all constants that share this entry. */
+    String getString() {
+      String string = this.string;
+      if (string == null) {
+        // Racing threads decode the same data, so any result will do.
+        string = StringUtil.getString(bytes);
+        this.string = string;
+      }
+
+      return string;
+    }
+
+    // Implementations for Object.
+
+    @Override
+    public boolean equals(Object object) {
+      return object instanceof Entry && Arrays.equals(bytes, ((Entry) object).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
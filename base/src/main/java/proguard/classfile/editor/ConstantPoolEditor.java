@@ -17,7 +17,6 @@
  */
 package proguard.classfile.editor;
 
-import java.util.HashMap;
 import proguard.classfile.*;
 import proguard.classfile.constant.*;
 import proguard.classfile.constant.visitor.ConstantVisitor;
@@ -28,8 +27,11 @@ import proguard.util.ArrayUtil;
 /**
  * This class can add constant pool entries to a given class.
  *
- * <p>If you're building a class from scratch, it is more efficient to reuse a single instance of
- * this editor for all constants that you add.
+ * <p>Editors that look up many constants index the constant pool after a few lookups, so they
+ * don't need to scan it for every constant. Editors that are created with the same {@link
+ * ConstantPoolIndexCache} share the indices of their classes. An editor validates the index when it
+ * starts using it, so constants may be changed in place between the uses of different editors, but
+ * not while an editor is using the index.
  *
  * @author Eric Lafortune
  */
@@ -38,10 +40,14 @@ public class ConstantPoolEditor {
 
   private static final int SIZE_INCREMENT = 16;
 
+  // The number of lookups after which an editor uses an index.
+  private static final int MAXIMUM_SCAN_COUNT = 8;
+
   private final ProgramClass targetClass;
   private final ConstantVisitor constantReferenceInitializer;
-  private HashMap<Constant, Integer> cachedIndices;
-  private int cachedCount;
+  private final ConstantPoolIndexCache constantPoolIndexCache;
+  private ConstantPoolIndex constantPoolIndex;
+  private int scanCount;
 
   /**
    * Creates a new ConstantPoolEditor.
@@ -62,9 +68,32 @@ public class ConstantPoolEditor {
    */
   public ConstantPoolEditor(
       ProgramClass targetClass, ClassPool programClassPool, ClassPool libraryClassPool) {
+    this(targetClass, programClassPool, libraryClassPool, (ConstantPoolIndexCache) null);
+  }
+
+  /**
+   * Creates a new ConstantPoolEditor that automatically initializes class references and class
+   * member references in new constants.
+   *
+   * @param targetClass the target class in which constants are to be edited.
+   * @param programClassPool the program class pool from which new constants can be initialized.
+   * @param libraryClassPool the library class pool from which new constants can be initialized.
+   * @param constantPoolIndexCache an optional cache in which the editor shares the index of the
+   *     constant pool with other editors.
+   */
+  public ConstantPoolEditor(
+      ProgramClass targetClass,
+      ClassPool programClassPool,
+      ClassPool libraryClassPool,
+      ConstantPoolIndexCache constantPoolIndexCache) {
     // Automatically start caching indices of constants if we're creating
     // a class from scratch.
-    this(targetClass, programClassPool, libraryClassPool, targetClass.u2constantPoolCount <= 1);
+    this(
+        targetClass,
+        programClassPool,
+        libraryClassPool,
+        targetClass.u2constantPoolCount <= 1,
+        constantPoolIndexCache);
   }
 
   /**
@@ -74,14 +103,18 @@ public class ConstantPoolEditor {
    * @param targetClass the target class in which constants are to be edited.
    * @param programClassPool the program class pool from which new constants can be initialized.
    * @param libraryClassPool the library class pool from which new constants can be initialized.
-   * @param cacheIndices specifies whether indices of constants should be cached.
+   * @param cacheIndices specifies whether indices of constants should be cached right away.
+   * @param constantPoolIndexCache an optional cache in which the editor shares the index of the
+   *     constant pool with other editors.
    */
   ConstantPoolEditor(
       ProgramClass targetClass,
       ClassPool programClassPool,
       ClassPool libraryClassPool,
-      boolean cacheIndices) {
+      boolean cacheIndices,
+      ConstantPoolIndexCache constantPoolIndexCache) {
     this.targetClass = targetClass;
+    this.constantPoolIndexCache = constantPoolIndexCache;
 
     constantReferenceInitializer =
         programClassPool == null
@@ -89,25 +122,9 @@ public class ConstantPoolEditor {
             : new WildcardConstantFilter(
                 new ClassReferenceInitializer(programClassPool, libraryClassPool));
 
-    // Should we maintain a cache, for efficiency, if this editor will be
-    // used to add many constants?
-    if (cacheIndices) {
-      if (DEBUG) {
-        System.out.println("ConstantPoolEditor: starting with cache");
-      }
-
-      cachedIndices = new HashMap<>();
-      cachedCount = targetClass.u2constantPoolCount;
-
-      // Initialize the cache, should the constant pool already contain
-      // any elements (always starting at index 1).
-      for (int index = 1; index < cachedCount; index++) {
-        Constant constant = targetClass.constantPool[index];
-        if (constant != null) {
-          cachedIndices.put(constant, Integer.valueOf(index));
-        }
-      }
-    }
+    // Only get an index once it pays off, right away if this editor
+    // will be used to add many constants.
+    scanCount = cacheIndices ? MAXIMUM_SCAN_COUNT : 0;
   }
 
   /** Returns the target class in which constants are edited. */
@@ -606,7 +623,6 @@ public class ConstantPoolEditor {
    */
   public int findOrAddConstant(Constant constant) {
     int constantPoolCount = targetClass.u2constantPoolCount;
-    Constant[] constantPool = targetClass.constantPool;
 
     if (DEBUG) {
       System.out.println(
@@ -618,63 +634,37 @@ public class ConstantPoolEditor {
               + constant);
     }
 
-    // Clear the cache if another editor has added any constants behind our back.
-    if (cachedCount > 0 && cachedCount != constantPoolCount) {
+    // Scan the constant pool for the first few constants. Otherwise look
+    // for the constant in an index, making sure that it is still valid
+    // when we start using it.
+    int index;
+    if (scanCount < MAXIMUM_SCAN_COUNT) {
+      scanCount++;
+      index = ConstantPoolIndex.scan(targetClass, constant);
+    } else {
+      if (constantPoolIndex == null) {
+        constantPoolIndex =
+            constantPoolIndexCache != null
+                ? constantPoolIndexCache.indexOf(targetClass)
+                : new ConstantPoolIndex(targetClass);
+        constantPoolIndex.validate(targetClass);
+      }
+      index = constantPoolIndex.indexOf(targetClass, constant);
+    }
+    if (index > 0) {
       if (DEBUG) {
         System.out.println(
             "ConstantPoolEditor: ["
                 + (targetClass.u2thisClass > 0 ? targetClass.getName() : "(dummy)")
                 + ", "
                 + constantPoolCount
-                + " entries, "
-                + cachedCount
-                + " cached] clearing cache");
+                + " entries] found ["
+                + index
+                + "] "
+                + constant);
       }
 
-      cachedIndices = null;
-    }
-
-    // Do we have a cache with constant indices?
-    if (cachedIndices != null) {
-      // Look for the index in the hash map.
-      Integer index = cachedIndices.get(constant);
-      if (index != null) {
-        if (DEBUG) {
-          System.out.println(
-              "ConstantPoolEditor: ["
-                  + (targetClass.u2thisClass > 0 ? targetClass.getName() : "(dummy)")
-                  + ", "
-                  + constantPoolCount
-                  + " entries] cached ["
-                  + index
-                  + "] "
-                  + constant);
-        }
-
-        return index.intValue();
-      }
-
-      // It's not in the map yet. Add it now.
-      cachedIndices.put(constant, Integer.valueOf(constantPoolCount));
-    } else {
-      // Look for the constant in the array (always starting at index 1).
-      for (int index = 1; index < constantPoolCount; index++) {
-        if (constant.equals(constantPool[index])) {
-          if (DEBUG) {
-            System.out.println(
-                "ConstantPoolEditor: ["
-                    + (targetClass.u2thisClass > 0 ? targetClass.getName() : "(dummy)")
-                    + ", "
-                    + constantPoolCount
-                    + " entries] found ["
-                    + index
-                    + "] "
-                    + constant);
-          }
-
-          return index;
-        }
-      }
+      return index;
     }
 
     // We haven't found the constant in the pool. Just add it.
@@ -726,7 +716,12 @@ public class ConstantPoolEditor {
     constantPool[constantPoolCount] = constant;
 
     // Update the counts.
-    targetClass.u2constantPoolCount = cachedCount = constantPoolCount + constantSize;
+    targetClass.u2constantPoolCount = constantPoolCount + constantSize;
+
+    // Update the index, if any.
+    if (constantPoolIndex != null) {
+      constantPoolIndex.constantAdded(targetClass);
+    }
 
     // Initialize the class references and class member references in the
     // constant, if necessary.
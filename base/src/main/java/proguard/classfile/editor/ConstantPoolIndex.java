@@ -0,0 +1,200 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile.editor;
+
+import java.util.HashMap;
+import proguard.classfile.ProgramClass;
+import proguard.classfile.constant.Constant;
+
+/**
+ * This class indexes the constant pool of a program class, so {@link ConstantPoolEditor} instances
+ * can find existing constants without scanning the entire constant pool. An editor creates its own
+ * index, or shares it with other editors through a {@link ConstantPoolIndexCache}, and updates it
+ * incrementally as it adds constants.
+ *
+ * <p>The index only hashes the constants once an editor starts using it. It rebuilds itself
+ * whenever the constant pool has been changed without its knowledge, for instance when it has been
+ * shrunk or sorted, and it checks every index that it returns against the actual constant pool.
+ * Constants may also be changed in place, for instance with {@link
+ * proguard.classfile.constant.Utf8Constant#setString(String)}, so editors {@link
+ * #validate(ProgramClass) validate} the index before they start using it.
+ *
+ * <p>Instances are not thread-safe, like the classes that they index.
+ *
+ * @see ConstantPoolEditor
+ */
+final class ConstantPoolIndex {
+  private Constant[] constantPool;
+  private int constantPoolCount;
+  private Constant lastConstant;
+  private HashMap<Constant, Integer> indices;
+
+  /** Creates a new index for the given class. */
+  ConstantPoolIndex(ProgramClass programClass) {
+    track(programClass);
+  }
+
+  /**
+   * Returns the index of the given constant in the constant pool of the given class, or -1 if it
+   * isn't present, scanning the constant pool (from index 1), without using any index.
+   */
+  static int scan(ProgramClass programClass, Constant constant) {
+    int constantPoolCount = programClass.u2constantPoolCount;
+    Constant[] constantPool = programClass.constantPool;
+
+    for (int index = 1; index < constantPoolCount; index++) {
+      if (constant.equals(constantPool[index])) {
+        return index;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Makes sure that the index corresponds to the constants of the given class, hashing them if
+   * they haven't been hashed yet or if any of them have been changed in place since they were
+   * hashed.
+   */
+  void validate(ProgramClass programClass) {
+    update(programClass);
+
+    if (!isValid()) {
+      hashConstants(programClass);
+    }
+  }
+
+  /**
+   * Returns the index of the given constant in the constant pool of the given class, or -1 if it
+   * isn't present.
+   */
+  int indexOf(ProgramClass programClass, Constant constant) {
+    update(programClass);
+
+    Integer index = indices.get(constant);
+    if (index == null) {
+      return -1;
+    }
+
+    int constantIndex = index.intValue();
+    if (constantIndex < constantPoolCount
+        && constant.equals(programClass.constantPool[constantIndex])) {
+      return constantIndex;
+    }
+
+    // The constant pool has been modified in place. Start over.
+    hashConstants(programClass);
+
+    index = indices.get(constant);
+
+    return index == null ? -1 : index.intValue();
+  }
+
+  /** Updates the index after a constant has been added to the constant pool of the given class. */
+  void constantAdded(ProgramClass programClass) {
+    if (indices != null) {
+      update(programClass);
+    }
+  }
+
+  // Small utility methods.
+
+  /**
+   * Makes sure that the index covers the constant pool of the given class, hashing the constants
+   * that have been added since the last update, or all constants if the constant pool has changed
+   * otherwise.
+   */
+  private void update(ProgramClass programClass) {
+    if (indices == null || !isExtendedBy(programClass)) {
+      hashConstants(programClass);
+    } else if (constantPoolCount < programClass.u2constantPoolCount) {
+      int previousConstantPoolCount = constantPoolCount;
+      track(programClass);
+      hashConstants(previousConstantPoolCount);
+    }
+  }
+
+  /**
+   * Returns whether the constant pool of the given class still starts with the constants that the
+   * index has seen. Other editors may have removed and added constants in the meantime, so the
+   * last constant that the index has seen has to be the same one.
+   */
+  private boolean isExtendedBy(ProgramClass programClass) {
+    return constantPoolCount <= programClass.u2constantPoolCount
+        && lastConstant == lastConstant(programClass.constantPool, constantPoolCount);
+  }
+
+  /** Returns the last constant of the given constant pool, or null if it's empty. */
+  private static Constant lastConstant(Constant[] constantPool, int constantPoolCount) {
+    // Category 2 constants take up two entries.
+    for (int index = constantPoolCount - 1; index > 0 && index >= constantPoolCount - 2; index--) {
+      if (constantPool[index] != null) {
+        return constantPool[index];
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns whether every hashed constant is still found at its own index, or at an earlier index
+   * with an equal constant. A constant that has been changed in place is no longer found under its
+   * new hash code.
+   */
+  private boolean isValid() {
+    for (int index = 1; index < constantPoolCount; index++) {
+      Constant constant = constantPool[index];
+      if (constant != null) {
+        Integer constantIndex = indices.get(constant);
+        if (constantIndex == null
+            || constantIndex.intValue() > index
+            || !constant.equals(constantPool[constantIndex.intValue()])) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /** Starts tracking the current constant pool of the given class. */
+  private void track(ProgramClass programClass) {
+    constantPool = programClass.constantPool;
+    constantPoolCount = programClass.u2constantPoolCount;
+    lastConstant = lastConstant(constantPool, constantPoolCount);
+  }
+
+  /** Hashes all constants of the constant pool of the given class. */
+  private void hashConstants(ProgramClass programClass) {
+    track(programClass);
+    indices = new HashMap<>(Math.max(16, constantPoolCount * 2));
+    hashConstants(1);
+  }
+
+  /** Hashes the tracked constants from the given index onwards. */
+  private void hashConstants(int startIndex) {
+    // Keep the first occurrence of any duplicate constants, as a
+    // linear scan would (always starting at index 1).
+    for (int index = startIndex; index < constantPoolCount; index++) {
+      Constant constant = constantPool[index];
+      if (constant != null) {
+        indices.putIfAbsent(constant, Integer.valueOf(index));
+      }
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile.editor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import proguard.classfile.ProgramClass;
+
+/**
+ * This cache lets the {@link ConstantPoolEditor} instances that are created with it share the
+ * indices of the constant pools of their classes, so editors that only look up a few constants each
+ * don't have to index the same constant pool over and over again. The caller owns the cache, for
+ * instance for the duration of a processing pass, and the indices disappear with it.
+ *
+ * <p>The cache itself is thread-safe, so editors on different threads can share it, as long as
+ * each class is only edited by one thread at a time.
+ *
+ * @see ConstantPoolEditor
+ */
+public class ConstantPoolIndexCache {
+  private final Map<ProgramClass, ConstantPoolIndex> indices = new ConcurrentHashMap<>();
+
+  /** Forgets the indices of all classes. */
+  public void clear() {
+    indices.clear();
+  }
+
+  /** Returns the index of the given class, creating it if necessary. */
+  ConstantPoolIndex indexOf(ProgramClass programClass) {
+    return indices.computeIfAbsent(programClass, ConstantPoolIndex::new);
+  }
+}
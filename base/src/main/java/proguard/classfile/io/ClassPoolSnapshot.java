@@ -0,0 +1,407 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.io;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import proguard.classfile.*;
+import proguard.util.StringUtil;
+
+/**
+ * This utility class writes and reads binary snapshots of initialized library class pools. A
+ * snapshot contains the classes with their fields and methods, and their initialized references:
+ * superclasses, interfaces, subclasses, and the classes referenced by the member descriptors.
+ * Restoring a snapshot from a memory-mapped file is much faster than reading and initializing the
+ * original class files.
+ *
+ * <p>Each snapshot carries a key, typically the {@link #checksum(File...) checksum} of the
+ * original class path entries, so stale snapshots can be detected and ignored.
+ *
+ * <p>References to classes outside the class pool, such as program classes, are not stored, and
+ * neither is any processing information. Kotlin metadata can't be stored either, since the
+ * initialized classes no longer contain its encoded form, but it can explicitly be left out, for
+ * instance for analyses that don't need it. Such snapshots should then have their own keys.
+ */
+public class ClassPoolSnapshot {
+  private static final int MAGIC = 0x50475350;
+  private static final int VERSION = 1;
+
+  private static final int NONE = -1;
+
+  /**
+   * Writes a snapshot of the given library class pool to the given output stream. The classes must
+   * not have Kotlin metadata.
+   *
+   * @param libraryClassPool the class pool, containing only library classes.
+   * @param key the key of the snapshot, for instance the checksum of the class path entries.
+   * @param outputStream the stream to which the snapshot is written. It is not closed.
+   */
+  public static void write(ClassPool libraryClassPool, long key, OutputStream outputStream)
+      throws IOException {
+    write(libraryClassPool, key, false, outputStream);
+  }
+
+  /**
+   * Writes a snapshot of the given library class pool to the given output stream.
+   *
+   * @param libraryClassPool the class pool, containing only library classes.
+   * @param key the key of the snapshot, for instance the checksum of the class path entries.
+   * @param dropKotlinMetadata specifies whether the Kotlin metadata of the classes should be left
+   *     out of the snapshot. Otherwise, classes with Kotlin metadata aren't supported.
+   * @param outputStream the stream to which the snapshot is written. It is not closed.
+   */
+  public static void write(
+      ClassPool libraryClassPool, long key, boolean dropKotlinMetadata, OutputStream outputStream)
+      throws IOException {
+    // Collect the classes and number them.
+    List<String> classNames = new ArrayList<>(libraryClassPool.size());
+    List<LibraryClass> classes = new ArrayList<>(libraryClassPool.size());
+    Map<Clazz, Integer> classIndices = new IdentityHashMap<>();
+
+    Iterator<String> classNameIterator = libraryClassPool.classNames();
+    while (classNameIterator.hasNext()) {
+      String className = classNameIterator.next();
+      Clazz clazz = libraryClassPool.getClass(className);
+      if (!(clazz instanceof LibraryClass)) {
+        throw new UnsupportedOperationException(
+            "Class pool snapshots do not support " + clazz.getClass().getName());
+      }
+
+      LibraryClass libraryClass = (LibraryClass) clazz;
+      if (libraryClass.kotlinMetadata != null && !dropKotlinMetadata) {
+        throw new UnsupportedOperationException(
+            "Class pool snapshots do not support Kotlin metadata (in class ["
+                + className
+                + "]), unless it is dropped");
+      }
+
+      classIndices.put(libraryClass, classes.size());
+      classNames.add(className);
+      classes.add(libraryClass);
+    }
+
+    // Write the classes to a buffer, collecting their strings.
+    Map<String, Integer> stringIndices = new LinkedHashMap<>();
+    ByteArrayOutputStream classData = new ByteArrayOutputStream();
+    DataOutputStream classOutput = new DataOutputStream(classData);
+
+    for (int index = 0; index < classes.size(); index++) {
+      LibraryClass libraryClass = classes.get(index);
+
+      classOutput.writeInt(stringIndex(stringIndices, classNames.get(index)));
+      classOutput.writeInt(stringIndex(stringIndices, libraryClass.thisClassName));
+      classOutput.writeInt(libraryClass.u2accessFlags);
+      classOutput.writeInt(stringIndex(stringIndices, libraryClass.superClassName));
+      classOutput.writeInt(classIndex(classIndices, libraryClass.superClass));
+
+      String[] interfaceNames = libraryClass.interfaceNames;
+      Clazz[] interfaceClasses = libraryClass.interfaceClasses;
+      classOutput.writeInt(interfaceNames == null ? NONE : interfaceNames.length);
+      if (interfaceNames != null) {
+        for (int interfaceIndex = 0; interfaceIndex < interfaceNames.length; interfaceIndex++) {
+          classOutput.writeInt(stringIndex(stringIndices, interfaceNames[interfaceIndex]));
+          classOutput.writeInt(
+              interfaceClasses != null && interfaceIndex < interfaceClasses.length
+                  ? classIndex(classIndices, interfaceClasses[interfaceIndex])
+                  : NONE);
+        }
+      }
+
+      LibraryField[] fields = libraryClass.fields;
+      classOutput.writeInt(fields == null ? NONE : fields.length);
+      if (fields != null) {
+        for (LibraryField field : fields) {
+          writeMember(classOutput, stringIndices, field);
+          classOutput.writeInt(classIndex(classIndices, field.referencedClass));
+        }
+      }
+
+      LibraryMethod[] methods = libraryClass.methods;
+      classOutput.writeInt(methods == null ? NONE : methods.length);
+      if (methods != null) {
+        for (LibraryMethod method : methods) {
+          writeMember(classOutput, stringIndices, method);
+          writeClassIndices(classOutput, classIndices, method.referencedClasses);
+        }
+      }
+
+      // Only keep the subclasses that are part of the snapshot.
+      int subClassCount = 0;
+      for (int subClassIndex = 0; subClassIndex < libraryClass.subClassCount; subClassIndex++) {
+        if (classIndices.containsKey(libraryClass.subClasses[subClassIndex])) {
+          subClassCount++;
+        }
+      }
+
+      classOutput.writeInt(subClassCount);
+      for (int subClassIndex = 0; subClassIndex < libraryClass.subClassCount; subClassIndex++) {
+        Integer classIndex = classIndices.get(libraryClass.subClasses[subClassIndex]);
+        if (classIndex != null) {
+          classOutput.writeInt(classIndex);
+        }
+      }
+    }
+
+    classOutput.flush();
+
+    // Write the header, the strings, and the classes.
+    DataOutputStream dataOutput = new DataOutputStream(new BufferedOutputStream(outputStream));
+    dataOutput.writeInt(MAGIC);
+    dataOutput.writeInt(VERSION);
+    dataOutput.writeLong(key);
+
+    dataOutput.writeInt(stringIndices.size());
+    for (String string : stringIndices.keySet()) {
+      byte[] bytes = StringUtil.getModifiedUtf8Bytes(string);
+      dataOutput.writeInt(bytes.length);
+      dataOutput.write(bytes);
+    }
+
+    dataOutput.writeInt(classes.size());
+    classData.writeTo(dataOutput);
+    dataOutput.flush();
+  }
+
+  /**
+   * Maps the given snapshot file into memory and restores the library class pool from it.
+   *
+   * @param file the snapshot file.
+   * @param key the expected key of the snapshot.
+   * @return the restored class pool, or null if the snapshot has a different key or version.
+   * @throws IOException if the file can't be read or if it doesn't contain a valid snapshot.
+   */
+  public static ClassPool read(File file, long key) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException(
+            "Can't map snapshot [" + file + "] of " + size + " bytes, it is larger than 2 GB");
+      }
+
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0L, size), key);
+    }
+  }
+
+  /**
+   * Restores a library class pool from the snapshot in the given buffer.
+   *
+   * @param buffer the buffer with the snapshot, from its position up to its limit.
+   * @param key the expected key of the snapshot.
+   * @return the restored class pool, or null if the snapshot has a different key or version.
+   * @throws IOException if the buffer doesn't contain a valid snapshot.
+   */
+  public static ClassPool read(ByteBuffer buffer, long key) throws IOException {
+    buffer = buffer.slice();
+
+    try {
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Invalid class pool snapshot");
+      }
+
+      if (buffer.getInt() != VERSION || buffer.getLong() != key) {
+        return null;
+      }
+
+      // Read the strings.
+      String[] strings = new String[buffer.getInt()];
+      byte[] bytes = new byte[256];
+      for (int index = 0; index < strings.length; index++) {
+        int length = buffer.getInt();
+        if (length > bytes.length) {
+          bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+
+        buffer.get(bytes, 0, length);
+        strings[index] = StringUtil.getString(bytes, 0, length);
+      }
+
+      // Create all classes up front, so they can refer to each other.
+      LibraryClass[] classes = new LibraryClass[buffer.getInt()];
+      for (int index = 0; index < classes.length; index++) {
+        classes[index] = new LibraryClass();
+      }
+
+      ClassPool classPool = new ClassPool();
+
+      for (LibraryClass libraryClass : classes) {
+        String poolName = string(strings, buffer.getInt());
+
+        libraryClass.thisClassName = string(strings, buffer.getInt());
+        libraryClass.u2accessFlags = buffer.getInt();
+        libraryClass.superClassName = string(strings, buffer.getInt());
+        libraryClass.superClass = clazz(classes, buffer.getInt());
+
+        int interfaceCount = buffer.getInt();
+        if (interfaceCount == NONE) {
+          libraryClass.interfaceNames = null;
+        } else {
+          String[] interfaceNames = new String[interfaceCount];
+          Clazz[] interfaceClasses = new Clazz[interfaceCount];
+          for (int interfaceIndex = 0; interfaceIndex < interfaceCount; interfaceIndex++) {
+            interfaceNames[interfaceIndex] = string(strings, buffer.getInt());
+            interfaceClasses[interfaceIndex] = clazz(classes, buffer.getInt());
+          }
+
+          libraryClass.interfaceNames = interfaceNames;
+          libraryClass.interfaceClasses = interfaceClasses;
+        }
+
+        int fieldCount = buffer.getInt();
+        if (fieldCount != NONE) {
+          LibraryField[] fields = new LibraryField[fieldCount];
+          for (int fieldIndex = 0; fieldIndex < fieldCount; fieldIndex++) {
+            int accessFlags = buffer.getInt();
+            String name = string(strings, buffer.getInt());
+            String descriptor = string(strings, buffer.getInt());
+
+            LibraryField field = new LibraryField(accessFlags, name, descriptor);
+            field.referencedClass = clazz(classes, buffer.getInt());
+            fields[fieldIndex] = field;
+          }
+
+          libraryClass.fields = fields;
+        }
+
+        int methodCount = buffer.getInt();
+        if (methodCount != NONE) {
+          LibraryMethod[] methods = new LibraryMethod[methodCount];
+          for (int methodIndex = 0; methodIndex < methodCount; methodIndex++) {
+            int accessFlags = buffer.getInt();
+            String name = string(strings, buffer.getInt());
+            String descriptor = string(strings, buffer.getInt());
+
+            LibraryMethod method = new LibraryMethod(accessFlags, name, descriptor);
+            method.referencedClasses = classes(classes, buffer);
+            methods[methodIndex] = method;
+          }
+
+          libraryClass.methods = methods;
+        }
+
+        int subClassCount = buffer.getInt();
+        if (subClassCount > 0) {
+          Clazz[] subClasses = new Clazz[subClassCount];
+          for (int subClassIndex = 0; subClassIndex < subClassCount; subClassIndex++) {
+            subClasses[subClassIndex] = classes[buffer.getInt()];
+          }
+
+          libraryClass.subClasses = subClasses;
+          libraryClass.subClassCount = subClassCount;
+        }
+
+        classPool.addClass(poolName, libraryClass);
+      }
+
+      return classPool;
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+      throw (IOException) new IOException("Corrupt class pool snapshot").initCause(e);
+    }
+  }
+
+  /**
+   * Returns a checksum of the contents of the given files, which can serve as the key of a
+   * snapshot of the classes in these files.
+   */
+  public static long checksum(File... files) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[64 * 1024];
+
+    for (File file : files) {
+      // Include the name, so renamed or reordered entries change the checksum.
+      crc.update(StringUtil.getModifiedUtf8Bytes(file.getName()));
+
+      try (InputStream inputStream = new FileInputStream(file)) {
+        int count;
+        while ((count = inputStream.read(buffer)) >= 0) {
+          crc.update(buffer, 0, count);
+        }
+      }
+    }
+
+    return crc.getValue();
+  }
+
+  // Small utility methods.
+
+  private static void writeMember(
+      DataOutputStream dataOutput, Map<String, Integer> stringIndices, LibraryMember member)
+      throws IOException {
+    dataOutput.writeInt(member.u2accessFlags);
+    dataOutput.writeInt(stringIndex(stringIndices, member.name));
+    dataOutput.writeInt(stringIndex(stringIndices, member.descriptor));
+  }
+
+  private static void writeClassIndices(
+      DataOutputStream dataOutput, Map<Clazz, Integer> classIndices, Clazz[] classes)
+      throws IOException {
+    dataOutput.writeInt(classes == null ? NONE : classes.length);
+    if (classes != null) {
+      for (Clazz clazz : classes) {
+        dataOutput.writeInt(classIndex(classIndices, clazz));
+      }
+    }
+  }
+
+  private static int stringIndex(Map<String, Integer> stringIndices, String string) {
+    if (string == null) {
+      return NONE;
+    }
+
+    Integer index = stringIndices.get(string);
+    if (index == null) {
+      index = stringIndices.size();
+      stringIndices.put(string, index);
+    }
+
+    return index;
+  }
+
+  private static int classIndex(Map<Clazz, Integer> classIndices, Clazz clazz) {
+    Integer index = clazz == null ? null : classIndices.get(clazz);
+
+    return index == null ? NONE : index;
+  }
+
+  private static String string(String[] strings, int index) {
+    return index == NONE ? null : strings[index];
+  }
+
+  private static Clazz clazz(LibraryClass[] classes, int index) {
+    return index == NONE ? null : classes[index];
+  }
+
+  private static Clazz[] classes(LibraryClass[] classes, ByteBuffer buffer) {
+    int count = buffer.getInt();
+    if (count == NONE) {
+      return null;
+    }
+
+    Clazz[] referencedClasses = new Clazz[count];
+    for (int index = 0; index < count; index++) {
+      referencedClasses[index] = clazz(classes, buffer.getInt());
+    }
+
+    return referencedClasses;
+  }
+}
@@ -61,6 +61,7 @@ import proguard.classfile.constant.PrimitiveArrayConstant;
 import proguard.classfile.constant.RefConstant;
 import proguard.classfile.constant.StringConstant;
 import proguard.classfile.constant.Utf8Constant;
+import proguard.classfile.constant.Utf8Interner;
 import proguard.classfile.constant.visitor.ConstantVisitor;
 import proguard.classfile.util.AccessUtil;
 import proguard.classfile.util.ClassUtil;
@@ -86,6 +87,9 @@ public class LibraryClassReader implements ClassVisitor, MemberVisitor, Constant
   // A callback which can be used to build the Kotlin metadata model.
   private final KotlinMetadataElementValueConsumer kmElementValueConsumer;
 
+  // An optional interner that shares the strings between classes.
+  private final Utf8Interner utf8Interner;
+
   // A global array that acts as a parameter for the visitor methods.
   private Constant[] constantPool;
 
@@ -101,10 +105,26 @@ public class LibraryClassReader implements ClassVisitor, MemberVisitor, Constant
       boolean skipNonPublicClasses,
       boolean skipNonPublicClassMembers,
       KotlinMetadataElementValueConsumer kmElementValueConsumer) {
+    this(dataInput, skipNonPublicClasses, skipNonPublicClassMembers, kmElementValueConsumer, null);
+  }
+
+  /**
+   * Creates a new LibraryClassReader for reading from the given DataInput.
+   *
+   * @param utf8Interner an optional interner that shares the names and descriptors of the library
+   *     classes and their members.
+   */
+  public LibraryClassReader(
+      DataInput dataInput,
+      boolean skipNonPublicClasses,
+      boolean skipNonPublicClassMembers,
+      KotlinMetadataElementValueConsumer kmElementValueConsumer,
+      Utf8Interner utf8Interner) {
     this.dataInput = new RuntimeDataInput(dataInput);
     this.skipNonPublicClasses = skipNonPublicClasses;
     this.skipNonPublicClassMembers = skipNonPublicClassMembers;
     this.kmElementValueConsumer = kmElementValueConsumer;
+    this.utf8Interner = utf8Interner;
   }
 
   // Implementations for ClassVisitor.
@@ -289,7 +309,12 @@ public class LibraryClassReader implements ClassVisitor, MemberVisitor, Constant
     // Read the UTF-8 bytes.
     byte[] bytes = new byte[u2length];
     dataInput.readFully(bytes);
-    utf8Constant.setBytes(bytes);
+
+    if (utf8Interner != null) {
+      utf8Constant.setInternedBytes(bytes, utf8Interner);
+    } else {
+      utf8Constant.setBytes(bytes);
+    }
   }
 
   public void visitDynamicConstant(Clazz clazz, DynamicConstant dynamicConstant) {
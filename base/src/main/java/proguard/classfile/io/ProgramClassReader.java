@@ -68,6 +68,7 @@ public class ProgramClassReader
         ElementValueVisitor {
   private final RuntimeDataInput dataInput;
   private final boolean ignoreStackMapAttributes;
+  private final Utf8Interner utf8Interner;
 
   /** Creates a new ProgramClassReader for reading from the given DataInput. */
   public ProgramClassReader(DataInput dataInput) {
@@ -79,8 +80,21 @@ public class ProgramClassReader
    * stack map attributes as unknown attributes.
    */
   public ProgramClassReader(DataInput dataInput, boolean ignoreStackMapAttributes) {
+    this(dataInput, ignoreStackMapAttributes, null);
+  }
+
+  /**
+   * Creates a new ProgramClassReader for reading from the given DataInput, optionally treating
+   * stack map attributes as unknown attributes.
+   *
+   * @param utf8Interner an optional interner that shares the data of UTF-8 constants, which are
+   *     then only decoded when they are first needed.
+   */
+  public ProgramClassReader(
+      DataInput dataInput, boolean ignoreStackMapAttributes, Utf8Interner utf8Interner) {
     this.dataInput = new RuntimeDataInput(dataInput);
     this.ignoreStackMapAttributes = ignoreStackMapAttributes;
+    this.utf8Interner = utf8Interner;
   }
 
   // Implementations for ClassVisitor.
@@ -320,7 +334,12 @@ public class ProgramClassReader
     // Read the UTF-8 bytes.
     byte[] bytes = new byte[u2length];
     dataInput.readFully(bytes);
-    utf8Constant.setBytes(bytes);
+
+    if (utf8Interner != null) {
+      utf8Constant.setInternedBytes(bytes, utf8Interner);
+    } else {
+      utf8Constant.setBytes(bytes);
+    }
   }
 
   public void visitDynamicConstant(Clazz clazz, DynamicConstant dynamicConstant) {
@@ -1729,7 +1729,7 @@ public class ClassReferenceInitializer
    * This {@link InvalidReferenceVisitor} will print out missing references to the supplied warning
    * printers.
    */
-  private static class InvalidReferenceWarningVisitor implements InvalidReferenceVisitor {
+  static class InvalidReferenceWarningVisitor implements InvalidReferenceVisitor {
 
     private final WarningPrinter missingClassWarningPrinter;
     private final WarningPrinter missingProgramMemberWarningPrinter;
@@ -156,7 +156,7 @@ public class ClassSuperHierarchyInitializer implements ClassVisitor, ConstantVis
    * This {@link InvalidClassReferenceVisitor} will print out warnings for any broken class
    * references.
    */
-  private static class InvalidClassReferenceWarningVisitor implements InvalidClassReferenceVisitor {
+  static class InvalidClassReferenceWarningVisitor implements InvalidClassReferenceVisitor {
     private final WarningPrinter missingWarningPrinter;
     private final WarningPrinter dependencyWarningPrinter;
 
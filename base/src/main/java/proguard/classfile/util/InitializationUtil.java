@@ -1,6 +1,7 @@
 package proguard.classfile.util;
 
 import java.io.*;
+import java.util.concurrent.ExecutorService;
 import proguard.classfile.*;
 import proguard.classfile.visitor.*;
 import proguard.io.*;
@@ -60,4 +61,42 @@ public class InitializationUtil {
             warningPrinter,
             null));
   }
+
+  /**
+   * Initializes the cached cross-references of the classes in the given class pools, like {@link
+   * #initialize(ClassPool, ClassPool, WarningPrinter)}, but on multiple threads.
+   *
+   * @param programClassPool the program class pool, typically with processed classes.
+   * @param libraryClassPool the library class pool, typically with run-time classes.
+   * @param warningPrinter the {@link WarningPrinter} to use for printing warnings about missing
+   *     classes. It is only called from the calling thread.
+   * @param executorService an optional executor service that initializes the classes, for example
+   *     a shared {@link java.util.concurrent.ForkJoinPool}. If it is null, threads are created for
+   *     each step.
+   */
+  public static void initialize(
+      ClassPool programClassPool,
+      ClassPool libraryClassPool,
+      WarningPrinter warningPrinter,
+      ExecutorService executorService) {
+    // Initialize the class hierarchies.
+    libraryClassPool.accept(
+        new ParallelClassSuperHierarchyInitializer(
+            programClassPool, libraryClassPool, null, executorService));
+
+    programClassPool.accept(
+        new ParallelClassSuperHierarchyInitializer(
+            programClassPool, libraryClassPool, warningPrinter, warningPrinter, executorService));
+
+    // Initialize the other references from the program classes.
+    programClassPool.accept(
+        new ParallelClassReferenceInitializer(
+            programClassPool,
+            libraryClassPool,
+            warningPrinter,
+            warningPrinter,
+            warningPrinter,
+            null,
+            executorService));
+  }
 }
@@ -0,0 +1,204 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile.util;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.*;
+import proguard.classfile.*;
+import proguard.classfile.visitor.ClassVisitor;
+
+/**
+ * This class records the invalid references that are reported while visiting classes on multiple
+ * threads, so they can be replayed afterwards, on a single thread and in the order of a class pool.
+ * Replaying them then produces the same sequence of reports as visiting the classes sequentially.
+ *
+ * <p>The reports are attributed to the class that is being visited when they are made, rather
+ * than to the referencing class that they mention.
+ */
+class InvalidReferenceRecorder {
+  private final Map<Clazz, List<Consumer<InvalidReferenceVisitor>>> invalidReferences =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Creates a class visitor that can be used by a single thread. It creates a delegate class
+   * visitor with the given factory, passing it an {@link InvalidReferenceVisitor} that records all
+   * reports for the class that is being visited.
+   */
+  public ClassVisitor createClassVisitor(
+      Function<InvalidReferenceVisitor, ClassVisitor> classVisitorFactory) {
+    return new MyRecordingClassVisitor(classVisitorFactory);
+  }
+
+  /**
+   * Replays the recorded reports of the classes in the given class pool, in the order of the class
+   * pool, to the given visitor, and forgets them.
+   */
+  public void replay(ClassPool classPool, InvalidReferenceVisitor invalidReferenceVisitor) {
+    if (!invalidReferences.isEmpty()) {
+      classPool.classesAccept(
+          clazz -> {
+            List<Consumer<InvalidReferenceVisitor>> reports = invalidReferences.remove(clazz);
+            if (reports != null) {
+              reports.forEach(report -> report.accept(invalidReferenceVisitor));
+            }
+          });
+    }
+  }
+
+  /**
+   * Returns an {@link InvalidReferenceVisitor} that passes the reports about classes to the given
+   * visitor.
+   */
+  public static InvalidReferenceVisitor invalidReferenceVisitor(
+      InvalidClassReferenceVisitor invalidClassReferenceVisitor) {
+    return new InvalidReferenceVisitor() {
+      @Override
+      public void visitMissingClass(Clazz referencingClazz, String reference) {
+        invalidClassReferenceVisitor.visitMissingClass(referencingClazz, reference);
+      }
+
+      @Override
+      public void visitProgramDependency(Clazz referencingClazz, Clazz dependency) {
+        invalidClassReferenceVisitor.visitProgramDependency(referencingClazz, dependency);
+      }
+
+      @Override
+      public void visitAnyMissingMember(
+          Clazz referencingClazz, Clazz reference, String name, String type) {}
+    };
+  }
+
+  /**
+   * This ClassVisitor keeps track of the class that it is visiting, and records the reports of its
+   * delegate for that class.
+   */
+  private class MyRecordingClassVisitor implements ClassVisitor, InvalidReferenceVisitor {
+    private final ClassVisitor classVisitor;
+
+    private List<Consumer<InvalidReferenceVisitor>> currentReports;
+    private Clazz currentClass;
+
+    public MyRecordingClassVisitor(
+        Function<InvalidReferenceVisitor, ClassVisitor> classVisitorFactory) {
+      this.classVisitor = classVisitorFactory.apply(this);
+    }
+
+    // Implementations for ClassVisitor.
+
+    @Override
+    public void visitAnyClass(Clazz clazz) {
+      currentClass = clazz;
+      currentReports = null;
+
+      clazz.accept(classVisitor);
+
+      if (currentReports != null) {
+        invalidReferences.merge(
+            clazz,
+            currentReports,
+            (reports1, reports2) -> {
+              List<Consumer<InvalidReferenceVisitor>> reports = new ArrayList<>(reports1);
+              reports.addAll(reports2);
+              return reports;
+            });
+      }
+
+      currentClass = null;
+      currentReports = null;
+    }
+
+    // Implementations for InvalidClassReferenceVisitor.
+
+    @Override
+    public void visitMissingClass(Clazz referencingClazz, String reference) {
+      record(visitor -> visitor.visitMissingClass(referencingClazz, reference));
+    }
+
+    @Override
+    public void visitProgramDependency(Clazz referencingClazz, Clazz dependency) {
+      record(visitor -> visitor.visitProgramDependency(referencingClazz, dependency));
+    }
+
+    // Implementations for InvalidMemberReferenceVisitor.
+
+    @Override
+    public void visitAnyMissingMember(
+        Clazz referencingClazz, Clazz reference, String name, String type) {
+      record(visitor -> visitor.visitAnyMissingMember(referencingClazz, reference, name, type));
+    }
+
+    @Override
+    public void visitAnyMissingField(
+        Clazz referencingClazz, Clazz reference, String name, String type) {
+      record(visitor -> visitor.visitAnyMissingField(referencingClazz, reference, name, type));
+    }
+
+    @Override
+    public void visitMissingProgramField(
+        Clazz referencingClazz, ProgramClass reference, String name, String type) {
+      record(visitor -> visitor.visitMissingProgramField(referencingClazz, reference, name, type));
+    }
+
+    @Override
+    public void visitMissingLibraryField(
+        Clazz referencingClazz, LibraryClass reference, String name, String type) {
+      record(visitor -> visitor.visitMissingLibraryField(referencingClazz, reference, name, type));
+    }
+
+    @Override
+    public void visitAnyMissingMethod(
+        Clazz referencingClazz, Clazz reference, String name, String type) {
+      record(visitor -> visitor.visitAnyMissingMethod(referencingClazz, reference, name, type));
+    }
+
+    @Override
+    public void visitMissingProgramMethod(
+        Clazz referencingClazz, ProgramClass reference, String name, String type) {
+      record(
+          visitor -> visitor.visitMissingProgramMethod(referencingClazz, reference, name, type));
+    }
+
+    @Override
+    public void visitMissingLibraryMethod(
+        Clazz referencingClazz, LibraryClass reference, String name, String type) {
+      record(
+          visitor -> visitor.visitMissingLibraryMethod(referencingClazz, reference, name, type));
+    }
+
+    @Override
+    public void visitMissingEnclosingMethod(
+        Clazz enclosingClazz, Clazz reference, String name, String type) {
+      record(visitor -> visitor.visitMissingEnclosingMethod(enclosingClazz, reference, name, type));
+    }
+
+    // Small utility methods.
+
+    private void record(Consumer<InvalidReferenceVisitor> report) {
+      if (currentClass == null) {
+        throw new IllegalStateException("Invalid reference reported outside of a class visit");
+      }
+
+      if (currentReports == null) {
+        currentReports = new ArrayList<>();
+      }
+
+      currentReports.add(report);
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile.util;
+
+import java.util.concurrent.ExecutorService;
+import proguard.classfile.*;
+import proguard.classfile.visitor.*;
+
+/**
+ * This {@link ClassPoolVisitor} initializes the references of all classes in the class pools that
+ * it visits, like {@link ClassReferenceInitializer}, but on multiple threads. It assumes that the
+ * class hierarchies have already been initialized.
+ *
+ * <p>Every thread gets its own {@link ClassReferenceInitializer}. A visited class only updates its
+ * own references, while it may look up classes and members in the rest of the hierarchy. Classes
+ * with Kotlin metadata are initialized afterwards on the calling thread, since their metadata refer
+ * to the metadata of other classes.
+ *
+ * <p>Any invalid references are collected and reported at the end, on the calling thread and in
+ * the order of the class pool, so the reports are the same as with {@link
+ * ClassReferenceInitializer}.
+ *
+ * @see ParallelAllClassVisitor
+ */
+public class ParallelClassReferenceInitializer implements ClassPoolVisitor {
+  private final ClassPool programClassPool;
+  private final ClassPool libraryClassPool;
+  private final boolean checkAccessRules;
+  private final InvalidReferenceVisitor invalidReferenceVisitor;
+  private final ExecutorService executorService;
+
+  /**
+   * Creates a new ParallelClassReferenceInitializer that initializes the references of all classes
+   * in the visited class pools, on threads created for each class pool.
+   */
+  public ParallelClassReferenceInitializer(ClassPool programClassPool, ClassPool libraryClassPool) {
+    this(programClassPool, libraryClassPool, true, null, null);
+  }
+
+  /**
+   * Creates a new ParallelClassReferenceInitializer that initializes the references of all classes
+   * in the visited class pools, optionally printing warnings if some classes or class members
+   * can't be found or if they are in the program class pool.
+   */
+  public ParallelClassReferenceInitializer(
+      ClassPool programClassPool,
+      ClassPool libraryClassPool,
+      WarningPrinter missingClassWarningPrinter,
+      WarningPrinter missingProgramMemberWarningPrinter,
+      WarningPrinter missingLibraryMemberWarningPrinter,
+      WarningPrinter dependencyWarningPrinter,
+      ExecutorService executorService) {
+    this(
+        programClassPool,
+        libraryClassPool,
+        true,
+        new ClassReferenceInitializer.InvalidReferenceWarningVisitor(
+            missingClassWarningPrinter,
+            missingProgramMemberWarningPrinter,
+            missingLibraryMemberWarningPrinter,
+            dependencyWarningPrinter),
+        executorService);
+  }
+
+  /**
+   * Creates a new ParallelClassReferenceInitializer that initializes the references of all classes
+   * in the visited class pools, visiting the given {@link InvalidReferenceVisitor} for any broken
+   * references.
+   *
+   * @param programClassPool the program class pool.
+   * @param libraryClassPool the library class pool.
+   * @param checkAccessRules specifies whether to check the access rules when looking up members.
+   * @param invalidReferenceVisitor an optional visitor for broken references. It is only called
+   *     from the thread that visits the class pool.
+   * @param executorService an optional executor service that initializes the classes, for example
+   *     a shared {@link java.util.concurrent.ForkJoinPool}. If it is null, threads are created for
+   *     each class pool.
+   */
+  public ParallelClassReferenceInitializer(
+      ClassPool programClassPool,
+      ClassPool libraryClassPool,
+      boolean checkAccessRules,
+      InvalidReferenceVisitor invalidReferenceVisitor,
+      ExecutorService executorService) {
+    this.programClassPool = programClassPool;
+    this.libraryClassPool = libraryClassPool;
+    this.checkAccessRules = checkAccessRules;
+    this.invalidReferenceVisitor = invalidReferenceVisitor;
+    this.executorService = executorService;
+  }
+
+  // Implementations for ClassPoolVisitor.
+
+  @Override
+  public void visitClassPool(ClassPool classPool) {
+    InvalidReferenceRecorder recorder = new InvalidReferenceRecorder();
+
+    // Initialize the classes without Kotlin metadata in parallel.
+    ParallelAllClassVisitor.ClassVisitorFactory classVisitorFactory =
+        () -> new MyKotlinMetadataFilter(false, createClassReferenceInitializer(recorder));
+
+    classPool.accept(
+        executorService == null
+            ? new ParallelAllClassVisitor(classVisitorFactory)
+            : new ParallelAllClassVisitor(classVisitorFactory, executorService));
+
+    // Initialize the classes with Kotlin metadata sequentially.
+    classPool.classesAccept(
+        new MyKotlinMetadataFilter(true, createClassReferenceInitializer(recorder)));
+
+    if (invalidReferenceVisitor != null) {
+      recorder.replay(classPool, invalidReferenceVisitor);
+    }
+  }
+
+  // Small utility methods.
+
+  /** Creates a reference initializer for a single thread. */
+  private ClassVisitor createClassReferenceInitializer(InvalidReferenceRecorder recorder) {
+    return invalidReferenceVisitor == null
+        ? new ClassReferenceInitializer(programClassPool, libraryClassPool, checkAccessRules, null)
+        : recorder.createClassVisitor(
+            invalidReferenceVisitor ->
+                new ClassReferenceInitializer(
+                    programClassPool, libraryClassPool, checkAccessRules, invalidReferenceVisitor));
+  }
+
+  /**
+   * This ClassVisitor delegates to another class visitor, but only for classes that have or don't
+   * have Kotlin metadata, as specified.
+   */
+  private static class MyKotlinMetadataFilter implements ClassVisitor {
+    private final boolean withKotlinMetadata;
+    private final ClassVisitor classVisitor;
+
+    public MyKotlinMetadataFilter(boolean withKotlinMetadata, ClassVisitor classVisitor) {
+      this.withKotlinMetadata = withKotlinMetadata;
+      this.classVisitor = classVisitor;
+    }
+
+    // Implementations for ClassVisitor.
+
+    @Override
+    public void visitAnyClass(Clazz clazz) {}
+
+    @Override
+    public void visitProgramClass(ProgramClass programClass) {
+      if ((programClass.kotlinMetadata != null) == withKotlinMetadata) {
+        programClass.accept(classVisitor);
+      }
+    }
+
+    @Override
+    public void visitLibraryClass(LibraryClass libraryClass) {
+      if ((libraryClass.kotlinMetadata != null) == withKotlinMetadata) {
+        libraryClass.accept(classVisitor);
+      }
+    }
+  }
+}
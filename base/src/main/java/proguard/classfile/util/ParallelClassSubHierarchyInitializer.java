@@ -0,0 +1,187 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import proguard.classfile.*;
+import proguard.classfile.constant.visitor.ConstantVisitor;
+import proguard.classfile.visitor.*;
+
+/**
+ * This {@link ClassPoolVisitor} fills out the subclasses of all classes in the class pools that it
+ * visits, like {@link ClassSubHierarchyInitializer}, but on multiple threads.
+ *
+ * <p>As with {@link ClassSubHierarchyInitializer}, you must create a single instance and apply it
+ * to subclass pools first; for example first the program class pool, then the underlying library
+ * class pool. The subclasses of each class end up in the same deterministic order as with {@link
+ * ClassSubHierarchyInitializer}: the order in which the subclasses appear in the visited class
+ * pools.
+ *
+ * <p>This class is thread-safe, but a single instance should not visit multiple class pools at the
+ * same time.
+ *
+ * @see ParallelAllClassVisitor
+ */
+public class ParallelClassSubHierarchyInitializer implements ClassPoolVisitor {
+  private final ExecutorService executorService;
+
+  // The position of every visited class, across all visited class pools.
+  private final Map<Clazz, Integer> classIndices = new HashMap<>();
+
+  // The subclasses of all superclasses and interfaces, in any order.
+  private final Map<Clazz, Queue<Clazz>> subClassesMap = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new ParallelClassSubHierarchyInitializer that creates threads for each class pool.
+   */
+  public ParallelClassSubHierarchyInitializer() {
+    this(null);
+  }
+
+  /**
+   * Creates a new ParallelClassSubHierarchyInitializer.
+   *
+   * @param executorService an optional executor service that processes the classes, for example a
+   *     shared {@link ForkJoinPool}. If it is null, threads are created for each class pool.
+   */
+  public ParallelClassSubHierarchyInitializer(ExecutorService executorService) {
+    this.executorService = executorService;
+  }
+
+  // Implementations for ClassPoolVisitor.
+
+  @Override
+  public void visitClassPool(ClassPool classPool) {
+    // Number the classes, so their subclasses can be sorted in the
+    // same order as they are collected sequentially.
+    for (Clazz clazz : classPool.classes()) {
+      classIndices.putIfAbsent(clazz, classIndices.size());
+    }
+
+    // Collect the subclass information for all classes.
+    classPool.accept(parallelAllClassVisitor(MySubclassCollector::new));
+
+    // Store the sorted subclasses in all classes.
+    classPool.accept(parallelAllClassVisitor(MySubclassSetter::new));
+  }
+
+  // Small utility methods.
+
+  private ParallelAllClassVisitor parallelAllClassVisitor(
+      ParallelAllClassVisitor.ClassVisitorFactory classVisitorFactory) {
+    return executorService == null
+        ? new ParallelAllClassVisitor(classVisitorFactory)
+        : new ParallelAllClassVisitor(classVisitorFactory, executorService);
+  }
+
+  /** Adds the given subclass to the collected subclasses of the given class. */
+  private void addSubClass(Clazz clazz, Clazz subClass) {
+    subClassesMap.computeIfAbsent(clazz, newClass -> new ConcurrentLinkedQueue<>()).add(subClass);
+  }
+
+  /**
+   * Returns the collected subclasses of the given class, without duplicates, in the order of the
+   * visited class pools.
+   */
+  private Clazz[] subClasses(Clazz clazz) {
+    Queue<Clazz> subClasses = subClassesMap.get(clazz);
+    if (subClasses == null) {
+      return new Clazz[0];
+    }
+
+    Clazz[] subClassesArray = subClasses.toArray(new Clazz[0]);
+    Arrays.sort(subClassesArray, Comparator.comparingInt(classIndices::get));
+
+    // Remove any duplicates, which are now adjacent.
+    int count = 0;
+    for (int index = 0; index < subClassesArray.length; index++) {
+      if (count == 0 || subClassesArray[count - 1] != subClassesArray[index]) {
+        subClassesArray[count++] = subClassesArray[index];
+      }
+    }
+
+    return count == subClassesArray.length
+        ? subClassesArray
+        : Arrays.copyOf(subClassesArray, count);
+  }
+
+  /**
+   * This ClassVisitor collects (in the subclasses map) the subclasses of the classes that it
+   * visits.
+   */
+  private class MySubclassCollector implements ClassVisitor {
+    // Implementations for ClassVisitor.
+
+    @Override
+    public void visitAnyClass(Clazz clazz) {
+      throw new UnsupportedOperationException(
+          this.getClass().getName() + " does not support " + clazz.getClass().getName());
+    }
+
+    @Override
+    public void visitProgramClass(ProgramClass programClass) {
+      // Add this class to the subclasses of its superclass and interfaces
+      // (through their class constants).
+      ConstantVisitor subClassCollector =
+          new ReferencedClassVisitor(superClass -> addSubClass(superClass, programClass));
+
+      programClass.superClassConstantAccept(subClassCollector);
+      programClass.interfaceConstantsAccept(subClassCollector);
+    }
+
+    @Override
+    public void visitLibraryClass(LibraryClass libraryClass) {
+      // Add this class to the subclasses of its superclass and interfaces.
+      ClassVisitor subClassCollector = superClass -> addSubClass(superClass, libraryClass);
+
+      libraryClass.superClassAccept(subClassCollector);
+      libraryClass.interfacesAccept(subClassCollector);
+    }
+  }
+
+  /**
+   * This ClassVisitor sets (from the subclasses map) the collected subclasses to the classes that
+   * it visits.
+   */
+  private class MySubclassSetter implements ClassVisitor {
+    // Implementations for ClassVisitor.
+
+    @Override
+    public void visitAnyClass(Clazz clazz) {
+      throw new UnsupportedOperationException(
+          this.getClass().getName() + " does not support " + clazz.getClass().getName());
+    }
+
+    @Override
+    public void visitProgramClass(ProgramClass programClass) {
+      Clazz[] subClassesArray = subClasses(programClass);
+
+      programClass.subClasses = subClassesArray;
+      programClass.subClassCount = subClassesArray.length;
+    }
+
+    @Override
+    public void visitLibraryClass(LibraryClass libraryClass) {
+      Clazz[] subClassesArray = subClasses(libraryClass);
+
+      libraryClass.subClasses = subClassesArray;
+      libraryClass.subClassCount = subClassesArray.length;
+    }
+  }
+}
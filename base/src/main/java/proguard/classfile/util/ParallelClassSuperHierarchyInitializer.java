@@ -0,0 +1,128 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile.util;
+
+import java.util.concurrent.ExecutorService;
+import proguard.classfile.*;
+import proguard.classfile.visitor.*;
+
+/**
+ * This {@link ClassPoolVisitor} initializes the superclass hierarchy of all classes in the class
+ * pools that it visits, like {@link ClassSuperHierarchyInitializer}, but on multiple threads.
+ *
+ * <p>Every visited class only links its own superclass and interfaces, so the classes can be
+ * initialized independently. Any invalid class references are collected and reported afterwards,
+ * on the calling thread and in the order of the class pool, so the reports are the same as with
+ * {@link ClassSuperHierarchyInitializer}.
+ *
+ * @see ParallelAllClassVisitor
+ */
+public class ParallelClassSuperHierarchyInitializer implements ClassPoolVisitor {
+  private final ClassPool programClassPool;
+  private final ClassPool libraryClassPool;
+  private final InvalidClassReferenceVisitor invalidClassReferenceVisitor;
+  private final ExecutorService executorService;
+
+  /**
+   * Creates a new ParallelClassSuperHierarchyInitializer that initializes the super hierarchy of
+   * all classes in the visited class pools, on threads created for each class pool.
+   */
+  public ParallelClassSuperHierarchyInitializer(
+      ClassPool programClassPool, ClassPool libraryClassPool) {
+    this(programClassPool, libraryClassPool, null, null);
+  }
+
+  /**
+   * Creates a new ParallelClassSuperHierarchyInitializer that initializes the super hierarchy of
+   * all classes in the visited class pools, optionally printing warnings if some classes can't be
+   * found or if they are in the program class pool.
+   */
+  public ParallelClassSuperHierarchyInitializer(
+      ClassPool programClassPool,
+      ClassPool libraryClassPool,
+      WarningPrinter missingWarningPrinter,
+      WarningPrinter dependencyWarningPrinter,
+      ExecutorService executorService) {
+    this(
+        programClassPool,
+        libraryClassPool,
+        missingWarningPrinter == null && dependencyWarningPrinter == null
+            ? null
+            : new ClassSuperHierarchyInitializer.InvalidClassReferenceWarningVisitor(
+                missingWarningPrinter, dependencyWarningPrinter),
+        executorService);
+  }
+
+  /**
+   * Creates a new ParallelClassSuperHierarchyInitializer that initializes the super hierarchy of
+   * all classes in the visited class pools, visiting the given {@link
+   * InvalidClassReferenceVisitor} for any broken references.
+   *
+   * @param programClassPool the program class pool.
+   * @param libraryClassPool the library class pool.
+   * @param invalidClassReferenceVisitor an optional visitor for broken references. It is only
+   *     called from the thread that visits the class pool.
+   * @param executorService an optional executor service that initializes the classes, for example
+   *     a shared {@link java.util.concurrent.ForkJoinPool}. If it is null, threads are created for
+   *     each class pool.
+   */
+  public ParallelClassSuperHierarchyInitializer(
+      ClassPool programClassPool,
+      ClassPool libraryClassPool,
+      InvalidClassReferenceVisitor invalidClassReferenceVisitor,
+      ExecutorService executorService) {
+    this.programClassPool = programClassPool;
+    this.libraryClassPool = libraryClassPool;
+    this.invalidClassReferenceVisitor = invalidClassReferenceVisitor;
+    this.executorService = executorService;
+  }
+
+  // Implementations for ClassPoolVisitor.
+
+  @Override
+  public void visitClassPool(ClassPool classPool) {
+    if (invalidClassReferenceVisitor == null) {
+      classPool.accept(
+          parallelAllClassVisitor(
+              () -> new ClassSuperHierarchyInitializer(programClassPool, libraryClassPool)));
+    } else {
+      InvalidReferenceRecorder recorder = new InvalidReferenceRecorder();
+
+      classPool.accept(
+          parallelAllClassVisitor(
+              () ->
+                  recorder.createClassVisitor(
+                      invalidReferenceVisitor ->
+                          new ClassSuperHierarchyInitializer(
+                              programClassPool, libraryClassPool, invalidReferenceVisitor))));
+
+      recorder.replay(
+          classPool,
+          InvalidReferenceRecorder.invalidReferenceVisitor(invalidClassReferenceVisitor));
+    }
+  }
+
+  // Small utility methods.
+
+  private ParallelAllClassVisitor parallelAllClassVisitor(
+      ParallelAllClassVisitor.ClassVisitorFactory classVisitorFactory) {
+    return executorService == null
+        ? new ParallelAllClassVisitor(classVisitorFactory)
+        : new ParallelAllClassVisitor(classVisitorFactory, executorService);
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.util;
+
+import java.util.Arrays;
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+import proguard.classfile.attribute.Attribute;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.attribute.ExceptionInfo;
+import proguard.classfile.attribute.visitor.AttributeVisitor;
+import proguard.classfile.attribute.visitor.ExceptionInfoVisitor;
+import proguard.classfile.editor.ClassEstimates;
+import proguard.classfile.instruction.BranchInstruction;
+import proguard.classfile.instruction.Instruction;
+import proguard.classfile.instruction.InstructionFactory;
+import proguard.classfile.instruction.SwitchInstruction;
+
+/**
+ * This {@link AttributeVisitor} splits the code of the code attributes that it visits into basic
+ * blocks, based on the results of a {@link BranchTargetFinder}, and numbers these blocks in reverse
+ * post-order of the control flow graph, starting from the entry point and then from the exception
+ * handlers. In this order, a block comes before its successors, except along back edges of loops.
+ * The blocks that are only reachable from exception handlers come after the blocks that are
+ * reachable from the entry point. Unreachable blocks come last.
+ *
+ * @see BranchTargetFinder
+ */
+public class ReversePostOrderFinder implements AttributeVisitor, ExceptionInfoVisitor {
+  private static final int UNVISITED = -1;
+  private static final int VISITING = -2;
+
+  private final BranchTargetFinder branchTargetFinder;
+  private final boolean applyBranchTargetFinder;
+
+  private int[] blockIndices = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[] blockStarts = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[] blockOrders = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[][] blockSuccessors = new int[ClassEstimates.TYPICAL_CODE_LENGTH][];
+  private int blockCount;
+
+  // Fields acting as a depth-first search stack and as the post-order counter.
+  private int[] dfsBlocks = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[] dfsSuccessorIndices = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int postOrderCount;
+
+  /** Creates a new ReversePostOrderFinder that applies its own BranchTargetFinder. */
+  public ReversePostOrderFinder() {
+    this(new BranchTargetFinder(), true);
+  }
+
+  /**
+   * Creates a new ReversePostOrderFinder that uses the results of the given BranchTargetFinder,
+   * which must already have visited the code attributes that this finder visits.
+   */
+  public ReversePostOrderFinder(BranchTargetFinder branchTargetFinder) {
+    this(branchTargetFinder, false);
+  }
+
+  private ReversePostOrderFinder(
+      BranchTargetFinder branchTargetFinder, boolean applyBranchTargetFinder) {
+    this.branchTargetFinder = branchTargetFinder;
+    this.applyBranchTargetFinder = applyBranchTargetFinder;
+  }
+
+  /** Returns the number of basic blocks in the CodeAttribute that was visited most recently. */
+  public int blockCount() {
+    return blockCount;
+  }
+
+  /**
+   * Returns whether a basic block starts at the given offset in the CodeAttribute that was visited
+   * most recently.
+   */
+  public boolean isBlockStart(int offset) {
+    int blockIndex = blockIndices[offset];
+    return blockIndex >= 0 && blockStarts[blockIndex] == offset;
+  }
+
+  /**
+   * Returns the position in reverse post-order of the basic block that contains the given offset in
+   * the CodeAttribute that was visited most recently, between 0 and the block count.
+   */
+  public int reversePostOrder(int offset) {
+    return blockOrders[blockIndices[offset]];
+  }
+
+  // Implementations for AttributeVisitor.
+
+  public void visitAnyAttribute(Clazz clazz, Attribute attribute) {}
+
+  public void visitCodeAttribute(Clazz clazz, Method method, CodeAttribute codeAttribute) {
+    if (applyBranchTargetFinder) {
+      branchTargetFinder.visitCodeAttribute(clazz, method, codeAttribute);
+    }
+
+    int codeLength = codeAttribute.u4codeLength;
+
+    // Make sure there are sufficiently large arrays.
+    if (blockIndices.length < codeLength) {
+      blockIndices = new int[codeLength];
+      blockStarts = new int[codeLength];
+      blockOrders = new int[codeLength];
+      blockSuccessors = new int[codeLength][];
+      dfsBlocks = new int[codeLength];
+      dfsSuccessorIndices = new int[codeLength];
+    }
+
+    // Split the code into basic blocks.
+    blockCount = 0;
+    int blockIndex = -1;
+    for (int offset = 0; offset < codeLength; offset++) {
+      if (branchTargetFinder.isInstruction(offset) && isLeader(offset)) {
+        blockIndex = blockCount++;
+        blockStarts[blockIndex] = offset;
+      }
+
+      blockIndices[offset] = blockIndex;
+    }
+
+    // Collect the successors of each block.
+    byte[] code = codeAttribute.code;
+    for (int index = 0; index < blockCount; index++) {
+      int nextBlock = index + 1 < blockCount ? index + 1 : -1;
+      int blockEnd = nextBlock >= 0 ? blockStarts[nextBlock] : codeLength;
+
+      blockSuccessors[index] = successors(code, lastInstructionOffset(blockEnd), nextBlock);
+    }
+
+    // Number the blocks in post-order, from the entry point and then
+    // from the exception handlers.
+    Arrays.fill(blockOrders, 0, blockCount, UNVISITED);
+    postOrderCount = 0;
+
+    visitBlock(0);
+    int entryReachableCount = postOrderCount;
+    codeAttribute.exceptionsAccept(clazz, method, this);
+
+    // Reverse the post-order, separately for the blocks that are
+    // reachable from the entry point and for the blocks that are only
+    // reachable from exception handlers, and put any unreachable blocks
+    // last.
+    int reachableCount = postOrderCount;
+    for (int index = 0; index < blockCount; index++) {
+      int postOrder = blockOrders[index];
+      blockOrders[index] =
+          postOrder < 0
+              ? postOrderCount++
+              : postOrder < entryReachableCount
+                  ? entryReachableCount - 1 - postOrder
+                  : entryReachableCount + reachableCount - 1 - postOrder;
+    }
+  }
+
+  // Implementations for ExceptionInfoVisitor.
+
+  public void visitExceptionInfo(
+      Clazz clazz, Method method, CodeAttribute codeAttribute, ExceptionInfo exceptionInfo) {
+    visitBlock(blockIndices[exceptionInfo.u2handlerPC]);
+  }
+
+  // Small utility methods.
+
+  /** Returns whether a basic block starts at the given instruction offset. */
+  private boolean isLeader(int offset) {
+    return offset == 0
+        || branchTargetFinder.isBranchTarget(offset)
+        || branchTargetFinder.isAfterBranch(offset)
+        || branchTargetFinder.isExceptionHandler(offset)
+        || branchTargetFinder.isSubroutineStart(offset);
+  }
+
+  /** Returns the offset of the last instruction before the given block end. */
+  private int lastInstructionOffset(int blockEnd) {
+    int offset = blockEnd - 1;
+    while (!branchTargetFinder.isInstruction(offset)) {
+      offset--;
+    }
+
+    return offset;
+  }
+
+  /**
+   * Returns the indices of the successor blocks of the given last instruction of a block, given the
+   * index of the next block, if any.
+   */
+  private int[] successors(byte[] code, int offset, int nextBlock) {
+    Instruction instruction = InstructionFactory.create(code, offset);
+    byte opcode = instruction.opcode;
+
+    if (instruction instanceof BranchInstruction) {
+      int target = blockIndices[offset + ((BranchInstruction) instruction).branchOffset];
+
+      return opcode == Instruction.OP_GOTO || opcode == Instruction.OP_GOTO_W
+          ? new int[] {target}
+          : fallThrough(target, nextBlock);
+    }
+
+    if (instruction instanceof SwitchInstruction) {
+      SwitchInstruction switchInstruction = (SwitchInstruction) instruction;
+      int[] jumpOffsets = switchInstruction.jumpOffsets;
+
+      int[] successors = new int[jumpOffsets.length + 1];
+      successors[0] = blockIndices[offset + switchInstruction.defaultOffset];
+      for (int index = 0; index < jumpOffsets.length; index++) {
+        successors[index + 1] = blockIndices[offset + jumpOffsets[index]];
+      }
+
+      return successors;
+    }
+
+    if (opcode == Instruction.OP_RET
+        || opcode == Instruction.OP_IRETURN
+        || opcode == Instruction.OP_LRETURN
+        || opcode == Instruction.OP_FRETURN
+        || opcode == Instruction.OP_DRETURN
+        || opcode == Instruction.OP_ARETURN
+        || opcode == Instruction.OP_RETURN
+        || opcode == Instruction.OP_ATHROW) {
+      return new int[0];
+    }
+
+    return fallThrough(-1, nextBlock);
+  }
+
+  /** Returns the given optional branch target, followed by the given optional next block. */
+  private int[] fallThrough(int target, int nextBlock) {
+    return target < 0
+        ? nextBlock < 0 ? new int[0] : new int[] {nextBlock}
+        : nextBlock < 0 ? new int[] {target} : new int[] {target, nextBlock};
+  }
+
+  /** Numbers the blocks that are reachable from the given block in post-order. */
+  private void visitBlock(int startBlock) {
+    if (blockOrders[startBlock] != UNVISITED) {
+      return;
+    }
+
+    int depth = 0;
+    dfsBlocks[0] = startBlock;
+    dfsSuccessorIndices[0] = 0;
+    blockOrders[startBlock] = VISITING;
+
+    while (depth >= 0) {
+      int block = dfsBlocks[depth];
+      int[] successors = blockSuccessors[block];
+      int successorIndex = dfsSuccessorIndices[depth];
+
+      if (successorIndex < successors.length) {
+        dfsSuccessorIndices[depth]++;
+
+        int successor = successors[successorIndex];
+        if (blockOrders[successor] == UNVISITED) {
+          // Mark the successor and descend.
+          blockOrders[successor] = VISITING;
+          depth++;
+          dfsBlocks[depth] = successor;
+          dfsSuccessorIndices[depth] = 0;
+        }
+      } else {
+        blockOrders[block] = postOrderCount++;
+        depth--;
+      }
+    }
+  }
+}
@@ -20,6 +20,7 @@ package proguard.classfile.visitor;
 import java.util.*;
 import java.util.concurrent.*;
 import proguard.classfile.*;
+import proguard.classfile.attribute.*;
 
 /**
  * This {@link ClassPoolVisitor} will visit all Clazz instances of the class pool in a parallel way.
@@ -35,6 +36,12 @@ import proguard.classfile.*;
  * <p>It is possible to override the number of threads by setting the environment variable {@code
  * parallel.threads} to an integer > 0.
  *
+ * <p>Alternatively, the visitor can run on an executor service provided by the caller, for example
+ * a shared {@link ForkJoinPool}, which is then reused across calls and never shut down by this
+ * class. The class pool is then split into a limited number of chunks of roughly equal weight,
+ * based on the code lengths of their classes, and a separate {@link ClassVisitor} is created for
+ * each chunk.
+ *
  * @author Thomas Neidhart
  */
 public class ParallelAllClassVisitor implements ClassPoolVisitor {
@@ -66,20 +73,68 @@ public class ParallelAllClassVisitor implements ClassPoolVisitor {
     ClassVisitor createClassVisitor();
   }
 
+  private static final int CHUNKS_PER_THREAD = 4;
+
   private final ClassVisitorFactory classVisitorFactory;
+  private final ExecutorService executorService;
+  private final int chunkCount;
 
   /**
    * Create a new ParallelAllClassVisitor that will use the given factory to visit all classes in a
    * ClassPool in a parallel way.
    */
   public ParallelAllClassVisitor(ClassVisitorFactory classVisitorFactory) {
+    this(classVisitorFactory, null, 0);
+  }
+
+  /**
+   * Create a new ParallelAllClassVisitor that will use the given factory to visit all classes in a
+   * ClassPool in a parallel way, on the given executor service. The number of chunks is derived
+   * from the parallelism of the executor service, if it is a {@link ForkJoinPool}, or from the
+   * number of available processors otherwise.
+   *
+   * @param classVisitorFactory the factory for the class visitors of the chunks.
+   * @param executorService the executor service that visits the chunks, for example a shared
+   *     {@link ForkJoinPool}. It is not shut down after visiting a class pool.
+   */
+  public ParallelAllClassVisitor(
+      ClassVisitorFactory classVisitorFactory, ExecutorService executorService) {
+    this(classVisitorFactory, executorService, 0);
+  }
+
+  /**
+   * Create a new ParallelAllClassVisitor that will use the given factory to visit all classes in a
+   * ClassPool in a parallel way, on the given executor service.
+   *
+   * @param classVisitorFactory the factory for the class visitors of the chunks.
+   * @param executorService the executor service that visits the chunks, for example a shared
+   *     {@link ForkJoinPool}. It is not shut down after visiting a class pool.
+   * @param chunkCount the maximum number of chunks into which the class pool is split, or 0 for a
+   *     default based on the available parallelism.
+   */
+  public ParallelAllClassVisitor(
+      ClassVisitorFactory classVisitorFactory, ExecutorService executorService, int chunkCount) {
+    if (chunkCount < 0) {
+      throw new IllegalArgumentException("chunkCount can't be negative.");
+    }
+
     this.classVisitorFactory = classVisitorFactory;
+    this.executorService = executorService;
+    this.chunkCount =
+        chunkCount > 0
+            ? chunkCount
+            : CHUNKS_PER_THREAD
+                * (executorService instanceof ForkJoinPool
+                    ? ((ForkJoinPool) executorService).getParallelism()
+                    : Runtime.getRuntime().availableProcessors());
   }
 
   // Implementations for ClassPoolVisitor.
 
   public void visitClassPool(ClassPool classPool) {
-    if (THREAD_COUNT <= 1) {
+    if (executorService != null) {
+      visitClassPoolInChunks(classPool);
+    } else if (THREAD_COUNT <= 1) {
       // Fallback to single thread execution if the thread count
       // was overridden by an environment variable.
       classPool.classesAccept(classVisitorFactory.createClassVisitor());
@@ -107,6 +162,108 @@ public class ParallelAllClassVisitor implements ClassPoolVisitor {
     }
   }
 
+  // Small utility methods.
+
+  /**
+   * Visits the classes of the given class pool on the executor service, in contiguous chunks of
+   * roughly equal weight. Only a single future is created per chunk.
+   */
+  private void visitClassPoolInChunks(ClassPool classPool) {
+    Clazz[] classes = new Clazz[classPool.size()];
+    long[] cumulativeWeights = new long[classes.length];
+
+    int classCount = 0;
+    long totalWeight = 0L;
+    for (Clazz clazz : classPool.classes()) {
+      totalWeight += weight(clazz);
+      classes[classCount] = clazz;
+      cumulativeWeights[classCount++] = totalWeight;
+    }
+
+    if (classCount == 0) {
+      return;
+    }
+
+    int maximumChunkCount = Math.min(chunkCount, classCount);
+    if (maximumChunkCount <= 1) {
+      visitClasses(classes, 0, classCount);
+      return;
+    }
+
+    List<Future<?>> futures = new ArrayList<>(maximumChunkCount);
+
+    // Split the classes so every chunk ends at the class whose
+    // cumulative weight first reaches the next multiple of the target.
+    int startIndex = 0;
+    for (int chunkIndex = 1;
+        chunkIndex <= maximumChunkCount && startIndex < classCount;
+        chunkIndex++) {
+      long chunkEndWeight = totalWeight * chunkIndex / maximumChunkCount;
+
+      int endIndex = startIndex + 1;
+      while (endIndex < classCount && cumulativeWeights[endIndex - 1] < chunkEndWeight) {
+        endIndex++;
+      }
+
+      if (chunkIndex == maximumChunkCount) {
+        endIndex = classCount;
+      }
+
+      int chunkStartIndex = startIndex;
+      int chunkEndIndex = endIndex;
+      futures.add(
+          executorService.submit(() -> visitClasses(classes, chunkStartIndex, chunkEndIndex)));
+
+      startIndex = endIndex;
+    }
+
+    try {
+      // Rethrow any exception that was thrown in the executor threads.
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Parallel execution is taking too long", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException
+          ? (RuntimeException) e.getCause()
+          : new RuntimeException(e.getCause());
+    }
+  }
+
+  /** Visits the given range of classes with a new class visitor. */
+  private void visitClasses(Clazz[] classes, int startIndex, int endIndex) {
+    ClassVisitor classVisitor = classVisitorFactory.createClassVisitor();
+
+    for (int index = startIndex; index < endIndex; index++) {
+      classes[index].accept(classVisitor);
+    }
+  }
+
+  /**
+   * Returns an estimate of the amount of work for visiting the given class: the total code length
+   * of its methods, plus one for the class itself.
+   */
+  private static long weight(Clazz clazz) {
+    long weight = 1L;
+
+    if (clazz instanceof ProgramClass) {
+      ProgramClass programClass = (ProgramClass) clazz;
+      for (int methodIndex = 0; methodIndex < programClass.u2methodsCount; methodIndex++) {
+        ProgramMethod method = programClass.methods[methodIndex];
+        for (int attributeIndex = 0; attributeIndex < method.u2attributesCount; attributeIndex++) {
+          Attribute attribute = method.attributes[attributeIndex];
+          if (attribute instanceof CodeAttribute) {
+            weight += ((CodeAttribute) attribute).u4codeLength;
+          }
+        }
+      }
+    }
+
+    return weight;
+  }
+
   private class MyThreadFactory implements ThreadFactory {
     private int threadCounter = 0;
 
@@ -0,0 +1,744 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation;
+
+import java.util.Arrays;
+import proguard.classfile.ClassConstants;
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+import proguard.classfile.attribute.Attribute;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.attribute.ExceptionInfo;
+import proguard.classfile.attribute.visitor.AttributeVisitor;
+import proguard.classfile.editor.ClassEstimates;
+import proguard.classfile.editor.CodeAttributeEditor;
+import proguard.classfile.instruction.BranchInstruction;
+import proguard.classfile.instruction.ConstantInstruction;
+import proguard.classfile.instruction.Instruction;
+import proguard.classfile.instruction.InstructionFactory;
+import proguard.classfile.instruction.SwitchInstruction;
+import proguard.classfile.instruction.VariableInstruction;
+import proguard.util.ArrayUtil;
+
+/**
+ * This {@link AttributeVisitor} analyzes the liveness of the variables in the code attributes that
+ * it visits, like the {@link LivenessAnalyzer}, but without a preceding partial evaluation. It
+ * splits the code into basic blocks, summarizes the variables that each block uses and defines in
+ * bit sets, and solves the data flow equations with a worklist of blocks. The bit sets cover all
+ * variables, not just the first 64.
+ *
+ * <p>Without partial evaluation, the analysis is conservative: it considers all instructions,
+ * including unreachable ones, it lets subroutines return to all instructions that follow
+ * subroutine invocations, and it keeps variable 0 ('this') of initializers alive up to the
+ * invocations of initializers. Long and double variables are recognized from their load and store
+ * instructions, which mark both of their entries.
+ *
+ * <p>After a {@link CodeAttributeEditor} has changed a small part of the code attribute that was
+ * visited most recently, {@link #recompute(Clazz, Method, CodeAttribute, CodeAttributeEditor)}
+ * updates the liveness by only solving the blocks that have changed and the blocks from which
+ * these can be reached.
+ *
+ * @see LivenessAnalyzer
+ */
+public class BasicBlockLivenessAnalyzer implements AttributeVisitor {
+  private static final byte NO_ACCESS = 0;
+  private static final byte LOAD = 1;
+  private static final byte STORE = 2;
+  private static final byte LOAD_CATEGORY2 = 3;
+  private static final byte STORE_CATEGORY2 = 4;
+
+  private static final int[] NO_BLOCKS = new int[0];
+
+  private CodeAttribute analyzedCodeAttribute;
+  private int codeLength;
+  private int wordCount;
+
+  // The instructions and the variables that they access.
+  private boolean[] isInstruction = new boolean[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private boolean[] isBlockStart = new boolean[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private byte[] accessTypes = new byte[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[] accessedVariables = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int[] subroutineReturnOffsets = new int[ClassEstimates.TYPICAL_EXCEPTION_TABLE_LENGTH];
+  private int subroutineReturnCount;
+
+  // The basic blocks of the current and of the previous analysis.
+  private int[] blockIndices = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private Blocks blocks = new Blocks();
+  private Blocks previousBlocks = new Blocks();
+
+  // The liveness before and after each instruction, as bit sets of the word count.
+  private long[] isAliveBefore = new long[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private long[] isAliveAfter = new long[ClassEstimates.TYPICAL_CODE_LENGTH];
+
+  // Fields acting as a worklist and as global temporary variables.
+  private int[] worklist = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private boolean[] isInWorklist = new boolean[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private int worklistSize;
+  private int[] previousBlockIndices = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
+  private long[] alive = new long[1];
+  private long[] handlerAlive = new long[1];
+
+  private int blockEvaluationCount;
+
+  /** Returns whether the specified variable is alive before the instruction at the given offset. */
+  public boolean isAliveBefore(int instructionOffset, int variableIndex) {
+    return isSet(isAliveBefore, instructionOffset * wordCount, variableIndex);
+  }
+
+  /** Returns whether the specified variable is alive after the instruction at the given offset. */
+  public boolean isAliveAfter(int instructionOffset, int variableIndex) {
+    return isSet(isAliveAfter, instructionOffset * wordCount, variableIndex);
+  }
+
+  /** Returns the number of basic blocks in the code attribute that was analyzed most recently. */
+  public int getBlockCount() {
+    return blocks.count;
+  }
+
+  /**
+   * Returns the number of times that the liveness of a basic block was computed in the most recent
+   * analysis or recomputation.
+   */
+  public int getBlockEvaluationCount() {
+    return blockEvaluationCount;
+  }
+
+  /**
+   * Updates the liveness of the given code attribute, after the given code attribute editor has
+   * changed it. The code attribute must be the one that this analyzer visited most recently, and
+   * the code attribute editor must not have been reset since it applied its changes. The liveness
+   * of the blocks that haven't changed and from which no changed blocks can be reached is reused;
+   * the liveness of the other blocks is computed again. If the code attribute is a different one,
+   * it is analyzed from scratch.
+   */
+  public void recompute(
+      Clazz clazz,
+      Method method,
+      CodeAttribute codeAttribute,
+      CodeAttributeEditor codeAttributeEditor) {
+    if (codeAttribute != analyzedCodeAttribute
+        || wordCount(codeAttribute.u2maxLocals) != wordCount) {
+      visitCodeAttribute(clazz, method, codeAttribute);
+    } else if (codeAttributeEditor.isModified()) {
+      analyze(clazz, method, codeAttribute, codeAttributeEditor);
+    } else {
+      blockEvaluationCount = 0;
+    }
+  }
+
+  // Implementations for AttributeVisitor.
+
+  public void visitAnyAttribute(Clazz clazz, Attribute attribute) {}
+
+  public void visitCodeAttribute(Clazz clazz, Method method, CodeAttribute codeAttribute) {
+    analyze(clazz, method, codeAttribute, null);
+  }
+
+  // Small utility methods.
+
+  /**
+   * Analyzes the given code attribute, reusing the results of the previous analysis for the blocks
+   * that the given code attribute editor, if any, hasn't affected.
+   */
+  private void analyze(
+      Clazz clazz,
+      Method method,
+      CodeAttribute codeAttribute,
+      CodeAttributeEditor codeAttributeEditor) {
+    // Keep the blocks of the previous analysis.
+    Blocks blocks = previousBlocks;
+    previousBlocks = this.blocks;
+    this.blocks = blocks;
+
+    codeLength = codeAttribute.u4codeLength;
+    wordCount = wordCount(codeAttribute.u2maxLocals);
+
+    findInstructions(clazz, method, codeAttribute);
+    findBlocks(codeAttribute);
+    findUsesAndDefinitions();
+
+    // Fill out the worklist.
+    worklist = ArrayUtil.ensureArraySize(worklist, blocks.count, 0);
+    isInWorklist = ArrayUtil.ensureArraySize(isInWorklist, blocks.count, false);
+    worklistSize = 0;
+
+    if (codeAttributeEditor == null) {
+      for (int index = 0; index < blocks.count; index++) {
+        addToWorklist(index);
+      }
+    } else {
+      reusePreviousLiveness(codeAttributeEditor);
+    }
+
+    // Compute the liveness of the blocks, starting at the end of the code.
+    blockEvaluationCount = 0;
+    while (worklistSize > 0) {
+      int blockIndex = worklist[--worklistSize];
+      isInWorklist[blockIndex] = false;
+
+      if (evaluateBlock(blockIndex)) {
+        int[] predecessors = blocks.predecessors[blockIndex];
+        for (int index = 0; index < predecessors.length; index++) {
+          addToWorklist(predecessors[index]);
+        }
+      }
+    }
+
+    // Compute the liveness of the individual instructions.
+    isAliveBefore = ArrayUtil.ensureArraySize(isAliveBefore, codeLength * wordCount, 0L);
+    isAliveAfter = ArrayUtil.ensureArraySize(isAliveAfter, codeLength * wordCount, 0L);
+
+    for (int index = 0; index < blocks.count; index++) {
+      markInstructions(index);
+    }
+
+    analyzedCodeAttribute = codeAttribute;
+  }
+
+  /** Finds the instructions, the variables that they access, and the starts of the blocks. */
+  private void findInstructions(Clazz clazz, Method method, CodeAttribute codeAttribute) {
+    isInstruction = ArrayUtil.ensureArraySize(isInstruction, codeLength + 1, false);
+    isBlockStart = ArrayUtil.ensureArraySize(isBlockStart, codeLength + 1, false);
+    accessTypes = ArrayUtil.ensureArraySize(accessTypes, codeLength, NO_ACCESS);
+    accessedVariables = ArrayUtil.ensureArraySize(accessedVariables, codeLength, 0);
+    subroutineReturnCount = 0;
+
+    boolean isInitializer = method.getName(clazz).equals(ClassConstants.METHOD_NAME_INIT);
+
+    byte[] code = codeAttribute.code;
+    int offset = 0;
+    while (offset < codeLength) {
+      Instruction instruction = InstructionFactory.create(code, offset);
+      byte opcode = instruction.opcode;
+      int nextOffset = offset + instruction.length(offset);
+
+      isInstruction[offset] = true;
+
+      if (instruction instanceof VariableInstruction) {
+        VariableInstruction variableInstruction = (VariableInstruction) instruction;
+        byte canonicalOpcode = variableInstruction.canonicalOpcode();
+        boolean isCategory2 =
+            canonicalOpcode == Instruction.OP_LLOAD
+                || canonicalOpcode == Instruction.OP_DLOAD
+                || canonicalOpcode == Instruction.OP_LSTORE
+                || canonicalOpcode == Instruction.OP_DSTORE;
+
+        accessTypes[offset] =
+            variableInstruction.isLoad()
+                ? isCategory2 ? LOAD_CATEGORY2 : LOAD
+                : isCategory2 ? STORE_CATEGORY2 : STORE;
+        accessedVariables[offset] = variableInstruction.variableIndex;
+
+        if (opcode == Instruction.OP_RET) {
+          isBlockStart[nextOffset] = true;
+        }
+      } else if (instruction instanceof BranchInstruction) {
+        isBlockStart[offset + ((BranchInstruction) instruction).branchOffset] = true;
+        isBlockStart[nextOffset] = true;
+
+        if (opcode == Instruction.OP_JSR || opcode == Instruction.OP_JSR_W) {
+          subroutineReturnOffsets =
+              ArrayUtil.add(subroutineReturnOffsets, subroutineReturnCount++, nextOffset);
+        }
+      } else if (instruction instanceof SwitchInstruction) {
+        SwitchInstruction switchInstruction = (SwitchInstruction) instruction;
+        int[] jumpOffsets = switchInstruction.jumpOffsets;
+
+        isBlockStart[offset + switchInstruction.defaultOffset] = true;
+        for (int index = 0; index < jumpOffsets.length; index++) {
+          isBlockStart[offset + jumpOffsets[index]] = true;
+        }
+        isBlockStart[nextOffset] = true;
+      } else if (isReturnOrThrow(opcode)) {
+        isBlockStart[nextOffset] = true;
+      } else if (isInitializer
+          && opcode == Instruction.OP_INVOKESPECIAL
+          && clazz
+              .getRefName(((ConstantInstruction) instruction).constantIndex)
+              .equals(ClassConstants.METHOD_NAME_INIT)) {
+        // Variable 0 ('this') of an initializer has to be alive as
+        // long as it may not have been initialized.
+        accessTypes[offset] = LOAD;
+        accessedVariables[offset] = 0;
+      }
+
+      offset = nextOffset;
+    }
+
+    // The blocks also start at the entry point and at the boundaries
+    // of the try blocks and the exception handlers.
+    isBlockStart[0] = true;
+
+    ExceptionInfo[] exceptionTable = codeAttribute.exceptionTable;
+    for (int index = 0; index < codeAttribute.u2exceptionTableLength; index++) {
+      ExceptionInfo exceptionInfo = exceptionTable[index];
+      isBlockStart[exceptionInfo.u2startPC] = true;
+      isBlockStart[exceptionInfo.u2endPC] = true;
+      isBlockStart[exceptionInfo.u2handlerPC] = true;
+    }
+  }
+
+  /** Splits the code into blocks and finds their successors, handlers, and predecessors. */
+  private void findBlocks(CodeAttribute codeAttribute) {
+    blockIndices = ArrayUtil.ensureArraySize(blockIndices, codeLength + 1, -1);
+
+    // Split the code into blocks.
+    int blockCount = 0;
+    int blockIndex = -1;
+    for (int offset = 0; offset < codeLength; offset++) {
+      if (isInstruction[offset] && isBlockStart[offset]) {
+        blockIndex = blockCount++;
+      }
+
+      blockIndices[offset] = blockIndex;
+    }
+
+    blocks.reset(blockCount, wordCount);
+
+    for (int offset = codeLength - 1; offset >= 0; offset--) {
+      blocks.starts[blockIndices[offset]] = offset;
+    }
+    for (int index = 0; index < blockCount; index++) {
+      blocks.ends[index] = index + 1 < blockCount ? blocks.starts[index + 1] : codeLength;
+    }
+
+    // Collect the successors of the blocks.
+    byte[] code = codeAttribute.code;
+    for (int index = 0; index < blockCount; index++) {
+      int lastOffset = blocks.ends[index] - 1;
+      while (!isInstruction[lastOffset]) {
+        lastOffset--;
+      }
+
+      blocks.successors[index] = successors(code, lastOffset, blocks.ends[index]);
+    }
+
+    // Collect the exception handlers of the blocks.
+    int[] handlerCounts = new int[blockCount];
+    ExceptionInfo[] exceptionTable = codeAttribute.exceptionTable;
+    for (int index = 0; index < codeAttribute.u2exceptionTableLength; index++) {
+      ExceptionInfo exceptionInfo = exceptionTable[index];
+      int handlerIndex = blockIndices[exceptionInfo.u2handlerPC];
+      int endPC = exceptionInfo.u2endPC;
+
+      for (int blockIndex2 = blockIndices[exceptionInfo.u2startPC];
+          blockIndex2 < blockCount && blocks.starts[blockIndex2] < endPC;
+          blockIndex2++) {
+        blocks.handlers[blockIndex2] =
+            ArrayUtil.add(
+                blocks.handlers[blockIndex2], handlerCounts[blockIndex2]++, handlerIndex);
+      }
+    }
+
+    // Collect the predecessors of the blocks, along normal edges and
+    // along exceptional edges.
+    int[] predecessorCounts = new int[blockCount];
+    for (int index = 0; index < blockCount; index++) {
+      blocks.handlers[index] = Arrays.copyOf(blocks.handlers[index], handlerCounts[index]);
+
+      countPredecessors(blocks.successors[index], predecessorCounts);
+      countPredecessors(blocks.handlers[index], predecessorCounts);
+    }
+
+    for (int index = 0; index < blockCount; index++) {
+      blocks.predecessors[index] = new int[predecessorCounts[index]];
+      predecessorCounts[index] = 0;
+    }
+
+    for (int index = 0; index < blockCount; index++) {
+      addPredecessor(index, blocks.successors[index], predecessorCounts);
+      addPredecessor(index, blocks.handlers[index], predecessorCounts);
+    }
+  }
+
+  /**
+   * Returns the indices of the successor blocks of the given last instruction of a block, given
+   * the end offset of the block.
+   */
+  private int[] successors(byte[] code, int offset, int blockEnd) {
+    Instruction instruction = InstructionFactory.create(code, offset);
+    byte opcode = instruction.opcode;
+    int nextBlock = blockEnd < codeLength ? blockIndices[blockEnd] : -1;
+
+    if (instruction instanceof BranchInstruction) {
+      int target = blockIndices[offset + ((BranchInstruction) instruction).branchOffset];
+
+      // A subroutine returns to the instructions after its invocations.
+      return opcode == Instruction.OP_GOTO
+              || opcode == Instruction.OP_GOTO_W
+              || opcode == Instruction.OP_JSR
+              || opcode == Instruction.OP_JSR_W
+              || nextBlock < 0
+          ? new int[] {target}
+          : new int[] {target, nextBlock};
+    }
+
+    if (instruction instanceof SwitchInstruction) {
+      SwitchInstruction switchInstruction = (SwitchInstruction) instruction;
+      int[] jumpOffsets = switchInstruction.jumpOffsets;
+
+      int[] successors = new int[jumpOffsets.length + 1];
+      successors[0] = blockIndices[offset + switchInstruction.defaultOffset];
+      for (int index = 0; index < jumpOffsets.length; index++) {
+        successors[index + 1] = blockIndices[offset + jumpOffsets[index]];
+      }
+
+      return successors;
+    }
+
+    if (opcode == Instruction.OP_RET) {
+      int[] successors = new int[subroutineReturnCount];
+      int successorCount = 0;
+      for (int index = 0; index < subroutineReturnCount; index++) {
+        int returnOffset = subroutineReturnOffsets[index];
+        if (returnOffset < codeLength) {
+          successors[successorCount++] = blockIndices[returnOffset];
+        }
+      }
+
+      return Arrays.copyOf(successors, successorCount);
+    }
+
+    return isReturnOrThrow(opcode) || nextBlock < 0 ? NO_BLOCKS : new int[] {nextBlock};
+  }
+
+  /** Returns whether the given opcode returns from the method or throws an exception. */
+  private static boolean isReturnOrThrow(byte opcode) {
+    return opcode == Instruction.OP_IRETURN
+        || opcode == Instruction.OP_LRETURN
+        || opcode == Instruction.OP_FRETURN
+        || opcode == Instruction.OP_DRETURN
+        || opcode == Instruction.OP_ARETURN
+        || opcode == Instruction.OP_RETURN
+        || opcode == Instruction.OP_ATHROW;
+  }
+
+  /** Increments the predecessor counts of the given successor blocks. */
+  private static void countPredecessors(int[] successors, int[] predecessorCounts) {
+    for (int index = 0; index < successors.length; index++) {
+      predecessorCounts[successors[index]]++;
+    }
+  }
+
+  /** Adds the given block as a predecessor of the given successor blocks. */
+  private void addPredecessor(int predecessor, int[] successors, int[] predecessorCounts) {
+    for (int index = 0; index < successors.length; index++) {
+      int blockIndex = successors[index];
+      blocks.predecessors[blockIndex][predecessorCounts[blockIndex]++] = predecessor;
+    }
+  }
+
+  /**
+   * Computes the variables that each block uses before defining them, and the variables that it
+   * defines.
+   */
+  private void findUsesAndDefinitions() {
+    long[] uses = blocks.uses;
+    long[] definitions = blocks.definitions;
+
+    for (int index = 0; index < blocks.count; index++) {
+      int wordIndex = index * wordCount;
+
+      for (int offset = blocks.starts[index]; offset < blocks.ends[index]; offset++) {
+        byte accessType = accessTypes[offset];
+        if (isInstruction[offset] && accessType != NO_ACCESS) {
+          int variableIndex = accessedVariables[offset];
+          int variableCount =
+              accessType == LOAD_CATEGORY2 || accessType == STORE_CATEGORY2 ? 2 : 1;
+
+          for (int variable = variableIndex; variable < variableIndex + variableCount; variable++) {
+            if (accessType == LOAD || accessType == LOAD_CATEGORY2) {
+              if (!isSet(definitions, wordIndex, variable)) {
+                set(uses, wordIndex, variable);
+              }
+            } else {
+              set(definitions, wordIndex, variable);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Reuses the liveness of the previous analysis for the blocks that the given code attribute
+   * editor hasn't changed and from which no changed blocks can be reached, and adds all other
+   * blocks to the worklist.
+   */
+  private void reusePreviousLiveness(CodeAttributeEditor codeAttributeEditor) {
+    Blocks previousBlocks = this.previousBlocks;
+
+    // Map the new start offsets of the unchanged previous blocks to
+    // these previous blocks.
+    previousBlockIndices = ArrayUtil.ensureArraySize(previousBlockIndices, codeLength, -1);
+    for (int index = 0; index < previousBlocks.count; index++) {
+      if (!isModified(codeAttributeEditor, previousBlocks, index)) {
+        int newOffset = codeAttributeEditor.getNewOffset(previousBlocks.starts[index]);
+        if (newOffset < codeLength) {
+          previousBlockIndices[newOffset] = index;
+        }
+      }
+    }
+
+    // Add the blocks that have changed to the worklist, marking them
+    // as affected.
+    for (int index = 0; index < blocks.count; index++) {
+      int previousIndex = previousBlockIndices[blocks.starts[index]];
+      if (previousIndex < 0
+          || blocks.ends[index] - blocks.starts[index]
+              != previousBlocks.ends[previousIndex] - previousBlocks.starts[previousIndex]
+          || !isMapped(
+              codeAttributeEditor,
+              previousBlocks,
+              previousBlocks.successors[previousIndex],
+              blocks.successors[index])
+          || !isMapped(
+              codeAttributeEditor,
+              previousBlocks,
+              previousBlocks.handlers[previousIndex],
+              blocks.handlers[index])) {
+        addToWorklist(index);
+      }
+    }
+
+    // Also mark the blocks from which affected blocks can be reached.
+    for (int worklistIndex = 0; worklistIndex < worklistSize; worklistIndex++) {
+      int[] predecessors = blocks.predecessors[worklist[worklistIndex]];
+      for (int index = 0; index < predecessors.length; index++) {
+        addToWorklist(predecessors[index]);
+      }
+    }
+
+    // Copy the liveness of the blocks that aren't affected.
+    for (int index = 0; index < blocks.count; index++) {
+      if (!isInWorklist[index]) {
+        int wordIndex = index * wordCount;
+        int previousWordIndex = previousBlockIndices[blocks.starts[index]] * wordCount;
+        System.arraycopy(
+            previousBlocks.liveIn, previousWordIndex, blocks.liveIn, wordIndex, wordCount);
+        System.arraycopy(
+            previousBlocks.liveOut, previousWordIndex, blocks.liveOut, wordIndex, wordCount);
+      }
+    }
+
+    // Start computing at the end of the code.
+    Arrays.sort(worklist, 0, worklistSize);
+  }
+
+  /** Returns whether the code attribute editor has changed any instructions of the given block. */
+  private static boolean isModified(
+      CodeAttributeEditor codeAttributeEditor, Blocks blocks, int blockIndex) {
+    for (int offset = blocks.starts[blockIndex]; offset < blocks.ends[blockIndex]; offset++) {
+      if (codeAttributeEditor.isModified(offset)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Returns whether the given previous blocks correspond to the given current blocks, after the
+   * changes of the code attribute editor.
+   */
+  private boolean isMapped(
+      CodeAttributeEditor codeAttributeEditor,
+      Blocks previousBlocks,
+      int[] previousSuccessors,
+      int[] successors) {
+    if (previousSuccessors.length != successors.length) {
+      return false;
+    }
+
+    for (int index = 0; index < successors.length; index++) {
+      if (codeAttributeEditor.getNewOffset(previousBlocks.starts[previousSuccessors[index]])
+          != blocks.starts[successors[index]]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /** Adds the given block to the worklist, if it isn't in the worklist yet. */
+  private void addToWorklist(int blockIndex) {
+    if (!isInWorklist[blockIndex]) {
+      isInWorklist[blockIndex] = true;
+      worklist[worklistSize++] = blockIndex;
+    }
+  }
+
+  /**
+   * Computes the liveness at the start and at the end of the given block, from the liveness at the
+   * start of its successors and of its exception handlers. Returns whether the liveness at the
+   * start of the block has changed.
+   */
+  private boolean evaluateBlock(int blockIndex) {
+    blockEvaluationCount++;
+
+    long[] liveIn = blocks.liveIn;
+    long[] liveOut = blocks.liveOut;
+    int wordIndex = blockIndex * wordCount;
+
+    // Any variables that are alive at the start of an exception handler
+    // are alive throughout the try block.
+    long[] handlerAlive = combinedLiveness(blocks.handlers[blockIndex], this.handlerAlive);
+    this.handlerAlive = handlerAlive;
+
+    long[] alive = combinedLiveness(blocks.successors[blockIndex], this.alive);
+    this.alive = alive;
+
+    boolean changed = false;
+    for (int index = 0; index < wordCount; index++) {
+      long aliveAfter = alive[index] | handlerAlive[index];
+      long aliveBefore =
+          blocks.uses[wordIndex + index]
+              | (aliveAfter & ~blocks.definitions[wordIndex + index])
+              | handlerAlive[index];
+
+      liveOut[wordIndex + index] = aliveAfter;
+      if (liveIn[wordIndex + index] != aliveBefore) {
+        liveIn[wordIndex + index] = aliveBefore;
+        changed = true;
+      }
+    }
+
+    return changed;
+  }
+
+  /**
+   * Returns the combined liveness at the start of the given blocks, in the given array, if it is
+   * large enough.
+   */
+  private long[] combinedLiveness(int[] blockIndices, long[] alive) {
+    alive = ArrayUtil.ensureArraySize(alive, wordCount, 0L);
+
+    for (int index = 0; index < blockIndices.length; index++) {
+      int wordIndex = blockIndices[index] * wordCount;
+      for (int index2 = 0; index2 < wordCount; index2++) {
+        alive[index2] |= blocks.liveIn[wordIndex + index2];
+      }
+    }
+
+    return alive;
+  }
+
+  /** Computes the liveness before and after the instructions of the given block. */
+  private void markInstructions(int blockIndex) {
+    long[] handlerAlive = combinedLiveness(blocks.handlers[blockIndex], this.handlerAlive);
+    this.handlerAlive = handlerAlive;
+
+    long[] alive = ArrayUtil.ensureArraySize(this.alive, wordCount, 0L);
+    this.alive = alive;
+    System.arraycopy(blocks.liveOut, blockIndex * wordCount, alive, 0, wordCount);
+
+    // Loop over all instructions, backward.
+    for (int offset = blocks.ends[blockIndex] - 1; offset >= blocks.starts[blockIndex]; offset--) {
+      if (isInstruction[offset]) {
+        int wordIndex = offset * wordCount;
+        System.arraycopy(alive, 0, isAliveAfter, wordIndex, wordCount);
+
+        byte accessType = accessTypes[offset];
+        if (accessType != NO_ACCESS) {
+          int variableIndex = accessedVariables[offset];
+          int variableCount =
+              accessType == LOAD_CATEGORY2 || accessType == STORE_CATEGORY2 ? 2 : 1;
+
+          for (int variable = variableIndex; variable < variableIndex + variableCount; variable++) {
+            if (accessType == LOAD || accessType == LOAD_CATEGORY2) {
+              // Start marking the variable before the load instruction.
+              set(alive, 0, variable);
+            } else {
+              // Stop marking the variable before the store instruction,
+              // but do mark it right after the store instruction.
+              clear(alive, 0, variable);
+              set(isAliveAfter, wordIndex, variable);
+            }
+          }
+        }
+
+        for (int index = 0; index < wordCount; index++) {
+          alive[index] |= handlerAlive[index];
+        }
+
+        System.arraycopy(alive, 0, isAliveBefore, wordIndex, wordCount);
+      }
+    }
+  }
+
+  /** Returns the number of 64-bit words in the bit sets for the given number of variables. */
+  private static int wordCount(int variablesSize) {
+    return (variablesSize + 63) >>> 6;
+  }
+
+  /** Returns whether the given variable is set in the bit set at the given word index. */
+  private boolean isSet(long[] bits, int wordIndex, int variableIndex) {
+    return variableIndex >= 0
+        && variableIndex >>> 6 < wordCount
+        && (bits[wordIndex + (variableIndex >>> 6)] & (1L << variableIndex)) != 0L;
+  }
+
+  /** Sets the given variable in the bit set at the given word index, if it fits. */
+  private void set(long[] bits, int wordIndex, int variableIndex) {
+    if (variableIndex >>> 6 < wordCount) {
+      bits[wordIndex + (variableIndex >>> 6)] |= 1L << variableIndex;
+    }
+  }
+
+  /** Clears the given variable in the bit set at the given word index, if it fits. */
+  private void clear(long[] bits, int wordIndex, int variableIndex) {
+    if (variableIndex >>> 6 < wordCount) {
+      bits[wordIndex + (variableIndex >>> 6)] &= ~(1L << variableIndex);
+    }
+  }
+
+  /** The basic blocks of a code attribute, with their bit sets. */
+  private static class Blocks {
+    private int count;
+    private int[] starts = new int[0];
+    private int[] ends = new int[0];
+    private int[][] successors = new int[0][];
+    private int[][] handlers = new int[0][];
+    private int[][] predecessors = new int[0][];
+    private long[] uses = new long[0];
+    private long[] definitions = new long[0];
+    private long[] liveIn = new long[0];
+    private long[] liveOut = new long[0];
+
+    /** Prepares the arrays for the given number of blocks and words per bit set. */
+    private void reset(int count, int wordCount) {
+      this.count = count;
+
+      if (starts.length < count) {
+        starts = new int[count];
+        ends = new int[count];
+        successors = new int[count][];
+        handlers = new int[count][];
+        predecessors = new int[count][];
+      }
+
+      Arrays.fill(handlers, 0, count, NO_BLOCKS);
+
+      uses = ArrayUtil.ensureArraySize(uses, count * wordCount, 0L);
+      definitions = ArrayUtil.ensureArraySize(definitions, count * wordCount, 0L);
+      liveIn = ArrayUtil.ensureArraySize(liveIn, count * wordCount, 0L);
+      liveOut = ArrayUtil.ensureArraySize(liveOut, count * wordCount, 0L);
+    }
+  }
+}
@@ -67,6 +67,7 @@ import proguard.classfile.constant.visitor.ConstantVisitor;
 import proguard.classfile.util.ClassUtil;
 import proguard.classfile.visitor.MemberAccessFilter;
 import proguard.classfile.visitor.MemberVisitor;
+import proguard.evaluation.executor.ExecutionCache;
 import proguard.evaluation.executor.Executor;
 import proguard.evaluation.executor.MethodExecutionInfo;
 import proguard.evaluation.executor.StringReflectionExecutor;
@@ -131,6 +132,7 @@ public class ExecutingInvocationUnit extends BasicInvocationUnit {
     protected boolean enableSameInstanceIdApproximation = false;
     protected boolean useDefaultStringReflectionExecutor = true;
     protected List<Executor.Builder<?>> registeredExecutorBuilders = new ArrayList<>();
+    protected ExecutionCache executionCache;
 
     public Builder(@NotNull ClassPool programClassPool, @NotNull ClassPool libraryClassPool) {
       this.programClassPool = programClassPool;
@@ -195,6 +197,17 @@ public class ExecutingInvocationUnit extends BasicInvocationUnit {
       return this;
     }
 
+    /**
+     * Sets a cache for the results of the methods that the default {@link
+     * StringReflectionExecutor} executes. The cache can be shared between invocation units.
+     *
+     * @param executionCache the cache, or null to disable caching.
+     */
+    public Builder setExecutionCache(ExecutionCache executionCache) {
+      this.executionCache = executionCache;
+      return this;
+    }
+
     /**
      * Build the {@link ExecutingInvocationUnit} defined by this builder instance.
      *
@@ -205,7 +218,10 @@ public class ExecutingInvocationUnit extends BasicInvocationUnit {
       List<Executor> registeredExecutors = new ArrayList<>();
 
       if (useDefaultStringReflectionExecutor) {
-        registeredExecutors.add(new StringReflectionExecutor.Builder(libraryClassPool).build());
+        registeredExecutors.add(
+            new StringReflectionExecutor.Builder(libraryClassPool)
+                .setExecutionCache(executionCache)
+                .build());
       }
 
       registeredExecutorBuilders.stream()
@@ -0,0 +1,153 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import proguard.classfile.*;
+import proguard.classfile.attribute.*;
+import proguard.classfile.attribute.visitor.*;
+import proguard.classfile.visitor.*;
+
+/**
+ * This {@link ClassPoolVisitor} evaluates the code of all methods in the class pools that it
+ * visits with {@link PartialEvaluator} instances, on multiple threads. It keeps a pool of partial
+ * evaluators, created by the given {@link PartialEvaluatorFactory}, with at most one evaluator per
+ * concurrently running thread. Each thread borrows an evaluator for each method, so the evaluators
+ * and their arrays are reused for many methods.
+ *
+ * <p>The results of each method are passed to a {@link ResultConsumer}, on the thread that
+ * evaluated the method, while the partial evaluator still holds them. The consumer must therefore
+ * be thread-safe and must not keep references to the partial evaluator.
+ */
+public class ParallelPartialEvaluator implements ClassPoolVisitor {
+  /** A factory for {@link PartialEvaluator} objects. */
+  public interface PartialEvaluatorFactory {
+    /**
+     * Creates a PartialEvaluator for the pool. Partial evaluators run concurrently, so they must
+     * not share any state, like value factories or invocation units that aren't thread-safe.
+     */
+    PartialEvaluator createPartialEvaluator();
+  }
+
+  /** A consumer of the results of the evaluated methods. */
+  public interface ResultConsumer {
+    /**
+     * Processes the results of the given method, which the given partial evaluator has just
+     * evaluated. The partial evaluator is reused for other methods afterwards, possibly on other
+     * threads.
+     */
+    void evaluated(
+        Clazz clazz, Method method, CodeAttribute codeAttribute, PartialEvaluator partialEvaluator);
+
+    /**
+     * Processes the exception that the partial evaluator has thrown while evaluating the given
+     * method. By default, it rethrows the exception, which stops the evaluation of the class pool.
+     */
+    default void failed(
+        Clazz clazz, Method method, CodeAttribute codeAttribute, RuntimeException exception) {
+      throw exception;
+    }
+  }
+
+  private final PartialEvaluatorFactory partialEvaluatorFactory;
+  private final ResultConsumer resultConsumer;
+  private final ExecutorService executorService;
+
+  // The partial evaluators that aren't evaluating a method right now.
+  private final Queue<PartialEvaluator> partialEvaluators = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Creates a new ParallelPartialEvaluator that evaluates the methods on the threads of a {@link
+   * ParallelAllClassVisitor}.
+   *
+   * @param partialEvaluatorFactory the factory for the partial evaluators of the threads.
+   * @param resultConsumer the thread-safe consumer of the results.
+   */
+  public ParallelPartialEvaluator(
+      PartialEvaluatorFactory partialEvaluatorFactory, ResultConsumer resultConsumer) {
+    this(partialEvaluatorFactory, resultConsumer, null);
+  }
+
+  /**
+   * Creates a new ParallelPartialEvaluator that evaluates the methods on the given executor
+   * service.
+   *
+   * @param partialEvaluatorFactory the factory for the partial evaluators of the threads.
+   * @param resultConsumer the thread-safe consumer of the results.
+   * @param executorService the executor service that evaluates the methods, for example a shared
+   *     {@link java.util.concurrent.ForkJoinPool}. It is not shut down after visiting a class pool.
+   *     If it is null, the threads of a {@link ParallelAllClassVisitor} are used.
+   */
+  public ParallelPartialEvaluator(
+      PartialEvaluatorFactory partialEvaluatorFactory,
+      ResultConsumer resultConsumer,
+      ExecutorService executorService) {
+    this.partialEvaluatorFactory = partialEvaluatorFactory;
+    this.resultConsumer = resultConsumer;
+    this.executorService = executorService;
+  }
+
+  // Implementations for ClassPoolVisitor.
+
+  @Override
+  public void visitClassPool(ClassPool classPool) {
+    ParallelAllClassVisitor.ClassVisitorFactory classVisitorFactory =
+        () -> new AllMethodVisitor(new AllAttributeVisitor(new MyMethodEvaluator()));
+
+    classPool.accept(
+        executorService != null
+            ? new ParallelAllClassVisitor(classVisitorFactory, executorService)
+            : new ParallelAllClassVisitor(classVisitorFactory));
+  }
+
+  /**
+   * This {@link AttributeVisitor} evaluates the code attributes that it visits with the partial
+   * evaluator of the current thread, and passes the results to the result consumer.
+   */
+  private class MyMethodEvaluator implements AttributeVisitor {
+    // Implementations for AttributeVisitor.
+
+    @Override
+    public void visitAnyAttribute(Clazz clazz, Attribute attribute) {}
+
+    @Override
+    public void visitCodeAttribute(Clazz clazz, Method method, CodeAttribute codeAttribute) {
+      PartialEvaluator partialEvaluator = partialEvaluators.poll();
+      if (partialEvaluator == null) {
+        partialEvaluator = partialEvaluatorFactory.createPartialEvaluator();
+      }
+
+      try {
+        try {
+          partialEvaluator.visitCodeAttribute(clazz, method, codeAttribute);
+        } catch (RuntimeException e) {
+          resultConsumer.failed(clazz, method, codeAttribute, e);
+          return;
+        }
+
+        resultConsumer.evaluated(clazz, method, codeAttribute, partialEvaluator);
+      } finally {
+        // Return the partial evaluator to the pool.
+        partialEvaluators.offer(partialEvaluator);
+      }
+    }
+  }
+}
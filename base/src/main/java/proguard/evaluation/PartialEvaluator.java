@@ -17,9 +17,13 @@
  */
 package proguard.evaluation;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import proguard.analysis.MetricsRegistry;
 import proguard.classfile.Clazz;
 import proguard.classfile.Method;
 import proguard.classfile.attribute.Attribute;
@@ -38,6 +42,7 @@ import proguard.classfile.instruction.TableSwitchInstruction;
 import proguard.classfile.instruction.VariableInstruction;
 import proguard.classfile.instruction.visitor.InstructionVisitor;
 import proguard.classfile.util.BranchTargetFinder;
+import proguard.classfile.util.ReversePostOrderFinder;
 import proguard.classfile.visitor.ExceptionHandlerFilter;
 import proguard.evaluation.exception.EmptyCodeAttributeException;
 import proguard.evaluation.exception.ExcessiveComplexityException;
@@ -81,6 +86,13 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
   // By default (value set to -1), the analysis is not forcibly stopped.
   private int stopAnalysisAfterNEvaluations = -1;
 
+  /** The name of the timer that measures the evaluations of code attributes. */
+  public static final String EVALUATION_TIMER = "PartialEvaluator.evaluation";
+
+  /** The name of the histogram of instruction block evaluations per code attribute. */
+  public static final String INSTRUCTION_BLOCK_EVALUATION_HISTOGRAM =
+      "PartialEvaluator.instructionBlockEvaluations";
+
   public static final int NONE = -2;
   public static final int AT_METHOD_ENTRY = -1;
   public static final int AT_CATCH_ENTRY = -1;
@@ -90,6 +102,10 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
   private final boolean evaluateAllCode;
   private final int prettyInstructionBuffered;
   private final InstructionVisitor extraInstructionVisitor;
+  private final boolean compactFrames;
+  private final ReversePostOrderFinder reversePostOrderFinder;
+  private final MetricsRegistry.Timer evaluationTimer;
+  private final MetricsRegistry.Histogram instructionBlockEvaluationHistogram;
 
   private InstructionOffsetValue[] branchOriginValues =
       new InstructionOffsetValue[ClassEstimates.TYPICAL_CODE_LENGTH];
@@ -105,6 +121,9 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
   private int[] evaluationCounts = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
   private boolean evaluateExceptions;
   private int codeLength;
+  private boolean framesShared;
+  private boolean prioritizeInstructionBlocks;
+  private int instructionBlockEvaluationCount;
   private PartialEvaluatorStateTracker stateTracker;
 
   private final BasicBranchUnit branchUnit;
@@ -113,6 +132,10 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
   private final java.util.Stack<InstructionBlock> callingInstructionBlockStack;
   private final java.util.Stack<InstructionBlock> instructionBlockStack = new java.util.Stack<>();
 
+  // Pending instruction blocks per position in reverse post-order, when prioritizing them.
+  private final List<List<InstructionBlock>> instructionBlockQueue = new ArrayList<>();
+  private final BitSet pendingInstructionBlockOrders = new BitSet();
+
   /** Creates a simple PartialEvaluator. */
   public PartialEvaluator() {
     this(new BasicValueFactory());
@@ -193,6 +216,10 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     // To always support pretty printing, set this default value larger than 0.
     this.prettyInstructionBuffered = 7;
     this.extraInstructionVisitor = extraInstructionVisitor;
+    this.compactFrames = false;
+    this.reversePostOrderFinder = null;
+    this.evaluationTimer = null;
+    this.instructionBlockEvaluationHistogram = null;
     this.branchUnit = branchUnit;
     this.branchTargetFinder = branchTargetFinder;
     this.callingInstructionBlockStack =
@@ -215,6 +242,7 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     this.evaluateAllCode = builder.evaluateAllCode;
     this.prettyInstructionBuffered = builder.prettyInstructionBuffered;
     this.extraInstructionVisitor = builder.extraInstructionVisitor;
+    this.compactFrames = builder.compactFrames;
     this.branchUnit =
         builder.branchUnit == null
             ? (evaluateAllCode ? new BasicBranchUnit() : new TracedBranchUnit())
@@ -225,7 +253,14 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
         builder.callingInstructionBlockStack == null
             ? this.instructionBlockStack
             : builder.callingInstructionBlockStack;
+    this.reversePostOrderFinder =
+        builder.reversePostOrderWorklist ? new ReversePostOrderFinder(branchTargetFinder) : null;
     this.stopAnalysisAfterNEvaluations = builder.stopAnalysisAfterNEvaluations;
+    this.evaluationTimer = builder.metrics == null ? null : builder.metrics.timer(EVALUATION_TIMER);
+    this.instructionBlockEvaluationHistogram =
+        builder.metrics == null
+            ? null
+            : builder.metrics.histogram(INSTRUCTION_BLOCK_EVALUATION_HISTOGRAM);
     if (builder.stateTracker == null && (DEBUG || DEBUG_RESULTS)) {
       this.stateTracker = new DebugPrinter(DEBUG, DEBUG_RESULTS);
     } else {
@@ -245,6 +280,9 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     private java.util.Stack<InstructionBlock> callingInstructionBlockStack;
     private int stopAnalysisAfterNEvaluations = -1; // disabled by default
     private PartialEvaluatorStateTracker stateTracker;
+    private boolean compactFrames;
+    private boolean reversePostOrderWorklist;
+    private MetricsRegistry metrics;
 
     public static Builder create() {
       return new Builder();
@@ -329,6 +367,40 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
       this.stopAnalysisAfterNEvaluations = stopAnalysisAfterNEvaluations;
       return this;
     }
+
+    /**
+     * Specifies whether consecutive instructions should share their variable frames and stacks
+     * after the evaluation, wherever they are identical. This typically saves most of the memory
+     * of the results for large methods with many local variables. The shared frames must then not
+     * be modified.
+     */
+    public Builder setCompactFrames(boolean compactFrames) {
+      this.compactFrames = compactFrames;
+      return this;
+    }
+
+    /**
+     * Specifies whether pending instruction blocks should be evaluated in reverse post-order of the
+     * control flow graph, merging the blocks that are pending at the same offset, instead of in
+     * depth-first order. This generally lets the contexts at branch targets and loop headers
+     * converge with fewer evaluations, at the cost of executing some blocks in merged contexts.
+     * Methods with subroutines are always evaluated in depth-first order.
+     */
+    public Builder setReversePostOrderWorklist(boolean reversePostOrderWorklist) {
+      this.reversePostOrderWorklist = reversePostOrderWorklist;
+      return this;
+    }
+
+    /**
+     * Sets a registry in which the partial evaluator records the duration of each evaluation, in
+     * the timer {@link #EVALUATION_TIMER}, and the number of instruction block evaluations, in the
+     * histogram {@link #INSTRUCTION_BLOCK_EVALUATION_HISTOGRAM}. By default, the partial evaluator
+     * doesn't record any metrics.
+     */
+    public Builder setMetrics(MetricsRegistry metrics) {
+      this.metrics = metrics;
+      return this;
+    }
   }
 
   // Implementations for AttributeVisitor.
@@ -391,17 +463,75 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     // Reset stacks.
     instructionBlockStack.clear();
     callingInstructionBlockStack.clear();
+    clearInstructionBlockQueue();
+    instructionBlockEvaluationCount = 0;
 
     // Find all instruction offsets,...
     codeAttribute.accept(clazz, method, branchTargetFinder);
 
+    // ...and the order of the basic blocks, if we need it.
+    prioritizeInstructionBlocks =
+        reversePostOrderFinder != null && !branchTargetFinder.containsSubroutines();
+    if (prioritizeInstructionBlocks) {
+      codeAttribute.accept(clazz, method, reversePostOrderFinder);
+
+      for (int order = instructionBlockQueue.size();
+          order < reversePostOrderFinder.blockCount();
+          order++) {
+        instructionBlockQueue.add(new ArrayList<>());
+      }
+    }
+
     // Start executing the first instruction block.
-    evaluateInstructionBlockAndExceptionHandlers(
-        clazz, method, codeAttribute, variables, stack, 0, codeAttribute.u4codeLength);
+    long startNanos = evaluationTimer == null ? 0L : System.nanoTime();
+    try {
+      evaluateInstructionBlockAndExceptionHandlers(
+          clazz, method, codeAttribute, variables, stack, 0, codeAttribute.u4codeLength);
+    } finally {
+      if (evaluationTimer != null) {
+        evaluationTimer.recordSince(startNanos);
+        instructionBlockEvaluationHistogram.record(instructionBlockEvaluationCount);
+      }
+    }
+
+    if (compactFrames) {
+      shareIdenticalFrames();
+    }
 
     if (stateTracker != null) stateTracker.evaluationResults(clazz, method, codeAttribute, this);
   }
 
+  /**
+   * Returns the number of instruction blocks that have been evaluated in the most recently
+   * evaluated method.
+   */
+  public int getInstructionBlockEvaluationCount() {
+    return instructionBlockEvaluationCount;
+  }
+
+  /** Returns the total number of instruction evaluations in the most recently evaluated method. */
+  public int getInstructionEvaluationCount() {
+    int count = 0;
+    for (int offset = 0; offset < codeLength; offset++) {
+      count += evaluationCounts[offset];
+    }
+
+    return count;
+  }
+
+  /**
+   * Returns the highest number of times that any single instruction has been evaluated, as limited
+   * by {@link Builder#stopAnalysisAfterNEvaluations(int)}.
+   */
+  public int getMaxInstructionEvaluationCount() {
+    int maxCount = 0;
+    for (int offset = 0; offset < codeLength; offset++) {
+      maxCount = Math.max(maxCount, evaluationCounts[offset]);
+    }
+
+    return maxCount;
+  }
+
   /** Returns whether a block of instructions is ever used. */
   public boolean isTraced(int startOffset, int endOffset) {
     for (int index = startOffset; index < endOffset; index++) {
@@ -581,7 +711,15 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
 
   /** Pushes block of instructions to be executed in this partial evaluator. */
   private void pushInstructionBlock(TracedVariables variables, TracedStack stack, int startOffset) {
-    instructionBlockStack.push(new InstructionBlock(variables, stack, startOffset));
+    InstructionBlock instructionBlock = new InstructionBlock(variables, stack, startOffset);
+
+    if (prioritizeInstructionBlocks) {
+      int order = reversePostOrderFinder.reversePostOrder(startOffset);
+      instructionBlockQueue.get(order).add(instructionBlock);
+      pendingInstructionBlockOrders.set(order);
+    } else {
+      instructionBlockStack.push(instructionBlock);
+    }
   }
 
   /**
@@ -616,10 +754,12 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     evaluateSingleInstructionBlock(clazz, method, codeAttribute, variables, stack, startOffset);
 
     // Execute all resulting instruction blocks on the execution stack.
-    while (!instructionBlockStack.empty()) {
-      if (stateTracker != null) stateTracker.startBranchCodeBlockEvaluation(instructionBlockStack);
+    while (hasPendingInstructionBlocks()) {
+      if (stateTracker != null)
+        stateTracker.startBranchCodeBlockEvaluation(pendingInstructionBlocks());
 
-      InstructionBlock instructionBlock = instructionBlockStack.pop();
+      InstructionBlock instructionBlock =
+          prioritizeInstructionBlocks ? popFirstInstructionBlock() : instructionBlockStack.pop();
 
       evaluateSingleInstructionBlock(
           clazz,
@@ -658,6 +798,8 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     Processor processor =
         new Processor(variables, stack, valueFactory, branchUnit, invocationUnit, evaluateAllCode);
 
+    instructionBlockEvaluationCount++;
+
     int instructionOffset = startOffset;
 
     // Evaluate the subsequent instructions.
@@ -973,6 +1115,7 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
       stateTracker.generalizeSubroutine(
           clazz, method, variables, stack, subroutineStart, subroutineEnd);
     generalize(subroutinePartialEvaluator, 0, codeAttribute.u4codeLength);
+    instructionBlockEvaluationCount += subroutinePartialEvaluator.instructionBlockEvaluationCount;
 
     if (stateTracker != null)
       stateTracker.endSubroutine(clazz, method, variables, stack, subroutineStart, subroutineEnd);
@@ -1122,10 +1265,84 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
 
   // Small utility methods.
 
+  /** Returns whether there are any instruction blocks left to be evaluated. */
+  private boolean hasPendingInstructionBlocks() {
+    return prioritizeInstructionBlocks
+        ? !pendingInstructionBlockOrders.isEmpty()
+        : !instructionBlockStack.empty();
+  }
+
+  /** Returns the instruction blocks left to be evaluated, for the state tracker. */
+  private List<InstructionBlock> pendingInstructionBlocks() {
+    if (!prioritizeInstructionBlocks) {
+      return instructionBlockStack;
+    }
+
+    List<InstructionBlock> pendingInstructionBlocks = new ArrayList<>();
+    for (int order = pendingInstructionBlockOrders.nextSetBit(0);
+        order >= 0;
+        order = pendingInstructionBlockOrders.nextSetBit(order + 1)) {
+      pendingInstructionBlocks.addAll(instructionBlockQueue.get(order));
+    }
+
+    return pendingInstructionBlocks;
+  }
+
+  /**
+   * Removes the pending instruction block that comes first in reverse post-order from the queue,
+   * merging any other pending blocks at the same offset into it.
+   */
+  private InstructionBlock popFirstInstructionBlock() {
+    int firstOrder = pendingInstructionBlockOrders.nextSetBit(0);
+    List<InstructionBlock> bucket = instructionBlockQueue.get(firstOrder);
+
+    // Take the most recently pushed block of the first basic block.
+    InstructionBlock firstBlock = bucket.remove(bucket.size() - 1);
+
+    // Merge the other blocks at the same offset with compatible stacks.
+    for (int index = bucket.size() - 1; index >= 0; index--) {
+      InstructionBlock block = bucket.get(index);
+      if (block.startOffset == firstBlock.startOffset
+          && block.stack.size() == firstBlock.stack.size()) {
+        firstBlock.variables.generalize(block.variables, false);
+        firstBlock.stack.generalize(block.stack);
+
+        bucket.remove(index);
+      }
+    }
+
+    if (bucket.isEmpty()) {
+      pendingInstructionBlockOrders.clear(firstOrder);
+    }
+
+    return firstBlock;
+  }
+
+  /** Removes any instruction blocks that are left in the queue, for instance after an exception. */
+  private void clearInstructionBlockQueue() {
+    for (int order = pendingInstructionBlockOrders.nextSetBit(0);
+        order >= 0;
+        order = pendingInstructionBlockOrders.nextSetBit(order + 1)) {
+      instructionBlockQueue.get(order).clear();
+    }
+
+    pendingInstructionBlockOrders.clear();
+  }
+
   /** Initializes the data structures for the variables, stack, etc. */
   private void initializeArrays(CodeAttribute codeAttribute) {
     int newCodeLength = codeAttribute.u4codeLength;
 
+    // Shared frames can't be reused at different offsets.
+    if (framesShared) {
+      Arrays.fill(variablesBefore, 0, codeLength, null);
+      Arrays.fill(stacksBefore, 0, codeLength, null);
+      Arrays.fill(variablesAfter, 0, codeLength, null);
+      Arrays.fill(stacksAfter, 0, codeLength, null);
+
+      framesShared = false;
+    }
+
     // Create new arrays for storing information at each instruction offset.
     if (branchOriginValues.length < newCodeLength) {
       // Create new arrays.
@@ -1184,6 +1401,40 @@ public class PartialEvaluator implements AttributeVisitor, ExceptionInfoVisitor
     codeLength = newCodeLength;
   }
 
+  /**
+   * Lets the traced instructions share their frames with the preceding traced instructions, or
+   * between their frames before and after execution, wherever they hold the same values.
+   */
+  private void shareIdenticalFrames() {
+    TracedVariables previousVariables = null;
+    TracedStack previousStack = null;
+
+    for (int offset = 0; offset < codeLength; offset++) {
+      if (isTraced(offset)) {
+        if (previousVariables != null && variablesBefore[offset].isIdenticalTo(previousVariables)) {
+          variablesBefore[offset] = previousVariables;
+        }
+
+        if (previousStack != null && stacksBefore[offset].isIdenticalTo(previousStack)) {
+          stacksBefore[offset] = previousStack;
+        }
+
+        if (variablesAfter[offset].isIdenticalTo(variablesBefore[offset])) {
+          variablesAfter[offset] = variablesBefore[offset];
+        }
+
+        if (stacksAfter[offset].isIdenticalTo(stacksBefore[offset])) {
+          stacksAfter[offset] = stacksBefore[offset];
+        }
+
+        previousVariables = variablesAfter[offset];
+        previousStack = stacksAfter[offset];
+      }
+    }
+
+    framesShared = true;
+  }
+
   /** Initializes the data structures for the variables, stack, etc. */
   private void initializeParameters(
       Clazz clazz, Method method, CodeAttribute codeAttribute, TracedVariables variables) {
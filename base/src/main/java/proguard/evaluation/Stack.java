@@ -429,6 +429,21 @@ public class Stack {
     }
   }
 
+  /** Returns whether this Stack holds the same Value instances as the given one. */
+  boolean isIdenticalTo(Stack other) {
+    if (this.currentSize != other.currentSize || this.actualMaxSize != other.actualMaxSize) {
+      return false;
+    }
+
+    for (int index = 0; index < currentSize; index++) {
+      if (this.values[index] != other.values[index]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
   // Implementations for Object.
 
   public boolean equals(Object object) {
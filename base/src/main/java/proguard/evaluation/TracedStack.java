@@ -263,6 +263,16 @@ public class TracedStack extends Stack {
     actualProducerStack.swap();
   }
 
+  /**
+   * Returns whether this TracedStack holds the same Value instances and producer Value instances as
+   * the given one.
+   */
+  boolean isIdenticalTo(TracedStack other) {
+    return super.isIdenticalTo(other)
+        && producerStack.isIdenticalTo(other.producerStack)
+        && actualProducerStack.isIdenticalTo(other.actualProducerStack);
+  }
+
   // Implementations for Object.
 
   public boolean equals(Object object) {
@@ -123,6 +123,14 @@ public class TracedVariables extends Variables {
     }
   }
 
+  /**
+   * Returns whether this TracedVariables object holds the same Value instances and producer Value
+   * instances as the given one.
+   */
+  boolean isIdenticalTo(TracedVariables other) {
+    return super.isIdenticalTo(other) && producerVariables.isIdenticalTo(other.producerVariables);
+  }
+
   // Implementations for Object.
 
   public boolean equals(Object object) {
@@ -265,6 +265,21 @@ public class Variables {
     }
   }
 
+  /** Returns whether this Variables object holds the same Value instances as the given one. */
+  boolean isIdenticalTo(Variables other) {
+    if (this.size != other.size) {
+      return false;
+    }
+
+    for (int index = 0; index < size; index++) {
+      if (this.values[index] != other.values[index]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
   // Implementations for Object.
 
   public boolean equals(Object object) {
@@ -0,0 +1,228 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation.executor;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import proguard.classfile.MethodSignature;
+
+/**
+ * This class caches the results of methods that a {@link ReflectionExecutor} has executed, keyed on
+ * their signatures, calling instances, and arguments. It only applies to calls of which the
+ * instance, the arguments, and the result are immutable values, like strings and boxed primitives,
+ * and it assumes that the methods are deterministic for such inputs. The cache keeps the most
+ * recently used results, up to a maximum size. It is thread-safe, so it can be shared between
+ * executors of different invocation units, for instance by means of {@link
+ * StringReflectionExecutor.Builder#setExecutionCache(ExecutionCache)}.
+ */
+public class ExecutionCache {
+  private final int maximumSize;
+  private final Map<Key, Result> results;
+
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * Creates a new ExecutionCache.
+   *
+   * @param maximumSize the maximum number of results to keep.
+   */
+  public ExecutionCache(int maximumSize) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("The maximum size can't be negative.");
+    }
+
+    this.maximumSize = maximumSize;
+    this.results =
+        new LinkedHashMap<Key, Result>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+            boolean evict = size() > ExecutionCache.this.maximumSize;
+            if (evict) {
+              evictionCount++;
+            }
+
+            return evict;
+          }
+        };
+  }
+
+  /** Returns the maximum number of results that this cache keeps. */
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  /** Returns the number of results in this cache. */
+  public synchronized int size() {
+    return results.size();
+  }
+
+  /** Returns the number of executions that could reuse a cached result. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of cacheable executions that couldn't reuse a cached result. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of results that have been removed to respect the maximum size. */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** Removes all results and resets the statistics. */
+  public synchronized void clear() {
+    results.clear();
+    hitCount = 0L;
+    missCount = 0L;
+    evictionCount = 0L;
+  }
+
+  // Small utility methods.
+
+  /**
+   * Returns the key for the given call, or null if the call can't be cached.
+   *
+   * @param signature the signature of the called method.
+   * @param instance the calling instance, or null for a static method.
+   * @param arguments the arguments of the call.
+   */
+  static Key key(MethodSignature signature, Object instance, Object[] arguments) {
+    if (!isImmutable(instance)) {
+      return null;
+    }
+
+    for (Object argument : arguments) {
+      if (!isImmutable(argument)) {
+        return null;
+      }
+    }
+
+    return new Key(signature, instance, arguments.clone());
+  }
+
+  /** Returns the cached result for the given key, or null if there isn't any. */
+  synchronized Result get(Key key) {
+    Result result = results.get(key);
+    if (result != null) {
+      hitCount++;
+    } else {
+      missCount++;
+    }
+
+    return result;
+  }
+
+  /** Caches the given result, if it is immutable. */
+  synchronized void put(Key key, Result result) {
+    if (result.isFailure() || isImmutable(result.returnValue)) {
+      results.put(key, result);
+    }
+  }
+
+  /** Returns whether the given object is null or a value of an immutable class. */
+  private static boolean isImmutable(Object object) {
+    return object == null
+        || object instanceof String
+        || object instanceof Integer
+        || object instanceof Long
+        || object instanceof Float
+        || object instanceof Double
+        || object instanceof Character
+        || object instanceof Short
+        || object instanceof Byte
+        || object instanceof Boolean;
+  }
+
+  /** The key of a cached method execution. */
+  static class Key {
+    private final MethodSignature signature;
+    private final Object instance;
+    private final Object[] arguments;
+    private final int hashCode;
+
+    private Key(MethodSignature signature, Object instance, Object[] arguments) {
+      this.signature = signature;
+      this.instance = instance;
+      this.arguments = arguments;
+      this.hashCode =
+          31 * (31 * signature.hashCode() + Objects.hashCode(instance))
+              + Arrays.hashCode(arguments);
+    }
+
+    // Implementations for Object.
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) {
+        return true;
+      }
+
+      if (!(object instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key) object;
+      return hashCode == other.hashCode
+          && signature.equals(other.signature)
+          && Objects.equals(instance, other.instance)
+          && Arrays.equals(arguments, other.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /** The cached result of a method execution. */
+  static class Result {
+    private static final Result FAILURE = new Result(null, false);
+
+    final Object returnValue;
+    final boolean returnsInstance;
+
+    private Result(Object returnValue, boolean returnsInstance) {
+      this.returnValue = returnValue;
+      this.returnsInstance = returnsInstance;
+    }
+
+    /**
+     * Returns a result with the given return value, or with the calling instance, if the method
+     * returned its instance.
+     */
+    static Result of(Object returnValue, boolean returnsInstance) {
+      return new Result(returnsInstance ? null : returnValue, returnsInstance);
+    }
+
+    /** Returns the result of an execution that failed. */
+    static Result failure() {
+      return FAILURE;
+    }
+
+    boolean isFailure() {
+      return this == FAILURE;
+    }
+  }
+}
@@ -27,6 +27,7 @@ import java.util.Optional;
 import proguard.classfile.JavaConstants;
 import proguard.classfile.JavaTypeConstants;
 import proguard.classfile.MethodDescriptor;
+import proguard.classfile.MethodSignature;
 import proguard.classfile.TypeConstants;
 import proguard.classfile.util.ClassUtil;
 import proguard.evaluation.MethodResult;
@@ -44,6 +45,22 @@ import proguard.evaluation.value.object.AnalyzedObject;
  */
 public abstract class ReflectionExecutor implements Executor {
 
+  private final ExecutionCache executionCache;
+
+  /** Creates a new ReflectionExecutor that doesn't cache its results. */
+  protected ReflectionExecutor() {
+    this(null);
+  }
+
+  /**
+   * Creates a new ReflectionExecutor.
+   *
+   * @param executionCache an optional cache for the results of executed methods.
+   */
+  protected ReflectionExecutor(ExecutionCache executionCache) {
+    this.executionCache = executionCache;
+  }
+
   @Override
   public MethodResult getMethodResult(
       MethodExecutionInfo methodExecutionInfo, ValueCalculator valueCalculator) {
@@ -149,11 +166,43 @@ public abstract class ReflectionExecutor implements Executor {
 
       MethodResult.Builder resultBuilder = new MethodResult.Builder();
 
-      // Try to resolve the method via reflection and invoke the method.
-      Object returnResult =
-          baseClass
-              .getMethod(methodExecutionInfo.getSignature().method, reflectionParameters.classes)
-              .invoke(callingInstance, reflectionParameters.objects);
+      // Can we reuse a cached result?
+      MethodSignature signature = methodExecutionInfo.getSignature();
+      ExecutionCache.Key cacheKey =
+          executionCache == null || isCallingInstanceMutable
+              ? null
+              : ExecutionCache.key(signature, callingInstance, reflectionParameters.objects);
+      ExecutionCache.Result cachedResult =
+          cacheKey == null ? null : executionCache.get(cacheKey);
+
+      Object returnResult;
+      if (cachedResult != null) {
+        if (cachedResult.isFailure()) {
+          return MethodResult.invalidResult();
+        }
+
+        returnResult = cachedResult.returnsInstance ? callingInstance : cachedResult.returnValue;
+      } else {
+        try {
+          // Try to resolve the method via reflection and invoke the method.
+          returnResult =
+              baseClass
+                  .getMethod(signature.method, reflectionParameters.classes)
+                  .invoke(callingInstance, reflectionParameters.objects);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+          if (cacheKey != null) {
+            executionCache.put(cacheKey, ExecutionCache.Result.failure());
+          }
+
+          throw e;
+        }
+
+        if (cacheKey != null) {
+          boolean returnsInstance =
+              !methodExecutionInfo.isStatic() && returnResult == callingInstance;
+          executionCache.put(cacheKey, ExecutionCache.Result.of(returnResult, returnsInstance));
+        }
+      }
 
       // The new reference id is the instance one if the method returned the instance
       newReferenceId = null;
@@ -59,6 +59,17 @@ public class StringReflectionExecutor extends ReflectionExecutor {
   private final ClassPool libraryClassPool;
 
   public StringReflectionExecutor(ClassPool libraryClassPool) {
+    this(libraryClassPool, null);
+  }
+
+  /**
+   * Creates a new StringReflectionExecutor.
+   *
+   * @param libraryClassPool the library class pool with the supported classes.
+   * @param executionCache an optional cache for the results of executed methods.
+   */
+  public StringReflectionExecutor(ClassPool libraryClassPool, ExecutionCache executionCache) {
+    super(executionCache);
     this.libraryClassPool = libraryClassPool;
   }
 
@@ -146,14 +157,24 @@ public class StringReflectionExecutor extends ReflectionExecutor {
   public static class Builder implements Executor.Builder<StringReflectionExecutor> {
 
     private final ClassPool libraryClassPool;
+    private ExecutionCache executionCache;
 
     public Builder(ClassPool libraryClassPool) {
       this.libraryClassPool = libraryClassPool;
     }
 
+    /**
+     * Sets a cache for the results of executed methods, which is shared between all executors that
+     * this builder builds.
+     */
+    public Builder setExecutionCache(ExecutionCache executionCache) {
+      this.executionCache = executionCache;
+      return this;
+    }
+
     @Override
     public StringReflectionExecutor build() {
-      return new StringReflectionExecutor(libraryClassPool);
+      return new StringReflectionExecutor(libraryClassPool, executionCache);
     }
   }
 }
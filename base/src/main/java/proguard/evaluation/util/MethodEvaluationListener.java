@@ -0,0 +1,31 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation.util;
+
+/**
+ * Listener that is notified of the evaluation cost of each method that a {@link
+ * MethodEvaluationProfiler} has profiled.
+ */
+public interface MethodEvaluationListener {
+  /**
+   * Called when the partial evaluator has finished evaluating a method, successfully or with an
+   * exception.
+   */
+  void methodEvaluated(MethodEvaluationProfile profile);
+}
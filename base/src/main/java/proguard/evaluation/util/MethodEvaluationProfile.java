@@ -0,0 +1,163 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation.util;
+
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+
+/**
+ * The evaluation cost of a method, as measured by a {@link MethodEvaluationProfiler} for one
+ * evaluation of the method, or accumulated over several evaluations by a {@link
+ * MethodEvaluationReport}.
+ */
+public final class MethodEvaluationProfile {
+  private final Clazz clazz;
+  private final Method method;
+  private final int evaluationCount;
+  private final int failureCount;
+  private final long wallTimeNanos;
+  private final long instructionEvaluationCount;
+  private final long blockEvaluationCount;
+  private final long blockReevaluationCount;
+  private final long generalizationCount;
+  private final long allocatedBytes;
+
+  /**
+   * Creates a new MethodEvaluationProfile.
+   *
+   * @param clazz the class of the method.
+   * @param method the evaluated method.
+   * @param evaluationCount the number of times the method has been evaluated.
+   * @param failureCount the number of evaluations that have ended with an exception.
+   * @param wallTimeNanos the elapsed time of the evaluations, in nanoseconds.
+   * @param instructionEvaluationCount the number of times an instruction has been evaluated.
+   * @param blockEvaluationCount the number of times an instruction block has been evaluated.
+   * @param blockReevaluationCount the number of block evaluations that started at an offset where
+   *     an earlier block evaluation had already started.
+   * @param generalizationCount the number of times an instruction or subroutine context has been
+   *     generalized because of excessive evaluations.
+   * @param allocatedBytes the number of bytes allocated by the evaluating thread, or -1 if the
+   *     virtual machine doesn't support measuring them.
+   */
+  public MethodEvaluationProfile(
+      Clazz clazz,
+      Method method,
+      int evaluationCount,
+      int failureCount,
+      long wallTimeNanos,
+      long instructionEvaluationCount,
+      long blockEvaluationCount,
+      long blockReevaluationCount,
+      long generalizationCount,
+      long allocatedBytes) {
+    this.clazz = clazz;
+    this.method = method;
+    this.evaluationCount = evaluationCount;
+    this.failureCount = failureCount;
+    this.wallTimeNanos = wallTimeNanos;
+    this.instructionEvaluationCount = instructionEvaluationCount;
+    this.blockEvaluationCount = blockEvaluationCount;
+    this.blockReevaluationCount = blockReevaluationCount;
+    this.generalizationCount = generalizationCount;
+    this.allocatedBytes = allocatedBytes;
+  }
+
+  public Clazz getClazz() {
+    return clazz;
+  }
+
+  public Method getMethod() {
+    return method;
+  }
+
+  public int getEvaluationCount() {
+    return evaluationCount;
+  }
+
+  public int getFailureCount() {
+    return failureCount;
+  }
+
+  public long getWallTimeNanos() {
+    return wallTimeNanos;
+  }
+
+  public long getInstructionEvaluationCount() {
+    return instructionEvaluationCount;
+  }
+
+  public long getBlockEvaluationCount() {
+    return blockEvaluationCount;
+  }
+
+  public long getBlockReevaluationCount() {
+    return blockReevaluationCount;
+  }
+
+  public long getGeneralizationCount() {
+    return generalizationCount;
+  }
+
+  /**
+   * Returns the number of bytes allocated during the evaluations, or -1 if the virtual machine
+   * doesn't support measuring them.
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * Returns a new profile with the accumulated costs of this profile and the given profile of the
+   * same method.
+   */
+  public MethodEvaluationProfile add(MethodEvaluationProfile other) {
+    return new MethodEvaluationProfile(
+        clazz,
+        method,
+        evaluationCount + other.evaluationCount,
+        failureCount + other.failureCount,
+        wallTimeNanos + other.wallTimeNanos,
+        instructionEvaluationCount + other.instructionEvaluationCount,
+        blockEvaluationCount + other.blockEvaluationCount,
+        blockReevaluationCount + other.blockReevaluationCount,
+        generalizationCount + other.generalizationCount,
+        allocatedBytes < 0L || other.allocatedBytes < 0L
+            ? -1L
+            : allocatedBytes + other.allocatedBytes);
+  }
+
+  // Implementations for Object.
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s.%s%s: %.3f ms, %d evaluations (%d failed), %d instructions, %d blocks (%d re-evaluated), %d generalizations, %s",
+        clazz.getName(),
+        method.getName(clazz),
+        method.getDescriptor(clazz),
+        wallTimeNanos / 1e6,
+        evaluationCount,
+        failureCount,
+        instructionEvaluationCount,
+        blockEvaluationCount,
+        blockReevaluationCount,
+        generalizationCount,
+        allocatedBytes < 0 ? "unknown allocations" : (allocatedBytes / 1024) + " KB allocated");
+  }
+}
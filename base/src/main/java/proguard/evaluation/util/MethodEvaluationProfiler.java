@@ -0,0 +1,219 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.instruction.Instruction;
+import proguard.evaluation.PartialEvaluator;
+import proguard.evaluation.TracedStack;
+import proguard.evaluation.TracedVariables;
+import proguard.evaluation.Variables;
+
+/**
+ * This {@link PartialEvaluatorStateTracker} measures the cost of each method that a {@link
+ * PartialEvaluator} evaluates: the elapsed time, the number of instruction evaluations, block
+ * evaluations and re-evaluations, generalizations, and the number of bytes that the evaluating
+ * thread allocates, if the virtual machine supports measuring them. It passes the resulting {@link
+ * MethodEvaluationProfile} to a {@link MethodEvaluationListener}, for example a {@link
+ * MethodEvaluationReport}.
+ *
+ * <p>A profiler keeps the state of the method that is being evaluated, so each partial evaluator
+ * needs its own profiler. The profilers of partial evaluators that run in parallel can share a
+ * thread-safe listener.
+ */
+public class MethodEvaluationProfiler implements PartialEvaluatorStateTracker {
+  private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = allocationMXBean();
+
+  private final MethodEvaluationListener listener;
+
+  private Clazz clazz;
+  private Method method;
+  private long startNanos;
+  private long startAllocatedBytes;
+  private long instructionEvaluationCount;
+  private long blockEvaluationCount;
+  private long blockReevaluationCount;
+  private long generalizationCount;
+  private boolean[] evaluatedBlockStarts = new boolean[0];
+
+  /**
+   * Creates a new MethodEvaluationProfiler.
+   *
+   * @param listener the listener that receives the profile of each evaluated method.
+   */
+  public MethodEvaluationProfiler(MethodEvaluationListener listener) {
+    this.listener = listener;
+  }
+
+  // Implementations for PartialEvaluatorStateTracker.
+
+  @Override
+  public void startCodeAttribute(
+      Clazz clazz, Method method, CodeAttribute codeAttribute, Variables parameters) {
+    this.clazz = clazz;
+    this.method = method;
+
+    instructionEvaluationCount = 0L;
+    blockEvaluationCount = 0L;
+    blockReevaluationCount = 0L;
+    generalizationCount = 0L;
+
+    int codeLength = codeAttribute.u4codeLength;
+    if (evaluatedBlockStarts.length < codeLength) {
+      evaluatedBlockStarts = new boolean[codeLength];
+    } else {
+      Arrays.fill(evaluatedBlockStarts, 0, codeLength, false);
+    }
+
+    startAllocatedBytes = allocatedBytes();
+    startNanos = System.nanoTime();
+  }
+
+  @Override
+  public void registerException(
+      Clazz clazz,
+      Method method,
+      CodeAttribute codeAttribute,
+      PartialEvaluator evaluator,
+      Throwable cause) {
+    // Only report the exception if the evaluation of the method had started.
+    if (this.clazz == clazz && this.method == method) {
+      report(1);
+    }
+  }
+
+  @Override
+  public void evaluationResults(
+      Clazz clazz, Method method, CodeAttribute codeAttribute, PartialEvaluator evaluator) {
+    report(0);
+  }
+
+  @Override
+  public void startInstructionBlock(
+      Clazz clazz,
+      Method method,
+      CodeAttribute codeAttribute,
+      TracedVariables startVariables,
+      TracedStack startStack,
+      int startOffset) {
+    blockEvaluationCount++;
+
+    if (evaluatedBlockStarts[startOffset]) {
+      blockReevaluationCount++;
+    } else {
+      evaluatedBlockStarts[startOffset] = true;
+    }
+  }
+
+  @Override
+  public void generalizeInstructionBlock(
+      Clazz clazz,
+      Method method,
+      int instructionOffset,
+      Instruction instruction,
+      TracedVariables variablesBefore,
+      TracedStack stackBefore,
+      int evaluationCount) {
+    generalizationCount++;
+  }
+
+  @Override
+  public void startInstructionEvaluation(
+      Clazz clazz,
+      Method method,
+      int instructionOffset,
+      Instruction instruction,
+      TracedVariables variablesBefore,
+      TracedStack stackBefore,
+      int evaluationCount) {
+    instructionEvaluationCount++;
+  }
+
+  @Override
+  public void generalizeSubroutine(
+      Clazz clazz,
+      Method method,
+      TracedVariables startVariables,
+      TracedStack startStack,
+      int subroutineStart,
+      int subroutineEnd) {
+    generalizationCount++;
+  }
+
+  // Small utility methods.
+
+  /** Passes the profile of the current method to the listener. */
+  private void report(int failureCount) {
+    long wallTimeNanos = System.nanoTime() - startNanos;
+    long allocatedBytes = allocatedBytes();
+
+    listener.methodEvaluated(
+        new MethodEvaluationProfile(
+            clazz,
+            method,
+            1,
+            failureCount,
+            wallTimeNanos,
+            instructionEvaluationCount,
+            blockEvaluationCount,
+            blockReevaluationCount,
+            generalizationCount,
+            allocatedBytes < 0L ? -1L : allocatedBytes - startAllocatedBytes));
+
+    clazz = null;
+    method = null;
+  }
+
+  /**
+   * Returns the number of bytes that the current thread has allocated so far, or -1 if the virtual
+   * machine doesn't support measuring them.
+   */
+  private static long allocatedBytes() {
+    return THREAD_MX_BEAN == null
+        ? -1L
+        : THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Returns the thread management bean with support for measuring allocations, if the virtual
+   * machine provides it, or null otherwise.
+   */
+  private static com.sun.management.ThreadMXBean allocationMXBean() {
+    try {
+      ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+      if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean allocationMXBean =
+            (com.sun.management.ThreadMXBean) threadMXBean;
+        if (allocationMXBean.isThreadAllocatedMemorySupported()
+            && allocationMXBean.isThreadAllocatedMemoryEnabled()) {
+          return allocationMXBean;
+        }
+      }
+    } catch (LinkageError | SecurityException ignored) {
+      // The virtual machine doesn't provide the extended bean.
+    }
+
+    return null;
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import proguard.classfile.Method;
+
+/**
+ * This thread-safe {@link MethodEvaluationListener} accumulates the evaluation costs per method, so
+ * it can report the most expensive methods, for instance the methods that take the most time to
+ * evaluate.
+ *
+ * <p>Typical use:
+ *
+ * <pre>
+ * MethodEvaluationReport report = new MethodEvaluationReport();
+ * PartialEvaluator partialEvaluator =
+ *     PartialEvaluator.Builder.create()
+ *         .setStateTracker(new MethodEvaluationProfiler(report))
+ *         .build();
+ *
+ * programClassPool.classesAccept(
+ *     new AllMethodVisitor(
+ *     new AllAttributeVisitor(partialEvaluator)));
+ *
+ * System.out.println(report.toString(20));
+ * </pre>
+ */
+public class MethodEvaluationReport implements MethodEvaluationListener {
+  /** Orders profiles by decreasing elapsed time. */
+  public static final Comparator<MethodEvaluationProfile> BY_WALL_TIME =
+      Comparator.comparingLong(MethodEvaluationProfile::getWallTimeNanos).reversed();
+
+  /** Orders profiles by decreasing number of instruction evaluations. */
+  public static final Comparator<MethodEvaluationProfile> BY_INSTRUCTION_EVALUATIONS =
+      Comparator.comparingLong(MethodEvaluationProfile::getInstructionEvaluationCount).reversed();
+
+  /** Orders profiles by decreasing number of allocated bytes. */
+  public static final Comparator<MethodEvaluationProfile> BY_ALLOCATED_BYTES =
+      Comparator.comparingLong(MethodEvaluationProfile::getAllocatedBytes).reversed();
+
+  private final Map<Method, MethodEvaluationProfile> profiles = new ConcurrentHashMap<>();
+
+  /** Returns the accumulated profile of the given method, or null if it hasn't been evaluated. */
+  public MethodEvaluationProfile getProfile(Method method) {
+    return profiles.get(method);
+  }
+
+  /** Returns the accumulated profiles of all evaluated methods, in no particular order. */
+  public List<MethodEvaluationProfile> getProfiles() {
+    return new ArrayList<>(profiles.values());
+  }
+
+  /** Returns the accumulated profiles of at most n methods that took the most time to evaluate. */
+  public List<MethodEvaluationProfile> getTopProfiles(int n) {
+    return getTopProfiles(n, BY_WALL_TIME);
+  }
+
+  /**
+   * Returns the accumulated profiles of at most n methods that come first in the given order, for
+   * instance {@link #BY_INSTRUCTION_EVALUATIONS}.
+   */
+  public List<MethodEvaluationProfile> getTopProfiles(
+      int n, Comparator<MethodEvaluationProfile> comparator) {
+    if (n < 0) {
+      throw new IllegalArgumentException("The number of profiles can't be negative.");
+    }
+
+    List<MethodEvaluationProfile> topProfiles = getProfiles();
+    topProfiles.sort(comparator);
+
+    return topProfiles.size() > n ? new ArrayList<>(topProfiles.subList(0, n)) : topProfiles;
+  }
+
+  /** Clears all accumulated profiles. */
+  public void clear() {
+    profiles.clear();
+  }
+
+  /**
+   * Prints a report of at most n methods that took the most time to evaluate, one method per line.
+   */
+  public void print(PrintWriter printWriter, int n) {
+    print(printWriter, n, BY_WALL_TIME);
+  }
+
+  /** Prints a report of at most n methods that come first in the given order, one per line. */
+  public void print(
+      PrintWriter printWriter, int n, Comparator<MethodEvaluationProfile> comparator) {
+    List<MethodEvaluationProfile> topProfiles = getTopProfiles(n, comparator);
+
+    printWriter.println(
+        "Method evaluation profiles (top " + topProfiles.size() + " of " + profiles.size() + "):");
+    for (MethodEvaluationProfile profile : topProfiles) {
+      printWriter.println("  " + profile);
+    }
+    printWriter.flush();
+  }
+
+  /** Returns a report of at most n methods that took the most time to evaluate. */
+  public String toString(int n) {
+    StringWriter stringWriter = new StringWriter();
+    print(new PrintWriter(stringWriter), n);
+    return stringWriter.toString();
+  }
+
+  // Implementations for MethodEvaluationListener.
+
+  @Override
+  public void methodEvaluated(MethodEvaluationProfile profile) {
+    profiles.merge(profile.getMethod(), profile, MethodEvaluationProfile::add);
+  }
+}
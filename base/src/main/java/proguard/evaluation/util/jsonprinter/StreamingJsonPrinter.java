@@ -0,0 +1,621 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation.util.jsonprinter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.attribute.ExceptionInfo;
+import proguard.classfile.instruction.Instruction;
+import proguard.classfile.instruction.InstructionFactory;
+import proguard.evaluation.BasicBranchUnit;
+import proguard.evaluation.PartialEvaluator;
+import proguard.evaluation.Stack;
+import proguard.evaluation.TracedStack;
+import proguard.evaluation.TracedVariables;
+import proguard.evaluation.Variables;
+import proguard.evaluation.util.PartialEvaluatorStateTracker;
+import proguard.evaluation.value.InstructionOffsetValue;
+import proguard.evaluation.value.Value;
+import proguard.util.StringMatcher;
+
+/**
+ * Tracks the state of the partial evaluator, like the {@link JsonPrinter}, but writes every state
+ * change to a writer as soon as it happens, instead of collecting a record tree in memory. The
+ * output contains one JSON object per line, with an "event" key that is the name of the
+ * corresponding {@link PartialEvaluatorStateTracker} method, and further keys for its arguments.
+ * The events of a code attribute start with a "startCodeAttribute" event and end with an
+ * "evaluationResults" event or an "error" event, after which the writer is flushed.
+ *
+ * <p>So tracing can stay enabled on large applications, the printer can sample the evaluations: it
+ * only prints the events of classes and methods with names that match the optional matchers, and
+ * only prints the events of instructions that have already been evaluated a given number of times,
+ * typically in the methods that are slow to evaluate.
+ *
+ * <p>Each printer should write to its own writer, since the events of different partial evaluators
+ * would otherwise be interleaved.
+ */
+public class StreamingJsonPrinter implements PartialEvaluatorStateTracker, Closeable {
+  private final Writer writer;
+  private final StringMatcher classNameMatcher;
+  private final StringMatcher methodNameMatcher;
+  private final int evaluationCountThreshold;
+
+  // Reusable buffer for the current event.
+  private final StringBuilder builder = new StringBuilder();
+
+  // Fields caching whether the current method is printed.
+  private Clazz lastClazz;
+  private Method lastMethod;
+  private boolean printMethod;
+  private boolean printInstruction;
+
+  /** Creates a new StreamingJsonPrinter that prints all events to the given writer. */
+  public StreamingJsonPrinter(Writer writer) {
+    this(writer, null, null, 0);
+  }
+
+  /**
+   * Creates a new StreamingJsonPrinter that prints all events to the given output stream, encoded
+   * as UTF-8.
+   */
+  public StreamingJsonPrinter(OutputStream outputStream) {
+    this(new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Creates a new StreamingJsonPrinter that prints a sample of the events to the given writer.
+   *
+   * @param writer the writer to which the events are written.
+   * @param classNameMatcher an optional matcher for the names of the classes whose evaluations are
+   *     printed.
+   * @param methodNameMatcher an optional matcher for the names of the methods whose evaluations are
+   *     printed.
+   * @param evaluationCountThreshold the minimum number of times that instructions must already
+   *     have been evaluated for their evaluations to be printed. The events at the code attribute
+   *     level and the instruction block level are always printed.
+   */
+  public StreamingJsonPrinter(
+      Writer writer,
+      StringMatcher classNameMatcher,
+      StringMatcher methodNameMatcher,
+      int evaluationCountThreshold) {
+    if (evaluationCountThreshold < 0) {
+      throw new IllegalArgumentException("The evaluation count threshold can't be negative.");
+    }
+
+    this.writer = writer;
+    this.classNameMatcher = classNameMatcher;
+    this.methodNameMatcher = methodNameMatcher;
+    this.evaluationCountThreshold = evaluationCountThreshold;
+  }
+
+  /** Flushes the events that have been printed so far. */
+  public void flush() {
+    try {
+      writer.flush();
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  // Implementations for Closeable.
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+
+  // Implementations for PartialEvaluatorStateTracker.
+
+  // region Code attribute level
+
+  @Override
+  public void startCodeAttribute(
+      Clazz clazz, Method method, CodeAttribute codeAttribute, Variables parameters) {
+    if (skip(clazz, method)) return;
+
+    startEvent("startCodeAttribute");
+    appendMethod(clazz, method);
+    appendValues("parameters", parameters);
+
+    // List all instructions of the code attribute.
+    builder.append(",\"instructions\":[");
+    byte[] code = codeAttribute.code;
+    int offset = 0;
+    while (offset < codeAttribute.u4codeLength) {
+      Instruction instruction = InstructionFactory.create(code, offset);
+      if (offset > 0) {
+        builder.append(',');
+      }
+      builder.append("{\"offset\":").append(offset).append(",\"instruction\":");
+      appendString(instruction.toString());
+      builder.append('}');
+
+      offset += instruction.length(offset);
+    }
+    builder.append(']');
+
+    endEvent();
+  }
+
+  @Override
+  public void registerException(
+      Clazz clazz,
+      Method method,
+      CodeAttribute codeAttribute,
+      PartialEvaluator evaluator,
+      Throwable cause) {
+    if (skip(clazz, method)) return;
+
+    startEvent("error");
+    appendMethod(clazz, method);
+    builder.append(",\"message\":");
+    appendString(String.valueOf(cause.getMessage()));
+    endEvent();
+
+    flush();
+  }
+
+  // endregion
+
+  // region Exception handling
+
+  @Override
+  public void startExceptionHandlingForBlock(
+      Clazz clazz, Method method, int startOffset, int endOffset) {
+    if (skip(clazz, method)) return;
+
+    startEvent("startExceptionHandlingForBlock");
+    appendInt("startOffset", startOffset);
+    appendInt("endOffset", endOffset);
+    endEvent();
+  }
+
+  @Override
+  public void registerExceptionHandler(
+      Clazz clazz, Method method, int startPC, int endPC, ExceptionInfo info) {
+    if (skip(clazz, method)) return;
+
+    appendExceptionHandler("registerExceptionHandler", clazz, startPC, endPC, info);
+  }
+
+  @Override
+  public void registerUnusedExceptionHandler(
+      Clazz clazz, Method method, int startPC, int endPC, ExceptionInfo info) {
+    if (skip(clazz, method)) return;
+
+    appendExceptionHandler("registerUnusedExceptionHandler", clazz, startPC, endPC, info);
+  }
+
+  // endregion
+
+  // region Results
+
+  @Override
+  public void evaluationResults(
+      Clazz clazz, Method method, CodeAttribute codeAttribute, PartialEvaluator evaluator) {
+    if (skip(clazz, method)) return;
+
+    startEvent("evaluationResults");
+    appendMethod(clazz, method);
+    appendInt("instructionBlockEvaluationCount", evaluator.getInstructionBlockEvaluationCount());
+    appendInt("instructionEvaluationCount", evaluator.getInstructionEvaluationCount());
+    appendInt("maxInstructionEvaluationCount", evaluator.getMaxInstructionEvaluationCount());
+    endEvent();
+
+    flush();
+  }
+
+  // endregion
+
+  // region Instruction block level
+
+  @Override
+  public void startInstructionBlock(
+      Clazz clazz,
+      Method method,
+      CodeAttribute codeAttribute,
+      TracedVariables startVariables,
+      TracedStack startStack,
+      int startOffset) {
+    if (skip(clazz, method)) return;
+
+    startEvent("startInstructionBlock");
+    appendInt("startOffset", startOffset);
+    appendValues("startVariables", startVariables);
+    appendValues("startStack", startStack);
+    endEvent();
+  }
+
+  @Override
+  public void startBranchCodeBlockEvaluation(List<PartialEvaluator.InstructionBlock> branchStack) {
+    if (!printMethod) return;
+
+    startEvent("startBranchCodeBlockEvaluation");
+    appendInt("branchStackSize", branchStack.size());
+    endEvent();
+  }
+
+  @Override
+  public void instructionBlockDone(
+      Clazz clazz,
+      Method method,
+      CodeAttribute codeAttribute,
+      TracedVariables startVariables,
+      TracedStack startStack,
+      int startOffset) {
+    if (skip(clazz, method)) return;
+
+    startEvent("instructionBlockDone");
+    appendInt("startOffset", startOffset);
+    endEvent();
+  }
+
+  // endregion
+
+  // region Instruction level
+
+  @Override
+  public void skipInstructionBlock(
+      Clazz clazz,
+      Method method,
+      int instructionOffset,
+      Instruction instruction,
+      TracedVariables variablesBefore,
+      TracedStack stackBefore,
+      int evaluationCount) {
+    if (skipInstruction(clazz, method, evaluationCount)) return;
+
+    appendInstruction(
+        "skipInstructionBlock",
+        instructionOffset,
+        instruction,
+        variablesBefore,
+        stackBefore,
+        evaluationCount);
+  }
+
+  @Override
+  public void generalizeInstructionBlock(
+      Clazz clazz,
+      Method method,
+      int instructionOffset,
+      Instruction instruction,
+      TracedVariables variablesBefore,
+      TracedStack stackBefore,
+      int evaluationCount) {
+    if (skipInstruction(clazz, method, evaluationCount)) return;
+
+    appendInstruction(
+        "generalizeInstructionBlock",
+        instructionOffset,
+        instruction,
+        variablesBefore,
+        stackBefore,
+        evaluationCount);
+  }
+
+  @Override
+  public void startInstructionEvaluation(
+      Clazz clazz,
+      Method method,
+      int instructionOffset,
+      Instruction instruction,
+      TracedVariables variablesBefore,
+      TracedStack stackBefore,
+      int evaluationCount) {
+    if (skipInstruction(clazz, method, evaluationCount)) return;
+
+    appendInstruction(
+        "startInstructionEvaluation",
+        instructionOffset,
+        instruction,
+        variablesBefore,
+        stackBefore,
+        evaluationCount);
+  }
+
+  @Override
+  public void afterInstructionEvaluation(
+      Clazz clazz,
+      Method method,
+      int instructionOffset,
+      Instruction instruction,
+      TracedVariables variablesAfter,
+      TracedStack stackAfter,
+      BasicBranchUnit branchUnit,
+      InstructionOffsetValue branchTarget) {
+    if (skip(clazz, method) || !printInstruction) return;
+
+    startEvent("afterInstructionEvaluation");
+    appendInt("offset", instructionOffset);
+    appendValues("variablesAfter", variablesAfter);
+    appendValues("stackAfter", stackAfter);
+    if (branchTarget != null) {
+      appendOffsets("branchTargets", branchTarget);
+    }
+    endEvent();
+  }
+
+  @Override
+  public void definitiveBranch(
+      Clazz clazz,
+      Method method,
+      int instructionOffset,
+      Instruction instruction,
+      TracedVariables variablesAfter,
+      TracedStack stackAfter,
+      InstructionOffsetValue branchTargets) {
+    if (skip(clazz, method) || !printInstruction) return;
+
+    startEvent("definitiveBranch");
+    appendInt("offset", instructionOffset);
+    appendOffsets("branchTargets", branchTargets);
+    endEvent();
+  }
+
+  @Override
+  public void registerAlternativeBranch(
+      Clazz clazz,
+      Method method,
+      int fromInstructionOffset,
+      Instruction fromInstruction,
+      TracedVariables variablesAfter,
+      TracedStack stackAfter,
+      int branchIndex,
+      int branchTargetCount,
+      int offset) {
+    if (skip(clazz, method) || !printInstruction) return;
+
+    startEvent("registerAlternativeBranch");
+    appendInt("offset", fromInstructionOffset);
+    appendInt("branchIndex", branchIndex);
+    appendInt("branchTargetCount", branchTargetCount);
+    appendInt("targetOffset", offset);
+    endEvent();
+  }
+
+  // endregion
+
+  // region subroutines
+
+  @Override
+  public void startSubroutine(
+      Clazz clazz,
+      Method method,
+      TracedVariables startVariables,
+      TracedStack startStack,
+      int subroutineStart,
+      int subroutineEnd) {
+    if (skip(clazz, method)) return;
+
+    appendSubroutine("startSubroutine", subroutineStart, subroutineEnd);
+  }
+
+  @Override
+  public void registerSubroutineReturn(
+      Clazz clazz,
+      Method method,
+      int returnOffset,
+      TracedVariables returnVariables,
+      TracedStack returnStack) {
+    if (skip(clazz, method)) return;
+
+    startEvent("registerSubroutineReturn");
+    appendInt("returnOffset", returnOffset);
+    appendValues("returnVariables", returnVariables);
+    appendValues("returnStack", returnStack);
+    endEvent();
+  }
+
+  @Override
+  public void generalizeSubroutine(
+      Clazz clazz,
+      Method method,
+      TracedVariables startVariables,
+      TracedStack startStack,
+      int subroutineStart,
+      int subroutineEnd) {
+    if (skip(clazz, method)) return;
+
+    appendSubroutine("generalizeSubroutine", subroutineStart, subroutineEnd);
+  }
+
+  @Override
+  public void endSubroutine(
+      Clazz clazz,
+      Method method,
+      TracedVariables variablesAfter,
+      TracedStack stackAfter,
+      int subroutineStart,
+      int subroutineEnd) {
+    if (skip(clazz, method)) return;
+
+    appendSubroutine("endSubroutine", subroutineStart, subroutineEnd);
+  }
+
+  // endregion
+
+  // Small utility methods.
+
+  /** Returns whether the events of the given method should be skipped. */
+  private boolean skip(Clazz clazz, Method method) {
+    if (clazz != lastClazz || method != lastMethod) {
+      lastClazz = clazz;
+      lastMethod = method;
+      printMethod =
+          (classNameMatcher == null || classNameMatcher.matches(clazz.getName()))
+              && (methodNameMatcher == null || methodNameMatcher.matches(method.getName(clazz)));
+    }
+
+    return !printMethod;
+  }
+
+  /**
+   * Returns whether the events of the given method should be skipped, for an instruction with the
+   * given evaluation count. The decision also applies to the subsequent events of the
+   * instruction.
+   */
+  private boolean skipInstruction(Clazz clazz, Method method, int evaluationCount) {
+    printInstruction = evaluationCount >= evaluationCountThreshold;
+
+    return skip(clazz, method) || !printInstruction;
+  }
+
+  private void appendExceptionHandler(
+      String event, Clazz clazz, int startPC, int endPC, ExceptionInfo info) {
+    startEvent(event);
+    appendInt("startPC", startPC);
+    appendInt("endPC", endPC);
+    appendInt("handlerPC", info.u2handlerPC);
+    builder.append(",\"catchType\":");
+    appendString(
+        info.u2catchType == 0 ? "java/lang/Throwable" : clazz.getClassName(info.u2catchType));
+    endEvent();
+  }
+
+  private void appendInstruction(
+      String event,
+      int instructionOffset,
+      Instruction instruction,
+      Variables variablesBefore,
+      Stack stackBefore,
+      int evaluationCount) {
+    startEvent(event);
+    appendInt("offset", instructionOffset);
+    builder.append(",\"instruction\":");
+    appendString(instruction.toString());
+    appendInt("evaluationCount", evaluationCount);
+    appendValues("variablesBefore", variablesBefore);
+    appendValues("stackBefore", stackBefore);
+    endEvent();
+  }
+
+  private void appendSubroutine(String event, int subroutineStart, int subroutineEnd) {
+    startEvent(event);
+    appendInt("subroutineStart", subroutineStart);
+    appendInt("subroutineEnd", subroutineEnd);
+    endEvent();
+  }
+
+  private void startEvent(String event) {
+    builder.setLength(0);
+    builder.append("{\"event\":\"").append(event).append('"');
+  }
+
+  /** Writes the current event as a single line. */
+  private void endEvent() {
+    builder.append("}\n");
+
+    try {
+      writer.append(builder);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private void appendMethod(Clazz clazz, Method method) {
+    builder.append(",\"clazz\":");
+    appendString(clazz.getName());
+    builder.append(",\"method\":");
+    appendString(method.getName(clazz) + method.getDescriptor(clazz));
+  }
+
+  private void appendInt(String key, int value) {
+    builder.append(",\"").append(key).append("\":").append(value);
+  }
+
+  private void appendOffsets(String key, InstructionOffsetValue offsets) {
+    builder.append(",\"").append(key).append("\":[");
+    for (int index = 0; index < offsets.instructionOffsetCount(); index++) {
+      if (index > 0) {
+        builder.append(',');
+      }
+      builder.append(offsets.instructionOffset(index));
+    }
+    builder.append(']');
+  }
+
+  private void appendValues(String key, Variables variables) {
+    builder.append(",\"").append(key).append("\":[");
+    for (int index = 0; index < variables.size(); index++) {
+      if (index > 0) {
+        builder.append(',');
+      }
+      appendValue(variables.getValue(index));
+    }
+    builder.append(']');
+  }
+
+  private void appendValues(String key, Stack stack) {
+    builder.append(",\"").append(key).append("\":[");
+    for (int index = 0; index < stack.size(); index++) {
+      if (index > 0) {
+        builder.append(',');
+      }
+      appendValue(stack.getBottom(index));
+    }
+    builder.append(']');
+  }
+
+  private void appendValue(Value value) {
+    appendString(value == null ? "empty" : value.toString());
+  }
+
+  /** Appends the given string as a JSON string, with the necessary escape sequences. */
+  private void appendString(String string) {
+    builder.append('"');
+    for (int index = 0; index < string.length(); index++) {
+      char c = string.charAt(index);
+      switch (c) {
+        case '"':
+          builder.append("\\\"");
+          break;
+        case '\\':
+          builder.append("\\\\");
+          break;
+        case '\n':
+          builder.append("\\n");
+          break;
+        case '\r':
+          builder.append("\\r");
+          break;
+        case '\t':
+          builder.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            builder.append(String.format("\\u%04x", (int) c));
+          } else {
+            builder.append(c);
+          }
+      }
+    }
+    builder.append('"');
+  }
+}
@@ -53,6 +53,6 @@ public class BasicRangeValueFactory extends ParticularValueFactory implements Va
   // Implementations for ValueFactory.
 
   public IntegerValue createIntegerValue(int min, int max) {
-    return min == max ? new ParticularIntegerValue(min) : new RangeIntegerValue(min, max);
+    return min == max ? ParticularIntegerValue.valueOf(min) : new RangeIntegerValue(min, max);
   }
 }
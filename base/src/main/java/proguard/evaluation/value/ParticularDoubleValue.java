@@ -23,6 +23,18 @@ package proguard.evaluation.value;
  * @author Eric Lafortune
  */
 public final class ParticularDoubleValue extends SpecificDoubleValue {
+  // Shared instances of common values, to avoid creating a lot of objects.
+  private static final int CACHE_LOW = -128;
+  private static final int CACHE_HIGH = 127;
+  private static final ParticularDoubleValue[] CACHE =
+      new ParticularDoubleValue[CACHE_HIGH - CACHE_LOW + 1];
+
+  static {
+    for (int index = 0; index < CACHE.length; index++) {
+      CACHE[index] = new ParticularDoubleValue(CACHE_LOW + index);
+    }
+  }
+
   private final double value;
 
   /** Creates a new particular double value. */
@@ -30,6 +42,25 @@ public final class ParticularDoubleValue extends SpecificDoubleValue {
     this.value = value;
   }
 
+  /**
+   * Returns a particular double value with the given value, reusing a shared instance for small
+   * integral values.
+   */
+  public static ParticularDoubleValue valueOf(double value) {
+    return isShared(value) ? CACHE[(int) value - CACHE_LOW] : new ParticularDoubleValue(value);
+  }
+
+  /** Returns whether {@link #valueOf(double)} returns a shared instance for the given value. */
+  static boolean isShared(double value) {
+    int intValue = (int) value;
+
+    // Make sure to distinguish between +0.0 and -0.0.
+    return intValue == value
+        && intValue >= CACHE_LOW
+        && intValue <= CACHE_HIGH
+        && (intValue != 0 || Double.doubleToRawLongBits(value) == 0L);
+  }
+
   // Implementations for DoubleValue.
 
   public double value() {
@@ -39,19 +70,19 @@ public final class ParticularDoubleValue extends SpecificDoubleValue {
   // Implementations of unary methods of DoubleValue.
 
   public DoubleValue negate() {
-    return new ParticularDoubleValue(-value);
+    return valueOf(-value);
   }
 
   public IntegerValue convertToInteger() {
-    return new ParticularIntegerValue((int) value);
+    return ParticularIntegerValue.valueOf((int) value);
   }
 
   public LongValue convertToLong() {
-    return new ParticularLongValue((long) value);
+    return ParticularLongValue.valueOf((long) value);
   }
 
   public FloatValue convertToFloat() {
-    return new ParticularFloatValue((float) value);
+    return ParticularFloatValue.valueOf((float) value);
   }
 
   // Implementations of binary methods of DoubleValue.
@@ -113,35 +144,35 @@ public final class ParticularDoubleValue extends SpecificDoubleValue {
   }
 
   public DoubleValue add(ParticularDoubleValue other) {
-    return new ParticularDoubleValue(this.value + other.value);
+    return valueOf(this.value + other.value);
   }
 
   public DoubleValue subtract(ParticularDoubleValue other) {
-    return new ParticularDoubleValue(this.value - other.value);
+    return valueOf(this.value - other.value);
   }
 
   public DoubleValue subtractFrom(ParticularDoubleValue other) {
-    return new ParticularDoubleValue(other.value - this.value);
+    return valueOf(other.value - this.value);
   }
 
   public DoubleValue multiply(ParticularDoubleValue other) {
-    return new ParticularDoubleValue(this.value * other.value);
+    return valueOf(this.value * other.value);
   }
 
   public DoubleValue divide(ParticularDoubleValue other) {
-    return new ParticularDoubleValue(this.value / other.value);
+    return valueOf(this.value / other.value);
   }
 
   public DoubleValue divideOf(ParticularDoubleValue other) {
-    return new ParticularDoubleValue(other.value / this.value);
+    return valueOf(other.value / this.value);
   }
 
   public DoubleValue remainder(ParticularDoubleValue other) {
-    return new ParticularDoubleValue(this.value % other.value);
+    return valueOf(this.value % other.value);
   }
 
   public DoubleValue remainderOf(ParticularDoubleValue other) {
-    return new ParticularDoubleValue(other.value % this.value);
+    return valueOf(other.value % this.value);
   }
 
   public IntegerValue compare(ParticularDoubleValue other) {
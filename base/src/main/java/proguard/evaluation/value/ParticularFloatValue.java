@@ -23,6 +23,18 @@ package proguard.evaluation.value;
  * @author Eric Lafortune
  */
 public final class ParticularFloatValue extends SpecificFloatValue {
+  // Shared instances of common values, to avoid creating a lot of objects.
+  private static final int CACHE_LOW = -128;
+  private static final int CACHE_HIGH = 127;
+  private static final ParticularFloatValue[] CACHE =
+      new ParticularFloatValue[CACHE_HIGH - CACHE_LOW + 1];
+
+  static {
+    for (int index = 0; index < CACHE.length; index++) {
+      CACHE[index] = new ParticularFloatValue(CACHE_LOW + index);
+    }
+  }
+
   private final float value;
 
   /** Creates a new particular float value. */
@@ -30,6 +42,25 @@ public final class ParticularFloatValue extends SpecificFloatValue {
     this.value = value;
   }
 
+  /**
+   * Returns a particular float value with the given value, reusing a shared instance for small
+   * integral values.
+   */
+  public static ParticularFloatValue valueOf(float value) {
+    return isShared(value) ? CACHE[(int) value - CACHE_LOW] : new ParticularFloatValue(value);
+  }
+
+  /** Returns whether {@link #valueOf(float)} returns a shared instance for the given value. */
+  static boolean isShared(float value) {
+    int intValue = (int) value;
+
+    // Make sure to distinguish between +0.0 and -0.0.
+    return intValue == value
+        && intValue >= CACHE_LOW
+        && intValue <= CACHE_HIGH
+        && (intValue != 0 || Float.floatToRawIntBits(value) == 0);
+  }
+
   // Implementations for FloatValue.
 
   public float value() {
@@ -39,19 +70,19 @@ public final class ParticularFloatValue extends SpecificFloatValue {
   // Implementations of unary methods of FloatValue.
 
   public FloatValue negate() {
-    return new ParticularFloatValue(-value);
+    return valueOf(-value);
   }
 
   public IntegerValue convertToInteger() {
-    return new ParticularIntegerValue((int) value);
+    return ParticularIntegerValue.valueOf((int) value);
   }
 
   public LongValue convertToLong() {
-    return new ParticularLongValue((long) value);
+    return ParticularLongValue.valueOf((long) value);
   }
 
   public DoubleValue convertToDouble() {
-    return new ParticularDoubleValue((float) value);
+    return ParticularDoubleValue.valueOf((float) value);
   }
 
   // Implementations of binary methods of FloatValue.
@@ -113,35 +144,35 @@ public final class ParticularFloatValue extends SpecificFloatValue {
   }
 
   public FloatValue add(ParticularFloatValue other) {
-    return new ParticularFloatValue(this.value + other.value);
+    return valueOf(this.value + other.value);
   }
 
   public FloatValue subtract(ParticularFloatValue other) {
-    return new ParticularFloatValue(this.value - other.value);
+    return valueOf(this.value - other.value);
   }
 
   public FloatValue subtractFrom(ParticularFloatValue other) {
-    return new ParticularFloatValue(other.value - this.value);
+    return valueOf(other.value - this.value);
   }
 
   public FloatValue multiply(ParticularFloatValue other) {
-    return new ParticularFloatValue(this.value * other.value);
+    return valueOf(this.value * other.value);
   }
 
   public FloatValue divide(ParticularFloatValue other) {
-    return new ParticularFloatValue(this.value / other.value);
+    return valueOf(this.value / other.value);
   }
 
   public FloatValue divideOf(ParticularFloatValue other) {
-    return new ParticularFloatValue(other.value / this.value);
+    return valueOf(other.value / this.value);
   }
 
   public FloatValue remainder(ParticularFloatValue other) {
-    return new ParticularFloatValue(this.value % other.value);
+    return valueOf(this.value % other.value);
   }
 
   public FloatValue remainderOf(ParticularFloatValue other) {
-    return new ParticularFloatValue(other.value % this.value);
+    return valueOf(other.value % this.value);
   }
 
   public IntegerValue compare(ParticularFloatValue other) {
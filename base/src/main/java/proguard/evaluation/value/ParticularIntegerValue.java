@@ -30,6 +30,18 @@ package proguard.evaluation.value;
  * @author Eric Lafortune
  */
 public final class ParticularIntegerValue extends SpecificIntegerValue {
+  // Shared instances of common values, to avoid creating a lot of objects.
+  private static final int CACHE_LOW = -128;
+  private static final int CACHE_HIGH = 1023;
+  private static final ParticularIntegerValue[] CACHE =
+      new ParticularIntegerValue[CACHE_HIGH - CACHE_LOW + 1];
+
+  static {
+    for (int index = 0; index < CACHE.length; index++) {
+      CACHE[index] = new ParticularIntegerValue(CACHE_LOW + index);
+    }
+  }
+
   private final int value;
 
   /** Creates a new particular integer value. */
@@ -37,6 +49,19 @@ public final class ParticularIntegerValue extends SpecificIntegerValue {
     this.value = value;
   }
 
+  /**
+   * Returns a particular integer value with the given value, reusing a shared instance for small
+   * values.
+   */
+  public static ParticularIntegerValue valueOf(int value) {
+    return isShared(value) ? CACHE[value - CACHE_LOW] : new ParticularIntegerValue(value);
+  }
+
+  /** Returns whether {@link #valueOf(int)} returns a shared instance for the given value. */
+  static boolean isShared(int value) {
+    return value >= CACHE_LOW && value <= CACHE_HIGH;
+  }
+
   // Implementations for IntegerValue.
 
   public int value() {
@@ -46,37 +71,37 @@ public final class ParticularIntegerValue extends SpecificIntegerValue {
   // Implementations of unary methods of IntegerValue.
 
   public IntegerValue negate() {
-    return new ParticularIntegerValue(-value);
+    return valueOf(-value);
   }
 
   public IntegerValue convertToByte() {
     int byteValue = (byte) value;
 
-    return byteValue == value ? this : new ParticularIntegerValue(byteValue);
+    return byteValue == value ? this : valueOf(byteValue);
   }
 
   public IntegerValue convertToCharacter() {
     int charValue = (char) value;
 
-    return charValue == value ? this : new ParticularIntegerValue(charValue);
+    return charValue == value ? this : valueOf(charValue);
   }
 
   public IntegerValue convertToShort() {
     int shortValue = (short) value;
 
-    return shortValue == value ? this : new ParticularIntegerValue(shortValue);
+    return shortValue == value ? this : valueOf(shortValue);
   }
 
   public LongValue convertToLong() {
-    return new ParticularLongValue((long) value);
+    return ParticularLongValue.valueOf((long) value);
   }
 
   public FloatValue convertToFloat() {
-    return new ParticularFloatValue((float) value);
+    return ParticularFloatValue.valueOf((float) value);
   }
 
   public DoubleValue convertToDouble() {
-    return new ParticularDoubleValue((double) value);
+    return ParticularDoubleValue.valueOf((double) value);
   }
 
   // Implementations of binary methods of IntegerValue.
@@ -185,83 +210,83 @@ public final class ParticularIntegerValue extends SpecificIntegerValue {
   }
 
   public IntegerValue add(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value + other.value);
+    return valueOf(this.value + other.value);
   }
 
   public IntegerValue subtract(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value - other.value);
+    return valueOf(this.value - other.value);
   }
 
   public IntegerValue subtractFrom(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(other.value - this.value);
+    return valueOf(other.value - this.value);
   }
 
   public IntegerValue multiply(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value * other.value);
+    return valueOf(this.value * other.value);
   }
 
   public IntegerValue divide(ParticularIntegerValue other) throws ArithmeticException {
-    return new ParticularIntegerValue(this.value / other.value);
+    return valueOf(this.value / other.value);
   }
 
   public IntegerValue divideOf(ParticularIntegerValue other) throws ArithmeticException {
-    return new ParticularIntegerValue(other.value / this.value);
+    return valueOf(other.value / this.value);
   }
 
   public IntegerValue remainder(ParticularIntegerValue other) throws ArithmeticException {
-    return new ParticularIntegerValue(this.value % other.value);
+    return valueOf(this.value % other.value);
   }
 
   public IntegerValue remainderOf(ParticularIntegerValue other) throws ArithmeticException {
-    return new ParticularIntegerValue(other.value % this.value);
+    return valueOf(other.value % this.value);
   }
 
   public IntegerValue shiftLeft(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value << other.value);
+    return valueOf(this.value << other.value);
   }
 
   public IntegerValue shiftRight(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value >> other.value);
+    return valueOf(this.value >> other.value);
   }
 
   public IntegerValue unsignedShiftRight(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value >>> other.value);
+    return valueOf(this.value >>> other.value);
   }
 
   public IntegerValue shiftLeftOf(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(other.value << this.value);
+    return valueOf(other.value << this.value);
   }
 
   public IntegerValue shiftRightOf(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(other.value >> this.value);
+    return valueOf(other.value >> this.value);
   }
 
   public IntegerValue unsignedShiftRightOf(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(other.value >>> this.value);
+    return valueOf(other.value >>> this.value);
   }
 
   public LongValue shiftLeftOf(ParticularLongValue other) {
-    return new ParticularLongValue(other.value() << this.value);
+    return ParticularLongValue.valueOf(other.value() << this.value);
   }
 
   public LongValue shiftRightOf(ParticularLongValue other) {
-    return new ParticularLongValue(other.value() >> this.value);
+    return ParticularLongValue.valueOf(other.value() >> this.value);
   }
 
   public LongValue unsignedShiftRightOf(ParticularLongValue other) {
-    return new ParticularLongValue(other.value() >>> this.value);
+    return ParticularLongValue.valueOf(other.value() >>> this.value);
   }
 
   public IntegerValue and(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value & other.value);
+    return valueOf(this.value & other.value);
   }
 
   public IntegerValue or(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value | other.value);
+    return valueOf(this.value | other.value);
   }
 
   public IntegerValue xor(ParticularIntegerValue other) {
-    return new ParticularIntegerValue(this.value ^ other.value);
+    return valueOf(this.value ^ other.value);
   }
 
   public int equal(ParticularIntegerValue other) {
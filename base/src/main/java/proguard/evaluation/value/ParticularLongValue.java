@@ -23,6 +23,18 @@ package proguard.evaluation.value;
  * @author Eric Lafortune
  */
 public final class ParticularLongValue extends SpecificLongValue {
+  // Shared instances of common values, to avoid creating a lot of objects.
+  private static final int CACHE_LOW = -128;
+  private static final int CACHE_HIGH = 1023;
+  private static final ParticularLongValue[] CACHE =
+      new ParticularLongValue[CACHE_HIGH - CACHE_LOW + 1];
+
+  static {
+    for (int index = 0; index < CACHE.length; index++) {
+      CACHE[index] = new ParticularLongValue(CACHE_LOW + index);
+    }
+  }
+
   private final long value;
 
   /** Creates a new particular long value. */
@@ -30,6 +42,19 @@ public final class ParticularLongValue extends SpecificLongValue {
     this.value = value;
   }
 
+  /**
+   * Returns a particular long value with the given value, reusing a shared instance for small
+   * values.
+   */
+  public static ParticularLongValue valueOf(long value) {
+    return isShared(value) ? CACHE[(int) value - CACHE_LOW] : new ParticularLongValue(value);
+  }
+
+  /** Returns whether {@link #valueOf(long)} returns a shared instance for the given value. */
+  static boolean isShared(long value) {
+    return value >= CACHE_LOW && value <= CACHE_HIGH;
+  }
+
   // Implementations for LongValue.
 
   public long value() {
@@ -39,19 +64,19 @@ public final class ParticularLongValue extends SpecificLongValue {
   // Implementations of unary methods of LongValue.
 
   public LongValue negate() {
-    return new ParticularLongValue(-value);
+    return valueOf(-value);
   }
 
   public IntegerValue convertToInteger() {
-    return new ParticularIntegerValue((int) value);
+    return ParticularIntegerValue.valueOf((int) value);
   }
 
   public FloatValue convertToFloat() {
-    return new ParticularFloatValue((float) value);
+    return ParticularFloatValue.valueOf((float) value);
   }
 
   public DoubleValue convertToDouble() {
-    return new ParticularDoubleValue((double) value);
+    return ParticularDoubleValue.valueOf((double) value);
   }
 
   // Implementations of binary methods of LongValue.
@@ -128,59 +153,59 @@ public final class ParticularLongValue extends SpecificLongValue {
   }
 
   public LongValue add(ParticularLongValue other) {
-    return new ParticularLongValue(this.value + other.value);
+    return valueOf(this.value + other.value);
   }
 
   public LongValue subtract(ParticularLongValue other) {
-    return new ParticularLongValue(this.value - other.value);
+    return valueOf(this.value - other.value);
   }
 
   public LongValue subtractFrom(ParticularLongValue other) {
-    return new ParticularLongValue(other.value - this.value);
+    return valueOf(other.value - this.value);
   }
 
   public LongValue multiply(ParticularLongValue other) {
-    return new ParticularLongValue(this.value * other.value);
+    return valueOf(this.value * other.value);
   }
 
   public LongValue divide(ParticularLongValue other) throws ArithmeticException {
-    return new ParticularLongValue(this.value / other.value);
+    return valueOf(this.value / other.value);
   }
 
   public LongValue divideOf(ParticularLongValue other) throws ArithmeticException {
-    return new ParticularLongValue(other.value / this.value);
+    return valueOf(other.value / this.value);
   }
 
   public LongValue remainder(ParticularLongValue other) throws ArithmeticException {
-    return new ParticularLongValue(this.value % other.value);
+    return valueOf(this.value % other.value);
   }
 
   public LongValue remainderOf(ParticularLongValue other) throws ArithmeticException {
-    return new ParticularLongValue(other.value % this.value);
+    return valueOf(other.value % this.value);
   }
 
   public LongValue shiftLeft(ParticularIntegerValue other) {
-    return new ParticularLongValue(this.value << other.value());
+    return valueOf(this.value << other.value());
   }
 
   public LongValue shiftRight(ParticularIntegerValue other) {
-    return new ParticularLongValue(this.value >> other.value());
+    return valueOf(this.value >> other.value());
   }
 
   public LongValue unsignedShiftRight(ParticularIntegerValue other) {
-    return new ParticularLongValue(this.value >>> other.value());
+    return valueOf(this.value >>> other.value());
   }
 
   public LongValue and(ParticularLongValue other) {
-    return new ParticularLongValue(this.value & other.value);
+    return valueOf(this.value & other.value);
   }
 
   public LongValue or(ParticularLongValue other) {
-    return new ParticularLongValue(this.value | other.value);
+    return valueOf(this.value | other.value);
   }
 
   public LongValue xor(ParticularLongValue other) {
-    return new ParticularLongValue(this.value ^ other.value);
+    return valueOf(this.value ^ other.value);
   }
 
   // Implementations for Value.
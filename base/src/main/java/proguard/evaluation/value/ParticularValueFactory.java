@@ -17,7 +17,9 @@
  */
 package proguard.evaluation.value;
 
+import java.util.concurrent.atomic.LongAdder;
 import org.jetbrains.annotations.NotNull;
+import proguard.analysis.MetricsRegistry;
 import proguard.analysis.datastructure.CodeLocation;
 import proguard.classfile.Clazz;
 import proguard.classfile.Method;
@@ -28,24 +30,27 @@ import proguard.evaluation.value.object.AnalyzedObject;
  * whenever they are known.
  */
 public class ParticularValueFactory extends BasicValueFactory implements ValueFactory {
-  // Shared copies of Value objects, to avoid creating a lot of objects.
-  static final IntegerValue INTEGER_VALUE_M1 = new ParticularIntegerValue(-1);
-  static final IntegerValue INTEGER_VALUE_0 = new ParticularIntegerValue(0);
-  static final IntegerValue INTEGER_VALUE_1 = new ParticularIntegerValue(1);
-  static final IntegerValue INTEGER_VALUE_2 = new ParticularIntegerValue(2);
-  static final IntegerValue INTEGER_VALUE_3 = new ParticularIntegerValue(3);
-  static final IntegerValue INTEGER_VALUE_4 = new ParticularIntegerValue(4);
-  static final IntegerValue INTEGER_VALUE_5 = new ParticularIntegerValue(5);
-  static final LongValue LONG_VALUE_0 = new ParticularLongValue(0);
-  static final LongValue LONG_VALUE_1 = new ParticularLongValue(1);
-  static final FloatValue FLOAT_VALUE_0 = new ParticularFloatValue(0.0f);
-  static final FloatValue FLOAT_VALUE_1 = new ParticularFloatValue(1.0f);
-  static final FloatValue FLOAT_VALUE_2 = new ParticularFloatValue(2.0f);
-  static final DoubleValue DOUBLE_VALUE_0 = new ParticularDoubleValue(0.0);
-  static final DoubleValue DOUBLE_VALUE_1 = new ParticularDoubleValue(1.0);
+  /** The name of the counter of the primitive values that the factory creates. */
+  public static final String CREATED_VALUE_COUNTER = "ParticularValueFactory.createdValues";
+
+  /** The name of the counter of the shared primitive values that the factory reuses. */
+  public static final String REUSED_VALUE_COUNTER = "ParticularValueFactory.reusedValues";
 
-  private static final int POS_ZERO_FLOAT_BITS = Float.floatToIntBits(0.0f);
-  private static final long POS_ZERO_DOUBLE_BITS = Double.doubleToLongBits(0.0);
+  // Shared copies of Value objects, to avoid creating a lot of objects.
+  static final IntegerValue INTEGER_VALUE_M1 = ParticularIntegerValue.valueOf(-1);
+  static final IntegerValue INTEGER_VALUE_0 = ParticularIntegerValue.valueOf(0);
+  static final IntegerValue INTEGER_VALUE_1 = ParticularIntegerValue.valueOf(1);
+  static final IntegerValue INTEGER_VALUE_2 = ParticularIntegerValue.valueOf(2);
+  static final IntegerValue INTEGER_VALUE_3 = ParticularIntegerValue.valueOf(3);
+  static final IntegerValue INTEGER_VALUE_4 = ParticularIntegerValue.valueOf(4);
+  static final IntegerValue INTEGER_VALUE_5 = ParticularIntegerValue.valueOf(5);
+  static final LongValue LONG_VALUE_0 = ParticularLongValue.valueOf(0);
+  static final LongValue LONG_VALUE_1 = ParticularLongValue.valueOf(1);
+  static final FloatValue FLOAT_VALUE_0 = ParticularFloatValue.valueOf(0.0f);
+  static final FloatValue FLOAT_VALUE_1 = ParticularFloatValue.valueOf(1.0f);
+  static final FloatValue FLOAT_VALUE_2 = ParticularFloatValue.valueOf(2.0f);
+  static final DoubleValue DOUBLE_VALUE_0 = ParticularDoubleValue.valueOf(0.0);
+  static final DoubleValue DOUBLE_VALUE_1 = ParticularDoubleValue.valueOf(1.0);
 
   private final ValueFactory arrayReferenceValueFactory;
   // This is protected to be usable directly by children, which should ideally be not allowed, but
@@ -54,6 +59,9 @@ public class ParticularValueFactory extends BasicValueFactory implements ValueFa
   // class).
   protected final ValueFactory referenceValueFactory;
 
+  private final LongAdder createdValueCounter;
+  private final LongAdder reusedValueCounter;
+
   /** Creates a new ParticularValueFactory which does not keep track of particular references. */
   public ParticularValueFactory() {
     this(new ArrayReferenceValueFactory(), new TypedReferenceValueFactory());
@@ -75,55 +83,53 @@ public class ParticularValueFactory extends BasicValueFactory implements ValueFa
    */
   public ParticularValueFactory(
       ValueFactory arrayReferenceValueFactory, ValueFactory referenceValueFactory) {
+    this(arrayReferenceValueFactory, referenceValueFactory, null);
+  }
+
+  /**
+   * Creates a new ParticularValueFactory.
+   *
+   * @param arrayReferenceValueFactory the valuefactory to delegate new array references to.
+   * @param referenceValueFactory the valuefactory to delegate new references to.
+   * @param metrics an optional registry in which the factory counts the primitive values that it
+   *     creates, in the counter {@link #CREATED_VALUE_COUNTER}, and the shared primitive values
+   *     that it reuses, in the counter {@link #REUSED_VALUE_COUNTER}. Values that result from the
+   *     arithmetic of other values aren't counted.
+   */
+  public ParticularValueFactory(
+      ValueFactory arrayReferenceValueFactory,
+      ValueFactory referenceValueFactory,
+      MetricsRegistry metrics) {
     this.arrayReferenceValueFactory = arrayReferenceValueFactory;
     this.referenceValueFactory = referenceValueFactory;
+    this.createdValueCounter = metrics == null ? null : metrics.counter(CREATED_VALUE_COUNTER);
+    this.reusedValueCounter = metrics == null ? null : metrics.counter(REUSED_VALUE_COUNTER);
   }
 
   // Implementations for ValueFactory.
 
   @Override
   public IntegerValue createIntegerValue(int value) {
-    switch (value) {
-      case -1:
-        return INTEGER_VALUE_M1;
-      case 0:
-        return INTEGER_VALUE_0;
-      case 1:
-        return INTEGER_VALUE_1;
-      case 2:
-        return INTEGER_VALUE_2;
-      case 3:
-        return INTEGER_VALUE_3;
-      case 4:
-        return INTEGER_VALUE_4;
-      case 5:
-        return INTEGER_VALUE_5;
-      default:
-        return new ParticularIntegerValue(value);
-    }
+    countValue(ParticularIntegerValue.isShared(value));
+    return ParticularIntegerValue.valueOf(value);
   }
 
   @Override
   public LongValue createLongValue(long value) {
-    return value == 0L ? LONG_VALUE_0 : value == 1L ? LONG_VALUE_1 : new ParticularLongValue(value);
+    countValue(ParticularLongValue.isShared(value));
+    return ParticularLongValue.valueOf(value);
   }
 
   @Override
   public FloatValue createFloatValue(float value) {
-    // Make sure to distinguish between +0.0 and -0.0.
-    return value == 0.0f && Float.floatToIntBits(value) == POS_ZERO_FLOAT_BITS
-        ? FLOAT_VALUE_0
-        : value == 1.0f
-            ? FLOAT_VALUE_1
-            : value == 2.0f ? FLOAT_VALUE_2 : new ParticularFloatValue(value);
+    countValue(ParticularFloatValue.isShared(value));
+    return ParticularFloatValue.valueOf(value);
   }
 
   @Override
   public DoubleValue createDoubleValue(double value) {
-    // Make sure to distinguish between +0.0 and -0.0.
-    return value == 0.0 && Double.doubleToLongBits(value) == POS_ZERO_DOUBLE_BITS
-        ? DOUBLE_VALUE_0
-        : value == 1.0 ? DOUBLE_VALUE_1 : new ParticularDoubleValue(value);
+    countValue(ParticularDoubleValue.isShared(value));
+    return ParticularDoubleValue.valueOf(value);
   }
 
   @Override
@@ -272,4 +278,17 @@ public class ParticularValueFactory extends BasicValueFactory implements ValueFa
     return arrayReferenceValueFactory.createArrayReferenceValue(
         type, referencedClass, arrayLength, elementValues);
   }
+
+  // Small utility methods.
+
+  /** Counts a primitive value that is either shared or newly created, if there are counters. */
+  private void countValue(boolean shared) {
+    if (shared) {
+      if (reusedValueCounter != null) {
+        reusedValueCounter.increment();
+      }
+    } else if (createdValueCounter != null) {
+      createdValueCounter.increment();
+    }
+  }
 }
@@ -19,6 +19,7 @@ package proguard.io;
 
 import java.io.*;
 import proguard.classfile.*;
+import proguard.classfile.constant.Utf8Interner;
 import proguard.classfile.io.*;
 import proguard.classfile.util.*;
 import proguard.classfile.util.kotlin.KotlinMetadataInitializer;
@@ -43,6 +44,7 @@ public class ClassReader implements DataEntryReader {
   private final boolean skipNonPublicLibraryClasses;
   private final boolean skipNonPublicLibraryClassMembers;
   private final boolean ignoreStackMapAttributes;
+  private final Utf8Interner utf8Interner;
   private final WarningPrinter warningPrinter;
   private final ClassVisitor classVisitor;
 
@@ -76,10 +78,38 @@ public class ClassReader implements DataEntryReader {
       boolean includeKotlinMetadata,
       WarningPrinter warningPrinter,
       ClassVisitor classVisitor) {
+    this(
+        isLibrary,
+        skipNonPublicLibraryClasses,
+        skipNonPublicLibraryClassMembers,
+        ignoreStackMapAttributes,
+        includeKotlinMetadata,
+        null,
+        warningPrinter,
+        classVisitor);
+  }
+
+  /**
+   * Creates a new ClassReader for reading the specified Clazz objects.
+   *
+   * @param utf8Interner an optional interner that shares the UTF-8 data of all classes that are
+   *     read, for instance across a class pool. Program classes then only decode their UTF-8
+   *     constants when they are first needed.
+   */
+  public ClassReader(
+      boolean isLibrary,
+      boolean skipNonPublicLibraryClasses,
+      boolean skipNonPublicLibraryClassMembers,
+      boolean ignoreStackMapAttributes,
+      boolean includeKotlinMetadata,
+      Utf8Interner utf8Interner,
+      WarningPrinter warningPrinter,
+      ClassVisitor classVisitor) {
     this.isLibrary = isLibrary;
     this.skipNonPublicLibraryClasses = skipNonPublicLibraryClasses;
     this.skipNonPublicLibraryClassMembers = skipNonPublicLibraryClassMembers;
     this.ignoreStackMapAttributes = ignoreStackMapAttributes;
+    this.utf8Interner = utf8Interner;
     this.warningPrinter = warningPrinter;
     this.classVisitor = classVisitor;
     this.kmInitializer =
@@ -109,13 +139,14 @@ public class ClassReader implements DataEntryReader {
                 kmInitializer != null
                     ? (k, mv, d1, d2, xi, xs, pn) ->
                         kmInitializer.initialize(clazz, k, mv, d1, d2, xi, xs, pn)
-                    : null);
+                    : null,
+                utf8Interner);
 
         clazz.accept(libraryClassReader);
       } else {
         clazz = new ProgramClass();
         ClassVisitor programClassReader =
-            new ProgramClassReader(dataInputStream, ignoreStackMapAttributes);
+            new ProgramClassReader(dataInputStream, ignoreStackMapAttributes, utf8Interner);
 
         if (kmInitializer != null) {
           programClassReader = new MultiClassVisitor(programClassReader, kmInitializer);
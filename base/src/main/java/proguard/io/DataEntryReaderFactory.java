@@ -48,6 +48,7 @@ public class DataEntryReaderFactory {
   private static final String JMOD_CLASS_FILE_PREFIX = "classes/";
 
   private final boolean android;
+  private final boolean mapArchives;
 
   /**
    * Creates a new DataEntryReaderFactory.
@@ -56,7 +57,21 @@ public class DataEntryReaderFactory {
    *     inside the assets directory then aren't unpacked but simply read as data files.
    */
   public DataEntryReaderFactory(boolean android) {
+    this(android, false);
+  }
+
+  /**
+   * Creates a new DataEntryReaderFactory.
+   *
+   * @param android Specifies whether the packaging is targeted at the Android platform. Archives
+   *     inside the assets directory then aren't unpacked but simply read as data files.
+   * @param mapArchives Specifies whether archives should be read with a {@link MappedJarReader},
+   *     which maps them into memory and reads nested archives randomly, instead of with a {@link
+   *     JarReader}.
+   */
+  public DataEntryReaderFactory(boolean android, boolean mapArchives) {
     this.android = android;
+    this.mapArchives = mapArchives;
   }
 
   /**
@@ -162,7 +177,10 @@ public class DataEntryReaderFactory {
     }
 
     // Unzip any jars, if necessary.
-    DataEntryReader jarReader = new JarReader(stripJmodHeader, reader);
+    DataEntryReader jarReader =
+        mapArchives
+            ? new MappedJarReader(stripJmodHeader, reader)
+            : new JarReader(stripJmodHeader, reader);
 
     if (isJar) {
       // Always unzip.
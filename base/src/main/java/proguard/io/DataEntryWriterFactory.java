@@ -26,6 +26,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.zip.Deflater;
 import proguard.classfile.ClassPool;
 import proguard.resources.file.ResourceFilePool;
 import proguard.util.ConstantStringFunction;
@@ -49,6 +50,11 @@ public class DataEntryWriterFactory {
   private static final boolean ENABLE_ZIP64_SUPPORT =
       System.getProperty("enable.zip64.support") != null;
 
+  private static final int ZIP_COMPRESSION_LEVEL =
+      Integer.getInteger("zip.compression.level", Deflater.BEST_COMPRESSION);
+  private static final int ZIP_COMPRESSION_THREADS =
+      Integer.getInteger("zip.compression.threads", 0);
+
   private static final String CLASS_FILE_PATTERN = "**.class";
   private static final String CLASS_FILE_PREFIX = "classes/";
 
@@ -577,6 +583,8 @@ public class DataEntryWriterFactory {
             PAGE_ALIGNMENT,
             modificationTime,
             jarHeader,
+            ZIP_COMPRESSION_LEVEL,
+            ZIP_COMPRESSION_THREADS,
             writer);
 
     // Do we need to sign the jar?
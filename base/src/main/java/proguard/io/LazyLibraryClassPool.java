@@ -0,0 +1,394 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+import proguard.classfile.*;
+import proguard.classfile.constant.Utf8Interner;
+import proguard.classfile.io.LibraryClassReader;
+import proguard.classfile.util.*;
+import proguard.classfile.visitor.ClassVisitor;
+import proguard.classfile.visitor.MemberVisitor;
+import proguard.util.StringMatcher;
+
+/**
+ * This {@link ClassPool} contains library classes that are only read when they are first
+ * retrieved by name. Initially, it only indexes the names of the class files in the added class
+ * path entries, so its memory usage and startup time scale with the classes that are actually
+ * used, rather than with the size of the class path.
+ *
+ * <p>Whenever a class is read, the pool links it to its superclass and interfaces, reading them in
+ * turn if necessary, and adds it to their subclasses. The classes therefore don't need any further
+ * hierarchy initialization. Reference initializers retrieve their referenced library classes by
+ * name, so they read the classes they need as they go.
+ *
+ * <p>The pool also initializes the classes referenced by the descriptors of the fields and methods
+ * of the classes that it reads, without reading these classes itself: references to classes that
+ * haven't been read yet are filled out as soon as these classes are read.
+ *
+ * <p>Enumerating the pool or applying visitors to it only covers the classes that have been read
+ * so far. Call {@link #loadAllClasses()} first to cover all indexed classes.
+ *
+ * <p>Retrieving, adding, and removing classes is thread-safe. Enumerating the classes works on a
+ * snapshot, so visitors can retrieve classes while they are being applied to the pool.
+ */
+public class LazyLibraryClassPool extends ClassPool {
+  private static final String CLASS_FILE_EXTENSION = ClassConstants.CLASS_FILE_EXTENSION;
+  private static final String JMOD_CLASS_FILE_PREFIX = "classes/";
+  private static final String META_INF_PREFIX = "META-INF/";
+  private static final String MODULE_INFO_CLASS = "module-info";
+
+  private final ClassPool programClassPool;
+  private final boolean skipNonPublicClasses;
+  private final boolean skipNonPublicClassMembers;
+  private final Utf8Interner utf8Interner;
+
+  // The class files that haven't been read yet, by class name.
+  private final Map<String, ClassFile> classFiles = new HashMap<>();
+
+  // The member references to indexed classes that haven't been read yet, by class name.
+  private final Map<String, List<Consumer<Clazz>>> unresolvedReferences = new HashMap<>();
+
+  /**
+   * Creates a new empty LazyLibraryClassPool that links its classes to the given program classes,
+   * if they extend or implement any.
+   */
+  public LazyLibraryClassPool(ClassPool programClassPool) {
+    this(programClassPool, false, false, null);
+  }
+
+  /**
+   * Creates a new empty LazyLibraryClassPool.
+   *
+   * @param programClassPool the program classes that library classes may extend or implement.
+   * @param skipNonPublicClasses specifies whether to skip non-public classes while reading.
+   * @param skipNonPublicClassMembers specifies whether to skip non-public class members while
+   *     reading.
+   * @param utf8Interner an optional interner that shares the names and descriptors of the classes.
+   */
+  public LazyLibraryClassPool(
+      ClassPool programClassPool,
+      boolean skipNonPublicClasses,
+      boolean skipNonPublicClassMembers,
+      Utf8Interner utf8Interner) {
+    this.programClassPool = programClassPool;
+    this.skipNonPublicClasses = skipNonPublicClasses;
+    this.skipNonPublicClassMembers = skipNonPublicClassMembers;
+    this.utf8Interner = utf8Interner;
+  }
+
+  /**
+   * Indexes the class files in the given directory or archive (jar, zip, jmod,...). Archives are
+   * mapped into memory. Classes that are already present or indexed take precedence, like in a
+   * class path.
+   */
+  public void addClassPathEntry(File file) throws IOException {
+    if (file.isDirectory()) {
+      addDirectory(file, "");
+    } else {
+      addArchive(MappedZipFile.map(file));
+    }
+  }
+
+  /**
+   * Indexes the class files in the given archive. The "classes/" prefix of the class files in
+   * jmod files is stripped. Classes that are already present or indexed take precedence.
+   */
+  public synchronized void addArchive(MappedZipFile zipFile) {
+    for (MappedZipFile.Entry entry : zipFile.entries()) {
+      String name = entry.getName();
+      if (!entry.isDirectory()
+          && name.endsWith(CLASS_FILE_EXTENSION)
+          && !name.startsWith(META_INF_PREFIX)) {
+        if (name.startsWith(JMOD_CLASS_FILE_PREFIX)) {
+          name = name.substring(JMOD_CLASS_FILE_PREFIX.length());
+        }
+
+        addClassFile(
+            className(name),
+            () -> new DataInputStream(new BufferedInputStream(zipFile.getInputStream(entry))));
+      }
+    }
+  }
+
+  /** Returns the number of indexed classes that haven't been read yet. */
+  public synchronized int unloadedClassCount() {
+    return classFiles.size();
+  }
+
+  /** Reads all indexed classes that haven't been read yet. */
+  public synchronized void loadAllClasses() {
+    for (String className : new ArrayList<>(classFiles.keySet())) {
+      getClass(className);
+    }
+  }
+
+  // Implementations for ClassPool.
+
+  @Override
+  public synchronized void clear() {
+    super.clear();
+    classFiles.clear();
+    unresolvedReferences.clear();
+  }
+
+  @Override
+  public synchronized void addClass(String name, Clazz clazz) {
+    super.addClass(name, clazz);
+  }
+
+  @Override
+  public synchronized Clazz removeClass(String className) {
+    // Make sure the class doesn't come back when it is retrieved.
+    classFiles.remove(className);
+    unresolvedReferences.remove(className);
+
+    return super.removeClass(className);
+  }
+
+  @Override
+  public synchronized Clazz getClass(String className) {
+    Clazz clazz = super.getClass(className);
+    if (clazz == null) {
+      ClassFile classFile = classFiles.remove(className);
+      if (classFile != null) {
+        List<Consumer<Clazz>> references = unresolvedReferences.remove(className);
+
+        clazz = readClass(className, classFile);
+
+        // Fill out the member references of classes that have been read before.
+        if (clazz != null && references != null) {
+          for (Consumer<Clazz> reference : references) {
+            reference.accept(clazz);
+          }
+        }
+      }
+    }
+
+    return clazz;
+  }
+
+  @Override
+  public synchronized boolean contains(Clazz clazz) {
+    return super.contains(clazz);
+  }
+
+  @Override
+  public synchronized Iterator<String> classNames() {
+    return loadedClassNames().iterator();
+  }
+
+  @Override
+  public synchronized Iterable<Clazz> classes() {
+    List<Clazz> classes = new ArrayList<>(super.size());
+    for (Clazz clazz : super.classes()) {
+      classes.add(clazz);
+    }
+
+    return classes;
+  }
+
+  @Override
+  public synchronized int size() {
+    return super.size();
+  }
+
+  @Override
+  public void classesAccept(ClassVisitor classVisitor) {
+    for (Clazz clazz : classes()) {
+      clazz.accept(classVisitor);
+    }
+  }
+
+  @Override
+  public void classesAcceptAlphabetically(ClassVisitor classVisitor) {
+    // The snapshot is sorted already.
+    classesAccept(classVisitor);
+  }
+
+  @Override
+  public void classesAccept(StringMatcher classNameFilter, ClassVisitor classVisitor) {
+    for (Clazz clazz : classes()) {
+      if (classNameFilter.matches(clazz.getName())) {
+        clazz.accept(classVisitor);
+      }
+    }
+  }
+
+  // Small utility methods.
+
+  /** Indexes the class files in the given directory and its subdirectories. */
+  private synchronized void addDirectory(File directory, String prefix) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    // Sort the files, to get deterministic precedence rules.
+    Arrays.sort(files);
+
+    for (File file : files) {
+      String name = prefix + file.getName();
+      if (file.isDirectory()) {
+        if (!(name + '/').equals(META_INF_PREFIX)) {
+          addDirectory(file, name + '/');
+        }
+      } else if (name.endsWith(CLASS_FILE_EXTENSION)) {
+        addClassFile(
+            className(name),
+            () -> new DataInputStream(new BufferedInputStream(new FileInputStream(file))));
+      }
+    }
+  }
+
+  /** Indexes the given class file, unless a class with the same name is already known. */
+  private void addClassFile(String className, ClassFile classFile) {
+    if (!className.endsWith(MODULE_INFO_CLASS) && super.getClass(className) == null) {
+      classFiles.putIfAbsent(className, classFile);
+    }
+  }
+
+  /**
+   * Reads the given class file, adds the class to the pool, and initializes its hierarchy and
+   * member references. Returns null if the class is skipped.
+   */
+  private Clazz readClass(String className, ClassFile classFile) {
+    LibraryClass libraryClass = new LibraryClass();
+    try (DataInputStream dataInputStream = classFile.open()) {
+      libraryClass.accept(
+          new LibraryClassReader(
+              dataInputStream,
+              skipNonPublicClasses,
+              skipNonPublicClassMembers,
+              null,
+              utf8Interner));
+    } catch (IOException e) {
+      throw new RuntimeException(
+          "Can't read library class [" + className + "] (" + e.getMessage() + ")", e);
+    }
+
+    // Skipped non-public classes don't get a name.
+    if (libraryClass.getName() == null) {
+      return null;
+    }
+
+    // Add the class before linking it, so cyclic hierarchies terminate.
+    super.addClass(className, libraryClass);
+
+    libraryClass.accept(new ClassSuperHierarchyInitializer(programClassPool, this));
+    libraryClass.accept(new ClassSubHierarchyInitializer());
+    libraryClass.fieldsAccept(new MemberReferenceInitializer());
+    libraryClass.methodsAccept(new MemberReferenceInitializer());
+
+    return libraryClass;
+  }
+
+  /**
+   * Returns the class with the given class name or array type, if it is a program class or a
+   * library class that has been read. Otherwise, if the class is indexed, remembers the given
+   * reference to fill it out once the class is read.
+   */
+  private Clazz findClass(String name, Consumer<Clazz> reference) {
+    if (ClassUtil.isInternalArrayType(name)) {
+      // Ignore any primitive array types.
+      if (!ClassUtil.isInternalClassType(name)) {
+        return null;
+      }
+
+      name = ClassUtil.internalClassNameFromClassType(name);
+    }
+
+    Clazz clazz = programClassPool.getClass(name);
+    if (clazz == null) {
+      clazz = super.getClass(name);
+      if (clazz == null && classFiles.containsKey(name)) {
+        unresolvedReferences.computeIfAbsent(name, k -> new ArrayList<>()).add(reference);
+      }
+    }
+
+    return clazz;
+  }
+
+  /** Returns the names of the classes that have been read so far. */
+  private List<String> loadedClassNames() {
+    List<String> classNames = new ArrayList<>(super.size());
+    Iterator<String> iterator = super.classNames();
+    while (iterator.hasNext()) {
+      classNames.add(iterator.next());
+    }
+
+    return classNames;
+  }
+
+  /** Returns the internal class name of the given class file name. */
+  private static String className(String fileName) {
+    return fileName.substring(0, fileName.length() - CLASS_FILE_EXTENSION.length());
+  }
+
+  /**
+   * This {@link MemberVisitor} initializes the classes referenced by the descriptors of the library
+   * fields and methods that it visits, like {@link ClassReferenceInitializer}, but without reading
+   * any classes.
+   */
+  private class MemberReferenceInitializer implements MemberVisitor {
+    @Override
+    public void visitLibraryField(LibraryClass libraryClass, LibraryField libraryField) {
+      DescriptorClassEnumeration enumeration =
+          new DescriptorClassEnumeration(libraryField.getDescriptor(libraryClass));
+
+      enumeration.nextFluff();
+
+      if (enumeration.hasMoreClassNames()) {
+        libraryField.referencedClass =
+            findClass(enumeration.nextClassName(), clazz -> libraryField.referencedClass = clazz);
+      }
+    }
+
+    @Override
+    public void visitLibraryMethod(LibraryClass libraryClass, LibraryMethod libraryMethod) {
+      DescriptorClassEnumeration enumeration =
+          new DescriptorClassEnumeration(libraryMethod.getDescriptor(libraryClass));
+
+      int classCount = enumeration.classCount();
+      if (classCount > 0) {
+        // Keep the array even if none of the classes have been read yet, so it can be filled out
+        // later on.
+        Clazz[] referencedClasses = new Clazz[classCount];
+
+        for (int index = 0; index < classCount; index++) {
+          enumeration.nextFluff();
+
+          int referenceIndex = index;
+          referencedClasses[index] =
+              findClass(
+                  enumeration.nextClassName(), clazz -> referencedClasses[referenceIndex] = clazz);
+        }
+
+        libraryMethod.referencedClasses = referencedClasses;
+      }
+    }
+  }
+
+  /** This interface opens the data of a class file that hasn't been read yet. */
+  private interface ClassFile {
+    DataInputStream open() throws IOException;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * This {@link DataEntryReader} lets a given {@link DataEntryReader} read all data entries of the
+ * read archive data entries, like {@link JarReader}, but based on {@link MappedZipFile}.
+ *
+ * <p>Archive files are mapped into memory and their central directories are parsed directly, so
+ * entries are only inflated when they are actually read. Archives nested in other archives (jars
+ * in aars, for instance) are accessed randomly through their {@link MappedZipDataEntry} buffers,
+ * instead of being streamed sequentially. Other data entries are read by a plain {@link
+ * JarReader}.
+ */
+public class MappedJarReader implements DataEntryReader {
+  private final boolean jmod;
+  private final DataEntryReader dataEntryReader;
+
+  /**
+   * Creates a new MappedJarReader.
+   *
+   * @param dataEntryReader the reader that can process the jar entries.
+   */
+  public MappedJarReader(DataEntryReader dataEntryReader) {
+    this(false, dataEntryReader);
+  }
+
+  /**
+   * Creates a new MappedJarReader that optionally reads jmod files.
+   *
+   * @param jmod specifies whether the input jar is actually a jmod file.
+   * @param dataEntryReader the reader that can process the jar entries.
+   */
+  public MappedJarReader(boolean jmod, DataEntryReader dataEntryReader) {
+    this.jmod = jmod;
+    this.dataEntryReader = dataEntryReader;
+  }
+
+  // Implementation for DataEntryReader.
+
+  @Override
+  public void read(DataEntry dataEntry) throws IOException {
+    MappedZipFile zipFile = mappedZipFile(dataEntry);
+    if (zipFile == null) {
+      // Fall back to streaming the data entry.
+      new JarReader(jmod, dataEntryReader).read(dataEntry);
+      return;
+    }
+
+    // Get all entries from the input jar.
+    for (MappedZipFile.Entry zipEntry : zipFile.entries()) {
+      // Delegate the actual reading to the data entry reader.
+      dataEntryReader.read(new MappedZipDataEntry(dataEntry, zipFile, zipEntry));
+    }
+  }
+
+  // Small utility methods.
+
+  /** Returns a random access archive for the given data entry, or null if it can't be mapped. */
+  private MappedZipFile mappedZipFile(DataEntry dataEntry) throws IOException {
+    if (dataEntry instanceof FileDataEntry) {
+      File file = ((FileDataEntry) dataEntry).getFile();
+      if (file.length() <= Integer.MAX_VALUE) {
+        return MappedZipFile.map(file);
+      }
+    } else {
+      // Look through any renamed or otherwise wrapped data entries.
+      while (dataEntry instanceof WrappedDataEntry) {
+        dataEntry = ((WrappedDataEntry) dataEntry).wrappedEntry;
+      }
+
+      if (dataEntry instanceof MappedZipDataEntry) {
+        ByteBuffer buffer = ((MappedZipDataEntry) dataEntry).getByteBuffer();
+        return new MappedZipFile(buffer);
+      }
+    }
+
+    return null;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import proguard.classfile.TypeConstants;
+
+/**
+ * This {@link DataEntry} represents an entry of a {@link MappedZipFile}. Its contents can also be
+ * retrieved as a buffer, which doesn't involve any copying for stored entries.
+ *
+ * @see MappedJarReader
+ */
+public class MappedZipDataEntry implements DataEntry {
+  private final DataEntry parent;
+  private final MappedZipFile zipFile;
+  private final MappedZipFile.Entry zipEntry;
+  private InputStream inputStream;
+
+  public MappedZipDataEntry(DataEntry parent, MappedZipFile zipFile, MappedZipFile.Entry zipEntry) {
+    this.parent = parent;
+    this.zipFile = zipFile;
+    this.zipEntry = zipEntry;
+  }
+
+  /**
+   * Returns the uncompressed contents of this data entry. For stored entries, this is a read-only
+   * slice of the archive, without any copying.
+   */
+  public ByteBuffer getByteBuffer() throws IOException {
+    return zipFile.getData(zipEntry);
+  }
+
+  /** Returns whether the contents of this data entry are stored without compression. */
+  public boolean isStored() {
+    return zipEntry.getMethod() == java.util.zip.ZipEntry.STORED;
+  }
+
+  // Implementations for DataEntry.
+
+  @Override
+  public String getName() {
+    // Get the right separators.
+    String name = zipEntry.getName().replace(File.separatorChar, TypeConstants.PACKAGE_SEPARATOR);
+
+    // Chop the trailing directory slash, if any.
+    int length = name.length();
+    return length > 0 && name.charAt(length - 1) == TypeConstants.PACKAGE_SEPARATOR
+        ? name.substring(0, length - 1)
+        : name;
+  }
+
+  @Override
+  public String getOriginalName() {
+    return getName();
+  }
+
+  @Override
+  public long getSize() {
+    // Try to get some estimate of the size.
+    return Math.max(zipEntry.getSize(), zipEntry.getCompressedSize());
+  }
+
+  @Override
+  public boolean isDirectory() {
+    return zipEntry.isDirectory();
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    if (inputStream == null) {
+      inputStream = zipFile.getInputStream(zipEntry);
+    }
+
+    return inputStream;
+  }
+
+  @Override
+  public void closeInputStream() throws IOException {
+    if (inputStream != null) {
+      inputStream.close();
+      inputStream = null;
+    }
+  }
+
+  @Override
+  public DataEntry getParent() {
+    return parent;
+  }
+
+  // Implementations for Object.
+
+  @Override
+  public String toString() {
+    return parent.toString() + ':' + getName();
+  }
+}
@@ -0,0 +1,541 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * This class provides random access to the entries of a zip archive (jar, apk, aar, jmod,...) in a
+ * {@link ByteBuffer}, typically a memory-mapped file. It parses the central directory of the
+ * archive itself. The contents of stored entries are returned as zero-copy slices of the buffer;
+ * the contents of deflated entries are inflated on demand.
+ *
+ * <p>Any data preceding the archive, like the magic bytes of jmod files, is skipped automatically.
+ * Encrypted entries and archives spanning multiple disks are not supported.
+ *
+ * <p>The buffer must not change while the archive is being read. Once the entries have been
+ * parsed, this class is thread-safe.
+ *
+ * @see MappedJarReader
+ */
+public class MappedZipFile {
+  private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+
+  private static final int LOCAL_FILE_HEADER_SIZE = 30;
+  private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE = 20;
+  private static final int MAX_COMMENT_SIZE = 0xffff;
+
+  private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+  private static final long ZIP64_MAGIC_VALUE = 0xffffffffL;
+
+  private static final int FLAG_ENCRYPTED = 0x0001;
+
+  private final ByteBuffer buffer;
+  private final List<Entry> entries;
+
+  /**
+   * Creates a new MappedZipFile for the archive in the given buffer.
+   *
+   * @param buffer the buffer with the complete archive, from its position up to its limit.
+   * @throws IOException if the buffer doesn't contain a valid zip archive.
+   */
+  public MappedZipFile(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    this.entries = Collections.unmodifiableList(readCentralDirectory());
+  }
+
+  /**
+   * Maps the given file into memory and returns a MappedZipFile for it. The mapping is released
+   * when the returned instance and all buffers retrieved from it have been garbage collected.
+   *
+   * @param file the zip file.
+   * @throws IOException if the file can't be mapped or if it isn't a valid zip archive.
+   */
+  public static MappedZipFile map(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException(
+            "Can't map zip file [" + file + "] of " + size + " bytes, it is larger than 2 GB");
+      }
+
+      return new MappedZipFile(channel.map(FileChannel.MapMode.READ_ONLY, 0L, size));
+    }
+  }
+
+  /** Returns the entries of this archive, in the order of its central directory. */
+  public List<Entry> entries() {
+    return entries;
+  }
+
+  /**
+   * Returns the raw (possibly compressed) data of the given entry, as a read-only slice of the
+   * underlying buffer.
+   */
+  public ByteBuffer getRawData(Entry entry) throws IOException {
+    if ((entry.flags & FLAG_ENCRYPTED) != 0) {
+      throw new ZipException("Encrypted zip entry [" + entry.name + "] is not supported");
+    }
+
+    long headerOffset = entry.localHeaderOffset;
+    if (headerOffset < 0 || headerOffset + LOCAL_FILE_HEADER_SIZE > buffer.limit()) {
+      throw new ZipException("Invalid local header offset for zip entry [" + entry.name + "]");
+    }
+
+    int header = (int) headerOffset;
+    if (buffer.getInt(header) != LOCAL_FILE_HEADER_SIGNATURE) {
+      throw new ZipException("Invalid local header signature for zip entry [" + entry.name + "]");
+    }
+
+    // The name and extra field lengths of the local header may differ
+    // from the ones in the central directory.
+    long dataOffset =
+        headerOffset
+            + LOCAL_FILE_HEADER_SIZE
+            + (buffer.getShort(header + 26) & 0xffff)
+            + (buffer.getShort(header + 28) & 0xffff);
+
+    return slice(dataOffset, entry.compressedSize, entry.name);
+  }
+
+  /**
+   * Returns the uncompressed data of the given entry. For stored entries, this is a zero-copy,
+   * read-only slice of the underlying buffer. For deflated entries, this is a new heap buffer.
+   */
+  public ByteBuffer getData(Entry entry) throws IOException {
+    ByteBuffer rawData = getRawData(entry);
+
+    switch (entry.method) {
+      case ZipEntry.STORED:
+        return rawData;
+
+      case ZipEntry.DEFLATED:
+        if (entry.size > Integer.MAX_VALUE) {
+          throw new ZipException("Zip entry [" + entry.name + "] is too large to inflate");
+        }
+
+        byte[] data = new byte[(int) entry.size];
+        try (InputStream inputStream = new ByteBufferInflaterInputStream(rawData, entry.size)) {
+          int offset = 0;
+          while (offset < data.length) {
+            int count = inputStream.read(data, offset, data.length - offset);
+            if (count < 0) {
+              throw new EOFException("Unexpected end of zip entry [" + entry.name + "]");
+            }
+            offset += count;
+          }
+        }
+        return ByteBuffer.wrap(data);
+
+      default:
+        throw unsupportedCompressionMethod(entry);
+    }
+  }
+
+  /** Returns a new input stream for reading the uncompressed data of the given entry. */
+  public InputStream getInputStream(Entry entry) throws IOException {
+    ByteBuffer rawData = getRawData(entry);
+
+    switch (entry.method) {
+      case ZipEntry.STORED:
+        return new ByteBufferInputStream(rawData);
+
+      case ZipEntry.DEFLATED:
+        return new ByteBufferInflaterInputStream(rawData, entry.size);
+
+      default:
+        throw unsupportedCompressionMethod(entry);
+    }
+  }
+
+  // Small utility methods.
+
+  /** Parses the central directory of the archive. */
+  private List<Entry> readCentralDirectory() throws IOException {
+    int endOffset = findEndOfCentralDirectory();
+
+    long entryCount = buffer.getShort(endOffset + 10) & 0xffff;
+    long directorySize = buffer.getInt(endOffset + 12) & 0xffffffffL;
+    long directoryOffset = buffer.getInt(endOffset + 16) & 0xffffffffL;
+
+    // The central directory ends right before the end record.
+    long directoryEnd = endOffset;
+
+    // Is it a zip64 archive?
+    int locatorOffset = endOffset - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE;
+    if (locatorOffset >= 0
+        && buffer.getInt(locatorOffset) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE) {
+      // The zip64 end record directly precedes its locator.
+      int zip64EndOffset = findZip64EndOfCentralDirectory(locatorOffset);
+
+      entryCount = buffer.getLong(zip64EndOffset + 32);
+      directorySize = buffer.getLong(zip64EndOffset + 40);
+      directoryOffset = buffer.getLong(zip64EndOffset + 48);
+      directoryEnd = zip64EndOffset;
+    }
+
+    // Any data preceding the archive shifts all offsets.
+    long archiveOffset = directoryEnd - directorySize - directoryOffset;
+    if (archiveOffset < 0 || directorySize > directoryEnd) {
+      throw new ZipException("Invalid central directory");
+    }
+
+    List<Entry> entries = new ArrayList<>((int) Math.min(entryCount, 0x10000));
+
+    int offset = (int) (directoryEnd - directorySize);
+    while (offset + CENTRAL_DIRECTORY_HEADER_SIZE <= directoryEnd
+        && buffer.getInt(offset) == CENTRAL_DIRECTORY_SIGNATURE) {
+      int flags = buffer.getShort(offset + 8) & 0xffff;
+      int method = buffer.getShort(offset + 10) & 0xffff;
+      int crc = buffer.getInt(offset + 16);
+      long compressedSize = buffer.getInt(offset + 20) & 0xffffffffL;
+      long size = buffer.getInt(offset + 24) & 0xffffffffL;
+      int nameLength = buffer.getShort(offset + 28) & 0xffff;
+      int extraLength = buffer.getShort(offset + 30) & 0xffff;
+      int commentLength = buffer.getShort(offset + 32) & 0xffff;
+      long localHeaderOffset = buffer.getInt(offset + 42) & 0xffffffffL;
+
+      int nameOffset = offset + CENTRAL_DIRECTORY_HEADER_SIZE;
+      int extraOffset = nameOffset + nameLength;
+      int nextOffset = extraOffset + extraLength + commentLength;
+      if (nextOffset > directoryEnd) {
+        throw new ZipException("Invalid central directory entry");
+      }
+
+      String name = decodeName(nameOffset, nameLength);
+
+      // Read the actual values from the zip64 extra field, if necessary.
+      if (size == ZIP64_MAGIC_VALUE
+          || compressedSize == ZIP64_MAGIC_VALUE
+          || localHeaderOffset == ZIP64_MAGIC_VALUE) {
+        int fieldOffset = findExtraField(extraOffset, extraLength, ZIP64_EXTRA_FIELD_ID);
+        if (fieldOffset < 0) {
+          throw new ZipException("Missing zip64 extra field for zip entry [" + name + "]");
+        }
+
+        int valueOffset = fieldOffset + 4;
+        if (size == ZIP64_MAGIC_VALUE) {
+          size = buffer.getLong(valueOffset);
+          valueOffset += 8;
+        }
+        if (compressedSize == ZIP64_MAGIC_VALUE) {
+          compressedSize = buffer.getLong(valueOffset);
+          valueOffset += 8;
+        }
+        if (localHeaderOffset == ZIP64_MAGIC_VALUE) {
+          localHeaderOffset = buffer.getLong(valueOffset);
+        }
+      }
+
+      entries.add(
+          new Entry(
+              name,
+              flags,
+              method,
+              crc,
+              compressedSize,
+              size,
+              archiveOffset + localHeaderOffset));
+
+      offset = nextOffset;
+    }
+
+    if (offset != directoryEnd) {
+      throw new ZipException("Invalid central directory entry signature");
+    }
+
+    return entries;
+  }
+
+  /** Returns the offset of the end of central directory record. */
+  private int findEndOfCentralDirectory() throws IOException {
+    int limit = buffer.limit();
+    int lowestOffset = Math.max(0, limit - END_OF_CENTRAL_DIRECTORY_SIZE - MAX_COMMENT_SIZE);
+
+    // Scan backward, skipping any archive comment.
+    for (int offset = limit - END_OF_CENTRAL_DIRECTORY_SIZE; offset >= lowestOffset; offset--) {
+      if (buffer.getInt(offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE
+          && offset + END_OF_CENTRAL_DIRECTORY_SIZE + (buffer.getShort(offset + 20) & 0xffff)
+              == limit) {
+        return offset;
+      }
+    }
+
+    throw new ZipException("Can't find the end of the central directory");
+  }
+
+  /** Returns the offset of the zip64 end of central directory record. */
+  private int findZip64EndOfCentralDirectory(int locatorOffset) throws IOException {
+    // The recorded offset doesn't account for any preceding data,
+    // so we check the record right before the locator first.
+    long recordedOffset = buffer.getLong(locatorOffset + 8);
+    for (int offset = locatorOffset - 56; offset >= 0; offset--) {
+      if (buffer.getInt(offset) == ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE
+          && offset + 12 + buffer.getLong(offset + 4) == locatorOffset) {
+        return offset;
+      }
+
+      if (offset < recordedOffset) {
+        break;
+      }
+    }
+
+    throw new ZipException("Can't find the zip64 end of the central directory");
+  }
+
+  /** Returns the offset of the extra field with the given id, or -1. */
+  private int findExtraField(int extraOffset, int extraLength, int id) {
+    int offset = extraOffset;
+    int end = extraOffset + extraLength;
+    while (offset + 4 <= end) {
+      int fieldId = buffer.getShort(offset) & 0xffff;
+      int fieldLength = buffer.getShort(offset + 2) & 0xffff;
+      if (fieldId == id) {
+        return offset;
+      }
+      offset += 4 + fieldLength;
+    }
+
+    return -1;
+  }
+
+  private String decodeName(int offset, int length) {
+    byte[] bytes = new byte[length];
+    ByteBuffer nameBuffer = buffer.duplicate();
+    nameBuffer.position(offset);
+    nameBuffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private ByteBuffer slice(long offset, long length, String name) throws IOException {
+    if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+      throw new ZipException("Zip entry [" + name + "] exceeds the archive");
+    }
+
+    ByteBuffer slice = buffer.duplicate();
+    slice.position((int) offset);
+    slice.limit((int) (offset + length));
+    return slice.slice().asReadOnlyBuffer();
+  }
+
+  private static ZipException unsupportedCompressionMethod(Entry entry) {
+    return new ZipException(
+        "Unsupported compression method " + entry.method + " for zip entry [" + entry.name + "]");
+  }
+
+  /** An entry in the central directory of a {@link MappedZipFile}. */
+  public static class Entry {
+    private final String name;
+    private final int flags;
+    private final int method;
+    private final int crc;
+    private final long compressedSize;
+    private final long size;
+    private final long localHeaderOffset;
+
+    private Entry(
+        String name,
+        int flags,
+        int method,
+        int crc,
+        long compressedSize,
+        long size,
+        long localHeaderOffset) {
+      this.name = name;
+      this.flags = flags;
+      this.method = method;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    /** Returns the name of the entry, as stored in the archive. */
+    public String getName() {
+      return name;
+    }
+
+    /** Returns whether the entry represents a directory. */
+    public boolean isDirectory() {
+      return name.endsWith("/");
+    }
+
+    /** Returns the compression method, {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}. */
+    public int getMethod() {
+      return method;
+    }
+
+    /** Returns the CRC-32 of the uncompressed data. */
+    public long getCrc() {
+      return crc & 0xffffffffL;
+    }
+
+    /** Returns the size of the compressed data. */
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    /** Returns the size of the uncompressed data. */
+    public long getSize() {
+      return size;
+    }
+
+    // Implementations for Object.
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /** This InputStream reads the remaining bytes of a buffer. */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    // Implementations for InputStream.
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+
+      int count = Math.min(length, buffer.remaining());
+      if (count == 0) {
+        return -1;
+      }
+
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public long skip(long count) {
+      int skipped = (int) Math.max(0L, Math.min(count, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
+  /**
+   * This InputStream inflates the raw deflated data of a buffer, without copying the input data
+   * to an intermediate array if the buffer is backed by one.
+   */
+  private static class ByteBufferInflaterInputStream extends InputStream {
+    private final ByteBuffer input;
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] inputBuffer;
+    private final byte[] singleByte = new byte[1];
+    private long remaining;
+    private boolean dummyByteSupplied;
+
+    private ByteBufferInflaterInputStream(ByteBuffer input, long size) {
+      this.input = input;
+      this.inputBuffer = input.hasArray() ? null : new byte[Math.min(input.remaining(), 64 * 1024)];
+      this.remaining = size;
+
+      if (input.hasArray()) {
+        inflater.setInput(
+            input.array(), input.arrayOffset() + input.position(), input.remaining());
+        input.position(input.limit());
+      }
+    }
+
+    // Implementations for InputStream.
+
+    @Override
+    public int read() throws IOException {
+      return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+
+      try {
+        while (true) {
+          int count = inflater.inflate(bytes, offset, length);
+          if (count > 0) {
+            remaining -= count;
+            return count;
+          }
+
+          if (inflater.finished() || inflater.needsDictionary()) {
+            return -1;
+          }
+
+          if (inflater.needsInput()) {
+            if (!input.hasRemaining()) {
+              // Raw deflate streams may need one extra dummy byte.
+              if (dummyByteSupplied) {
+                throw new EOFException("Unexpected end of deflated zip entry");
+              }
+              dummyByteSupplied = true;
+              inflater.setInput(new byte[1], 0, 1);
+              continue;
+            }
+
+            int inputCount = Math.min(inputBuffer.length, input.remaining());
+            input.get(inputBuffer, 0, inputCount);
+            inflater.setInput(inputBuffer, 0, inputCount);
+          }
+        }
+      } catch (DataFormatException e) {
+        throw new ZipException("Invalid deflated zip entry (" + e.getMessage() + ")");
+      }
+    }
+
+    @Override
+    public int available() {
+      return inflater.finished() ? 0 : (int) Math.max(0L, Math.min(remaining, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public void close() {
+      inflater.end();
+    }
+  }
+}
@@ -0,0 +1,400 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import proguard.classfile.*;
+import proguard.classfile.constant.Utf8Interner;
+import proguard.classfile.io.*;
+import proguard.classfile.util.*;
+import proguard.classfile.util.kotlin.KotlinMetadataInitializer;
+import proguard.classfile.visitor.*;
+
+/**
+ * This {@link DataEntryReader} applies a given {@link ClassVisitor} to the class definitions that
+ * it reads, like {@link ClassReader}, but it parses the classes in parallel.
+ *
+ * <p>The data entries are still read on the calling thread, so the surrounding readers (like
+ * {@link JarReader}) don't have to be thread-safe. Their contents are then parsed by a pool of
+ * worker threads. A bounded number of classes can be pending; the calling thread blocks once that
+ * limit is reached. The parsed classes are passed to the class visitor on the calling thread, in
+ * the same order as the data entries, so the results are deterministic and the class visitor
+ * doesn't have to be thread-safe either.
+ *
+ * <p>The class visitor may only see the last classes after {@link #finish()} has been called,
+ * which must therefore be called after all data entries have been read. {@link
+ * proguard.io.util.IOUtil#read(ClassPath, String, boolean, boolean, boolean, boolean, boolean,
+ * boolean, boolean, java.util.function.BiFunction) IOUtil.read} does so after each class path
+ * entry. Idle worker threads stop by themselves, so a reader that isn't finished after a failure
+ * doesn't keep them alive.
+ */
+public class ParallelClassReader implements DataEntryReader {
+  private static final String MODULE_INFO_CLASS = "module-info.class";
+  private static final long WORKER_KEEP_ALIVE_SECONDS = 1L;
+
+  private final boolean isLibrary;
+  private final boolean skipNonPublicLibraryClasses;
+  private final boolean skipNonPublicLibraryClassMembers;
+  private final boolean ignoreStackMapAttributes;
+  private final boolean includeKotlinMetadata;
+  private final Utf8Interner utf8Interner;
+  private final WarningPrinter warningPrinter;
+  private final ClassVisitor classVisitor;
+  private final int threadCount;
+  private final int maximumPendingClassCount;
+
+  private final Deque<Future<ParsedClass>> pendingClasses = new ArrayDeque<>();
+  private ExecutorService executor;
+
+  /**
+   * Creates a new ParallelClassReader for reading the specified Clazz objects, with a worker
+   * thread for each available processor.
+   */
+  public ParallelClassReader(
+      boolean isLibrary,
+      boolean skipNonPublicLibraryClasses,
+      boolean skipNonPublicLibraryClassMembers,
+      boolean ignoreStackMapAttributes,
+      boolean includeKotlinMetadata,
+      WarningPrinter warningPrinter,
+      ClassVisitor classVisitor) {
+    this(
+        isLibrary,
+        skipNonPublicLibraryClasses,
+        skipNonPublicLibraryClassMembers,
+        ignoreStackMapAttributes,
+        includeKotlinMetadata,
+        warningPrinter,
+        classVisitor,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a new ParallelClassReader for reading the specified Clazz objects.
+   *
+   * @param threadCount the number of worker threads that parse the classes.
+   */
+  public ParallelClassReader(
+      boolean isLibrary,
+      boolean skipNonPublicLibraryClasses,
+      boolean skipNonPublicLibraryClassMembers,
+      boolean ignoreStackMapAttributes,
+      boolean includeKotlinMetadata,
+      WarningPrinter warningPrinter,
+      ClassVisitor classVisitor,
+      int threadCount) {
+    this(
+        isLibrary,
+        skipNonPublicLibraryClasses,
+        skipNonPublicLibraryClassMembers,
+        ignoreStackMapAttributes,
+        includeKotlinMetadata,
+        warningPrinter,
+        classVisitor,
+        threadCount,
+        threadCount * 64);
+  }
+
+  /**
+   * Creates a new ParallelClassReader for reading the specified Clazz objects.
+   *
+   * @param threadCount the number of worker threads that parse the classes.
+   * @param maximumPendingClassCount the maximum number of classes that have been read, but that
+   *     haven't been passed to the class visitor yet.
+   */
+  public ParallelClassReader(
+      boolean isLibrary,
+      boolean skipNonPublicLibraryClasses,
+      boolean skipNonPublicLibraryClassMembers,
+      boolean ignoreStackMapAttributes,
+      boolean includeKotlinMetadata,
+      WarningPrinter warningPrinter,
+      ClassVisitor classVisitor,
+      int threadCount,
+      int maximumPendingClassCount) {
+    this(
+        isLibrary,
+        skipNonPublicLibraryClasses,
+        skipNonPublicLibraryClassMembers,
+        ignoreStackMapAttributes,
+        includeKotlinMetadata,
+        null,
+        warningPrinter,
+        classVisitor,
+        threadCount,
+        maximumPendingClassCount);
+  }
+
+  /**
+   * Creates a new ParallelClassReader for reading the specified Clazz objects.
+   *
+   * @param utf8Interner an optional interner that shares the UTF-8 data of all classes that are
+   *     read. Program classes then only decode their UTF-8 constants when they are first needed.
+   * @param threadCount the number of worker threads that parse the classes.
+   * @param maximumPendingClassCount the maximum number of classes that have been read, but that
+   *     haven't been passed to the class visitor yet.
+   */
+  public ParallelClassReader(
+      boolean isLibrary,
+      boolean skipNonPublicLibraryClasses,
+      boolean skipNonPublicLibraryClassMembers,
+      boolean ignoreStackMapAttributes,
+      boolean includeKotlinMetadata,
+      Utf8Interner utf8Interner,
+      WarningPrinter warningPrinter,
+      ClassVisitor classVisitor,
+      int threadCount,
+      int maximumPendingClassCount) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("threadCount needs to be at least 1.");
+    }
+    if (maximumPendingClassCount < 1) {
+      throw new IllegalArgumentException("maximumPendingClassCount needs to be at least 1.");
+    }
+
+    this.isLibrary = isLibrary;
+    this.skipNonPublicLibraryClasses = skipNonPublicLibraryClasses;
+    this.skipNonPublicLibraryClassMembers = skipNonPublicLibraryClassMembers;
+    this.ignoreStackMapAttributes = ignoreStackMapAttributes;
+    this.includeKotlinMetadata = includeKotlinMetadata;
+    this.utf8Interner = utf8Interner;
+    this.warningPrinter = warningPrinter;
+    this.classVisitor = classVisitor;
+    this.threadCount = threadCount;
+    this.maximumPendingClassCount = maximumPendingClassCount;
+  }
+
+  /**
+   * Passes all pending classes to the class visitor, waiting for them to be parsed if necessary,
+   * and stops the worker threads. The reader can be used again afterwards.
+   */
+  public void finish() throws IOException {
+    try {
+      while (!pendingClasses.isEmpty()) {
+        visitNextClass();
+      }
+    } finally {
+      // Drop any classes that are still pending after a failure.
+      cancel();
+    }
+  }
+
+  /**
+   * Stops the worker threads and drops all pending classes without passing them to the class
+   * visitor, for instance after reading has failed. The reader can be used again afterwards.
+   */
+  public void cancel() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+
+    pendingClasses.clear();
+  }
+
+  // Implementations for DataEntryReader.
+
+  @Override
+  public void read(DataEntry dataEntry) throws IOException {
+    String dataEntryName = dataEntry.getName();
+
+    // Read the data on the calling thread.
+    byte[] data;
+    try {
+      data = readFully(dataEntry.getInputStream());
+
+      dataEntry.closeInputStream();
+    } catch (Exception ex) {
+      throw (IOException)
+          new IOException("Can't process class [" + dataEntryName + "] (" + ex.getMessage() + ")")
+              .initCause(ex);
+    }
+
+    // Parse the data on a worker thread.
+    if (executor == null) {
+      ThreadPoolExecutor threadPoolExecutor =
+          new ThreadPoolExecutor(
+              threadCount,
+              threadCount,
+              WORKER_KEEP_ALIVE_SECONDS,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(),
+              new MyThreadFactory());
+      threadPoolExecutor.allowCoreThreadTimeOut(true);
+      executor = threadPoolExecutor;
+    }
+
+    pendingClasses.addLast(executor.submit(() -> parse(dataEntryName, data)));
+
+    // Pass on the classes that are already done, and wait if there
+    // are too many pending classes.
+    while (!pendingClasses.isEmpty()
+        && (pendingClasses.peekFirst().isDone()
+            || pendingClasses.size() > maximumPendingClassCount)) {
+      visitNextClass();
+    }
+  }
+
+  // Small utility methods.
+
+  /** Parses the given class data. This method is called on a worker thread. */
+  private ParsedClass parse(String dataEntryName, byte[] data) {
+    ParsedClass parsedClass = new ParsedClass(dataEntryName);
+
+    try {
+      DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(data));
+
+      // Collect any Kotlin metadata warnings, to print them on the calling thread.
+      KotlinMetadataInitializer kmInitializer =
+          includeKotlinMetadata
+              ? new KotlinMetadataInitializer(
+                  (clazz, message) -> parsedClass.addWarning(clazz.getName(), message))
+              : null;
+
+      // Create a Clazz representation.
+      Clazz clazz;
+      if (isLibrary) {
+        clazz = new LibraryClass();
+        ClassVisitor libraryClassReader =
+            new LibraryClassReader(
+                dataInputStream,
+                skipNonPublicLibraryClasses,
+                skipNonPublicLibraryClassMembers,
+                kmInitializer != null
+                    ? (k, mv, d1, d2, xi, xs, pn) ->
+                        kmInitializer.initialize(clazz, k, mv, d1, d2, xi, xs, pn)
+                    : null,
+                utf8Interner);
+
+        clazz.accept(libraryClassReader);
+      } else {
+        clazz = new ProgramClass();
+        ClassVisitor programClassReader =
+            new ProgramClassReader(dataInputStream, ignoreStackMapAttributes, utf8Interner);
+
+        if (kmInitializer != null) {
+          programClassReader = new MultiClassVisitor(programClassReader, kmInitializer);
+        }
+
+        clazz.accept(programClassReader);
+      }
+
+      parsedClass.clazz = clazz;
+    } catch (Exception ex) {
+      parsedClass.exception = ex;
+    }
+
+    return parsedClass;
+  }
+
+  /** Waits for the first pending class and applies the class visitor to it. */
+  private void visitNextClass() throws IOException {
+    Future<ParsedClass> future = pendingClasses.removeFirst();
+
+    ParsedClass parsedClass;
+    try {
+      parsedClass = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while parsing classes");
+    } catch (ExecutionException e) {
+      throw new IOException("Can't parse class (" + e.getCause().getMessage() + ")", e.getCause());
+    }
+
+    String dataEntryName = parsedClass.dataEntryName;
+
+    try {
+      if (parsedClass.exception != null) {
+        throw parsedClass.exception;
+      }
+
+      if (warningPrinter != null) {
+        for (String[] warning : parsedClass.warnings) {
+          warningPrinter.print(warning[0], warning[1]);
+        }
+      }
+
+      // Apply the visitor, if we have a real class.
+      Clazz clazz = parsedClass.clazz;
+      String className = clazz.getName();
+      if (className != null) {
+        if (!dataEntryName.equals(MODULE_INFO_CLASS)
+            && !dataEntryName
+                .replace(File.pathSeparatorChar, TypeConstants.PACKAGE_SEPARATOR)
+                .equals(className + ClassConstants.CLASS_FILE_EXTENSION)
+            && warningPrinter != null) {
+          warningPrinter.print(
+              className,
+              "Warning: class ["
+                  + dataEntryName
+                  + "] unexpectedly contains class ["
+                  + ClassUtil.externalClassName(className)
+                  + "]");
+        }
+
+        clazz.accept(classVisitor);
+      }
+    } catch (Exception ex) {
+      throw (IOException)
+          new IOException("Can't process class [" + dataEntryName + "] (" + ex.getMessage() + ")")
+              .initCause(ex);
+    }
+  }
+
+  private static byte[] readFully(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream(8 * 1024);
+    byte[] buffer = new byte[8 * 1024];
+    while (true) {
+      int count = inputStream.read(buffer);
+      if (count < 0) {
+        break;
+      }
+      outputStream.write(buffer, 0, count);
+    }
+    return outputStream.toByteArray();
+  }
+
+  /** The result of parsing a class on a worker thread. */
+  private static class ParsedClass {
+    private final String dataEntryName;
+    private final List<String[]> warnings = new ArrayList<>(0);
+    private Clazz clazz;
+    private Exception exception;
+
+    private ParsedClass(String dataEntryName) {
+      this.dataEntryName = dataEntryName;
+    }
+
+    private void addWarning(String className, String message) {
+      warnings.add(new String[] {className, message});
+    }
+  }
+
+  /** This ThreadFactory creates daemon worker threads. */
+  private static class MyThreadFactory implements ThreadFactory {
+    private int threadCounter = 0;
+
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "Parallel Class Reader " + ++threadCounter);
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
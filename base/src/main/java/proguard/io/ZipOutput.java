@@ -19,6 +19,7 @@ package proguard.io;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 import proguard.util.*;
 
@@ -34,6 +35,10 @@ import proguard.util.*;
  * <p>The code automatically computes the CRC and lengths of the data, for compressed and
  * uncompressed data.
  *
+ * <p>Optionally, compressed entries can be deflated in parallel, by a given number of worker
+ * threads. Their data are then still written in the order in which their output streams are
+ * closed, so the resulting archive is identical to the one written without worker threads.
+ *
  * @author Eric Lafortune
  */
 public class ZipOutput {
@@ -55,6 +60,8 @@ public class ZipOutput {
   private static final int ZIP64_EXTENDED_LARGE_EXTRA_INFORMATION_FIELD_SIZE = 24;
   private static final long ZIP64_FIELD_TOO_SMALL_32BIT = 0xFFFFFFFF;
 
+  private static final int MAXIMUM_PENDING_ENTRIES_PER_THREAD = 16;
+
   private static final boolean DEBUG = false;
 
   protected LargeDataOutputStream outputStream;
@@ -62,10 +69,16 @@ public class ZipOutput {
 
   private final String comment;
   private final boolean useZip64;
+  private final int compressionLevel;
+  private final int compressionThreadCount;
 
   private List<ZipEntry> zipEntries = new ArrayList<>();
   private Set<String> zipEntryNames = new HashSet<>();
 
+  // Entries whose data are being compressed or are waiting to be written, in order.
+  private final Deque<PendingZipEntry> pendingZipEntries = new ArrayDeque<>();
+  private ExecutorService executorService;
+
   // Regular constructors.
 
   /**
@@ -122,6 +135,8 @@ public class ZipOutput {
     this.uncompressedAlignment = uncompressedAlignment;
     this.useZip64 = useZip64;
     this.comment = comment;
+    this.compressionLevel = Deflater.BEST_COMPRESSION;
+    this.compressionThreadCount = 0;
   }
 
   // These constructors write out a header immediately.
@@ -156,10 +171,55 @@ public class ZipOutput {
       boolean useZip64,
       String comment)
       throws IOException {
+    this(
+        outputStream,
+        header,
+        uncompressedAlignment,
+        useZip64,
+        comment,
+        Deflater.BEST_COMPRESSION,
+        0);
+  }
+
+  /**
+   * Creates a new ZipOutput that aligns uncompressed entries, contains a comment, and compresses
+   * entries with the given compression level, optionally in parallel.
+   *
+   * @param outputStream the output stream to which the zip data will be written.
+   * @param header an optional header for the zip file.
+   * @param uncompressedAlignment the requested alignment of uncompressed data.
+   * @param useZip64 Whether to write out the archive in zip64 format.
+   * @param comment optional comment for the entire zip file.
+   * @param compressionLevel the compression level of compressed entries, from {@link
+   *     Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION}, or {@link
+   *     Deflater#DEFAULT_COMPRESSION}.
+   * @param compressionThreadCount the number of worker threads that compress entries, or 0 to
+   *     compress entries on the thread that closes their output streams.
+   */
+  public ZipOutput(
+      OutputStream outputStream,
+      byte[] header,
+      int uncompressedAlignment,
+      boolean useZip64,
+      String comment,
+      int compressionLevel,
+      int compressionThreadCount)
+      throws IOException {
+    if ((compressionLevel < Deflater.NO_COMPRESSION
+            || compressionLevel > Deflater.BEST_COMPRESSION)
+        && compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level [" + compressionLevel + "]");
+    }
+    if (compressionThreadCount < 0) {
+      throw new IllegalArgumentException("compressionThreadCount can't be negative.");
+    }
+
     this.outputStream = new LargeDataOutputStream(outputStream);
     this.uncompressedAlignment = uncompressedAlignment;
     this.useZip64 = useZip64;
     this.comment = comment;
+    this.compressionLevel = compressionLevel;
+    this.compressionThreadCount = compressionThreadCount;
     if (header != null) {
       outputStream.write(header);
     }
@@ -236,9 +296,13 @@ public class ZipOutput {
    * stream.
    */
   public void close() throws IOException {
-    long centralDirectoryOffset = writeStartOfCentralDirectory();
+    try {
+      long centralDirectoryOffset = writeStartOfCentralDirectory();
 
-    close(centralDirectoryOffset);
+      close(centralDirectoryOffset);
+    } finally {
+      shutDownExecutorService();
+    }
   }
 
   /**
@@ -246,20 +310,27 @@ public class ZipOutput {
    * stream.
    */
   public void close(long centralDirectoryOffset) throws IOException {
-    // Write the central directory.
-    long centralDirectorySize = writeEntriesOfCentralDirectory();
-
-    if (useZip64) {
-      long zip64EndOfCentralDirectoryOffset = outputStream.getLongSize();
-      ;
-      writeZip64EndOfCentralDirectory(centralDirectoryOffset, centralDirectorySize);
-      writeZip64EndOfCentralDirectoryLocator(zip64EndOfCentralDirectoryOffset);
-    }
+    try {
+      writePendingEntries(0);
 
-    writeEndOfCentralDirectory(centralDirectoryOffset, centralDirectorySize);
+      // Write the central directory.
+      long centralDirectorySize = writeEntriesOfCentralDirectory();
 
-    // Close the underlying output stream.
-    outputStream.close();
+      if (useZip64) {
+        long zip64EndOfCentralDirectoryOffset = outputStream.getLongSize();
+        ;
+        writeZip64EndOfCentralDirectory(centralDirectoryOffset, centralDirectorySize);
+        writeZip64EndOfCentralDirectoryLocator(zip64EndOfCentralDirectoryOffset);
+      }
+
+      writeEndOfCentralDirectory(centralDirectoryOffset, centralDirectorySize);
+
+      // Close the underlying output stream.
+      outputStream.close();
+    } finally {
+      // Stop the compression threads, even if the archive couldn't be completed.
+      shutDownExecutorService();
+    }
 
     // Make sure the archive can't be used any further.
     outputStream = null;
@@ -267,21 +338,71 @@ public class ZipOutput {
     zipEntryNames = null;
   }
 
-  /** Returns the current size of the data written to the output stream. */
-  protected long size() {
+  /**
+   * Returns the current size of the data written to the output stream, after writing out any
+   * entries that are still being compressed.
+   */
+  protected long size() throws IOException {
+    writePendingEntries(0);
+
     return outputStream.getLongSize();
   }
 
+  /**
+   * Writes out the entries that are waiting to be written, in order, until at most the given
+   * number of entries is still pending. Entries at the head of the queue whose compression has
+   * already finished are always written.
+   */
+  private void writePendingEntries(int maximumPendingEntryCount) throws IOException {
+    while (!pendingZipEntries.isEmpty()) {
+      PendingZipEntry pendingZipEntry = pendingZipEntries.peekFirst();
+      if (pendingZipEntries.size() <= maximumPendingEntryCount
+          && !pendingZipEntry.compressedData.isDone()) {
+        break;
+      }
+
+      pendingZipEntries.removeFirst();
+      pendingZipEntry.write();
+    }
+  }
+
+  /** Returns the executor service that compresses entries, creating it if necessary. */
+  private ExecutorService executorService() {
+    if (executorService == null) {
+      executorService =
+          Executors.newFixedThreadPool(
+              compressionThreadCount,
+              runnable -> {
+                Thread thread = new Thread(runnable, "ZipOutput compression");
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+
+    return executorService;
+  }
+
+  /** Stops the executor service that compresses entries, if it has been created. */
+  private void shutDownExecutorService() {
+    if (executorService != null) {
+      executorService.shutdown();
+      executorService = null;
+    }
+  }
+
   /**
    * Starts the central directory.
    *
    * @return the current position in the output stream.
    */
-  protected long writeStartOfCentralDirectory() {
+  protected long writeStartOfCentralDirectory() throws IOException {
     if (DEBUG) {
       System.out.println("ZipOutput.writeStartOfCentralDirectory");
     }
 
+    // Make sure all entries have been written before the directory.
+    writePendingEntries(0);
+
     // The central directory as such doesn't have a header.
     return outputStream.getLongSize();
   }
@@ -431,9 +552,20 @@ public class ZipOutput {
     }
 
     public OutputStream createOutputStream() throws IOException {
-      return compressed
-          ? new CompressedZipEntryOutputStream()
-          : new UncompressedZipEntryOutputStream();
+      return !compressed
+          ? new UncompressedZipEntryOutputStream()
+          : compressionThreadCount > 0
+              ? new ParallelCompressedZipEntryOutputStream()
+              : new CompressedZipEntryOutputStream();
+    }
+
+    /** Writes the local file header and the given data to the main zip output stream. */
+    private void writeData(byte[] data) throws IOException {
+      offset = outputStream.getLongSize();
+      compressedSize = data.length;
+
+      writeLocalFileHeader();
+      outputStream.write(data);
     }
 
     /** Writes the local file header, which precedes the data, to the main zip output stream. */
@@ -621,13 +753,17 @@ public class ZipOutput {
 
         byte[] bytes = super.toByteArray();
 
-        offset = outputStream.getLongSize();
         crc = (int) crc32.getValue();
-        compressedSize = bytes.length;
         uncompressedSize = bytes.length;
 
-        writeLocalFileHeader();
-        outputStream.write(bytes);
+        if (pendingZipEntries.isEmpty()) {
+          writeData(bytes);
+        } else {
+          // Keep the order with respect to the entries that are still
+          // being compressed.
+          pendingZipEntries.addLast(
+              new PendingZipEntry(ZipEntry.this, CompletableFuture.completedFuture(bytes)));
+        }
       }
     }
 
@@ -641,7 +777,7 @@ public class ZipOutput {
       private CompressedZipEntryOutputStream() {
         super(
             new ByteArrayOutputStream(16 * 1024),
-            new Deflater(Deflater.BEST_COMPRESSION, true),
+            new Deflater(compressionLevel, true),
             1024);
       }
 
@@ -679,14 +815,97 @@ public class ZipOutput {
 
         byte[] compressedBytes = byteArrayOutputStream.toByteArray();
 
-        offset = outputStream.getLongSize();
         crc = (int) crc32.getValue();
-        compressedSize = compressedBytes.length;
 
-        writeLocalFileHeader();
-        outputStream.write(compressedBytes);
+        if (pendingZipEntries.isEmpty()) {
+          writeData(compressedBytes);
+        } else {
+          pendingZipEntries.addLast(
+              new PendingZipEntry(
+                  ZipEntry.this, CompletableFuture.completedFuture(compressedBytes)));
+        }
       }
     }
+
+    /**
+     * This OutputStream collects the uncompressed data of its zip entry and hands them to a worker
+     * thread for compression when it is closed. The compressed data are written out to the zip
+     * output stream in order, once all preceding entries have been written.
+     */
+    private class ParallelCompressedZipEntryOutputStream extends ByteArrayOutputStream {
+      private ParallelCompressedZipEntryOutputStream() {
+        super(16 * 1024);
+      }
+
+      // Overridden methods for OutputStream.
+
+      @Override
+      public void close() throws IOException {
+        super.close();
+
+        byte[] bytes = super.buf;
+        int length = super.count;
+
+        uncompressedSize = length;
+
+        Future<byte[]> compressedData =
+            executorService()
+                .submit(
+                    () -> {
+                      CRC32 crc32 = new CRC32();
+                      crc32.update(bytes, 0, length);
+                      crc = (int) crc32.getValue();
+
+                      return compress(bytes, length);
+                    });
+
+        pendingZipEntries.addLast(new PendingZipEntry(ZipEntry.this, compressedData));
+
+        // Write out whatever is ready, and limit the number of buffers
+        // that are kept in memory.
+        writePendingEntries(compressionThreadCount * MAXIMUM_PENDING_ENTRIES_PER_THREAD);
+      }
+    }
+  }
+
+  /**
+   * This class represents a zip entry whose data are still being compressed, or whose data are
+   * waiting for the entries before it to be written.
+   */
+  private static class PendingZipEntry {
+    private final ZipEntry zipEntry;
+    private final Future<byte[]> compressedData;
+
+    private PendingZipEntry(ZipEntry zipEntry, Future<byte[]> compressedData) {
+      this.zipEntry = zipEntry;
+      this.compressedData = compressedData;
+    }
+
+    /**
+     * Writes the entry to the zip output stream, waiting for its compression to finish, if
+     * necessary.
+     */
+    private void write() throws IOException {
+      byte[] data;
+      try {
+        data = compressedData.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while compressing zip entry [" + zipEntry.name + "]");
+      } catch (ExecutionException e) {
+        throw (IOException)
+            new IOException(
+                    "Can't compress zip entry ["
+                        + zipEntry.name
+                        + "] ("
+                        + e.getCause().getMessage()
+                        + ")")
+                .initCause(e.getCause());
+      }
+
+      zipEntry.writeData(data);
+    }
   }
 
   /**
@@ -726,6 +945,28 @@ public class ZipOutput {
 
   // Small utility methods.
 
+  /** Compresses the given data with the compression level of this zip output. */
+  private byte[] compress(byte[] data, int length) {
+    Deflater deflater = new Deflater(compressionLevel, true);
+    try {
+      deflater.setInput(data, 0, length);
+      deflater.finish();
+
+      ByteArrayOutputStream byteArrayOutputStream =
+          new ByteArrayOutputStream(Math.max(64, length / 2));
+      byte[] buffer = new byte[8 * 1024];
+      while (!deflater.finished()) {
+        int count = deflater.deflate(buffer);
+        byteArrayOutputStream.write(buffer, 0, count);
+      }
+
+      return byteArrayOutputStream.toByteArray();
+    } finally {
+      // Make sure the memory is freed. [JDK-4797189]
+      deflater.end();
+    }
+  }
+
   /** Writes out a little-endian short value to the zip output stream. */
   protected void writeShort(int value) throws IOException {
     outputStream.write(value);
@@ -18,6 +18,7 @@
 package proguard.io;
 
 import java.io.*;
+import java.util.zip.Deflater;
 import proguard.classfile.TypeConstants;
 import proguard.util.StringMatcher;
 
@@ -34,6 +35,8 @@ public class ZipWriter implements DataEntryWriter {
   private final int extraUncompressedAlignment;
   private final int modificationTime;
   private final byte[] header;
+  private final int compressionLevel;
+  private final int compressionThreadCount;
   private final DataEntryWriter dataEntryWriter;
 
   private DataEntry currentParentEntry;
@@ -104,6 +107,8 @@ public class ZipWriter implements DataEntryWriter {
     this.extraUncompressedAlignment = extraUncompressedAlignment;
     this.modificationTime = modificationTime;
     this.header = null;
+    this.compressionLevel = Deflater.BEST_COMPRESSION;
+    this.compressionThreadCount = 0;
     this.dataEntryWriter = dataEntryWriter;
   }
 
@@ -163,6 +168,8 @@ public class ZipWriter implements DataEntryWriter {
     this.extraUncompressedAlignment = extraUncompressedAlignment;
     this.modificationTime = modificationTime;
     this.header = header;
+    this.compressionLevel = Deflater.BEST_COMPRESSION;
+    this.compressionThreadCount = 0;
     this.dataEntryWriter = dataEntryWriter;
   }
 
@@ -189,6 +196,49 @@ public class ZipWriter implements DataEntryWriter {
       int modificationTime,
       byte[] header,
       DataEntryWriter dataEntryWriter) {
+    this(
+        uncompressedFilter,
+        uncompressedAlignment,
+        useZip64,
+        extraUncompressedAlignmentFilter,
+        extraUncompressedAlignment,
+        modificationTime,
+        header,
+        Deflater.BEST_COMPRESSION,
+        0,
+        dataEntryWriter);
+  }
+
+  /**
+   * Creates a new ZipWriter.
+   *
+   * @param uncompressedFilter an optional filter for files that should not be compressed.
+   * @param uncompressedAlignment the desired alignment for the data of uncompressed entries.
+   * @param useZip64 Whether to write out the archive in zip64 format.
+   * @param extraUncompressedAlignmentFilter an optional filter for files that should not be
+   *     compressed and use a different alignment.
+   * @param extraUncompressedAlignment the desired alignment for the data of entries matching
+   *     extraAlignmentFilter.
+   * @param modificationTime the modification date and time of the zip entries, in DOS format.
+   * @param header an optional header for the zip files.
+   * @param compressionLevel the compression level of compressed entries.
+   * @param compressionThreadCount the number of worker threads that compress entries in parallel,
+   *     or 0 to compress them on the writing thread.
+   * @param dataEntryWriter the data entry writer that can provide output streams for the zip
+   *     archives.
+   * @see ZipOutput#ZipOutput(OutputStream, byte[], int, boolean, String, int, int)
+   */
+  public ZipWriter(
+      StringMatcher uncompressedFilter,
+      int uncompressedAlignment,
+      boolean useZip64,
+      StringMatcher extraUncompressedAlignmentFilter,
+      int extraUncompressedAlignment,
+      int modificationTime,
+      byte[] header,
+      int compressionLevel,
+      int compressionThreadCount,
+      DataEntryWriter dataEntryWriter) {
     this.uncompressedFilter = uncompressedFilter;
     this.uncompressedAlignment = uncompressedAlignment;
     this.useZip64 = useZip64;
@@ -196,6 +246,8 @@ public class ZipWriter implements DataEntryWriter {
     this.extraUncompressedAlignment = extraUncompressedAlignment;
     this.modificationTime = modificationTime;
     this.header = header;
+    this.compressionLevel = compressionLevel;
+    this.compressionThreadCount = compressionThreadCount;
     this.dataEntryWriter = dataEntryWriter;
   }
 
@@ -280,6 +332,10 @@ public class ZipWriter implements DataEntryWriter {
             + extraUncompressedAlignmentFilter
             + ", extraAlignment = "
             + extraUncompressedAlignment
+            + ", compressionLevel = "
+            + compressionLevel
+            + ", compressionThreads = "
+            + compressionThreadCount
             + ")");
     dataEntryWriter.println(pw, prefix + "  ");
   }
@@ -309,7 +365,14 @@ public class ZipWriter implements DataEntryWriter {
       boolean useZip64,
       String comment)
       throws IOException {
-    return new ZipOutput(outputStream, header, uncompressedAlignment, useZip64, comment);
+    return new ZipOutput(
+        outputStream,
+        header,
+        uncompressedAlignment,
+        useZip64,
+        comment,
+        compressionLevel,
+        compressionThreadCount);
   }
 
   private void finishIfNecessary(DataEntry dataEntry) throws IOException {
@@ -42,6 +42,7 @@ import proguard.io.DirectorySource;
 import proguard.io.FixedFileWriter;
 import proguard.io.JarWriter;
 import proguard.io.NameFilteredDataEntryReader;
+import proguard.io.ParallelClassReader;
 import proguard.io.ZipWriter;
 
 /**
@@ -177,6 +178,43 @@ public class IOUtil {
       boolean ignoreStackMapAttributes,
       BiFunction<DataEntryReader, ClassVisitor, DataEntryReader> extraDataEntryReader)
       throws IOException {
+    return read(
+        classPath,
+        classNameFilter,
+        android,
+        isLibrary,
+        initializeKotlinMetadata,
+        skipNonPublicLibraryClasses,
+        skipNonPublicLibraryClassMembers,
+        ignoreStackMapAttributes,
+        false,
+        extraDataEntryReader);
+  }
+
+  /**
+   * Reads the classes from the specified class path and returns them as a class pool.
+   *
+   * @param isLibrary specifies whether classes should be represented as ProgramClass instances (for
+   *     processing) or LibraryClass instances (more compact).
+   * @param parallel specifies whether to parse the classes on multiple threads, with a {@link
+   *     ParallelClassReader}. The classes of each class path entry are then all in the class pool
+   *     before the next entry is read.
+   * @param extraDataEntryReader Optionally provide a function that wraps the reader in another
+   *     reader.
+   * @return a new class pool with the read classes.
+   */
+  public static ClassPool read(
+      ClassPath classPath,
+      String classNameFilter,
+      boolean android,
+      boolean isLibrary,
+      boolean initializeKotlinMetadata,
+      boolean skipNonPublicLibraryClasses,
+      boolean skipNonPublicLibraryClassMembers,
+      boolean ignoreStackMapAttributes,
+      boolean parallel,
+      BiFunction<DataEntryReader, ClassVisitor, DataEntryReader> extraDataEntryReader)
+      throws IOException {
     WarningPrinter nullWarningPrinter =
         new WarningPrinter(
             new PrintWriter(
@@ -190,17 +228,31 @@ public class IOUtil {
     if (classNameFilter != null)
       classPoolFiller = new ClassNameFilter(classNameFilter, classPoolFiller);
 
-    DataEntryReader classReader =
-        new NameFilteredDataEntryReader(
-            "**.class",
-            new ClassReader(
+    ParallelClassReader parallelClassReader =
+        parallel
+            ? new ParallelClassReader(
                 isLibrary,
                 skipNonPublicLibraryClasses,
                 skipNonPublicLibraryClassMembers,
                 ignoreStackMapAttributes,
                 initializeKotlinMetadata,
                 nullWarningPrinter,
-                classPoolFiller));
+                classPoolFiller)
+            : null;
+
+    DataEntryReader classReader =
+        new NameFilteredDataEntryReader(
+            "**.class",
+            parallelClassReader != null
+                ? parallelClassReader
+                : new ClassReader(
+                    isLibrary,
+                    skipNonPublicLibraryClasses,
+                    skipNonPublicLibraryClassMembers,
+                    ignoreStackMapAttributes,
+                    initializeKotlinMetadata,
+                    nullWarningPrinter,
+                    classPoolFiller));
 
     classReader = extraDataEntryReader.apply(classReader, classPoolFiller);
 
@@ -215,8 +267,25 @@ public class IOUtil {
           // Create the data entry source.
           DataEntrySource source = new DirectorySource(entry.getFile());
 
-          // Pump the data entries into the reader.
-          source.pumpDataEntries(reader);
+          try {
+            // Pump the data entries into the reader.
+            source.pumpDataEntries(reader);
+          } catch (IOException | RuntimeException e) {
+            // Stop the worker threads, keeping the original exception.
+            if (parallelClassReader != null) {
+              try {
+                parallelClassReader.cancel();
+              } catch (RuntimeException cancelException) {
+                e.addSuppressed(cancelException);
+              }
+            }
+            throw e;
+          }
+
+          // Pass on the classes that are still being parsed, and stop the worker threads.
+          if (parallelClassReader != null) {
+            parallelClassReader.finish();
+          }
         } catch (IOException ex) {
           throw new IOException("Can't read [" + entry + "] (" + ex.getMessage() + ")", ex);
         }
@@ -34,8 +34,6 @@ import proguard.classfile.instruction.Instruction
 import proguard.classfile.visitor.ClassVisitor
 import proguard.classfile.visitor.MemberVisitor
 import proguard.exception.ProguardCoreException
-import java.util.BitSet
-import kotlin.streams.asSequence
 
 class DominatorCalculatorTest : FreeSpec({
 
@@ -78,18 +76,12 @@ class DominatorCalculatorTest : FreeSpec({
 
     /**
      * In order to thoroughly test the calculator,
-     * we need access to the raw dominator map.
-     * This is private, so we're retrieving it via
-     * reflection.
+     * we need the complete dominator sets.
+     * These are the chains of immediate dominators
+     * up to the entry node.
      */
-    fun DominatorCalculator.getDominators(offset: Int): Set<Int> {
-        val dominatorMapField = this.javaClass.declaredFields
-            .find { it.name == "dominatorMap" }!!
-        dominatorMapField.isAccessible = true
-        val dominatorMap = dominatorMapField.get(this) as Map<Int, BitSet>
-
-        return dominatorMap[offset]!!.stream().asSequence().map { it - 2 }.toSet()
-    }
+    fun DominatorCalculator.getDominators(offset: Int): Set<Int> =
+        generateSequence(offset) { if (it == ENTRY_NODE_OFFSET) null else getImmediateDominator(it) }.toSet()
 
     "Simple" {
         val code = byteArrayOf(
@@ -550,6 +542,67 @@ class DominatorCalculatorTest : FreeSpec({
         calculator.getDominators(EXIT_NODE_OFFSET) shouldBe setOf(ENTRY_NODE_OFFSET, 8, EXIT_NODE_OFFSET)
     }
 
+    "Branch post-dominators and dominance frontiers" {
+        val code = byteArrayOf(
+            Instruction.OP_BIPUSH, 42, //     0  bipush 42
+            Instruction.OP_IFICMPNE, 0, 8, // 2  if_icmpne 10 (+8)
+            Instruction.OP_BIPUSH, 43, //     5  bipush 43
+            Instruction.OP_GOTO, 0, 5, //     7  goto 12 (+5)
+            Instruction.OP_BIPUSH, 44, //     10 bipush 44
+            Instruction.OP_BIPUSH, 45, //     12 bipush 45
+            Instruction.OP_RETURN, //          14 return
+        )
+        val clazz = NamedClass("Test")
+        val method = NamedMember("", "()V")
+        val codeAttribute = CodeAttribute(0, 1, 0, code.size, code)
+
+        val calculator = DominatorCalculator()
+        codeAttribute.accept(clazz, method, calculator)
+
+        calculator.getImmediateDominator(ENTRY_NODE_OFFSET) shouldBe ENTRY_NODE_OFFSET
+        calculator.getImmediateDominator(5) shouldBe 2
+        calculator.getImmediateDominator(10) shouldBe 2
+        calculator.getImmediateDominator(12) shouldBe 2
+
+        calculator.getDominanceFrontier(5).toList() shouldBe listOf(12)
+        calculator.getDominanceFrontier(7).toList() shouldBe listOf(12)
+        calculator.getDominanceFrontier(10).toList() shouldBe listOf(12)
+        calculator.getDominanceFrontier(2).toList() shouldBe emptyList()
+
+        calculator.postDominates(12, 0) shouldBe true
+        calculator.postDominates(5, 2) shouldBe false
+        calculator.postDominates(7, 5) shouldBe true
+        calculator.postDominates(EXIT_NODE_OFFSET, ENTRY_NODE_OFFSET) shouldBe true
+        calculator.getImmediatePostDominator(2) shouldBe 12
+        calculator.getImmediatePostDominator(5) shouldBe 7
+        calculator.getImmediatePostDominator(14) shouldBe EXIT_NODE_OFFSET
+        calculator.getImmediatePostDominator(EXIT_NODE_OFFSET) shouldBe EXIT_NODE_OFFSET
+
+        calculator.getPostDominanceFrontier(5).toList() shouldBe listOf(2)
+        calculator.getPostDominanceFrontier(10).toList() shouldBe listOf(2)
+        calculator.getPostDominanceFrontier(12).toList() shouldBe emptyList()
+    }
+
+    "Infinite loop" {
+        val code = byteArrayOf(
+            Instruction.OP_BIPUSH, 42, //     0  bipush 42
+            Instruction.OP_GOTO, -1, -2, //   2  goto 0 (-2)
+        )
+        val clazz = NamedClass("Test")
+        val method = NamedMember("", "()V")
+        val codeAttribute = CodeAttribute(0, 1, 0, code.size, code)
+
+        val calculator = DominatorCalculator()
+        codeAttribute.accept(clazz, method, calculator)
+
+        // The exit is unreachable, so it's trivially dominated by all instructions.
+        calculator.dominates(2, EXIT_NODE_OFFSET) shouldBe true
+        calculator.getDominanceFrontier(2).toList() shouldBe listOf(0)
+        shouldThrow<ProguardCoreException> {
+            calculator.postDominates(2, 0)
+        }
+    }
+
     "Unknown offsets should not have dominators" {
         val code = byteArrayOf(
             Instruction.OP_BIPUSH,
@@ -0,0 +1,152 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.longs.shouldBeGreaterThan
+import io.kotest.matchers.shouldBe
+import proguard.analysis.Metrics.MetricType.CONCRETE_CALL
+import proguard.analysis.Metrics.MetricType.MISSING_CLASS
+import proguard.analysis.datastructure.callgraph.CallGraph
+import proguard.classfile.attribute.visitor.AllAttributeVisitor
+import proguard.classfile.visitor.AllMethodVisitor
+import proguard.evaluation.PartialEvaluator
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class MetricsRegistryTest : FreeSpec({
+
+    "Given a registry that is updated concurrently" - {
+        val registry = MetricsRegistry()
+        val executor = Executors.newFixedThreadPool(4)
+        repeat(4) {
+            executor.execute {
+                repeat(1000) {
+                    registry.increaseCount(MISSING_CLASS)
+                    registry.counter("counter").increment()
+                    registry.histogram("histogram").record(it.toLong())
+                }
+            }
+        }
+        executor.shutdown()
+        executor.awaitTermination(1, TimeUnit.MINUTES)
+
+        "Then no updates should be lost" {
+            registry.getCount(MISSING_CLASS) shouldBe 4000L
+            registry.counter("counter").sum() shouldBe 4000L
+            registry.histogram("histogram").count shouldBe 4000L
+            registry.histogram("histogram").max shouldBe 999L
+        }
+
+        "Then the percentiles should be bounded by powers of two" {
+            registry.histogram("histogram").getPercentile(50.0) shouldBe 511L
+            registry.histogram("histogram").getPercentile(100.0) shouldBe 999L
+        }
+
+        "Then flushing should report and reset the metrics" {
+            val report = registry.flush()
+            report.lines()[0] shouldBe "Metrics:"
+            report.lines()[1] shouldBe "MISSING_CLASS: 4000"
+            report.lines()[2] shouldBe "counter: 4000"
+            registry.getCount(MISSING_CLASS) shouldBe 0L
+            registry.flush() shouldBe "Metrics:\n"
+        }
+    }
+
+    "Given the static metrics" - {
+        Metrics.counts.clear()
+        Metrics.increaseCount(MISSING_CLASS)
+        Metrics.increaseCount(MISSING_CLASS)
+
+        "Then the counts should reflect the default registry" {
+            Metrics.counts[MISSING_CLASS] shouldBe 2
+            Metrics.counts[CONCRETE_CALL] shouldBe null
+            Metrics.counts.size shouldBe 1
+            Metrics.getDefaultRegistry().getCount(MISSING_CLASS) shouldBe 2L
+        }
+
+        "Then flushing should clear the counts" {
+            Metrics.flush() shouldBe "Metrics:\nMISSING_CLASS: 2\n"
+            Metrics.counts.isEmpty() shouldBe true
+        }
+    }
+
+    "Given static counts that are updated through the map" - {
+        Metrics.counts.clear()
+        Metrics.counts[MISSING_CLASS] = 5
+        Metrics.counts.merge(MISSING_CLASS, 1) { a, b -> a + b }
+        Metrics.counts.merge(CONCRETE_CALL, 2) { a, b -> a + b }
+
+        "Then the default registry should be updated" {
+            Metrics.counts[MISSING_CLASS] shouldBe 6
+            Metrics.getDefaultRegistry().getCount(MISSING_CLASS) shouldBe 6L
+            Metrics.getDefaultRegistry().getCount(CONCRETE_CALL) shouldBe 2L
+        }
+
+        "Then removing a count should reset its counter" {
+            Metrics.counts.remove(CONCRETE_CALL) shouldBe 2
+            Metrics.getDefaultRegistry().getCount(CONCRETE_CALL) shouldBe 0L
+            Metrics.counts.clear()
+        }
+    }
+
+    "Given analyses with their own registries" - {
+        val (programClassPool, libraryClassPool) = ClassPoolBuilder.fromSource(
+            JavaSource(
+                "Test.java",
+                """
+                public class Test {
+                    static int f(int i) { return i + 1; }
+                    int g() { return f(1); }
+                }
+                """.trimIndent(),
+            ),
+        )
+
+        val defaultConcreteCalls = Metrics.getDefaultRegistry().getCount(CONCRETE_CALL)
+
+        val callResolverMetrics = MetricsRegistry()
+        programClassPool.classesAccept(
+            CallResolver.Builder(programClassPool, libraryClassPool, CallGraph())
+                .setMetrics(callResolverMetrics)
+                .build(),
+        )
+
+        val partialEvaluatorMetrics = MetricsRegistry()
+        programClassPool.classesAccept(
+            AllMethodVisitor(
+                AllAttributeVisitor(
+                    PartialEvaluator.Builder.create().setMetrics(partialEvaluatorMetrics).build(),
+                ),
+            ),
+        )
+
+        "Then the call resolver should count in its own registry" {
+            callResolverMetrics.getCount(CONCRETE_CALL) shouldBeGreaterThan 0L
+            Metrics.getDefaultRegistry().getCount(CONCRETE_CALL) shouldBe defaultConcreteCalls
+        }
+
+        "Then the partial evaluator should time each evaluation" {
+            partialEvaluatorMetrics.timer(PartialEvaluator.EVALUATION_TIMER).count shouldBe 3L
+            partialEvaluatorMetrics.histogram(PartialEvaluator.INSTRUCTION_BLOCK_EVALUATION_HISTOGRAM).count shouldBe 3L
+        }
+    }
+})
@@ -0,0 +1,140 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.collections.shouldContainExactlyInAnyOrder
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import proguard.analysis.cpa.bam.BlockAbstraction
+import proguard.analysis.cpa.bam.ConcurrentBamCache
+import proguard.analysis.cpa.defaults.BreadthFirstWaitlist
+import proguard.analysis.cpa.defaults.DefaultReachedSet
+import proguard.classfile.MethodSignature
+import proguard.testutils.cpa.IntegerAbstractState
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class ConcurrentBamCacheTest : FreeSpec({
+
+    val signatureA = MethodSignature("a", "test", "()V")
+    val signatureB = MethodSignature("b", "test", "()V")
+
+    fun blockAbstraction(stateCount: Int, complete: Boolean = true): BlockAbstraction {
+        val reachedSet = DefaultReachedSet()
+        (0 until stateCount).forEach { reachedSet.add(IntegerAbstractState(it)) }
+        val waitlist = BreadthFirstWaitlist()
+        if (!complete) {
+            waitlist.add(IntegerAbstractState(0))
+        }
+        return BlockAbstraction(reachedSet, waitlist)
+    }
+
+    "Given an unbounded cache" - {
+        val cache = ConcurrentBamCache<MethodSignature>()
+        val block42 = blockAbstraction(1)
+
+        cache.put(IntegerAbstractState(42), null, signatureA, block42)
+        cache.put(IntegerAbstractState(43), null, signatureA, blockAbstraction(2))
+        cache.put(IntegerAbstractState(42), null, signatureB, blockAbstraction(3))
+
+        "Then the entries should be found by their keys" {
+            cache.get(IntegerAbstractState(42), null, signatureA) shouldBe block42
+            cache.get(IntegerAbstractState(44), null, signatureA) shouldBe null
+            cache.get(null, signatureA).size shouldBe 2
+            cache.get(signatureB).size shouldBe 1
+            cache.allMethods shouldBe setOf(signatureA, signatureB)
+            cache.size() shouldBe 3
+            cache.stateCount shouldBe 6L
+        }
+
+        "Then the hits and misses should be counted per method" {
+            cache.getStatistics(signatureA).hitCount shouldBe 1L
+            cache.getStatistics(signatureA).missCount shouldBe 1L
+            cache.getStatistics(signatureB).hitCount shouldBe 0L
+            cache.statistics.hitRate shouldBe 0.5
+        }
+    }
+
+    "Given a cache bounded by its number of entries" - {
+        val cache = ConcurrentBamCache<MethodSignature>(4, Long.MAX_VALUE)
+
+        (0 until 4).forEach { cache.put(IntegerAbstractState(it), null, signatureA, blockAbstraction(1)) }
+        cache.get(IntegerAbstractState(0), null, signatureA)
+        cache.put(IntegerAbstractState(4), null, signatureA, blockAbstraction(1))
+
+        "Then the least recently used entries should be evicted" {
+            cache.size() shouldBe 3
+            cache.evictionCount shouldBe 2L
+            cache.get(IntegerAbstractState(0), null, signatureA) shouldNotBe null
+            cache.get(IntegerAbstractState(1), null, signatureA) shouldBe null
+            cache.get(IntegerAbstractState(2), null, signatureA) shouldBe null
+            cache.get(IntegerAbstractState(3), null, signatureA) shouldNotBe null
+            cache.get(IntegerAbstractState(4), null, signatureA) shouldNotBe null
+        }
+    }
+
+    "Given a cache bounded by its number of reached states" - {
+        val cache = ConcurrentBamCache<MethodSignature>(Int.MAX_VALUE, 4)
+
+        (0 until 3).forEach { cache.put(IntegerAbstractState(it), null, signatureA, blockAbstraction(2)) }
+
+        "Then the entries should be evicted until a quarter of the states is free" {
+            cache.size() shouldBe 1
+            cache.stateCount shouldBe 2L
+            cache.get(IntegerAbstractState(2), null, signatureA) shouldNotBe null
+        }
+    }
+
+    "Given a bounded cache with incomplete entries" - {
+        val cache = ConcurrentBamCache<MethodSignature>(1, Long.MAX_VALUE)
+        val incompleteBlock = blockAbstraction(1, complete = false)
+
+        cache.put(IntegerAbstractState(0), null, signatureA, incompleteBlock)
+        cache.put(IntegerAbstractState(1), null, signatureB, blockAbstraction(1))
+
+        "Then the incomplete entries should not be evicted" {
+            cache.values() shouldContainExactlyInAnyOrder listOf(incompleteBlock)
+            cache.allMethods shouldBe setOf(signatureA)
+        }
+    }
+
+    "Given a bounded cache filled concurrently" - {
+        val cache = ConcurrentBamCache<MethodSignature>(100, Long.MAX_VALUE)
+        val executorService = Executors.newFixedThreadPool(4)
+        (0 until 4).forEach { thread ->
+            executorService.execute {
+                (0 until 1000).forEach {
+                    val signature = MethodSignature("c$thread", "test$it", "()V")
+                    cache.put(IntegerAbstractState(it), null, signature, blockAbstraction(2))
+                    cache.get(IntegerAbstractState(it), null, signature)
+                }
+            }
+        }
+        executorService.shutdown()
+        executorService.awaitTermination(1, TimeUnit.MINUTES)
+
+        "Then the sizes should be consistent with the entries" {
+            cache.size() shouldBe cache.values().size
+            cache.stateCount shouldBe 2L * cache.size()
+            cache.allMethods.size shouldBe cache.size()
+            cache.evictionCount shouldBe 4000L - cache.size()
+        }
+    }
+})
@@ -0,0 +1,135 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2022 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.analysis.cpa.defaults.HashMapAbstractState
+import proguard.analysis.cpa.defaults.HashTrieMapAbstractState
+import proguard.testutils.cpa.IntegerAbstractState
+
+class HashTrieMapAbstractStateTest : FreeSpec({
+
+    // Keys with the same hash code, to exercise the collision nodes.
+    data class CollidingKey(val id: Int) {
+        override fun hashCode() = 42
+    }
+
+    "Given a map with many entries" - {
+        val state = HashTrieMapAbstractState<Int, IntegerAbstractState>()
+        val expected = HashMap<Int, IntegerAbstractState>()
+        for (key in 0 until 1000) {
+            state[key] = IntegerAbstractState(key)
+            expected[key] = IntegerAbstractState(key)
+        }
+        for (key in 0 until 1000 step 3) {
+            state.remove(key)
+            expected.remove(key)
+        }
+
+        "Then it should contain the same entries as a hash map" {
+            state.size shouldBe expected.size
+            state shouldBe expected
+            expected shouldBe state
+            state.hashCode() shouldBe expected.hashCode()
+        }
+
+        "Then removing all entries should result in an empty map" {
+            val copy = state.copy()
+            expected.keys.forEach { copy.remove(it) }
+
+            copy.isEmpty() shouldBe true
+            copy shouldBe HashTrieMapAbstractState<Int, IntegerAbstractState>()
+        }
+    }
+
+    "Given a map with colliding keys" - {
+        val state = HashTrieMapAbstractState<CollidingKey, IntegerAbstractState>()
+        (0 until 5).forEach { state[CollidingKey(it)] = IntegerAbstractState(it) }
+
+        "Then all entries should be found" {
+            state.size shouldBe 5
+            (0 until 5).forEach { state[CollidingKey(it)] shouldBe IntegerAbstractState(it) }
+            state[CollidingKey(5)] shouldBe null
+        }
+
+        "Then entries should be removed individually" {
+            val copy = state.copy()
+            copy.remove(CollidingKey(2))
+
+            copy.size shouldBe 4
+            copy.containsKey(CollidingKey(2)) shouldBe false
+            copy[CollidingKey(3)] shouldBe IntegerAbstractState(3)
+        }
+    }
+
+    "Given a copy of a map" - {
+        val state = HashTrieMapAbstractState<Int, IntegerAbstractState>()
+        state[1] = IntegerAbstractState(1)
+        state[2] = IntegerAbstractState(2)
+        val copy = state.copy()
+
+        "Then it should be equal to the original" {
+            copy shouldBe state
+        }
+
+        "Then modifying the copy shouldn't modify the original" {
+            copy[1] = IntegerAbstractState(5)
+            copy[3] = IntegerAbstractState(3)
+            copy.remove(2)
+
+            state shouldBe mapOf(1 to IntegerAbstractState(1), 2 to IntegerAbstractState(2))
+            copy shouldBe mapOf(1 to IntegerAbstractState(5), 3 to IntegerAbstractState(3))
+        }
+    }
+
+    "Given maps to compare and join" - {
+        val stateEmpty = HashTrieMapAbstractState<Int, IntegerAbstractState>()
+        val state1 = HashTrieMapAbstractState<Int, IntegerAbstractState>()
+        val state2 = HashTrieMapAbstractState<Int, IntegerAbstractState>()
+        val stateLarge = HashTrieMapAbstractState<Int, IntegerAbstractState>()
+
+        state1[1] = IntegerAbstractState(1)
+        state1[2] = IntegerAbstractState(2)
+
+        state2[2] = IntegerAbstractState(5)
+        state2[3] = IntegerAbstractState(3)
+
+        stateLarge[1] = IntegerAbstractState(5)
+        stateLarge[2] = IntegerAbstractState(5)
+        stateLarge[3] = IntegerAbstractState(5)
+
+        "Then the empty map should be the neutral element" {
+            stateEmpty.join(state1) shouldBe state1
+            state1.join(stateEmpty) shouldBe state1
+        }
+
+        "Then the join should be the same as for hash maps" {
+            state1.join(state2) shouldBe HashMapAbstractState(state1).join(HashMapAbstractState(state2))
+        }
+
+        "Then the comparison should be the same as for hash maps" {
+            state1.isLessOrEqual(stateLarge) shouldBe true
+            stateLarge.isLessOrEqual(state1) shouldBe false
+            stateEmpty.isLessOrEqual(state1) shouldBe true
+            state1.isLessOrEqual(state2) shouldBe false
+            state1.isLessOrEqual(HashMapAbstractState(stateLarge)) shouldBe true
+        }
+    }
+})
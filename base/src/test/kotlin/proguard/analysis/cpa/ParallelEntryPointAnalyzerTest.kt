@@ -0,0 +1,119 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+import proguard.analysis.cpa.jvm.util.CfaUtil
+import proguard.analysis.cpa.util.ParallelEntryPointAnalyzer
+import proguard.analysis.cpa.util.ValueAnalyzer
+import proguard.classfile.MethodSignature
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import java.util.concurrent.ForkJoinPool
+
+class ParallelEntryPointAnalyzerTest : FreeSpec({
+
+    val (programClassPool, libraryClassPool) = ClassPoolBuilder.fromSource(
+        JavaSource(
+            "Util.java",
+            """
+                public class Util {
+                    public static int foo(int i) { return bar(i + 1) * 2; }
+                    public static int bar(int j) { return j > 3 ? j : bar(j + 1); }
+                }
+            """.trimIndent(),
+        ),
+        *(0 until 8).map {
+            JavaSource("A$it.java", "public class A$it { public static void main(String[] args) { System.out.println(Util.foo(1) + $it); } }")
+        }.toTypedArray(),
+        javacArguments = mutableListOf("-source", "1.8", "-target", "1.8"),
+    )
+
+    val cfa = CfaUtil.createInterproceduralCfa(programClassPool, libraryClassPool)
+    val entryPoints = (0 until 8).map { MethodSignature("A$it", "main", "([Ljava/lang/String;)V") }
+    val fooSignature = MethodSignature("Util", "foo", "(I)I")
+    val barSignature = MethodSignature("Util", "bar", "(I)I")
+
+    val executorService = ForkJoinPool(4)
+
+    afterSpec { executorService.shutdown() }
+
+    "Given entry points analyzed in parallel" - {
+        val builder = ValueAnalyzer.Builder(cfa, programClassPool, libraryClassPool)
+        val analyzer = ParallelEntryPointAnalyzer(
+            cfa,
+            { cache, entryPoint -> builder.build(cache).analyze(entryPoint) },
+            executorService,
+        )
+        val results = analyzer.analyze(entryPoints)
+
+        "Then the results should be in the order of the entry points" {
+            results.keys shouldContainExactly entryPoints
+        }
+
+        "Then each result should contain the called methods" {
+            results.values.forEach {
+                it.resultCache.get(fooSignature).size shouldBe 1
+                it.resultCache.get(barSignature).size shouldBe 1
+            }
+        }
+
+        "Then each result should be the same as for a sequential analysis" {
+            entryPoints.forEach { entryPoint ->
+                val expectedCache = builder.build().analyze(entryPoint).resultCache
+                val actualCache = results[entryPoint]!!.resultCache
+
+                actualCache.allMethods shouldBe expectedCache.allMethods
+                actualCache.size() shouldBe expectedCache.size()
+                expectedCache.allMethods.forEach { method ->
+                    actualCache.get(method).map { it.reachedSet.asCollection().toSet() }.toSet() shouldBe
+                        expectedCache.get(method).map { it.reachedSet.asCollection().toSet() }.toSet()
+                }
+            }
+        }
+
+        "Then the block abstractions without precision should be found" {
+            results.values.forEach {
+                it.resultCache.get(null, fooSignature).size shouldBe 1
+            }
+        }
+
+        "Then the completed block abstractions should be shared" {
+            analyzer.sharedCache.allMethods.size shouldBe 10
+            analyzer.sharedCache.get(fooSignature).size shouldBe 1
+        }
+    }
+
+    "Given an analysis that fails" - {
+        val analyzer = ParallelEntryPointAnalyzer<Unit>(
+            cfa,
+            { _, entryPoint -> throw IllegalStateException("Failed [$entryPoint]") },
+            executorService,
+        )
+
+        "Then the exception should be rethrown" {
+            shouldThrow<IllegalStateException> {
+                analyzer.analyze(entryPoints)
+            }
+        }
+    }
+})
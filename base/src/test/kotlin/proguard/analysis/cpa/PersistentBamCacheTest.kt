@@ -0,0 +1,158 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.ints.shouldBeGreaterThan
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import proguard.analysis.cpa.bam.PersistentBamCache
+import proguard.analysis.cpa.jvm.domain.taint.JvmInvokeTaintSink
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintAbstractStateCodec
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSource
+import proguard.analysis.cpa.jvm.util.CfaUtil
+import proguard.analysis.cpa.jvm.util.JvmCfaBlockHasher
+import proguard.analysis.cpa.util.TaintAnalyzer
+import proguard.classfile.MethodSignature
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import java.io.File
+import java.nio.file.Files
+
+class PersistentBamCacheTest : FreeSpec({
+
+    val directory = Files.createTempDirectory("bam").toFile()
+    val depthDirectory = Files.createTempDirectory("bam").toFile()
+
+    afterSpec {
+        directory.deleteRecursively()
+        depthDirectory.deleteRecursively()
+    }
+
+    val mainSignature = MethodSignature("A", "main", "()V")
+    val passSignature = MethodSignature("A", "pass", "(Ljava/lang/String;)Ljava/lang/String;")
+    val wrapSignature = MethodSignature("A", "wrap", "(Ljava/lang/String;)Ljava/lang/String;")
+    val otherSignature = MethodSignature("A", "other", "()Ljava/lang/String;")
+    val taintSource = JvmTaintSource(MethodSignature("A", "source", "()Ljava/lang/String;"), false, true, setOf(), setOf())
+    val taintSink = JvmInvokeTaintSink(MethodSignature("A", "sink", "(Ljava/lang/String;)V"), false, setOf(1), setOf())
+
+    class Run(val endpointCount: Int, val loadedEntryCount: Int, val savedBlockCount: Int, val hasher: JvmCfaBlockHasher)
+
+    // Analyzes a fresh CFA of the given version of the code with a fresh cache on the given directory.
+    fun analyze(wrapResult: String, mainCall: String = "pass", cacheDirectory: File = directory): Run {
+        val interproceduralCfa = CfaUtil.createInterproceduralCfaFromClassPool(
+            ClassPoolBuilder.fromSource(
+                JavaSource(
+                    "A.java",
+                    """
+                    class A
+                    {
+                        public void main()
+                        {
+                            sink($mainCall(source()));
+                            sink(other());
+                        }
+
+                        public static String relay(String s)
+                        {
+                            return pass(s);
+                        }
+
+                        public static String pass(String s)
+                        {
+                            return wrap(s);
+                        }
+
+                        public static String wrap(String s)
+                        {
+                            return $wrapResult;
+                        }
+
+                        public static String other()
+                        {
+                            return "x";
+                        }
+
+                        public static void sink(String s)
+                        {
+                        }
+
+                        public static String source()
+                        {
+                            return null;
+                        }
+                    }
+                    """.trimIndent(),
+                ),
+            ).programClassPool,
+        )
+        val hasher = JvmCfaBlockHasher(interproceduralCfa)
+        val cache = PersistentBamCache(cacheDirectory, hasher, JvmTaintAbstractStateCodec(interproceduralCfa, setOf(taintSource)))
+        val result = TaintAnalyzer.Builder(interproceduralCfa, setOf(taintSource), setOf(taintSink))
+            .build(cache)
+            .analyze(mainSignature)
+        val endpointCount = result.taintAnalysisResult.endpoints.size
+        return Run(endpointCount, cache.loadedEntryCount, cache.save(), hasher)
+    }
+
+    "Given a taint analysis with a persistent cache" - {
+        val firstRun = analyze("s")
+        val secondRun = analyze("s")
+        val changedRun = analyze("\"y\"")
+
+        "Then the first analysis should store all blocks" {
+            firstRun.endpointCount shouldBe 1
+            firstRun.loadedEntryCount shouldBe 0
+            firstRun.savedBlockCount shouldBe 6
+        }
+
+        "Then an analysis of the same code should reuse the stored blocks" {
+            secondRun.endpointCount shouldBe 1
+            secondRun.loadedEntryCount shouldBeGreaterThan 0
+            secondRun.savedBlockCount shouldBe 0
+        }
+
+        "Then an analysis of changed code should only recompute the changed method and its callers" {
+            changedRun.endpointCount shouldBe 0
+            changedRun.savedBlockCount shouldBe 3
+            changedRun.hasher.apply(mainSignature) shouldNotBe firstRun.hasher.apply(mainSignature)
+            changedRun.hasher.apply(wrapSignature) shouldNotBe firstRun.hasher.apply(wrapSignature)
+            changedRun.hasher.apply(otherSignature) shouldBe firstRun.hasher.apply(otherSignature)
+        }
+    }
+
+    "Given a taint analysis with a persistent cache from calls at a different call stack depth" - {
+        val firstRun = analyze("s", "pass", depthDirectory)
+        val deeperRun = analyze("s", "relay", depthDirectory)
+        val secondDeeperRun = analyze("s", "relay", depthDirectory)
+
+        "Then the blocks at a different depth should be recomputed" {
+            deeperRun.endpointCount shouldBe 1
+            deeperRun.loadedEntryCount shouldBeGreaterThan 0
+            deeperRun.savedBlockCount shouldBe 4
+            deeperRun.hasher.apply(passSignature) shouldBe firstRun.hasher.apply(passSignature)
+        }
+
+        "Then an analysis with the same depths should reuse the stored blocks" {
+            secondDeeperRun.endpointCount shouldBe 1
+            secondDeeperRun.savedBlockCount shouldBe 0
+        }
+    }
+})
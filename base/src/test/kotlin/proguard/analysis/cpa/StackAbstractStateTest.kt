@@ -88,4 +88,17 @@ class StackAbstractStateTest : FreeSpec({
         stateEmpty.isLessOrEqual(stateLong) shouldBe true
         stateLong.isLessOrEqual(stateEmpty) shouldBe false
     }
+
+    "Copies are independent of the original" {
+        val original = stateShort1.copy()
+        val copy = original.copy()
+
+        copy.pop()
+        copy.push(IntegerAbstractState(7))
+        original[0] = IntegerAbstractState(8)
+
+        original shouldBe listOf(IntegerAbstractState(8), IntegerAbstractState(2), IntegerAbstractState(1))
+        copy shouldBe listOf(IntegerAbstractState(3), IntegerAbstractState(2), IntegerAbstractState(7))
+        stateShort1 shouldBe listOf(IntegerAbstractState(3), IntegerAbstractState(2), IntegerAbstractState(1))
+    }
 })
@@ -0,0 +1,121 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.constant
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.classfile.ProgramClass
+import proguard.classfile.io.ProgramClassReader
+import proguard.classfile.io.ProgramClassWriter
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+class Utf8ConstantTest : FreeSpec({
+
+    // Modified UTF-8 encodes the 0 character with two bytes.
+    val bytes = byteArrayOf(0xc0.toByte(), 0x80.toByte(), 'a'.code.toByte(), 'b'.code.toByte())
+
+    "Given a Utf8Constant with lazy bytes" - {
+        val constant = Utf8Constant()
+        constant.setLazyBytes(bytes.clone())
+
+        "Then it should decode the bytes" {
+            constant.string shouldBe "\u0000ab"
+        }
+
+        "Then it should return the original bytes" {
+            constant.bytes shouldBe bytes
+        }
+
+        "Then it should be equal to a constant with the same string" {
+            constant shouldBe Utf8Constant("\u0000ab")
+            constant.hashCode() shouldBe Utf8Constant("\u0000ab").hashCode()
+        }
+    }
+
+    "Given Utf8Constants with interned bytes" - {
+        val interner = Utf8Interner()
+        val constant1 = Utf8Constant()
+        val constant2 = Utf8Constant()
+        constant1.setInternedBytes(bytes.clone(), interner)
+        constant2.setInternedBytes(bytes.clone(), interner)
+
+        "Then the interner should hold a single entry" {
+            interner.size() shouldBe 1
+        }
+
+        "Then the constants should be equal" {
+            constant1 shouldBe constant2
+        }
+
+        "Then the constants should share their decoded string" {
+            constant1.string shouldBeSameInstanceAs constant2.string
+        }
+
+        "Then changing the string of one constant shouldn't affect the other" {
+            constant1.string = "other"
+            constant2.string shouldBe "\u0000ab"
+        }
+    }
+
+    "Given classes read with a shared interner" - {
+        val (programClassPool, _) = ClassPoolBuilder.fromSource(
+            JavaSource("A.java", "public class A { String f() { return \"shared\"; } }"),
+            JavaSource("B.java", "public class B { String f() { return \"shared\"; } }"),
+            initialize = false,
+        )
+
+        val interner = Utf8Interner()
+        val classFiles = listOf("A", "B").map { name ->
+            val outputStream = ByteArrayOutputStream()
+            programClassPool.getClass(name).accept(ProgramClassWriter(DataOutputStream(outputStream)))
+            outputStream.toByteArray()
+        }
+        val copies = classFiles.map { data ->
+            val copy = ProgramClass()
+            copy.accept(ProgramClassReader(DataInputStream(ByteArrayInputStream(data)), false, interner))
+            copy
+        }
+
+        "Then the classes should be written unchanged" {
+            copies.zip(classFiles).forEach { (copy, data) ->
+                val outputStream = ByteArrayOutputStream()
+                copy.accept(ProgramClassWriter(DataOutputStream(outputStream)))
+                outputStream.toByteArray() shouldBe data
+            }
+        }
+
+        "Then the classes should share their strings" {
+            val (strings0, strings1) = copies.map { copy ->
+                (1 until copy.u2constantPoolCount)
+                    .mapNotNull { copy.constantPool[it] as? Utf8Constant }
+                    .map { it.string }
+                    .associateBy { it }
+            }
+
+            strings0.getValue("shared") shouldBeSameInstanceAs strings1.getValue("shared")
+            strings0.getValue("f") shouldBeSameInstanceAs strings1.getValue("f")
+        }
+    }
+})
@@ -0,0 +1,112 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.editor
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.classfile.ProgramClass
+import proguard.classfile.VersionConstants
+import proguard.classfile.constant.ClassConstant
+import proguard.classfile.constant.Constant
+import proguard.classfile.constant.Utf8Constant
+
+class ConstantPoolEditorTest : FreeSpec({
+
+    fun createClass() = ProgramClass(VersionConstants.CLASS_VERSION_1_7, 1, arrayOfNulls<Constant>(1), 0, 0, 0)
+
+    "Given constants added to a class by multiple editors" - {
+        val programClass = createClass()
+        val constantPoolIndexCache = ConstantPoolIndexCache()
+        val editor1 = ConstantPoolEditor(programClass, null, null, constantPoolIndexCache)
+        val editor2 = ConstantPoolEditor(programClass, null, null, constantPoolIndexCache)
+
+        val indices = (0 until 100).map { index ->
+            (if (index % 2 == 0) editor1 else editor2).addUtf8Constant("constant$index")
+        }
+
+        "Then the editors should share the same index" {
+            val constantPoolIndex = constantPoolIndexCache.indexOf(programClass)
+
+            constantPoolIndexCache.indexOf(programClass) shouldBeSameInstanceAs constantPoolIndex
+            constantPoolIndex.indexOf(programClass, Utf8Constant("constant42")) shouldBe indices[42]
+        }
+
+        "Then existing constants should be found by any editor" {
+            (0 until 100).map { editor2.addUtf8Constant("constant$it") } shouldBe indices
+            (0 until 100).map { ConstantPoolEditor(programClass).addUtf8Constant("constant$it") } shouldBe indices
+            programClass.u2constantPoolCount shouldBe 101
+        }
+    }
+
+    "Given a constant pool that is modified without an editor" - {
+        val programClass = createClass()
+        val editor = ConstantPoolEditor(programClass)
+        (0 until 50).forEach { editor.addUtf8Constant("constant$it") }
+
+        // Swap the first two constants and drop the last one.
+        val constantPool = programClass.constantPool
+        val constant = constantPool[1]
+        constantPool[1] = constantPool[2]
+        constantPool[2] = constant
+        constantPool[50] = null
+        programClass.u2constantPoolCount = 50
+
+        "Then the editor should still find the constants at their new indices" {
+            editor.addUtf8Constant("constant0") shouldBe 2
+            editor.addUtf8Constant("constant1") shouldBe 1
+            editor.addUtf8Constant("constant48") shouldBe 49
+        }
+
+        "Then the editor should add constants that have been removed" {
+            editor.addUtf8Constant("constant49") shouldBe 50
+            (programClass.constantPool[50] as Utf8Constant).string shouldBe "constant49"
+        }
+    }
+
+    "Given constants that are changed in place after they have been indexed" - {
+        val programClass = createClass()
+        val constantPoolIndexCache = ConstantPoolIndexCache()
+        val editor = ConstantPoolEditor(programClass, null, null, constantPoolIndexCache)
+        (0 until 50).forEach { editor.addUtf8Constant("constant$it") }
+        val classIndex = editor.addClassConstant("constant10", null)
+
+        // Like StringSharer or InterfaceSorter.
+        (programClass.constantPool[5] as Utf8Constant).string = "changed"
+
+        // Like ClassReferenceFixer.
+        (programClass.constantPool[classIndex] as ClassConstant).u2nameIndex = 20
+
+        // Editors that use the shared index right away.
+        fun createIndexingEditor() = ConstantPoolEditor(programClass, null, null, true, constantPoolIndexCache)
+
+        "Then a new editor should find the changed Utf8 constant" {
+            createIndexingEditor().addUtf8Constant("changed") shouldBe 5
+        }
+
+        "Then a new editor should find the changed class constant" {
+            createIndexingEditor().findOrAddConstant(ClassConstant(20, null)) shouldBe classIndex
+        }
+
+        "Then a new editor should add a constant with the original value" {
+            createIndexingEditor().addUtf8Constant("constant4") shouldBe 52
+            programClass.u2constantPoolCount shouldBe 53
+        }
+    }
+})
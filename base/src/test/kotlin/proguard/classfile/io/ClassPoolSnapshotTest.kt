@@ -0,0 +1,136 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.io
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.ClassPool
+import proguard.classfile.Clazz
+import proguard.classfile.LibraryClass
+import proguard.classfile.LibraryField
+import proguard.classfile.LibraryMethod
+import proguard.classfile.kotlin.UnsupportedKotlinMetadata
+import proguard.classfile.util.ClassReferenceInitializer
+import proguard.classfile.util.ClassSubHierarchyInitializer
+import proguard.classfile.util.ClassSuperHierarchyInitializer
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+
+class ClassPoolSnapshotTest : FreeSpec({
+
+    val libraryClassPool = ClassPool(
+        LibraryClass(PUBLIC, "A", null),
+        LibraryClass(
+            PUBLIC,
+            "B",
+            "A",
+            arrayOf("I"),
+            arrayOfNulls<Clazz>(1),
+            0,
+            emptyArray<Clazz>(),
+            arrayOf(LibraryField(PUBLIC, "a", "LA;")),
+            arrayOf(LibraryMethod(PUBLIC, "b", "(LA;LMissing;)LB;")),
+            null,
+        ),
+        LibraryClass(PUBLIC, "I", null),
+    )
+
+    libraryClassPool.classesAccept(ClassSuperHierarchyInitializer(ClassPool(), libraryClassPool))
+    libraryClassPool.classesAccept(ClassReferenceInitializer(ClassPool(), libraryClassPool))
+    libraryClassPool.accept(ClassSubHierarchyInitializer())
+
+    val outputStream = ByteArrayOutputStream()
+    ClassPoolSnapshot.write(libraryClassPool, 42L, outputStream)
+    val snapshot = outputStream.toByteArray()
+
+    "Given a restored snapshot" - {
+        val restoredClassPool = ClassPoolSnapshot.read(ByteBuffer.wrap(snapshot), 42L)!!
+        val clazzA = restoredClassPool.getClass("A") as LibraryClass
+        val clazzB = restoredClassPool.getClass("B") as LibraryClass
+        val clazzI = restoredClassPool.getClass("I") as LibraryClass
+
+        "Then it should contain all classes" {
+            restoredClassPool.size() shouldBe 3
+        }
+
+        "Then the super hierarchy should be restored" {
+            clazzB.superClassName shouldBe "A"
+            clazzB.superClass shouldBeSameInstanceAs clazzA
+            clazzB.interfaceNames.toList() shouldBe listOf("I")
+            clazzB.interfaceClasses[0] shouldBeSameInstanceAs clazzI
+        }
+
+        "Then the sub hierarchy should be restored" {
+            clazzA.subClasses.take(clazzA.subClassCount) shouldBe listOf(clazzB)
+            clazzI.subClasses.take(clazzI.subClassCount) shouldBe listOf(clazzB)
+        }
+
+        "Then the members and their references should be restored" {
+            val field = clazzB.findField("a", "LA;") as LibraryField
+            val method = clazzB.findMethod("b", "(LA;LMissing;)LB;") as LibraryMethod
+
+            field.referencedClass shouldBeSameInstanceAs clazzA
+            method.referencedClasses.size shouldBe 3
+            method.referencedClasses[0] shouldBeSameInstanceAs clazzA
+            method.referencedClasses[1] shouldBe null
+            method.referencedClasses[2] shouldBeSameInstanceAs clazzB
+        }
+    }
+
+    "Given a snapshot with a different key" - {
+        "Then it should not be restored" {
+            ClassPoolSnapshot.read(ByteBuffer.wrap(snapshot), 43L) shouldBe null
+        }
+    }
+
+    "Given a truncated snapshot" - {
+        "Then restoring it should fail" {
+            shouldThrow<IOException> {
+                ClassPoolSnapshot.read(ByteBuffer.wrap(snapshot, 0, snapshot.size - 1), 42L)
+            }
+        }
+    }
+
+    "Given a class pool with Kotlin metadata" - {
+        val kotlinClass = LibraryClass(PUBLIC, "K", null)
+        kotlinClass.kotlinMetadata = UnsupportedKotlinMetadata(1, intArrayOf(1, 9, 0), 0, null, null)
+        val kotlinClassPool = ClassPool(kotlinClass)
+
+        "Then writing a snapshot should fail" {
+            shouldThrow<UnsupportedOperationException> {
+                ClassPoolSnapshot.write(kotlinClassPool, 42L, ByteArrayOutputStream())
+            }
+        }
+
+        "Then a snapshot without the metadata should be restored" {
+            val kotlinOutputStream = ByteArrayOutputStream()
+            ClassPoolSnapshot.write(kotlinClassPool, 42L, true, kotlinOutputStream)
+            val restoredClassPool = ClassPoolSnapshot.read(ByteBuffer.wrap(kotlinOutputStream.toByteArray()), 42L)!!
+
+            restoredClassPool.getClass("K").name shouldBe "K"
+            (restoredClassPool.getClass("K") as LibraryClass).kotlinMetadata shouldBe null
+            kotlinClass.kotlinMetadata shouldNotBe null
+        }
+    }
+})
@@ -0,0 +1,127 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.util
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import proguard.classfile.ClassPool
+import proguard.classfile.ProgramClass
+import proguard.classfile.constant.FieldrefConstant
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import java.io.PrintWriter
+import java.io.StringWriter
+import java.util.concurrent.ForkJoinPool
+
+class ParallelClassInitializerTest : FreeSpec({
+
+    fun createProgramClassPool(): ClassPool {
+        val sources = mutableListOf(
+            JavaSource("Base.java", "public class Base { public int field; }"),
+            JavaSource("Marker.java", "public interface Marker {}"),
+            JavaSource(
+                "User.java",
+                """
+                public class User {
+                    public int use(Base base) { return base.field + Sub7.missing(); }
+                }
+                """.trimIndent(),
+            ),
+        )
+        (0 until 30).forEach { index ->
+            sources.add(JavaSource("Sub$index.java", "public class Sub$index extends Base implements Marker { static int missing() { return $index; } }"))
+        }
+        val (programClassPool, _) = ClassPoolBuilder.fromSource(*sources.toTypedArray(), initialize = false)
+
+        // Make the invocation in User refer to a method that doesn't exist.
+        programClassPool.removeClass("Sub7")
+        return programClassPool
+    }
+
+    fun subClassNames(programClassPool: ClassPool, className: String): List<String> {
+        val clazz = programClassPool.getClass(className) as ProgramClass
+        return (0 until clazz.subClassCount).map { clazz.subClasses[it].name }
+    }
+
+    val libraryClassPool = ClassPoolBuilder.libraryClassPool
+    val forkJoinPool = ForkJoinPool(4)
+
+    afterSpec { forkJoinPool.shutdown() }
+
+    "Given a program class pool initialized sequentially and in parallel" - {
+        val sequentialClassPool = createProgramClassPool()
+        val sequentialWarnings = StringWriter()
+        val sequentialWarningPrinter = WarningPrinter(PrintWriter(sequentialWarnings))
+        sequentialClassPool.classesAccept(ClassSuperHierarchyInitializer(sequentialClassPool, libraryClassPool))
+        sequentialClassPool.classesAccept(
+            ClassReferenceInitializer(
+                sequentialClassPool,
+                libraryClassPool,
+                sequentialWarningPrinter,
+                sequentialWarningPrinter,
+                sequentialWarningPrinter,
+                null,
+            ),
+        )
+        sequentialClassPool.accept(ClassSubHierarchyInitializer())
+
+        val parallelClassPool = createProgramClassPool()
+        val parallelWarnings = StringWriter()
+        val parallelWarningPrinter = WarningPrinter(PrintWriter(parallelWarnings))
+        parallelClassPool.accept(ParallelClassSuperHierarchyInitializer(parallelClassPool, libraryClassPool, null, forkJoinPool))
+        parallelClassPool.accept(
+            ParallelClassReferenceInitializer(
+                parallelClassPool,
+                libraryClassPool,
+                parallelWarningPrinter,
+                parallelWarningPrinter,
+                parallelWarningPrinter,
+                null,
+                forkJoinPool,
+            ),
+        )
+        parallelClassPool.accept(ParallelClassSubHierarchyInitializer(forkJoinPool))
+
+        "Then the subclasses should be the same, in the same order" {
+            subClassNames(parallelClassPool, "Base") shouldBe subClassNames(sequentialClassPool, "Base")
+            subClassNames(parallelClassPool, "Marker") shouldBe subClassNames(sequentialClassPool, "Marker")
+            subClassNames(parallelClassPool, "Base").size shouldBe 29
+        }
+
+        "Then the super classes should be initialized" {
+            parallelClassPool.getClass("Sub3").superClass shouldBe parallelClassPool.getClass("Base")
+        }
+
+        "Then the member references should be initialized" {
+            val user = parallelClassPool.getClass("User") as ProgramClass
+            val fieldrefConstant = (1 until user.u2constantPoolCount)
+                .map { user.constantPool[it] }
+                .filterIsInstance<FieldrefConstant>()
+                .single()
+            fieldrefConstant.referencedField shouldNotBe null
+        }
+
+        "Then the same warnings should be printed in the same order" {
+            parallelWarningPrinter.warningCount shouldBe sequentialWarningPrinter.warningCount
+            parallelWarnings.toString() shouldBe sequentialWarnings.toString()
+            parallelWarnings.toString().contains("Sub7") shouldBe true
+        }
+    }
+})
@@ -0,0 +1,153 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.util
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import proguard.classfile.Clazz
+import proguard.classfile.Method
+import proguard.classfile.attribute.CodeAttribute
+import proguard.classfile.attribute.visitor.AllAttributeVisitor
+import proguard.classfile.attribute.visitor.AttributeVisitor
+import proguard.classfile.instruction.BranchInstruction
+import proguard.classfile.instruction.Instruction
+import proguard.classfile.instruction.InstructionFactory
+import proguard.classfile.visitor.NamedMethodVisitor
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+
+class ReversePostOrderFinderTest : FreeSpec({
+
+    val (programClassPool, _) = ClassPoolBuilder.fromSource(
+        JavaSource(
+            "Test.java",
+            """
+            public class Test {
+                int test(int n) {
+                    int sum = 0;
+                    for (int i = 0; i < n; i++) {
+                        if (i % 2 == 0) {
+                            sum += i;
+                        }
+                    }
+                    return sum;
+                }
+
+                int handle(int n) {
+                    try {
+                        n = 100 / n;
+                    } catch (ArithmeticException e) {
+                        n = -1;
+                    }
+                    return n;
+                }
+            }
+            """.trimIndent(),
+        ),
+        initialize = false,
+    )
+
+    "Given a method with a loop" - {
+        val finder = ReversePostOrderFinder()
+        lateinit var code: CodeAttribute
+
+        programClassPool.classAccept(
+            "Test",
+            NamedMethodVisitor(
+                "test",
+                "(I)I",
+                AllAttributeVisitor(
+                    object : AttributeVisitor {
+                        override fun visitCodeAttribute(clazz: Clazz, method: Method, codeAttribute: CodeAttribute) {
+                            code = codeAttribute
+                            finder.visitCodeAttribute(clazz, method, codeAttribute)
+                        }
+                    },
+                ),
+            ),
+        )
+
+        val returnOffset = (0 until code.u4codeLength).first {
+            code.code[it] == Instruction.OP_IRETURN
+        }
+
+        "Then the entry block should come first" {
+            finder.isBlockStart(0) shouldBe true
+            finder.reversePostOrder(0) shouldBe 0
+        }
+
+        "Then all blocks should have distinct positions" {
+            val orders = (0 until code.u4codeLength)
+                .filter { finder.isBlockStart(it) }
+                .map { finder.reversePostOrder(it) }
+
+            orders.size shouldBe finder.blockCount()
+            orders.toSet() shouldBe (0 until finder.blockCount()).toSet()
+        }
+
+        "Then each block should come before its successors along forward branches" {
+            var offset = 0
+            while (offset < code.u4codeLength) {
+                val instruction = InstructionFactory.create(code.code, offset)
+                if (instruction.opcode == Instruction.OP_IFNE) {
+                    val target = offset + (instruction as BranchInstruction).branchOffset
+
+                    finder.reversePostOrder(offset) shouldBeLessThan finder.reversePostOrder(target)
+                }
+                offset += instruction.length(offset)
+            }
+
+            finder.reversePostOrder(0) shouldBeLessThan finder.reversePostOrder(returnOffset)
+        }
+    }
+
+    "Given a method with an exception handler" - {
+        val finder = ReversePostOrderFinder()
+        lateinit var code: CodeAttribute
+
+        programClassPool.classAccept(
+            "Test",
+            NamedMethodVisitor(
+                "handle",
+                "(I)I",
+                AllAttributeVisitor(
+                    object : AttributeVisitor {
+                        override fun visitCodeAttribute(clazz: Clazz, method: Method, codeAttribute: CodeAttribute) {
+                            code = codeAttribute
+                            finder.visitCodeAttribute(clazz, method, codeAttribute)
+                        }
+                    },
+                ),
+            ),
+        )
+
+        val returnOffset = (0 until code.u4codeLength).first {
+            code.code[it] == Instruction.OP_IRETURN
+        }
+
+        "Then the handler should come after the blocks that are reachable from the entry point" {
+            val handlerOffset = code.exceptionTable[0].u2handlerPC
+
+            val handlerOrder = finder.reversePostOrder(handlerOffset)
+
+            finder.reversePostOrder(returnOffset) shouldBeLessThan handlerOrder
+        }
+    }
+})
@@ -0,0 +1,85 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.visitor
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.ints.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import proguard.classfile.Clazz
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import java.util.Collections
+import java.util.IdentityHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicInteger
+
+class ParallelAllClassVisitorTest : FreeSpec({
+
+    val (programClassPool, _) = ClassPoolBuilder.fromSource(
+        *(0 until 40).map { JavaSource("A$it.java", "public class A$it { int f$it() { return $it; } }") }.toTypedArray(),
+        initialize = false,
+    )
+
+    val forkJoinPool = ForkJoinPool(3)
+
+    afterSpec { forkJoinPool.shutdown() }
+
+    "Given a ParallelAllClassVisitor with a caller-supplied ForkJoinPool" - {
+        val visitedClasses = Collections.synchronizedMap(IdentityHashMap<Clazz, Int>())
+        val visitorCount = AtomicInteger()
+
+        repeat(2) {
+            programClassPool.accept(
+                ParallelAllClassVisitor(
+                    {
+                        visitorCount.incrementAndGet()
+                        ClassVisitor { clazz -> visitedClasses.merge(clazz, 1, Int::plus) }
+                    },
+                    forkJoinPool,
+                    8,
+                ),
+            )
+        }
+
+        "Then every class should be visited once per call" {
+            visitedClasses.size shouldBe programClassPool.size()
+            visitedClasses.values.all { it == 2 } shouldBe true
+        }
+
+        "Then at most one class visitor should be created per chunk" {
+            visitorCount.get() shouldBeLessThanOrEqual 2 * 8
+        }
+
+        "Then the pool should still be usable afterwards" {
+            forkJoinPool.isShutdown shouldBe false
+        }
+    }
+
+    "Given a ParallelAllClassVisitor whose class visitor throws an exception" - {
+        val visitor = ParallelAllClassVisitor(
+            { ClassVisitor { throw IllegalStateException("Unexpected class") } },
+            forkJoinPool,
+        )
+
+        "Then the exception should be rethrown on the calling thread" {
+            shouldThrow<IllegalStateException> { programClassPool.accept(visitor) }
+        }
+    }
+})
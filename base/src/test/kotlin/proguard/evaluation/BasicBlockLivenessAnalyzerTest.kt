@@ -0,0 +1,190 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import proguard.classfile.Clazz
+import proguard.classfile.Method
+import proguard.classfile.attribute.CodeAttribute
+import proguard.classfile.attribute.visitor.AllAttributeVisitor
+import proguard.classfile.attribute.visitor.AttributeVisitor
+import proguard.classfile.editor.CodeAttributeEditor
+import proguard.classfile.instruction.Instruction
+import proguard.classfile.instruction.InstructionFactory
+import proguard.classfile.instruction.SimpleInstruction
+import proguard.classfile.instruction.VariableInstruction
+import proguard.classfile.visitor.AllMethodVisitor
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+
+class BasicBlockLivenessAnalyzerTest : FreeSpec({
+
+    val manyVariables = (1 until 70).joinToString("\n") { "int v$it = v${it - 1} + $it;" }
+
+    val (programClassPool, _) = ClassPoolBuilder.fromSource(
+        JavaSource(
+            "Test.java",
+            """
+            public class Test {
+                int loops(int n, int[] a) {
+                    int sum = 0;
+                    for (int i = 0; i < n; i++) {
+                        for (int j = 0; j < a.length; j++) {
+                            if (a[j] > i) {
+                                sum += a[j];
+                            } else {
+                                sum -= i;
+                            }
+                        }
+                    }
+                    long total = sum;
+                    int unused = n;
+                    n = 1;
+                    return (int) total + n;
+                }
+
+                String exceptions(Object o, int i) {
+                    int j = i;
+                    try {
+                        return o.toString();
+                    } catch (RuntimeException e) {
+                        return String.valueOf(j);
+                    } finally {
+                        o.hashCode();
+                    }
+                }
+
+                int manyVariables(int i) {
+                    int v0 = i;
+                    $manyVariables
+                    return v0 + v69;
+                }
+            }
+            """.trimIndent(),
+        ),
+        initialize = false,
+    )
+
+    fun accept(methodName: String, visitor: (Clazz, Method, CodeAttribute) -> Unit) {
+        programClassPool.classAccept(
+            "Test",
+            AllMethodVisitor(
+                AllAttributeVisitor(
+                    object : AttributeVisitor {
+                        override fun visitCodeAttribute(clazz: Clazz, method: Method, codeAttribute: CodeAttribute) {
+                            if (method.getName(clazz) == methodName) {
+                                visitor(clazz, method, codeAttribute)
+                            }
+                        }
+                    },
+                ),
+            ),
+        )
+    }
+
+    fun offsets(codeAttribute: CodeAttribute): List<Int> {
+        val offsets = mutableListOf<Int>()
+        var offset = 0
+        while (offset < codeAttribute.u4codeLength) {
+            offsets.add(offset)
+            offset += InstructionFactory.create(codeAttribute.code, offset).length(offset)
+        }
+        return offsets
+    }
+
+    fun liveness(analyzer: BasicBlockLivenessAnalyzer, codeAttribute: CodeAttribute): List<String> =
+        offsets(codeAttribute).map { offset ->
+            (0 until codeAttribute.u2maxLocals).joinToString("") { if (analyzer.isAliveBefore(offset, it)) "x" else "." } + " " +
+                (0 until codeAttribute.u2maxLocals).joinToString("") { if (analyzer.isAliveAfter(offset, it)) "x" else "." }
+        }
+
+    "Given methods analyzed with and without partial evaluation" - {
+        for (methodName in listOf("loops", "exceptions")) {
+            "Then all variables that are alive with partial evaluation of $methodName should also be alive without it" {
+                accept(methodName) { clazz, method, codeAttribute ->
+                    val livenessAnalyzer = LivenessAnalyzer()
+                    val basicBlockLivenessAnalyzer = BasicBlockLivenessAnalyzer()
+                    livenessAnalyzer.visitCodeAttribute(clazz, method, codeAttribute)
+                    basicBlockLivenessAnalyzer.visitCodeAttribute(clazz, method, codeAttribute)
+
+                    for (offset in offsets(codeAttribute).filter { livenessAnalyzer.isTraced(it) }) {
+                        for (variable in 0 until codeAttribute.u2maxLocals) {
+                            if (livenessAnalyzer.isAliveBefore(offset, variable)) {
+                                basicBlockLivenessAnalyzer.isAliveBefore(offset, variable) shouldBe true
+                            }
+                            if (livenessAnalyzer.isAliveAfter(offset, variable)) {
+                                basicBlockLivenessAnalyzer.isAliveAfter(offset, variable) shouldBe true
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    "Given a method with more than 64 variables" - {
+        "Then the liveness of all variables should be computed" {
+            accept("manyVariables") { clazz, method, codeAttribute ->
+                val analyzer = BasicBlockLivenessAnalyzer()
+                analyzer.visitCodeAttribute(clazz, method, codeAttribute)
+
+                val storeOffset = offsets(codeAttribute).first {
+                    val instruction = InstructionFactory.create(codeAttribute.code, it)
+                    instruction is VariableInstruction && instruction.isStore && instruction.variableIndex == 71
+                }
+
+                analyzer.isAliveBefore(storeOffset, 71) shouldBe false
+                analyzer.isAliveAfter(storeOffset, 71) shouldBe true
+                analyzer.isAliveAfter(storeOffset, 70) shouldBe false
+                analyzer.isAliveAfter(storeOffset, 2) shouldBe true
+            }
+        }
+    }
+
+    "Given a method that is changed after the analysis" - {
+        for (methodName in listOf("loops", "exceptions")) {
+            "Then the recomputed liveness of $methodName should be the same as a new analysis" {
+                accept(methodName) { clazz, method, codeAttribute ->
+                    val analyzer = BasicBlockLivenessAnalyzer()
+                    analyzer.visitCodeAttribute(clazz, method, codeAttribute)
+                    val blockEvaluationCount = analyzer.blockEvaluationCount
+
+                    // Replace the first store of an int by a pop instruction.
+                    val storeOffset = offsets(codeAttribute).first {
+                        InstructionFactory.create(codeAttribute.code, it).canonicalOpcode() == Instruction.OP_ISTORE
+                    }
+                    val codeAttributeEditor = CodeAttributeEditor()
+                    codeAttributeEditor.reset(codeAttribute.u4codeLength)
+                    codeAttributeEditor.replaceInstruction(storeOffset, SimpleInstruction(Instruction.OP_POP))
+                    codeAttributeEditor.visitCodeAttribute(clazz, method, codeAttribute)
+
+                    analyzer.recompute(clazz, method, codeAttribute, codeAttributeEditor)
+
+                    val newAnalyzer = BasicBlockLivenessAnalyzer()
+                    newAnalyzer.visitCodeAttribute(clazz, method, codeAttribute)
+
+                    liveness(analyzer, codeAttribute) shouldBe liveness(newAnalyzer, codeAttribute)
+                    analyzer.blockEvaluationCount shouldBeLessThan blockEvaluationCount
+                }
+            }
+        }
+    }
+})
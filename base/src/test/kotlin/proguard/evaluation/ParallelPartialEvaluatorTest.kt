@@ -0,0 +1,120 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.ints.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import proguard.classfile.Clazz
+import proguard.classfile.Method
+import proguard.classfile.attribute.CodeAttribute
+import proguard.evaluation.value.ParticularValueFactory
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicInteger
+
+class ParallelPartialEvaluatorTest : FreeSpec({
+
+    val (programClassPool, _) = ClassPoolBuilder.fromSource(
+        *(0 until 20).map {
+            JavaSource("A$it.java", "public class A$it { int f(int i) { return i + $it; } int g() { return f($it); } }")
+        }.toTypedArray(),
+        initialize = false,
+    )
+
+    val executorService = ForkJoinPool(4)
+
+    afterSpec { executorService.shutdown() }
+
+    "Given a class pool evaluated in parallel" - {
+        val createdEvaluators = AtomicInteger()
+        val stackSizes = ConcurrentHashMap<String, Int>()
+
+        programClassPool.accept(
+            ParallelPartialEvaluator(
+                {
+                    createdEvaluators.incrementAndGet()
+                    PartialEvaluator(ParticularValueFactory())
+                },
+                { clazz, method, codeAttribute, partialEvaluator ->
+                    // The stack before the return instruction.
+                    val returnOffset = (0 until codeAttribute.u4codeLength).last { partialEvaluator.isTraced(it) }
+                    stackSizes[clazz.name + '.' + method.getName(clazz)] = partialEvaluator.getStackBefore(returnOffset).size()
+                },
+                executorService,
+            ),
+        )
+
+        "Then all methods should be evaluated" {
+            stackSizes.size shouldBe 60
+            stackSizes["A7.f"] shouldBe 1
+            stackSizes["A7.<init>"] shouldBe 0
+        }
+
+        "Then the partial evaluators should be reused" {
+            createdEvaluators.get() shouldBeLessThanOrEqual 4
+        }
+    }
+
+    "Given a result consumer that doesn't handle failures" - {
+        val failingEvaluator = object : PartialEvaluator() {
+            override fun visitCodeAttribute(clazz: Clazz, method: Method, codeAttribute: CodeAttribute) {
+                throw IllegalStateException("Failed [" + clazz.name + "]")
+            }
+        }
+
+        "Then the exceptions should be rethrown" {
+            shouldThrow<IllegalStateException> {
+                programClassPool.accept(
+                    ParallelPartialEvaluator({ failingEvaluator }, { _, _, _, _ -> }, executorService),
+                )
+            }
+        }
+    }
+
+    "Given a result consumer that handles failures" - {
+        val failedMethods = ConcurrentHashMap.newKeySet<String>()
+        val failingEvaluator = object : PartialEvaluator() {
+            override fun visitCodeAttribute(clazz: Clazz, method: Method, codeAttribute: CodeAttribute) {
+                throw IllegalStateException("Failed [" + clazz.name + "]")
+            }
+        }
+
+        programClassPool.accept(
+            ParallelPartialEvaluator(
+                { failingEvaluator },
+                object : ParallelPartialEvaluator.ResultConsumer {
+                    override fun evaluated(clazz: Clazz, method: Method, codeAttribute: CodeAttribute, partialEvaluator: PartialEvaluator) {}
+
+                    override fun failed(clazz: Clazz, method: Method, codeAttribute: CodeAttribute, exception: RuntimeException) {
+                        failedMethods.add(clazz.name + '.' + method.getName(clazz))
+                    }
+                },
+                executorService,
+            ),
+        )
+
+        "Then all failures should be reported" {
+            failedMethods.size shouldBe 60
+        }
+    }
+})
@@ -0,0 +1,128 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.classfile.Clazz
+import proguard.classfile.Method
+import proguard.classfile.attribute.Attribute.CODE
+import proguard.classfile.attribute.CodeAttribute
+import proguard.classfile.attribute.visitor.AllAttributeVisitor
+import proguard.classfile.attribute.visitor.AttributeNameFilter
+import proguard.classfile.attribute.visitor.AttributeVisitor
+import proguard.classfile.visitor.NamedMethodVisitor
+import proguard.evaluation.value.ParticularValueFactory
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+
+class PartialEvaluatorCompactFramesTest : FreeSpec({
+
+    val (programClassPool, _) = ClassPoolBuilder.fromSource(
+        JavaSource(
+            "Test.java",
+            """
+            public class Test {
+                int test(int a, int b) {
+                    int c = a + b;
+                    int d = c * 2;
+                    if (d > 10) {
+                        d = d - a;
+                    }
+                    return d + c;
+                }
+            }
+            """.trimIndent(),
+        ),
+        initialize = false,
+    )
+
+    fun evaluate(partialEvaluator: PartialEvaluator, visitor: (CodeAttribute) -> Unit) {
+        programClassPool.classAccept(
+            "Test",
+            NamedMethodVisitor(
+                "test",
+                "(II)I",
+                AllAttributeVisitor(
+                    AttributeNameFilter(
+                        CODE,
+                        object : AttributeVisitor {
+                            override fun visitCodeAttribute(
+                                clazz: Clazz,
+                                method: Method,
+                                codeAttribute: CodeAttribute,
+                            ) {
+                                partialEvaluator.visitCodeAttribute(clazz, method, codeAttribute)
+                                visitor(codeAttribute)
+                            }
+                        },
+                    ),
+                ),
+            ),
+        )
+    }
+
+    fun frames(partialEvaluator: PartialEvaluator, codeAttribute: CodeAttribute): List<String> =
+        (0 until codeAttribute.u4codeLength)
+            .filter { partialEvaluator.isTraced(it) }
+            .map {
+                "$it ${partialEvaluator.getVariablesBefore(it)} ${partialEvaluator.getStackBefore(it)} " +
+                    "${partialEvaluator.getVariablesAfter(it)} ${partialEvaluator.getStackAfter(it)}"
+            }
+
+    "Given a partial evaluator with compact frames" - {
+        val plainEvaluator = PartialEvaluator.Builder.create()
+            .setValueFactory(ParticularValueFactory())
+            .build()
+        val compactEvaluator = PartialEvaluator.Builder.create()
+            .setValueFactory(ParticularValueFactory())
+            .setCompactFrames(true)
+            .build()
+
+        "Then the results should be the same as without compact frames" {
+            evaluate(plainEvaluator) { plainCode ->
+                evaluate(compactEvaluator) { compactCode ->
+                    frames(compactEvaluator, compactCode) shouldBe frames(plainEvaluator, plainCode)
+                }
+            }
+        }
+
+        "Then unchanged frames should be shared between instructions" {
+            evaluate(compactEvaluator) { codeAttribute ->
+                val offsets = (0 until codeAttribute.u4codeLength).filter { compactEvaluator.isTraced(it) }
+
+                // The first instruction (iload_1) doesn't change the variables.
+                compactEvaluator.getVariablesAfter(offsets[0]) shouldBeSameInstanceAs
+                    compactEvaluator.getVariablesBefore(offsets[0])
+                compactEvaluator.getVariablesBefore(offsets[1]) shouldBeSameInstanceAs
+                    compactEvaluator.getVariablesAfter(offsets[0])
+            }
+        }
+
+        "Then the results should still be correct when the evaluator is reused" {
+            evaluate(compactEvaluator) {}
+            evaluate(compactEvaluator) { codeAttribute ->
+                evaluate(plainEvaluator) { plainCode ->
+                    frames(compactEvaluator, codeAttribute) shouldBe frames(plainEvaluator, plainCode)
+                }
+            }
+        }
+    }
+})
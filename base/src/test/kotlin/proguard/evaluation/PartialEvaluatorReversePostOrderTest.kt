@@ -0,0 +1,135 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.ints.shouldBeGreaterThan
+import io.kotest.matchers.ints.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import proguard.classfile.Clazz
+import proguard.classfile.Method
+import proguard.classfile.attribute.CodeAttribute
+import proguard.classfile.attribute.visitor.AllAttributeVisitor
+import proguard.classfile.attribute.visitor.AttributeVisitor
+import proguard.classfile.visitor.AllMethodVisitor
+import proguard.evaluation.value.ParticularValueFactory
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+
+class PartialEvaluatorReversePostOrderTest : FreeSpec({
+
+    val (programClassPool, _) = ClassPoolBuilder.fromSource(
+        JavaSource(
+            "Test.java",
+            """
+            public class Test {
+                int loops(int n, int[] a) {
+                    int sum = 0;
+                    for (int i = 0; i < n; i++) {
+                        for (int j = 0; j < a.length; j++) {
+                            if (a[j] > i) {
+                                sum += a[j];
+                            } else if (a[j] < 0) {
+                                sum -= i;
+                            } else {
+                                continue;
+                            }
+                        }
+                    }
+                    return sum;
+                }
+
+                String exceptions(Object o) {
+                    try {
+                        return o.toString();
+                    } catch (RuntimeException e) {
+                        return null;
+                    } finally {
+                        o.hashCode();
+                    }
+                }
+            }
+            """.trimIndent(),
+        ),
+        initialize = false,
+    )
+
+    data class Result(val frames: List<String>, val evaluations: Int, val maxEvaluations: Int)
+
+    fun evaluate(partialEvaluator: PartialEvaluator): Map<String, Result> {
+        val results = mutableMapOf<String, Result>()
+
+        programClassPool.classAccept(
+            "Test",
+            AllMethodVisitor(
+                AllAttributeVisitor(
+                    object : AttributeVisitor {
+                        override fun visitCodeAttribute(clazz: Clazz, method: Method, codeAttribute: CodeAttribute) {
+                            partialEvaluator.visitCodeAttribute(clazz, method, codeAttribute)
+
+                            // Compare the frames as sets of values, independent of their order.
+                            val frames = (0 until codeAttribute.u4codeLength)
+                                .filter { partialEvaluator.isTraced(it) }
+                                .map {
+                                    "$it ${partialEvaluator.getStackBefore(it).hashCode()} " +
+                                        "${partialEvaluator.getVariablesBefore(it).hashCode()} " +
+                                        "${partialEvaluator.branchTargets(it)?.hashCode()}"
+                                }
+
+                            results[method.getName(clazz)] = Result(
+                                frames,
+                                partialEvaluator.getInstructionEvaluationCount(),
+                                partialEvaluator.getMaxInstructionEvaluationCount(),
+                            )
+                        }
+                    },
+                ),
+            ),
+        )
+
+        return results
+    }
+
+    "Given partial evaluators with and without a reverse post-order worklist" - {
+        val depthFirstResults = evaluate(
+            PartialEvaluator.Builder.create()
+                .setValueFactory(ParticularValueFactory())
+                .build(),
+        )
+        val reversePostOrderResults = evaluate(
+            PartialEvaluator.Builder.create()
+                .setValueFactory(ParticularValueFactory())
+                .setReversePostOrderWorklist(true)
+                .build(),
+        )
+
+        "Then they should compute the same frames" {
+            reversePostOrderResults.mapValues { it.value.frames } shouldBe
+                depthFirstResults.mapValues { it.value.frames }
+        }
+
+        "Then the reverse post-order worklist should need no more evaluations" {
+            for ((name, result) in reversePostOrderResults) {
+                result.evaluations shouldBeGreaterThan 0
+                result.evaluations shouldBeLessThanOrEqual depthFirstResults.getValue(name).evaluations
+                result.maxEvaluations shouldBeLessThanOrEqual depthFirstResults.getValue(name).maxEvaluations
+            }
+        }
+    }
+})
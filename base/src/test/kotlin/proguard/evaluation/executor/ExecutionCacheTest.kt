@@ -0,0 +1,104 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation.executor
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.longs.shouldBeGreaterThan
+import io.kotest.matchers.shouldBe
+import proguard.evaluation.ExecutingInvocationUnit
+import proguard.evaluation.ParticularReferenceValueFactory
+import proguard.evaluation.PartialEvaluator
+import proguard.evaluation.value.ArrayReferenceValueFactory
+import proguard.evaluation.value.ParticularValueFactory
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import proguard.testutils.PartialEvaluatorUtil
+
+class ExecutionCacheTest : FreeSpec({
+
+    val (programClassPool, libraryClassPool) = ClassPoolBuilder.fromSource(
+        JavaSource(
+            "Test.java",
+            """
+            public class Test {
+                public String test() {
+                    String a = "xhello ".substring(1).toUpperCase().trim();
+                    String b = "xhello ".substring(1).toUpperCase().trim();
+                    String c = "xworld".substring(1).concat("!");
+                    return a + b + c;
+                }
+            }
+            """.trimIndent(),
+        ),
+        javacArguments = listOf("-g", "-source", "1.8", "-target", "1.8"),
+    )
+
+    fun evaluate(executionCache: ExecutionCache?): List<Any?> {
+        val valueFactory = ParticularValueFactory(ArrayReferenceValueFactory(), ParticularReferenceValueFactory())
+        val invocationUnit = ExecutingInvocationUnit.Builder(programClassPool, libraryClassPool)
+            .setExecutionCache(executionCache)
+            .build(valueFactory)
+        val partialEvaluator = PartialEvaluator(valueFactory, invocationUnit, false)
+
+        val (instructions, variableTable) = PartialEvaluatorUtil.evaluate(
+            "Test",
+            "test",
+            "()Ljava/lang/String;",
+            programClassPool,
+            partialEvaluator,
+        )
+
+        val (lastOffset, _) = instructions.last()
+        val variables = partialEvaluator.getVariablesBefore(lastOffset)
+
+        return listOf("a", "b", "c").map { variables.getValue(variableTable[it]!!).referenceValue().value() }
+    }
+
+    "Given invocation units that share an execution cache" - {
+        val executionCache = ExecutionCache(100)
+
+        val uncachedValues = evaluate(null)
+        val cachedValues1 = evaluate(executionCache)
+        val cachedValues2 = evaluate(executionCache)
+
+        "Then the results should be the same as without cache" {
+            uncachedValues shouldBe listOf("HELLO", "HELLO", "world!")
+            cachedValues1 shouldBe uncachedValues
+            cachedValues2 shouldBe uncachedValues
+        }
+
+        "Then repeated calls should hit the cache" {
+            executionCache.hitCount shouldBeGreaterThan 0L
+            executionCache.missCount shouldBeGreaterThan 0L
+            executionCache.size() shouldBe executionCache.missCount.toInt()
+        }
+    }
+
+    "Given a small execution cache" - {
+        val executionCache = ExecutionCache(1)
+
+        val cachedValues = evaluate(executionCache)
+
+        "Then it should evict the least recently used results" {
+            cachedValues shouldBe listOf("HELLO", "HELLO", "world!")
+            executionCache.size() shouldBe 1
+            executionCache.evictionCount shouldBeGreaterThan 0L
+        }
+    }
+})
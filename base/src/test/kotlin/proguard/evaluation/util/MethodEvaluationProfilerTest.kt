@@ -0,0 +1,151 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation.util
+
+import io.kotest.assertions.throwables.shouldThrowAny
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.longs.shouldBeGreaterThan
+import io.kotest.matchers.longs.shouldBeGreaterThanOrEqual
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import proguard.classfile.Clazz
+import proguard.classfile.Method
+import proguard.classfile.attribute.CodeAttribute
+import proguard.classfile.attribute.visitor.AllAttributeVisitor
+import proguard.classfile.instruction.Instruction
+import proguard.classfile.instruction.visitor.InstructionVisitor
+import proguard.classfile.visitor.AllMethodVisitor
+import proguard.evaluation.PartialEvaluator
+import proguard.evaluation.value.ParticularValueFactory
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import proguard.testutils.findMethod
+
+class MethodEvaluationProfilerTest : FreeSpec({
+
+    val (programClassPool, _) = ClassPoolBuilder.fromSource(
+        JavaSource(
+            "Test.java",
+            """
+            public class Test {
+                int loop(int n) {
+                    int sum = 0;
+                    for (int i = 0; i < n; i++) {
+                        for (int j = 0; j < i; j++) {
+                            sum += i * j;
+                        }
+                    }
+                    return sum;
+                }
+
+                int constant() {
+                    return 42;
+                }
+            }
+            """.trimIndent(),
+        ),
+        initialize = false,
+    )
+
+    val clazz = programClassPool.getClass("Test")
+    val loop = clazz.findMethod("loop")
+    val constant = clazz.findMethod("constant")
+
+    fun evaluate(report: MethodEvaluationReport) {
+        val partialEvaluator = PartialEvaluator.Builder.create()
+            .setValueFactory(ParticularValueFactory())
+            .setStateTracker(MethodEvaluationProfiler(report))
+            .build()
+
+        programClassPool.classesAccept(AllMethodVisitor(AllAttributeVisitor(partialEvaluator)))
+    }
+
+    "Given a report of an evaluated class pool" - {
+        val report = MethodEvaluationReport()
+        evaluate(report)
+
+        "Then all methods should be profiled" {
+            report.profiles.size shouldBe 3
+        }
+
+        "Then the costs of a method should be measured" {
+            val profile = report.getProfile(constant)
+            profile shouldNotBe null
+            profile.evaluationCount shouldBe 1
+            profile.failureCount shouldBe 0
+            profile.instructionEvaluationCount shouldBe 2L
+            profile.blockEvaluationCount shouldBe 1L
+            profile.blockReevaluationCount shouldBe 0L
+            profile.generalizationCount shouldBe 0L
+            profile.wallTimeNanos shouldBeGreaterThanOrEqual 0L
+        }
+
+        "Then loops should be re-evaluated" {
+            val profile = report.getProfile(loop)
+            profile.instructionEvaluationCount shouldBeGreaterThan report.getProfile(constant).instructionEvaluationCount
+            profile.blockReevaluationCount shouldBeGreaterThan 0L
+        }
+
+        "Then the top methods should be ordered by cost" {
+            val topProfiles = report.getTopProfiles(2, MethodEvaluationReport.BY_INSTRUCTION_EVALUATIONS)
+            topProfiles.size shouldBe 2
+            topProfiles[0].method shouldBe loop
+        }
+
+        "Then the report should list the top methods" {
+            val lines = report.toString(1).lines().filter { it.isNotEmpty() }
+            lines.size shouldBe 2
+            lines[0] shouldBe "Method evaluation profiles (top 1 of 3):"
+        }
+    }
+
+    "Given a report of a class pool that is evaluated twice" - {
+        val report = MethodEvaluationReport()
+        evaluate(report)
+        evaluate(report)
+
+        "Then the costs should be accumulated" {
+            val profile = report.getProfile(constant)
+            profile.evaluationCount shouldBe 2
+            profile.instructionEvaluationCount shouldBe 4L
+        }
+    }
+
+    "Given an evaluation that fails" - {
+        val report = MethodEvaluationReport()
+        val partialEvaluator = PartialEvaluator.Builder.create()
+            .setStateTracker(MethodEvaluationProfiler(report))
+            .setExtraInstructionVisitor(object : InstructionVisitor {
+                override fun visitAnyInstruction(clazz: Clazz, method: Method, codeAttribute: CodeAttribute, offset: Int, instruction: Instruction) {
+                    throw IllegalStateException("Failed")
+                }
+            })
+            .build()
+
+        shouldThrowAny {
+            constant.accept(clazz, AllAttributeVisitor(partialEvaluator))
+        }
+
+        "Then the failure should be reported" {
+            val profile = report.getProfile(constant)
+            profile.evaluationCount shouldBe 1
+            profile.failureCount shouldBe 1
+        }
+    }
+})
@@ -0,0 +1,123 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation.util.jsonprinter
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.collections.shouldNotBeEmpty
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldEndWith
+import io.kotest.matchers.string.shouldStartWith
+import proguard.classfile.attribute.visitor.AllAttributeVisitor
+import proguard.classfile.visitor.AllMethodVisitor
+import proguard.evaluation.PartialEvaluator
+import proguard.evaluation.value.ArrayReferenceValueFactory
+import proguard.evaluation.value.ParticularReferenceValueFactory
+import proguard.evaluation.value.ParticularValueFactory
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import proguard.util.ListParser
+import proguard.util.NameParser
+import java.io.StringWriter
+
+class StreamingJsonPrinterTest : FreeSpec({
+
+    val (programClassPool, _) = ClassPoolBuilder.fromSource(
+        JavaSource(
+            "Test.java",
+            """
+            public class Test {
+                int loop(int n) {
+                    int sum = 0;
+                    for (int i = 0; i < n; i++) {
+                        sum += i;
+                    }
+                    return sum;
+                }
+
+                String string() {
+                    return "a \"quoted\" string";
+                }
+            }
+            """.trimIndent(),
+        ),
+        initialize = false,
+    )
+
+    fun print(printer: StreamingJsonPrinter) {
+        val partialEvaluator = PartialEvaluator.Builder.create()
+            .setValueFactory(ParticularValueFactory(ArrayReferenceValueFactory(), ParticularReferenceValueFactory()))
+            .setStateTracker(printer)
+            .build()
+
+        programClassPool.classesAccept(AllMethodVisitor(AllAttributeVisitor(partialEvaluator)))
+    }
+
+    fun events(lines: List<String>, event: String) = lines.filter { it.startsWith("{\"event\":\"$event\"") }
+
+    "Given a printer without filters" - {
+        val writer = StringWriter()
+        print(StreamingJsonPrinter(writer))
+        val lines = writer.toString().lines().filter { it.isNotEmpty() }
+
+        "Then every event should be a JSON object on a single line" {
+            lines.shouldNotBeEmpty()
+            lines.forEach {
+                it shouldStartWith "{\"event\":"
+                it shouldEndWith "}"
+            }
+        }
+
+        "Then the events of all methods should be printed" {
+            events(lines, "startCodeAttribute").size shouldBe 3
+            events(lines, "evaluationResults").size shouldBe 3
+            events(lines, "startInstructionEvaluation").shouldNotBeEmpty()
+        }
+
+        "Then strings should be escaped" {
+            lines.any { it.contains("a \\\"quoted\\\" string") } shouldBe true
+            lines.none { it.contains("a \"quoted\" string") } shouldBe true
+        }
+    }
+
+    "Given a printer with a method name filter" - {
+        val writer = StringWriter()
+        print(StreamingJsonPrinter(writer, null, ListParser(NameParser()).parse("loop"), 0))
+        val lines = writer.toString().lines().filter { it.isNotEmpty() }
+
+        "Then only the events of the matching methods should be printed" {
+            val startEvents = events(lines, "startCodeAttribute")
+            startEvents.size shouldBe 1
+            startEvents[0].contains("\"method\":\"loop(I)I\"") shouldBe true
+        }
+    }
+
+    "Given a printer with an evaluation count threshold" - {
+        val writer = StringWriter()
+        print(StreamingJsonPrinter(writer, null, null, 1000))
+        val lines = writer.toString().lines().filter { it.isNotEmpty() }
+
+        "Then only the events at the code attribute and block levels should be printed" {
+            events(lines, "startCodeAttribute").size shouldBe 3
+            events(lines, "startInstructionBlock").shouldNotBeEmpty()
+            events(lines, "startInstructionEvaluation").shouldBeEmpty()
+            events(lines, "afterInstructionEvaluation").shouldBeEmpty()
+        }
+    }
+})
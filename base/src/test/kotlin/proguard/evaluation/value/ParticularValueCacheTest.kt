@@ -0,0 +1,83 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.evaluation.value
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import io.kotest.matchers.types.shouldNotBeSameInstanceAs
+import proguard.analysis.MetricsRegistry
+
+class ParticularValueCacheTest : FreeSpec({
+
+    val valueFactory = ParticularValueFactory()
+
+    "Given small particular values" - {
+        "Then the value factory should return shared instances" {
+            valueFactory.createIntegerValue(100) shouldBeSameInstanceAs valueFactory.createIntegerValue(100)
+            valueFactory.createLongValue(-7L) shouldBeSameInstanceAs valueFactory.createLongValue(-7L)
+            valueFactory.createFloatValue(3.0f) shouldBeSameInstanceAs valueFactory.createFloatValue(3.0f)
+            valueFactory.createDoubleValue(1.0) shouldBeSameInstanceAs valueFactory.createDoubleValue(1.0)
+        }
+
+        "Then arithmetic should return shared instances" {
+            val sum = valueFactory.createIntegerValue(40).add(valueFactory.createIntegerValue(2))
+
+            sum shouldBeSameInstanceAs valueFactory.createIntegerValue(42)
+            sum.convertToLong() shouldBeSameInstanceAs valueFactory.createLongValue(42L)
+        }
+    }
+
+    "Given large particular values" - {
+        "Then the value factory should return equal but new instances" {
+            val value1 = valueFactory.createIntegerValue(100000)
+            val value2 = valueFactory.createIntegerValue(100000)
+
+            value1 shouldBe value2
+            value1 shouldNotBeSameInstanceAs value2
+        }
+    }
+
+    "Given negative zero" - {
+        "Then the value factory should distinguish it from positive zero" {
+            valueFactory.createFloatValue(-0.0f).value() shouldBe -0.0f
+            valueFactory.createFloatValue(-0.0f) shouldNotBeSameInstanceAs valueFactory.createFloatValue(0.0f)
+            valueFactory.createDoubleValue(-0.0) shouldNotBeSameInstanceAs valueFactory.createDoubleValue(0.0)
+        }
+    }
+
+    "Given a value factory with metrics" - {
+        val metrics = MetricsRegistry()
+        val countingValueFactory = ParticularValueFactory(
+            ArrayReferenceValueFactory(),
+            TypedReferenceValueFactory(),
+            metrics,
+        )
+
+        countingValueFactory.createIntegerValue(1)
+        countingValueFactory.createIntegerValue(1000000)
+        countingValueFactory.createDoubleValue(0.5)
+        valueFactory.createIntegerValue(2)
+
+        "Then only its own created and reused values should be counted" {
+            metrics.counter(ParticularValueFactory.REUSED_VALUE_COUNTER).sum() shouldBe 1
+            metrics.counter(ParticularValueFactory.CREATED_VALUE_COUNTER).sum() shouldBe 2
+        }
+    }
+})
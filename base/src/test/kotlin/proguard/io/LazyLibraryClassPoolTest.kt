@@ -0,0 +1,142 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.classfile.ClassPool
+import proguard.classfile.LibraryClass
+import proguard.classfile.LibraryField
+import proguard.classfile.LibraryMethod
+import proguard.classfile.io.ProgramClassWriter
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.nio.file.Files
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class LazyLibraryClassPoolTest : FreeSpec({
+
+    val (programClassPool, _) = ClassPoolBuilder.fromSource(
+        JavaSource("A.java", "public class A {}"),
+        JavaSource("B.java", "public class B extends A { void b() {} }"),
+        JavaSource("C.java", "public class C extends A {}"),
+        JavaSource("D.java", "public class D {}"),
+        JavaSource("E.java", "public class E { public D d; public D e(C c, int[] i, A[] a) { return d; } }"),
+        initialize = false,
+    )
+
+    val jarFile = File.createTempFile("lazy", ".jar")
+    jarFile.deleteOnExit()
+    ZipOutputStream(FileOutputStream(jarFile)).use { zipOutputStream ->
+        listOf("A", "B", "C", "D").forEach { name ->
+            zipOutputStream.putNextEntry(ZipEntry("$name.class"))
+            programClassPool.getClass(name).accept(ProgramClassWriter(DataOutputStream(zipOutputStream)))
+            zipOutputStream.closeEntry()
+        }
+    }
+
+    "Given a lazy library class pool with an archive" - {
+        val libraryClassPool = LazyLibraryClassPool(ClassPool())
+        libraryClassPool.addClassPathEntry(jarFile)
+
+        "Then no classes should be read initially" {
+            libraryClassPool.size() shouldBe 0
+            libraryClassPool.unloadedClassCount() shouldBe 4
+        }
+
+        "Then retrieving a class should read it and its superclass" {
+            val clazzB = libraryClassPool.getClass("B") as LibraryClass
+            val clazzA = libraryClassPool.getClass("A") as LibraryClass
+
+            clazzB.findMethod("b", "()V") shouldBe clazzB.methods[0]
+            clazzB.superClass shouldBeSameInstanceAs clazzA
+            clazzA.subClasses.take(clazzA.subClassCount) shouldBe listOf(clazzB)
+            libraryClassPool.size() shouldBe 2
+        }
+
+        "Then retrieving an unknown class should return null" {
+            libraryClassPool.getClass("E") shouldBe null
+        }
+
+        "Then loading all classes should read the remaining classes" {
+            libraryClassPool.loadAllClasses()
+
+            libraryClassPool.size() shouldBe 4
+            libraryClassPool.unloadedClassCount() shouldBe 0
+            val clazzA = libraryClassPool.getClass("A") as LibraryClass
+            clazzA.subClassCount shouldBe 2
+        }
+    }
+
+    "Given a lazy library class pool with a directory" - {
+        val directory = Files.createTempDirectory("lazy").toFile()
+        directory.deleteOnExit()
+        val classFile = File(directory, "D.class")
+        classFile.deleteOnExit()
+        DataOutputStream(FileOutputStream(classFile)).use {
+            programClassPool.getClass("D").accept(ProgramClassWriter(it))
+        }
+
+        val libraryClassPool = LazyLibraryClassPool(ClassPool())
+        libraryClassPool.addClassPathEntry(directory)
+
+        "Then the classes should be read when they are retrieved" {
+            libraryClassPool.unloadedClassCount() shouldBe 1
+            libraryClassPool.getClass("D")?.name shouldBe "D"
+            libraryClassPool.unloadedClassCount() shouldBe 0
+        }
+    }
+
+    "Given a lazy library class pool with classes that are referenced by member descriptors" - {
+        val directory = Files.createTempDirectory("lazy").toFile()
+        directory.deleteOnExit()
+        listOf("A", "C", "D", "E").forEach { name ->
+            val classFile = File(directory, "$name.class")
+            classFile.deleteOnExit()
+            DataOutputStream(FileOutputStream(classFile)).use {
+                programClassPool.getClass(name).accept(ProgramClassWriter(it))
+            }
+        }
+
+        val libraryClassPool = LazyLibraryClassPool(ClassPool())
+        libraryClassPool.addClassPathEntry(directory)
+
+        "Then the member references should be filled out as the referenced classes are read" {
+            val clazzA = libraryClassPool.getClass("A")
+            val clazzE = libraryClassPool.getClass("E") as LibraryClass
+            val field = clazzE.findField("d", "LD;") as LibraryField
+            val method = clazzE.findMethod("e", "(LC;[I[LA;)LD;") as LibraryMethod
+
+            libraryClassPool.size() shouldBe 2
+            field.referencedClass shouldBe null
+            method.referencedClasses.toList() shouldBe listOf(null, clazzA, null)
+
+            val clazzC = libraryClassPool.getClass("C")
+            val clazzD = libraryClassPool.getClass("D")
+
+            field.referencedClass shouldBeSameInstanceAs clazzD
+            method.referencedClasses.toList() shouldBe listOf(clazzC, clazzA, clazzD)
+        }
+    }
+})
@@ -0,0 +1,129 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class MappedJarReaderTest : FreeSpec({
+
+    fun zip(vararg entries: Pair<ZipEntry, ByteArray>): ByteArray {
+        val outputStream = ByteArrayOutputStream()
+        ZipOutputStream(outputStream).use { zipOutputStream ->
+            for ((entry, data) in entries) {
+                if (entry.method == ZipEntry.STORED) {
+                    val crc = CRC32()
+                    crc.update(data)
+                    entry.size = data.size.toLong()
+                    entry.crc = crc.value
+                }
+                zipOutputStream.putNextEntry(entry)
+                zipOutputStream.write(data)
+                zipOutputStream.closeEntry()
+            }
+        }
+        return outputStream.toByteArray()
+    }
+
+    fun stored(name: String) = ZipEntry(name).apply { method = ZipEntry.STORED }
+
+    fun contentsReader(contents: MutableMap<String, String>, readerFactory: (DataEntryReader) -> DataEntryReader): DataEntryReader {
+        lateinit var jarReader: DataEntryReader
+        val entryReader = DataEntryReader { dataEntry ->
+            val data = dataEntry.inputStream.readBytes()
+            dataEntry.closeInputStream()
+            contents[dataEntry.toString().substringAfter(':')] = String(data)
+        }
+        jarReader = readerFactory(
+            NameFilteredDataEntryReader(
+                "**.jar",
+                { dataEntry -> jarReader.read(dataEntry) },
+                entryReader,
+            ),
+        )
+        return jarReader
+    }
+
+    "Given a jar with stored, deflated and nested entries" - {
+        val nestedJar = zip(
+            ZipEntry("nested/A.txt") to "nested A".toByteArray(),
+            stored("nested/B.txt") to "nested B".toByteArray(),
+        )
+        val jar = zip(
+            ZipEntry("deflated.txt") to "deflated ".repeat(1000).toByteArray(),
+            stored("stored.txt") to "stored".toByteArray(),
+            ZipEntry("deflated.jar") to nestedJar,
+            stored("stored.jar") to nestedJar,
+        )
+        val file = File.createTempFile("mapped", ".jar")
+        file.deleteOnExit()
+        file.writeBytes(jar)
+
+        "When reading it with a MappedJarReader" - {
+            val mappedContents = mutableMapOf<String, String>()
+            contentsReader(mappedContents) { MappedJarReader(it) }.read(FileDataEntry(file))
+
+            "Then it should read the same entries as a JarReader" {
+                val contents = mutableMapOf<String, String>()
+                contentsReader(contents) { JarReader(it) }.read(FileDataEntry(file))
+
+                mappedContents shouldBe contents
+            }
+
+            "Then it should read the nested entries" {
+                mappedContents["stored.jar:nested/A.txt"] shouldBe "nested A"
+                mappedContents["deflated.jar:nested/B.txt"] shouldBe "nested B"
+            }
+        }
+
+        "When reading a stored entry from a MappedZipFile" - {
+            val zipFile = MappedZipFile.map(file)
+            val entry = zipFile.entries().first { it.name == "stored.txt" }
+            val buffer = zipFile.getData(entry)
+
+            "Then its data should be a slice of the archive" {
+                buffer.isDirect shouldBe true
+                val bytes = ByteArray(buffer.remaining())
+                buffer.get(bytes)
+                String(bytes) shouldBe "stored"
+            }
+        }
+    }
+
+    "Given a jar preceded by a jmod header" - {
+        val jar = zip(ZipEntry("classes/A.txt") to "A".toByteArray())
+        val file = File.createTempFile("mapped", ".jmod")
+        file.deleteOnExit()
+        file.writeBytes(byteArrayOf('J'.code.toByte(), 'M'.code.toByte(), 1, 0) + jar)
+
+        "When reading it with a MappedJarReader" - {
+            val contents = mutableMapOf<String, String>()
+            contentsReader(contents) { MappedJarReader(true, it) }.read(FileDataEntry(file))
+
+            "Then it should skip the header" {
+                contents shouldBe mapOf("classes/A.txt" to "A")
+            }
+        }
+    }
+})
@@ -0,0 +1,161 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.classfile.ClassPool
+import proguard.classfile.Clazz
+import proguard.classfile.ProgramClass
+import proguard.classfile.io.ProgramClassWriter
+import proguard.classfile.visitor.ClassPoolFiller
+import proguard.classfile.visitor.ClassVisitor
+import proguard.io.util.IOUtil
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.JavaSource
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class ParallelClassReaderTest : FreeSpec({
+
+    val (programClassPool, _) = ClassPoolBuilder.fromSource(
+        *(0 until 50).map { JavaSource("A$it.java", "public class A$it { int f$it() { return $it; } }") }.toTypedArray(),
+        initialize = false,
+    )
+
+    val classFiles = (0 until 50).map { index ->
+        val outputStream = ByteArrayOutputStream()
+        programClassPool.getClass("A$index").accept(ProgramClassWriter(DataOutputStream(outputStream)))
+        "A$index.class" to outputStream.toByteArray()
+    }
+
+    "Given class files read by a ParallelClassReader" - {
+        val classNames = mutableListOf<String>()
+        val classPool = ClassPool()
+        val reader = ParallelClassReader(
+            false,
+            false,
+            false,
+            false,
+            false,
+            null,
+            object : ClassVisitor {
+                override fun visitAnyClass(clazz: Clazz) {
+                    classNames.add(clazz.name)
+                    clazz.accept(ClassPoolFiller(classPool))
+                }
+            },
+            4,
+            3,
+        )
+
+        classFiles.forEach { (name, data) -> reader.read(StreamingDataEntry(name, ByteArrayInputStream(data))) }
+        reader.finish()
+
+        "Then all classes should be visited in the order of the data entries" {
+            classNames shouldBe (0 until 50).map { "A$it" }
+        }
+
+        "Then the classes should be parsed completely" {
+            val clazz = classPool.getClass("A7") as ProgramClass
+            (clazz.findMethod("f7", "()I") != null) shouldBe true
+        }
+    }
+
+    "Given an invalid class file read by a ParallelClassReader" - {
+        val reader = ParallelClassReader(false, false, false, false, false, null, ClassPoolFiller(ClassPool()), 2)
+
+        "Then finishing should report the class" {
+            val exception = shouldThrow<IOException> {
+                reader.read(StreamingDataEntry("Invalid.class", ByteArrayInputStream(byteArrayOf(1, 2, 3))))
+                reader.finish()
+            }
+            exception.message!!.contains("Invalid.class") shouldBe true
+        }
+    }
+
+    "Given class files read by a ParallelClassReader that is cancelled" - {
+        val classNames = mutableListOf<String>()
+        val reader = ParallelClassReader(
+            false,
+            false,
+            false,
+            false,
+            false,
+            null,
+            object : ClassVisitor {
+                override fun visitAnyClass(clazz: Clazz) {
+                    classNames.add(clazz.name)
+                }
+            },
+            4,
+            100,
+        )
+
+        classFiles.forEach { (name, data) -> reader.read(StreamingDataEntry(name, ByteArrayInputStream(data))) }
+        reader.cancel()
+        val cancelledClassNames = classNames.toList()
+        reader.finish()
+
+        "Then the pending classes should be dropped" {
+            classNames shouldBe cancelledClassNames
+        }
+
+        "Then the reader should be usable again" {
+            classFiles.forEach { (name, data) -> reader.read(StreamingDataEntry(name, ByteArrayInputStream(data))) }
+            reader.finish()
+            classNames.drop(cancelledClassNames.size) shouldBe (0 until 50).map { "A$it" }
+        }
+    }
+
+    "Given a class path read in parallel" - {
+        val jarFile = File.createTempFile("parallel", ".jar")
+        jarFile.deleteOnExit()
+        ZipOutputStream(FileOutputStream(jarFile)).use { zipOutputStream ->
+            classFiles.forEach { (name, data) ->
+                zipOutputStream.putNextEntry(ZipEntry(name))
+                zipOutputStream.write(data)
+                zipOutputStream.closeEntry()
+            }
+        }
+
+        val classPool = IOUtil.read(
+            ClassPath(ClassPathEntry(jarFile, false)),
+            "**",
+            false,
+            false,
+            false,
+            false,
+            false,
+            false,
+            true,
+        ) { reader, _ -> reader }
+
+        "Then all classes should be read without finishing the reader explicitly" {
+            classPool.size() shouldBe 50
+        }
+    }
+})
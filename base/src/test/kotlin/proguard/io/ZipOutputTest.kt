@@ -0,0 +1,94 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.util.zip.Deflater
+import java.util.zip.ZipInputStream
+
+class ZipOutputTest : FreeSpec({
+
+    val entries = (0 until 100).map { index ->
+        "entry$index.txt" to "Entry $index ".repeat(index * 10).toByteArray()
+    }
+
+    // A zip output that computes the offset of its central directory itself.
+    class OffsetZipOutput(outputStream: ByteArrayOutputStream, compressionThreadCount: Int) :
+        ZipOutput(outputStream, null, 4, false, null, Deflater.BEST_COMPRESSION, compressionThreadCount) {
+        fun closeAtCurrentSize() = close(size())
+    }
+
+    fun write(zipOutput: ZipOutput, close: () -> Unit = zipOutput::close) {
+        entries.forEachIndexed { index, (name, data) ->
+            zipOutput.createOutputStream(name, index % 3 != 0, 0).use { it.write(data) }
+        }
+        close()
+    }
+
+    fun write(compressionLevel: Int, compressionThreadCount: Int): ByteArray {
+        val outputStream = ByteArrayOutputStream()
+        write(ZipOutput(outputStream, null, 4, false, null, compressionLevel, compressionThreadCount))
+        return outputStream.toByteArray()
+    }
+
+    fun read(zipData: ByteArray): List<Pair<String, ByteArray>> {
+        val result = mutableListOf<Pair<String, ByteArray>>()
+        ZipInputStream(ByteArrayInputStream(zipData)).use { zipInputStream ->
+            generateSequence { zipInputStream.nextEntry }.forEach { entry ->
+                result.add(entry.name to zipInputStream.readBytes())
+            }
+        }
+        return result
+    }
+
+    "Given a zip output that compresses entries in parallel" - {
+        val zipData = write(Deflater.BEST_COMPRESSION, 4)
+
+        "Then the entries should be written in order with their original data" {
+            val readEntries = read(zipData)
+            readEntries.map { it.first } shouldBe entries.map { it.first }
+            readEntries.map { String(it.second) } shouldBe entries.map { String(it.second) }
+        }
+
+        "Then the archive should be identical to the one compressed on the writing thread" {
+            zipData.contentEquals(write(Deflater.BEST_COMPRESSION, 0)) shouldBe true
+        }
+    }
+
+    "Given a zip output with a lower compression level" - {
+        val zipData = write(Deflater.BEST_SPEED, 2)
+
+        "Then the entries should still contain their original data" {
+            read(zipData).map { String(it.second) } shouldBe entries.map { String(it.second) }
+        }
+    }
+
+    "Given a zip output that is closed at an offset that it computes itself" - {
+        val outputStream = ByteArrayOutputStream()
+        val zipOutput = OffsetZipOutput(outputStream, 4)
+        write(zipOutput, zipOutput::closeAtCurrentSize)
+
+        "Then the offset should include the entries that were still being compressed" {
+            outputStream.toByteArray().contentEquals(write(Deflater.BEST_COMPRESSION, 0)) shouldBe true
+        }
+    }
+})
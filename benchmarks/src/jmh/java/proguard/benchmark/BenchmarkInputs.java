@@ -0,0 +1,183 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import proguard.classfile.ClassPool;
+import proguard.classfile.ProgramClass;
+import proguard.classfile.visitor.ClassPoolFiller;
+import proguard.io.ClassReader;
+import proguard.io.DataEntryReader;
+import proguard.io.FileDataEntry;
+import proguard.io.JarReader;
+import proguard.io.NameFilteredDataEntryReader;
+
+/**
+ * This utility class locates and reads the inputs of the benchmarks.
+ *
+ * <p>The program jar defaults to the ProGuardCORE jar itself. The library jar defaults to the most
+ * recent <code>android.jar</code> of the Android SDK (<code>ANDROID_HOME</code> or <code>
+ * ANDROID_SDK_ROOT</code>) and otherwise to the runtime classes of the current JVM. Both can be
+ * overridden with the system properties {@link #PROGRAM_JAR} and {@link #LIBRARY_JAR}.
+ */
+public class BenchmarkInputs {
+  public static final String PROGRAM_JAR = "proguard.benchmark.programJar";
+  public static final String LIBRARY_JAR = "proguard.benchmark.libraryJar";
+
+  /** Returns the jar whose classes are processed as program classes. */
+  public static File programJar() {
+    String programJar = System.getProperty(PROGRAM_JAR);
+    if (programJar != null) {
+      return existingFile(programJar);
+    }
+
+    try {
+      return new File(
+          ProgramClass.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException("Can't locate the ProGuardCORE jar", e);
+    }
+  }
+
+  /** Returns the jar or jmod whose classes are processed as library classes. */
+  public static File libraryJar() {
+    String libraryJar = System.getProperty(LIBRARY_JAR);
+    if (libraryJar != null) {
+      return existingFile(libraryJar);
+    }
+
+    File androidJar = androidJar();
+    if (androidJar != null) {
+      return androidJar;
+    }
+
+    File javaHome = new File(System.getProperty("java.home"));
+    File runtimeJar = new File(javaHome, "lib/rt.jar");
+    return runtimeJar.exists() ? runtimeJar : existingFile(javaHome + "/jmods/java.base.jmod");
+  }
+
+  /** Returns the contents of all class files in the given jar, in their order in the jar. */
+  public static List<byte[]> readClassFiles(File jarFile) throws IOException {
+    List<byte[]> classFiles = new ArrayList<>();
+
+    DataEntryReader reader =
+        new NameFilteredDataEntryReader(
+            "**.class",
+            dataEntry -> {
+              InputStream inputStream = dataEntry.getInputStream();
+              try {
+                classFiles.add(readFully(inputStream));
+              } finally {
+                dataEntry.closeInputStream();
+              }
+            });
+
+    new JarReader(isJmod(jarFile), reader).read(new FileDataEntry(jarFile));
+
+    return classFiles;
+  }
+
+  /**
+   * Reads all classes in the given jar into a new class pool, as program classes or as library
+   * classes.
+   */
+  public static ClassPool readClassPool(File jarFile, boolean isLibrary) throws IOException {
+    ClassPool classPool = new ClassPool();
+
+    DataEntryReader reader =
+        new NameFilteredDataEntryReader(
+            "**.class",
+            new ClassReader(isLibrary, false, false, false, null, new ClassPoolFiller(classPool)));
+
+    new JarReader(isJmod(jarFile), reader).read(new FileDataEntry(jarFile));
+
+    return classPool;
+  }
+
+  // Small utility methods.
+
+  private static File androidJar() {
+    String sdk = System.getenv("ANDROID_HOME");
+    if (sdk == null) {
+      sdk = System.getenv("ANDROID_SDK_ROOT");
+    }
+    if (sdk == null) {
+      return null;
+    }
+
+    File[] platforms = new File(sdk, "platforms").listFiles();
+    if (platforms == null) {
+      return null;
+    }
+
+    // Pick the most recent platform, e.g. android-34 over android-9.
+    Arrays.sort(
+        platforms,
+        (platform1, platform2) -> Integer.compare(apiLevel(platform2), apiLevel(platform1)));
+
+    for (File platform : platforms) {
+      File androidJar = new File(platform, "android.jar");
+      if (androidJar.exists()) {
+        return androidJar;
+      }
+    }
+
+    return null;
+  }
+
+  private static int apiLevel(File platform) {
+    String name = platform.getName();
+    try {
+      return Integer.parseInt(name.substring(name.lastIndexOf('-') + 1));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static File existingFile(String fileName) {
+    File file = new File(fileName);
+    if (!file.exists()) {
+      throw new IllegalArgumentException("Benchmark input [" + fileName + "] doesn't exist");
+    }
+    return file;
+  }
+
+  private static boolean isJmod(File file) {
+    return file.getName().endsWith(".jmod");
+  }
+
+  private static byte[] readFully(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    while (true) {
+      int count = inputStream.read(buffer);
+      if (count < 0) {
+        break;
+      }
+      outputStream.write(buffer, 0, count);
+    }
+    return outputStream.toByteArray();
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import proguard.classfile.ClassPool;
+import proguard.classfile.util.ClassReferenceInitializer;
+import proguard.classfile.util.ClassSubHierarchyInitializer;
+import proguard.classfile.util.ClassSuperHierarchyInitializer;
+
+/**
+ * Benchmarks for initializing the class hierarchy and the class references of the program jar, on
+ * top of a full library class pool (typically the Android SDK).
+ *
+ * <p>The initializers overwrite the references they set, so they can run repeatedly on the same
+ * class pools.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ClassInitializationBenchmark {
+  private ClassPool programClassPool;
+  private ClassPool libraryClassPool;
+
+  @Setup
+  public void setup() throws IOException {
+    programClassPool = BenchmarkInputs.readClassPool(BenchmarkInputs.programJar(), false);
+    libraryClassPool = BenchmarkInputs.readClassPool(BenchmarkInputs.libraryJar(), true);
+
+    // The reference initializer relies on an initialized super hierarchy.
+    superHierarchy();
+  }
+
+  @Benchmark
+  public void superHierarchy() {
+    ClassSuperHierarchyInitializer initializer =
+        new ClassSuperHierarchyInitializer(programClassPool, libraryClassPool);
+
+    programClassPool.classesAccept(initializer);
+    libraryClassPool.classesAccept(initializer);
+  }
+
+  @Benchmark
+  public void subHierarchy() {
+    // Apply a single instance to the program class pool first.
+    ClassSubHierarchyInitializer initializer = new ClassSubHierarchyInitializer();
+
+    programClassPool.accept(initializer);
+    libraryClassPool.accept(initializer);
+  }
+
+  @Benchmark
+  public void references() {
+    programClassPool.classesAccept(
+        new ClassReferenceInitializer(programClassPool, libraryClassPool));
+  }
+}
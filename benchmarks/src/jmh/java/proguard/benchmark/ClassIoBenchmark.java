@@ -0,0 +1,138 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import proguard.classfile.ClassPool;
+import proguard.classfile.ProgramClass;
+import proguard.classfile.io.ProgramClassReader;
+import proguard.classfile.io.ProgramClassWriter;
+import proguard.classfile.visitor.ClassPoolFiller;
+import proguard.io.ClassReader;
+import proguard.io.FileDataEntry;
+import proguard.io.JarReader;
+import proguard.io.NameFilteredDataEntryReader;
+import proguard.io.ParallelClassReader;
+
+/**
+ * Benchmarks for parsing and writing class files with {@link ProgramClassReader} and {@link
+ * ProgramClassWriter}, over all classes of the program jar, and for reading the library jar with
+ * {@link ClassReader} and {@link ParallelClassReader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ClassIoBenchmark {
+  private File libraryJar;
+  private List<byte[]> classFiles;
+  private List<ProgramClass> programClasses;
+
+  @Setup
+  public void setup() throws IOException {
+    libraryJar = BenchmarkInputs.libraryJar();
+    classFiles = BenchmarkInputs.readClassFiles(BenchmarkInputs.programJar());
+    programClasses = new ArrayList<>(classFiles.size());
+    for (byte[] classFile : classFiles) {
+      programClasses.add(read(classFile));
+    }
+  }
+
+  @Benchmark
+  public void read(Blackhole blackhole) {
+    for (byte[] classFile : classFiles) {
+      blackhole.consume(read(classFile));
+    }
+  }
+
+  @Benchmark
+  public void write(Blackhole blackhole) {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream(64 * 1024);
+    for (ProgramClass programClass : programClasses) {
+      outputStream.reset();
+      programClass.accept(new ProgramClassWriter(new DataOutputStream(outputStream)));
+      blackhole.consume(outputStream.size());
+    }
+  }
+
+  @Benchmark
+  public void roundTrip(Blackhole blackhole) {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream(64 * 1024);
+    for (byte[] classFile : classFiles) {
+      outputStream.reset();
+      read(classFile).accept(new ProgramClassWriter(new DataOutputStream(outputStream)));
+      blackhole.consume(outputStream.size());
+    }
+  }
+
+  @Benchmark
+  public ClassPool readLibraryJar() throws IOException {
+    ClassPool classPool = new ClassPool();
+
+    new JarReader(
+            libraryJar.getName().endsWith(".jmod"),
+            new NameFilteredDataEntryReader(
+                "**.class",
+                new ClassReader(true, false, false, false, null, new ClassPoolFiller(classPool))))
+        .read(new FileDataEntry(libraryJar));
+
+    return classPool;
+  }
+
+  @Benchmark
+  public ClassPool readLibraryJarParallel() throws IOException {
+    ClassPool classPool = new ClassPool();
+
+    ParallelClassReader classReader =
+        new ParallelClassReader(
+            true, false, false, false, false, null, new ClassPoolFiller(classPool));
+
+    new JarReader(
+            libraryJar.getName().endsWith(".jmod"),
+            new NameFilteredDataEntryReader("**.class", classReader))
+        .read(new FileDataEntry(libraryJar));
+
+    classReader.finish();
+
+    return classPool;
+  }
+
+  // Small utility methods.
+
+  private static ProgramClass read(byte[] classFile) {
+    ProgramClass programClass = new ProgramClass();
+    programClass.accept(
+        new ProgramClassReader(new DataInputStream(new ByteArrayInputStream(classFile))));
+    return programClass;
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import proguard.analysis.cpa.algorithms.CpaAlgorithm;
+import proguard.analysis.cpa.defaults.BreadthFirstWaitlist;
+import proguard.analysis.cpa.defaults.HashMapAbstractState;
+import proguard.analysis.cpa.defaults.NeverAbortOperator;
+import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
+import proguard.analysis.cpa.defaults.SetAbstractState;
+import proguard.analysis.cpa.interfaces.AbortOperator;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Algorithm;
+import proguard.analysis.cpa.interfaces.ConfigurableProgramAnalysis;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.analysis.cpa.interfaces.Waitlist;
+import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintCpa;
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSource;
+import proguard.analysis.cpa.jvm.state.JvmAbstractState;
+import proguard.analysis.cpa.jvm.state.JvmFrameAbstractState;
+import proguard.analysis.cpa.jvm.state.heap.JvmForgetfulHeapAbstractState;
+import proguard.analysis.cpa.jvm.util.CfaUtil;
+import proguard.classfile.ClassPool;
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+import proguard.classfile.MethodSignature;
+import proguard.classfile.attribute.Attribute;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.attribute.visitor.AllAttributeVisitor;
+import proguard.classfile.attribute.visitor.AttributeVisitor;
+import proguard.classfile.util.ClassReferenceInitializer;
+import proguard.classfile.util.ClassSuperHierarchyInitializer;
+import proguard.classfile.visitor.AllMethodVisitor;
+
+/**
+ * Benchmarks for the {@link CpaAlgorithm}, compared to its previous main loop, which allocated
+ * temporary sets for every successor state. The algorithm runs an intraprocedural taint analysis
+ * on the largest methods of the program jar, with the results of {@link StringBuilder#toString()}
+ * as taint sources.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CpaAlgorithmBenchmark {
+  @Param({"current", "previous"})
+  public String algorithm;
+
+  @Param({"200"})
+  public int methodCount;
+
+  private final List<MethodSignature> methods = new ArrayList<>();
+  private JvmCfa cfa;
+  private Algorithm cpaAlgorithm;
+
+  @Setup
+  public void setup() throws IOException {
+    ClassPool programClassPool =
+        BenchmarkInputs.readClassPool(BenchmarkInputs.programJar(), false);
+    ClassPool libraryClassPool =
+        BenchmarkInputs.readClassPool(BenchmarkInputs.libraryJar(), true);
+
+    programClassPool.classesAccept(
+        new ClassSuperHierarchyInitializer(programClassPool, libraryClassPool));
+    libraryClassPool.classesAccept(
+        new ClassSuperHierarchyInitializer(programClassPool, libraryClassPool));
+    programClassPool.classesAccept(
+        new ClassReferenceInitializer(programClassPool, libraryClassPool));
+
+    // Collect the largest methods.
+    List<CodeSize> codeSizes = new ArrayList<>();
+    programClassPool.classesAccept(
+        new AllMethodVisitor(
+            new AllAttributeVisitor(
+                new AttributeVisitor() {
+                  @Override
+                  public void visitAnyAttribute(Clazz clazz, Attribute attribute) {}
+
+                  @Override
+                  public void visitCodeAttribute(
+                      Clazz clazz, Method method, CodeAttribute codeAttribute) {
+                    codeSizes.add(
+                        new CodeSize(
+                            new MethodSignature(clazz, method), codeAttribute.u4codeLength));
+                  }
+                })));
+
+    codeSizes.sort(Comparator.comparingInt((CodeSize codeSize) -> codeSize.length).reversed());
+    for (CodeSize codeSize : codeSizes.subList(0, Math.min(methodCount, codeSizes.size()))) {
+      methods.add(codeSize.signature);
+    }
+
+    cfa = CfaUtil.createIntraproceduralCfa(programClassPool);
+
+    JvmTaintSource taintSource =
+        new JvmTaintSource(
+            new MethodSignature("java/lang/StringBuilder", "toString", "()Ljava/lang/String;"),
+            false,
+            true,
+            Collections.emptySet(),
+            Collections.emptySet());
+    JvmTaintCpa cpa = new JvmTaintCpa(Collections.singleton(taintSource));
+    cpaAlgorithm =
+        algorithm.equals("previous") ? new PreviousCpaAlgorithm(cpa) : new CpaAlgorithm(cpa);
+  }
+
+  @Benchmark
+  public void analyze(Blackhole blackhole) {
+    for (MethodSignature method : methods) {
+      ReachedSet reachedSet = new ProgramLocationDependentReachedSet<>();
+      Waitlist waitlist = new BreadthFirstWaitlist();
+
+      JvmAbstractState<SetAbstractState<JvmTaintSource>> initialState =
+          new JvmAbstractState<>(
+              cfa.getFunctionEntryNode(method),
+              new JvmFrameAbstractState<>(),
+              new JvmForgetfulHeapAbstractState<SetAbstractState<JvmTaintSource>>(
+                  SetAbstractState.bottom),
+              new HashMapAbstractState<>());
+      reachedSet.add(initialState);
+      waitlist.add(initialState);
+
+      cpaAlgorithm.run(reachedSet, waitlist, NeverAbortOperator.INSTANCE);
+      blackhole.consume(reachedSet);
+    }
+  }
+
+  /** The main loop of the {@link CpaAlgorithm} before it reused its temporary sets. */
+  private static class PreviousCpaAlgorithm implements Algorithm {
+    private final ConfigurableProgramAnalysis cpa;
+
+    private PreviousCpaAlgorithm(ConfigurableProgramAnalysis cpa) {
+      this.cpa = cpa;
+    }
+
+    @Override
+    public void run(ReachedSet reachedSet, Waitlist waitlist, AbortOperator abortOperator) {
+      while (!waitlist.isEmpty()) {
+        AbstractState currentState = waitlist.pop();
+        if (abortOperator.abort(currentState)) {
+          return;
+        }
+        currentState =
+            cpa.getPrecisionAdjustment()
+                .prec(
+                    currentState,
+                    currentState.getPrecision(),
+                    reachedSet.getReached(currentState))
+                .getAbstractState();
+        Precision currentPrecision = currentState.getPrecision();
+
+        for (AbstractState successorState :
+            cpa.getTransferRelation()
+                .generateAbstractSuccessors(currentState, currentPrecision)) {
+          Set<AbstractState> gen = new LinkedHashSet<>();
+          Set<AbstractState> kill = new LinkedHashSet<>();
+          for (AbstractState reachedState : reachedSet.getReached(successorState)) {
+            AbstractState mergedState =
+                cpa.getMergeOperator()
+                    .merge(successorState, reachedState, successorState.getPrecision());
+            if (!mergedState.equals(reachedState)) {
+              gen.add(mergedState);
+              kill.add(reachedState);
+            }
+          }
+          reachedSet.addAll(gen);
+          reachedSet.removeAll(kill);
+          waitlist.addAll(gen);
+          waitlist.removeAll(kill);
+          if (!cpa.getStopOperator()
+              .stop(
+                  successorState,
+                  reachedSet.getReached(successorState),
+                  successorState.getPrecision())) {
+            waitlist.add(successorState);
+            reachedSet.add(successorState);
+          }
+        }
+      }
+    }
+  }
+
+  /** The signature of a method, along with the length of its code. */
+  private static class CodeSize {
+    private final MethodSignature signature;
+    private final int length;
+
+    private CodeSize(MethodSignature signature, int length) {
+      this.signature = signature;
+      this.length = length;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import proguard.classfile.ClassPool;
+import proguard.classfile.visitor.ClassPoolFiller;
+import proguard.dexfile.converter.Dex2Pro;
+import proguard.io.D8ClassConverter;
+import proguard.io.DexClassReader;
+import proguard.io.StreamingDataEntry;
+
+/**
+ * Benchmark for converting a dex file back to classes with {@link DexClassReader}, which relies on
+ * {@link Dex2Pro}. The dex file is compiled from the program jar with D8 up front.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Dex2ProBenchmark {
+  @Param({"true", "false"})
+  public boolean readCode;
+
+  private byte[] dexFile;
+
+  @Setup
+  public void setup() throws IOException {
+    ClassPool programClassPool =
+        BenchmarkInputs.readClassPool(BenchmarkInputs.programJar(), false);
+
+    D8ClassConverter.D8DexFile d8DexFile = new D8ClassConverter.D8DexFile(null, 26, false);
+    programClassPool.classesAccept(new D8ClassConverter(d8DexFile));
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    d8DexFile.writeTo(outputStream);
+    dexFile = outputStream.toByteArray();
+  }
+
+  @Benchmark
+  public ClassPool convert() throws IOException {
+    ClassPool classPool = new ClassPool();
+
+    new DexClassReader(readCode, new ClassPoolFiller(classPool))
+        .read(new StreamingDataEntry("classes.dex", new ByteArrayInputStream(dexFile)));
+
+    return classPool;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import proguard.classfile.ClassPool;
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+import proguard.classfile.attribute.Attribute;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.attribute.visitor.AllAttributeVisitor;
+import proguard.classfile.attribute.visitor.AttributeVisitor;
+import proguard.classfile.util.ClassReferenceInitializer;
+import proguard.classfile.util.ClassSuperHierarchyInitializer;
+import proguard.classfile.visitor.AllMethodVisitor;
+import proguard.evaluation.BasicInvocationUnit;
+import proguard.evaluation.PartialEvaluator;
+import proguard.evaluation.ParticularReferenceValueFactory;
+import proguard.evaluation.value.BasicValueFactory;
+import proguard.evaluation.value.ParticularValueFactory;
+import proguard.evaluation.value.TypedReferenceValueFactory;
+import proguard.evaluation.value.ValueFactory;
+
+/**
+ * Benchmarks for the {@link PartialEvaluator} on the largest methods of the program jar, with
+ * value factories of increasing precision.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PartialEvaluatorBenchmark {
+  @Param({"basic", "typed", "particular"})
+  public String precision;
+
+  @Param({"200"})
+  public int methodCount;
+
+  private final List<MethodCode> methods = new ArrayList<>();
+  private PartialEvaluator partialEvaluator;
+
+  @Setup
+  public void setup() throws IOException {
+    ClassPool programClassPool =
+        BenchmarkInputs.readClassPool(BenchmarkInputs.programJar(), false);
+    ClassPool libraryClassPool =
+        BenchmarkInputs.readClassPool(BenchmarkInputs.libraryJar(), true);
+
+    // The typed and particular values need the class references.
+    programClassPool.classesAccept(
+        new ClassSuperHierarchyInitializer(programClassPool, libraryClassPool));
+    libraryClassPool.classesAccept(
+        new ClassSuperHierarchyInitializer(programClassPool, libraryClassPool));
+    programClassPool.classesAccept(
+        new ClassReferenceInitializer(programClassPool, libraryClassPool));
+
+    // Collect the largest methods.
+    programClassPool.classesAccept(
+        new AllMethodVisitor(
+            new AllAttributeVisitor(
+                new AttributeVisitor() {
+                  @Override
+                  public void visitAnyAttribute(Clazz clazz, Attribute attribute) {}
+
+                  @Override
+                  public void visitCodeAttribute(
+                      Clazz clazz, Method method, CodeAttribute codeAttribute) {
+                    methods.add(new MethodCode(clazz, method, codeAttribute));
+                  }
+                })));
+
+    methods.sort(
+        Comparator.comparingInt((MethodCode code) -> code.codeAttribute.u4codeLength).reversed());
+    methods.subList(Math.min(methodCount, methods.size()), methods.size()).clear();
+
+    ValueFactory valueFactory = createValueFactory(precision);
+    partialEvaluator =
+        new PartialEvaluator(valueFactory, new BasicInvocationUnit(valueFactory), true);
+  }
+
+  @Benchmark
+  public PartialEvaluator evaluate() {
+    for (MethodCode code : methods) {
+      partialEvaluator.visitCodeAttribute(code.clazz, code.method, code.codeAttribute);
+    }
+    return partialEvaluator;
+  }
+
+  // Small utility methods.
+
+  private static ValueFactory createValueFactory(String precision) {
+    switch (precision) {
+      case "basic":
+        return new BasicValueFactory();
+      case "typed":
+        return new TypedReferenceValueFactory();
+      case "particular":
+        return new ParticularValueFactory(
+            new BasicValueFactory(), new ParticularReferenceValueFactory());
+      default:
+        throw new IllegalArgumentException("Unknown precision [" + precision + "]");
+    }
+  }
+
+  /** The code attribute of a method, along with its class and method. */
+  private static class MethodCode {
+    private final Clazz clazz;
+    private final Method method;
+    private final CodeAttribute codeAttribute;
+
+    private MethodCode(Clazz clazz, Method method, CodeAttribute codeAttribute) {
+      this.clazz = clazz;
+      this.method = method;
+      this.codeAttribute = codeAttribute;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import proguard.classfile.ClassPool;
+import proguard.classfile.attribute.visitor.AllAttributeVisitor;
+import proguard.classfile.constant.Constant;
+import proguard.classfile.editor.CodeAttributeEditor;
+import proguard.classfile.editor.InstructionSequenceBuilder;
+import proguard.classfile.editor.InstructionSequenceReplacer;
+import proguard.classfile.editor.InstructionSequencesReplacer;
+import proguard.classfile.editor.PeepholeEditor;
+import proguard.classfile.instruction.Instruction;
+import proguard.classfile.util.BranchTargetFinder;
+import proguard.classfile.visitor.AllMethodVisitor;
+
+/**
+ * Benchmark for a peephole pass with {@link InstructionSequencesReplacer} and {@link
+ * CodeAttributeEditor} over all methods of the program jar.
+ *
+ * <p>The pass modifies the code, so each invocation starts from freshly parsed classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PeepholeBenchmark {
+  private static final int X = InstructionSequenceReplacer.X;
+  private static final int Y = InstructionSequenceReplacer.Y;
+
+  private Constant[] constants;
+  private Instruction[][][] replacements;
+  private ClassPool programClassPool;
+
+  @Setup
+  public void setup() {
+    // A small set of typical peephole patterns, including wildcards.
+    InstructionSequenceBuilder ____ = new InstructionSequenceBuilder();
+
+    replacements =
+        new Instruction[][][] {
+          { // ... + 0 = ...
+            ____.iconst_0().iadd().__(),
+          },
+          { // ... * 1 = ...
+            ____.iconst_1().imul().__(),
+          },
+          { // -(-...) = ...
+            ____.ineg().ineg().__(),
+          },
+          { // i=i = nothing
+            ____.iload(X).istore(X).__(),
+          },
+          { // a=a = nothing
+            ____.aload(X).astore(X).__(),
+          },
+          { // putstatic/getstatic = dup/putstatic
+            ____.putstatic(X).getstatic(X).__(), ____.dup().putstatic(X).__()
+          },
+          { // load/pop = nothing
+            ____.aload(Y).pop().__(),
+          },
+        };
+
+    constants = ____.constants();
+  }
+
+  @Setup(Level.Invocation)
+  public void readClasses() throws IOException {
+    programClassPool = BenchmarkInputs.readClassPool(BenchmarkInputs.programJar(), false);
+  }
+
+  @Benchmark
+  public ClassPool replace() {
+    BranchTargetFinder branchTargetFinder = new BranchTargetFinder();
+    CodeAttributeEditor codeAttributeEditor = new CodeAttributeEditor();
+
+    programClassPool.classesAccept(
+        new AllMethodVisitor(
+            new AllAttributeVisitor(
+                new PeepholeEditor(
+                    branchTargetFinder,
+                    codeAttributeEditor,
+                    new InstructionSequencesReplacer(
+                        constants, replacements, branchTargetFinder, codeAttributeEditor)))));
+
+    return programClassPool;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2024 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import proguard.io.DataEntryCopier;
+import proguard.io.DataEntryWriter;
+import proguard.io.FileDataEntry;
+import proguard.io.FixedFileWriter;
+import proguard.io.JarReader;
+import proguard.io.ZipWriter;
+
+/**
+ * Benchmark for copying all entries of the library jar with {@link JarReader} to a new jar with
+ * {@link ZipWriter}, which recompresses every entry, with the given compression level and number
+ * of compression threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ZipCopyBenchmark {
+  @Param({"0", "4"})
+  public int compressionThreads;
+
+  @Param({"9", "6"})
+  public int compressionLevel;
+
+  private File inputJar;
+  private File outputJar;
+
+  @Setup
+  public void setup() throws IOException {
+    inputJar = BenchmarkInputs.libraryJar();
+    outputJar = File.createTempFile("proguard-benchmark", ".jar");
+  }
+
+  @TearDown
+  public void tearDown() {
+    outputJar.delete();
+  }
+
+  @Benchmark
+  public long copy() throws IOException {
+    DataEntryWriter writer =
+        new ZipWriter(
+            null,
+            1,
+            false,
+            null,
+            1,
+            0,
+            null,
+            compressionLevel,
+            compressionThreads,
+            new FixedFileWriter(outputJar));
+
+    new JarReader(inputJar.getName().endsWith(".jmod"), new DataEntryCopier(writer))
+        .read(new FileDataEntry(inputJar));
+
+    writer.close();
+
+    return outputJar.length();
+  }
+}